@@ -108,6 +108,30 @@ public class ResourceStoreRequest
         getRequestContext().setParentContext( request.getRequestContext() );
     }
 
+    /**
+     * Creates a new request off from this one, meant to be processed concurrently with this request (or with other
+     * forked requests). The forked request context is a flattened snapshot of this request context (taken in the
+     * calling thread, and not linked to it), so changes made to either context after forking are not visible to the
+     * other. The forked request carries a copy of processed repositories and applied mappings too. Once the forked
+     * request is processed, the repositories it processed should be merged back using
+     * {@link #addProcessedRepositories(ResourceStoreRequest)}.
+     * 
+     * @return the forked request
+     */
+    public ResourceStoreRequest fork()
+    {
+        ResourceStoreRequest result =
+            new ResourceStoreRequest( getRequestPath(), isRequestLocalOnly(), isRequestRemoteOnly() );
+
+        result.getRequestContext().putAll( getRequestContext().flatten() );
+
+        result.processedRepositories.addAll( processedRepositories );
+
+        result.appliedMappings.putAll( appliedMappings );
+
+        return result;
+    }
+
     /**
      * Gets the request context.
      * 
@@ -242,6 +266,23 @@ public class ResourceStoreRequest
         processedRepositories.add( repository.getId() );
     }
 
+    /**
+     * Adds the repositories processed by a forked request to the list of processed repositories, keeping their order
+     * and skipping the ones already on the list.
+     * 
+     * @param forked the request forked off from this one, see {@link #fork()}
+     */
+    public void addProcessedRepositories( ResourceStoreRequest forked )
+    {
+        for ( String repositoryId : forked.processedRepositories )
+        {
+            if ( !processedRepositories.contains( repositoryId ) )
+            {
+                processedRepositories.add( repositoryId );
+            }
+        }
+    }
+
     /**
      * Returns true if the request is conditional.
      * 
@@ -57,6 +57,17 @@ public interface NexusItemAuthorizer
      */
     boolean authorizePath( Repository repository, ResourceStoreRequest request, Action action );
 
+    /**
+     * Resolves the authorization of current subject for an action over the whole content of a repository, on target
+     * and repository granularity. Use when you have lots of paths of same repository to authorize, ie. filtering of
+     * search results.
+     * 
+     * @param repository
+     * @param action
+     * @return
+     */
+    RepositoryAuthorization getRepositoryAuthorization( Repository repository, Action action );
+
     /**
      * A shorthand for "view" permission.
      * 
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.access;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.sonatype.nexus.proxy.target.Target;
+import org.sonatype.nexus.proxy.target.TargetMatch;
+
+/**
+ * The authorization of a subject for an action over the whole content of a repository, resolved on target and
+ * repository granularity: the target matches (of the repository and of the groups it is member of) the subject is
+ * permitted and those it is denied. When one of the permitted targets matches any path, or one of the denied ones does
+ * while none is permitted, the decision for every path is known upfront, otherwise paths are authorized by matching
+ * them against the resolved targets, without consulting the security system again. Immutable.
+ * 
+ * @author cstamas
+ */
+public class RepositoryAuthorization
+{
+    /** Authorization permitting every path, ie. when security is disabled. */
+    public static final RepositoryAuthorization ALL = new RepositoryAuthorization(
+        Collections.<TargetMatch> emptyList(), Collections.<TargetMatch> emptyList() );
+
+    private static final Set<String> MATCH_ANY_PATTERNS = new HashSet<String>( Arrays.asList( ".*", "^.*", ".*$",
+        "^.*$", "/.*", "^/.*", "/.*$", "^/.*$" ) );
+
+    private final List<TargetMatch> permitted;
+
+    private final List<TargetMatch> denied;
+
+    private final boolean allPermitted;
+
+    private final boolean nonePermitted;
+
+    public RepositoryAuthorization( final List<TargetMatch> permitted, final List<TargetMatch> denied )
+    {
+        this.permitted = permitted;
+
+        this.denied = denied;
+
+        // paths matched by no target at all are "virtual", hence permitted
+        this.allPermitted = matchesAnyPath( permitted ) || ( permitted.isEmpty() && denied.isEmpty() );
+
+        this.nonePermitted = permitted.isEmpty() && matchesAnyPath( denied );
+    }
+
+    /**
+     * Returns true if every path of the repository is permitted.
+     * 
+     * @return
+     */
+    public boolean isAllPermitted()
+    {
+        return allPermitted;
+    }
+
+    /**
+     * Returns true if no path of the repository is permitted.
+     * 
+     * @return
+     */
+    public boolean isNonePermitted()
+    {
+        return nonePermitted;
+    }
+
+    /**
+     * Authorizes a repository path. Gives same result as
+     * {@link NexusItemAuthorizer#authorizePath(org.sonatype.nexus.proxy.repository.Repository, org.sonatype.nexus.proxy.ResourceStoreRequest, Action)}
+     * did when this authorization was resolved.
+     * 
+     * @param path
+     * @return
+     */
+    public boolean isPermitted( final String path )
+    {
+        if ( allPermitted )
+        {
+            return true;
+        }
+
+        if ( nonePermitted )
+        {
+            return false;
+        }
+
+        // all it takes is one
+        for ( TargetMatch match : permitted )
+        {
+            if ( isPathContained( match, path ) )
+            {
+                return true;
+            }
+        }
+
+        for ( TargetMatch match : denied )
+        {
+            if ( isPathContained( match, path ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // ==
+
+    protected static boolean isPathContained( final TargetMatch match, final String path )
+    {
+        return match.getTarget().isPathContained( match.getRepository().getRepositoryContentClass(), path );
+    }
+
+    protected static boolean matchesAnyPath( final List<TargetMatch> matches )
+    {
+        for ( TargetMatch match : matches )
+        {
+            if ( matchesAnyPath( match.getTarget() ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if the target has a pattern that obviously matches any path. Is conservative.
+     */
+    protected static boolean matchesAnyPath( final Target target )
+    {
+        for ( String patternText : target.getPatternTexts() )
+        {
+            if ( MATCH_ANY_PATTERNS.contains( patternText ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -23,6 +23,7 @@ import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.item.ContentLocator;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.repository.Repository;
 
@@ -53,6 +54,16 @@ public interface AttributesHandler
      */
     void storeAttributes( StorageItem item, ContentLocator content );
 
+    /**
+     * Starts the inspection of the content of a file item about to be written, by all the streaming inspectors handling
+     * it. The returned inspection should be fed with the written content, and completed before attributes of the item
+     * are stored with {@link #storeAttributes(StorageItem, ContentLocator)}.
+     * 
+     * @param item the item
+     * @return the inspection, or null if no inspector is interested in the content stream.
+     */
+    ContentInspection startContentInspection( StorageFileItem item );
+
     /**
      * Removes the item attributes.
      * 
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.IOException;
+
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+
+/**
+ * A consumer of file item content, fed by the local storage with the bytes being written, while item is stored. Once
+ * all the content is written, the inspection is completed and it should contribute it's findings as item attributes.
+ * Instances are used by one thread only.
+ * 
+ * @author cstamas
+ */
+public interface ContentInspection
+{
+    /**
+     * Consumes the next chunk of content.
+     * 
+     * @param buffer the buffer
+     * @param offset the offset of chunk in buffer
+     * @param length the length of chunk
+     * @throws IOException
+     */
+    void update( byte[] buffer, int offset, int length )
+        throws IOException;
+
+    /**
+     * Completes the inspection, invoked once the whole content was consumed.
+     * 
+     * @param item the inspected item
+     * @throws Exception the exception
+     */
+    void complete( StorageFileItem item )
+        throws Exception;
+}
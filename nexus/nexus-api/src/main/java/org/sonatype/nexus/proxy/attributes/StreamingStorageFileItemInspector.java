@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+
+/**
+ * A file item inspector able to inspect item content as a stream, while it is being written to local storage. Streaming
+ * inspectors are not processed again when storing the item attributes, if they did complete the inspection of the
+ * written content. The {@link #processStorageFileItem(StorageFileItem, java.io.File)} method is still used when no
+ * such write pass happens (ie. recreating attributes).
+ * 
+ * @author cstamas
+ */
+public interface StreamingStorageFileItemInspector
+    extends StorageFileItemInspector
+{
+    /**
+     * Starts an inspection of the content of the item to be stored. Invoked only when {@link #isHandled(org.sonatype.nexus.proxy.item.StorageItem)}
+     * returned true for the item.
+     * 
+     * @param item the item
+     * @return the inspection, or null if this item does not need one
+     * @throws Exception the exception
+     */
+    ContentInspection startInspection( StorageFileItem item )
+        throws Exception;
+}
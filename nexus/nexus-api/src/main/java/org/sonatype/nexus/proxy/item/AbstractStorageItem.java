@@ -400,6 +400,11 @@ public abstract class AbstractStorageItem
         return generation;
     }
 
+    public void setGeneration( int generation )
+    {
+        this.generation = generation;
+    }
+
     public void incrementGeneration()
     {
         this.generation++;
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.item;
+
+/**
+ * A lightweight description of a collection member, as returned by listings that does not materialize members as
+ * {@link StorageItem}s (hence, no attributes are loaded for them). Links are not resolved, and are described as files.
+ * 
+ * @author cstamas
+ */
+public class StorageItemInfo
+{
+    private final String name;
+
+    private final boolean collection;
+
+    private final long length;
+
+    private final long modified;
+
+    public StorageItemInfo( final String name, final boolean collection, final long length, final long modified )
+    {
+        this.name = name;
+        this.collection = collection;
+        this.length = length;
+        this.modified = modified;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public boolean isCollection()
+    {
+        return collection;
+    }
+
+    /**
+     * Returns the length of the member, or -1 for collections.
+     * 
+     * @return
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    public long getModified()
+    {
+        return modified;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + ( collection ? "/" : "" );
+    }
+}
@@ -115,4 +115,13 @@ public interface RepositoryRegistry
      * @return list of group's where the repo appears as member
      */
     List<GroupRepository> getGroupsOfRepository( Repository repository);
+
+    /**
+     * Collect the transitive members of the group, resolving the member groups to their members. The resulting list
+     * won't contain any GroupRepository.
+     *
+     * @param group the group repository
+     * @return list of repositories that are transitive members of the group
+     */
+    List<Repository> getTransitiveMemberRepositories( GroupRepository group );
 }
@@ -40,10 +40,6 @@ public interface ProxyRepository
      */
     RemoteStatus getRemoteStatus( ResourceStoreRequest request, boolean forceCheck );
 
-    Thread getRepositoryStatusCheckerThread();
-
-    void setRepositoryStatusCheckerThread(Thread thread);
-    
     /**
      * Returns the current remote status retain time. Does not change or step it's value.
      * 
@@ -34,6 +34,7 @@ import org.sonatype.nexus.proxy.cache.PathCache;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StorageItemInfo;
 import org.sonatype.nexus.proxy.item.uid.RepositoryItemUidAttributeManager;
 import org.sonatype.nexus.proxy.mirror.PublishedMirrors;
 import org.sonatype.nexus.proxy.registry.ContentClass;
@@ -522,4 +523,19 @@ public interface Repository
 
     Collection<StorageItem> list( boolean fromTask, StorageCollectionItem item )
         throws IllegalOperationException, ItemNotFoundException, StorageException;
+
+    /**
+     * Lists the collection on request path like {@link #list(boolean, ResourceStoreRequest)} does, but returns only
+     * the name, type, length and modification time of the members, as found in local storage. Meant for browsing, as
+     * no items are created and no attributes are loaded for members.
+     * 
+     * @param fromTask
+     * @param request
+     * @return
+     * @throws IllegalOperationException
+     * @throws ItemNotFoundException
+     * @throws StorageException
+     */
+    Collection<StorageItemInfo> listItemInfos( boolean fromTask, ResourceStoreRequest request )
+        throws IllegalOperationException, ItemNotFoundException, StorageException;
 }
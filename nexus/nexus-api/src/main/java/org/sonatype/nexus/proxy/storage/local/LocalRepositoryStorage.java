@@ -30,6 +30,7 @@ import org.sonatype.nexus.proxy.ResourceStoreIteratorRequest;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StorageItemInfo;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.plugin.ExtensionPoint;
@@ -157,6 +158,19 @@ public interface LocalRepositoryStorage
     Collection<StorageItem> listItems( Repository repository, ResourceStoreRequest request )
         throws ItemNotFoundException, LocalStorageException;
 
+    /**
+     * Lists the collection on request path, describing the members as they are stored, without retrieving them as
+     * items (no attributes are loaded).
+     * 
+     * @param repository
+     * @param request
+     * @return
+     * @throws ItemNotFoundException if there is no collection on request path.
+     * @throws LocalStorageException
+     */
+    Collection<StorageItemInfo> listItemInfos( Repository repository, ResourceStoreRequest request )
+        throws ItemNotFoundException, LocalStorageException;
+
     /**
      * Iterate over items.
      * 
@@ -24,6 +24,7 @@ import javax.inject.Singleton;
 
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.RemoteAccessException;
+import org.sonatype.nexus.proxy.RemoteItemNotModifiedException;
 import org.sonatype.nexus.proxy.RemoteStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
@@ -41,6 +42,24 @@ import org.sonatype.plugin.ExtensionPoint;
 @Singleton
 public interface RemoteRepositoryStorage
 {
+    /**
+     * Request context key holding the modification timestamp (Long) of the local copy of an item. When present,
+     * storages supporting it make the retrieval conditional, and throw {@link RemoteItemNotModifiedException} if the
+     * remote item is not modified since.
+     */
+    String CTX_REVALIDATE_MODIFIED = "remoteStorage.revalidate.modified";
+
+    /**
+     * Request context key holding the entity tag (String) of the local copy of an item, to be used in conditional
+     * retrieval, see {@link #CTX_REVALIDATE_MODIFIED}.
+     */
+    String CTX_REVALIDATE_ETAG = "remoteStorage.revalidate.etag";
+
+    /**
+     * Item attribute key holding the entity tag sent by remote peer, if any.
+     */
+    String REMOTE_ETAG_KEY = "remote.etag";
+
     /**
      * Returns a designator to identify the remote storage implementation (hint: for example the Plexus role hint).
      * 
@@ -105,10 +124,12 @@ public interface RemoteRepositoryStorage
         throws RemoteAccessException, RemoteStorageException;
 
     /**
-     * Retrieve item unconditionally.
+     * Retrieve item unconditionally, unless request context asks for a conditional retrieval (see
+     * {@link #CTX_REVALIDATE_MODIFIED}) and the storage supports it.
      * 
      * @return the abstract storage item
      * @throws ItemNotFoundException the item not found exception
+     * @throws RemoteItemNotModifiedException if retrieval was conditional, and remote item is not modified
      * @throws RemoteStorageException the storage exception
      */
     AbstractStorageItem retrieveItem( ProxyRepository repository, ResourceStoreRequest request, String baseUrl )
@@ -19,6 +19,7 @@
 package org.sonatype.nexus.proxy.walker;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,7 +42,7 @@ public class DefaultWalkerContext
 
     private List<WalkerProcessor> processors;
 
-    private Throwable stopCause;
+    private volatile Throwable stopCause;
 
     private volatile boolean running;
 
@@ -81,11 +82,12 @@ public class DefaultWalkerContext
         return collectionsOnly;
     }
 
-    public Map<String, Object> getContext()
+    public synchronized Map<String, Object> getContext()
     {
         if ( context == null )
         {
-            context = new HashMap<String, Object>();
+            // processors of a parallel walk might share it
+            context = Collections.synchronizedMap( new HashMap<String, Object>() );
         }
         return context;
     }
@@ -132,9 +134,9 @@ public class DefaultWalkerContext
 
     public void stop( Throwable cause )
     {
-        running = false;
-
         stopCause = cause;
+
+        running = false;
     }
 
 }
@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.walker;
+
+/**
+ * A walker processor marker interface. If all the processors of a walk implement this interface, the walker is allowed
+ * to walk sibling collections concurrently. Implementor has to cope with concurrent invocations of
+ * {@link WalkerProcessor#onCollectionEnter(WalkerContext, org.sonatype.nexus.proxy.item.StorageCollectionItem)},
+ * {@link WalkerProcessor#processItem(WalkerContext, org.sonatype.nexus.proxy.item.StorageItem)} and
+ * {@link WalkerProcessor#onCollectionExit(WalkerContext, org.sonatype.nexus.proxy.item.StorageCollectionItem)} for
+ * different collections. Walker still guarantees that a collection is exited only after all of it's members (and their
+ * members) were processed, while {@link WalkerProcessor#beforeWalk(WalkerContext)} and
+ * {@link WalkerProcessor#afterWalk(WalkerContext)} are invoked once, by the thread invoking the walk.
+ * 
+ * @author cstamas
+ */
+public interface ThreadSafeWalkerProcessor
+    extends WalkerProcessor
+{
+
+}
@@ -541,4 +541,11 @@ public class DummyRepository
         return null;
     }
 
+    public Collection<StorageItemInfo> listItemInfos( boolean fromTask, ResourceStoreRequest request )
+        throws IllegalOperationException, ItemNotFoundException, StorageException
+    {
+        // TODO Auto-generated method stub
+        return null;
+    }
+
 }
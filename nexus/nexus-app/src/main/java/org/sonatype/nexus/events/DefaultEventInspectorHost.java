@@ -18,11 +18,16 @@
  */
 package org.sonatype.nexus.events;
 
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
@@ -34,12 +39,21 @@ import org.codehaus.plexus.personality.plexus.lifecycle.phase.StoppingException;
 import org.sonatype.nexus.proxy.events.AsynchronousEventInspector;
 import org.sonatype.nexus.proxy.events.EventInspector;
 import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.plexus.appevents.Event;
 
 /**
  * A default implementation of EventInspectorHost, a component simply collecting all EventInspectors and re-emitting
- * events towards them in they wants to receive it. TODO: count inspector exceptions, and stop using them after some
- * threshold (like 3 exceptions).
+ * events towards them in they wants to receive it. Inspectors are asked {@link EventInspector#accepts(Event)} in the
+ * emitting thread, and only accepted events are handed over to them. Asynchronous inspectors have their own bounded
+ * queue, drained by at most one pooled thread at a time, hence they receive events in order they were emitted. When
+ * the queue of an inspector is full, the emitting thread waits for a while for room in it (backpressure), and if the
+ * queue is still full, inspects the event itself. The wait is bounded, as events are emitted with item locks held, and
+ * inspectors may take item locks too. Events emitted by an inspector while inspecting are inspected in the emitting
+ * thread if they are for the same inspector, or if the queue of other inspector is full, as waiting for it from a
+ * pooled thread might deadlock the pool. Events inspected by the emitting thread lose their ordering, and are counted as
+ * overflows in queue statistics. TODO: count inspector exceptions, and stop using them after some threshold (like 3
+ * exceptions).
  * 
  * @author cstamas
  */
@@ -48,18 +62,59 @@ public class DefaultEventInspectorHost
     extends AbstractLogEnabled
     implements EventInspectorHost, Startable
 {
+    private static final int QUEUE_CAPACITY = SystemPropertiesHelper.getInteger(
+        "nexus.eventInspectorHost.queueCapacity", 10000 );
+
+    private static final int OFFER_TIMEOUT_MILLIS = SystemPropertiesHelper.getInteger(
+        "nexus.eventInspectorHost.offerTimeoutMillis", 1000 );
+
+    private static final int MAX_THREADS = SystemPropertiesHelper.getInteger( "nexus.eventInspectorHost.maxThreads",
+        10 );
+
+    /**
+     * Max count of events one inspector drains before giving up the thread to other inspectors.
+     */
+    private static final int DRAIN_BATCH_SIZE = 100;
+
     @Requirement( role = EventInspector.class )
     private Map<String, EventInspector> eventInspectors;
 
-    private ExecutorService executor;
+    private final int queueCapacity;
+
+    private final long offerTimeoutMillis;
+
+    // the queue being drained by current thread, if any
+    private final ThreadLocal<InspectorQueue> drainedQueue = new ThreadLocal<InspectorQueue>();
+
+    private final ConcurrentHashMap<String, InspectorQueue> inspectorQueues =
+        new ConcurrentHashMap<String, InspectorQueue>();
+
+    private ThreadPoolExecutor executor;
+
+    public DefaultEventInspectorHost()
+    {
+        this( null, QUEUE_CAPACITY, OFFER_TIMEOUT_MILLIS );
+    }
+
+    DefaultEventInspectorHost( final Map<String, EventInspector> eventInspectors, final int queueCapacity,
+                               final long offerTimeoutMillis )
+    {
+        this.eventInspectors = eventInspectors;
+        this.queueCapacity = queueCapacity;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+    }
 
     // == Startable iface, to manage ExecutorService lifecycle
 
     public void start()
         throws StartingException
     {
-        // set up executor
-        executor = Executors.newCachedThreadPool( new NexusThreadFactory( "nxevthost", "Event Inspector Host" ) );
+        // set up executor: one task per inspector queue at most, so the task queue is bounded by inspector count
+        executor =
+            new ThreadPoolExecutor( MAX_THREADS, MAX_THREADS, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NexusThreadFactory( "nxevthost", "Event Inspector Host" ) );
+
+        executor.allowCoreThreadTimeOut( true );
     }
 
     public void stop()
@@ -78,10 +133,29 @@ public class DefaultEventInspectorHost
 
     public boolean isCalmPeriod()
     {
-        final ThreadPoolExecutor tpe = (ThreadPoolExecutor) executor;
+        // "calm period" is when we have no queued events nor draining threads
+        for ( InspectorQueue inspectorQueue : inspectorQueues.values() )
+        {
+            if ( !inspectorQueue.isIdle() )
+            {
+                return false;
+            }
+        }
+
+        return executor.getQueue().isEmpty() && executor.getActiveCount() == 0;
+    }
+
+    public Map<String, EventInspectorQueueStatistics> getQueueStatistics()
+    {
+        final HashMap<String, EventInspectorQueueStatistics> result =
+            new HashMap<String, EventInspectorQueueStatistics>( inspectorQueues.size() );
+
+        for ( Map.Entry<String, InspectorQueue> entry : inspectorQueues.entrySet() )
+        {
+            result.put( entry.getKey(), entry.getValue().getStatistics() );
+        }
 
-        // "calm period" is when we have no queued nor active threads
-        return tpe.getQueue().isEmpty() && tpe.getActiveCount() == 0;
+        return result;
     }
 
     // ==
@@ -92,34 +166,19 @@ public class DefaultEventInspectorHost
         {
             EventInspector ei = entry.getValue();
 
-            EventInspectorHandler handler = new EventInspectorHandler( getLogger(), ei, evt );
-
             // NEXUS-3800: async execution
-            // For now, turned off. Our core is happy and snappy with it, but some of our ITs are still unprepared for
-            // this
-            // since they do deploy-askIndexer and usually fail, since now indexer maintenance is async!
-            // Commenting this out all puts back into "old state". Later, we should review ITs and reenable this.
-            // ==
-
-            // handler.run();
-
-            // ==
+            // ITs relying on "deploy-askIndexer" should wait for calm period, as indexer maintenance is async!
             if ( ei instanceof AsynchronousEventInspector && executor != null && !executor.isShutdown() )
             {
-                try
+                // filter in the emitting thread, not to clog the queue with events the inspector is not interested in
+                if ( accepts( ei, evt ) )
                 {
-                    executor.execute( handler );
-                }
-                catch ( RejectedExecutionException e )
-                {
-                    // execute it in sync mode, executor is either full or shutdown (?)
-                    // in case executor is full, this "slowdown" will make it able consume and build up
-                    handler.run();
+                    getInspectorQueue( entry.getKey(), ei ).enqueue( evt );
                 }
             }
             else
             {
-                handler.run();
+                new EventInspectorHandler( getLogger(), ei, evt ).run();
             }
         }
     }
@@ -131,6 +190,56 @@ public class DefaultEventInspectorHost
 
     // ==
 
+    protected boolean accepts( final EventInspector ei, final Event<?> evt )
+    {
+        try
+        {
+            return ei.accepts( evt );
+        }
+        catch ( Exception e )
+        {
+            getLogger().warn(
+                "EventInspector implementation='" + ei.getClass().getName() + "' had problem accepting an event='"
+                    + evt.getClass() + "'", e );
+
+            return false;
+        }
+    }
+
+    protected InspectorQueue getInspectorQueue( final String name, final EventInspector ei )
+    {
+        InspectorQueue inspectorQueue = inspectorQueues.get( name );
+
+        // inspector might be replaced, if contributing plugin got reloaded
+        while ( inspectorQueue == null || inspectorQueue.ei != ei )
+        {
+            final InspectorQueue newInspectorQueue = new InspectorQueue( name, ei );
+
+            if ( inspectorQueue == null )
+            {
+                inspectorQueue = inspectorQueues.putIfAbsent( name, newInspectorQueue );
+
+                if ( inspectorQueue == null )
+                {
+                    inspectorQueue = newInspectorQueue;
+                }
+            }
+            else if ( inspectorQueues.replace( name, inspectorQueue, newInspectorQueue ) )
+            {
+                // events still queued for the old instance will be drained by it
+                inspectorQueue = newInspectorQueue;
+            }
+            else
+            {
+                inspectorQueue = inspectorQueues.get( name );
+            }
+        }
+
+        return inspectorQueue;
+    }
+
+    // ==
+
     public static class EventInspectorHandler
         implements Runnable
     {
@@ -165,4 +274,187 @@ public class DefaultEventInspectorHost
         }
 
     }
+
+    private static class QueuedEvent
+    {
+        private final Event<?> evt;
+
+        private final long enqueued;
+
+        public QueuedEvent( final Event<?> evt )
+        {
+            this.evt = evt;
+            this.enqueued = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * The bounded queue of one asynchronous inspector. It schedules itself to the executor when it has events, and
+     * only one thread drains it at a time, keeping the events in order.
+     */
+    protected class InspectorQueue
+        implements Runnable
+    {
+        private final String name;
+
+        private final EventInspector ei;
+
+        private final BlockingQueue<QueuedEvent> queue;
+
+        private final AtomicBoolean scheduled = new AtomicBoolean( false );
+
+        private final AtomicLong processedCount = new AtomicLong();
+
+        private final AtomicLong overflowCount = new AtomicLong();
+
+        private volatile long lastLag;
+
+        public InspectorQueue( final String name, final EventInspector ei )
+        {
+            this.name = name;
+            this.ei = ei;
+            this.queue = new LinkedBlockingQueue<QueuedEvent>( queueCapacity );
+        }
+
+        public void enqueue( final Event<?> evt )
+        {
+            final InspectorQueue drained = drainedQueue.get();
+
+            if ( drained == this )
+            {
+                // event emitted by the inspector itself, waiting for own queue would never end
+                inspect( evt );
+
+                return;
+            }
+
+            final QueuedEvent queuedEvent = new QueuedEvent( evt );
+
+            boolean queued = queue.offer( queuedEvent );
+
+            // wait a while for room, unless it is a pooled thread draining other queue; the emitter may hold item locks
+            // the inspector needs, so waiting without limit might deadlock
+            if ( !queued && drained == null )
+            {
+                schedule();
+
+                try
+                {
+                    queued = queue.offer( queuedEvent, offerTimeoutMillis, TimeUnit.MILLISECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if ( queued )
+            {
+                schedule();
+            }
+            else
+            {
+                overflowCount.incrementAndGet();
+
+                if ( getLogger().isDebugEnabled() )
+                {
+                    getLogger().debug(
+                        "EventInspector " + name + " queue is full, inspecting event='" + evt.getClass()
+                            + "' in emitting thread, out of order." );
+                }
+
+                inspect( evt );
+            }
+        }
+
+        public boolean isIdle()
+        {
+            return !scheduled.get() && queue.isEmpty();
+        }
+
+        public EventInspectorQueueStatistics getStatistics()
+        {
+            final QueuedEvent oldest = queue.peek();
+
+            final long currentLag = oldest == null ? 0 : System.currentTimeMillis() - oldest.enqueued;
+
+            return new EventInspectorQueueStatistics( name, queue.size(), queueCapacity, Math.max( 0, currentLag ),
+                lastLag, processedCount.get(), overflowCount.get() );
+        }
+
+        public void run()
+        {
+            drain( DRAIN_BATCH_SIZE );
+
+            // an event might sneak in after the last poll, while we were still marked as scheduled
+            if ( !queue.isEmpty() )
+            {
+                schedule();
+            }
+        }
+
+        protected void schedule()
+        {
+            if ( scheduled.compareAndSet( false, true ) )
+            {
+                try
+                {
+                    executor.execute( this );
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    // executor is shut down, drain it in sync mode
+                    drain( Integer.MAX_VALUE );
+                }
+            }
+        }
+
+        protected void drain( final int maxEvents )
+        {
+            final InspectorQueue previous = drainedQueue.get();
+
+            drainedQueue.set( this );
+
+            try
+            {
+                for ( int i = 0; i < maxEvents; i++ )
+                {
+                    final QueuedEvent queuedEvent = queue.poll();
+
+                    if ( queuedEvent == null )
+                    {
+                        break;
+                    }
+
+                    lastLag = System.currentTimeMillis() - queuedEvent.enqueued;
+
+                    inspect( queuedEvent.evt );
+                }
+            }
+            finally
+            {
+                drainedQueue.set( previous );
+
+                scheduled.set( false );
+            }
+        }
+
+        protected void inspect( final Event<?> evt )
+        {
+            try
+            {
+                ei.inspect( evt );
+            }
+            catch ( Exception e )
+            {
+                getLogger().warn(
+                    "EventInspector implementation='" + ei.getClass().getName()
+                        + "' had problem inspecting an event='" + evt.getClass() + "'", e );
+            }
+            finally
+            {
+                processedCount.incrementAndGet();
+            }
+        }
+    }
 }
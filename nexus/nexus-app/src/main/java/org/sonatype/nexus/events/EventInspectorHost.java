@@ -18,6 +18,8 @@
  */
 package org.sonatype.nexus.events;
 
+import java.util.Map;
+
 import org.sonatype.plexus.appevents.EventListener;
 
 /**
@@ -40,4 +42,11 @@ public interface EventInspectorHost
      * @return
      */
     boolean isCalmPeriod();
+
+    /**
+     * Returns the statistics of dispatch queues of asynchronous event inspectors, keyed by inspector name.
+     * 
+     * @return
+     */
+    Map<String, EventInspectorQueueStatistics> getQueueStatistics();
 }
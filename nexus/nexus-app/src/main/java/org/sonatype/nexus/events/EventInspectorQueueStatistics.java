@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.events;
+
+/**
+ * Snapshot of the dispatch queue of one asynchronous event inspector, as maintained by {@link EventInspectorHost}.
+ * 
+ * @author cstamas
+ */
+public class EventInspectorQueueStatistics
+{
+    private final String inspectorName;
+
+    private final int queueDepth;
+
+    private final int queueCapacity;
+
+    private final long currentLag;
+
+    private final long lastLag;
+
+    private final long processedCount;
+
+    private final long overflowCount;
+
+    public EventInspectorQueueStatistics( final String inspectorName, final int queueDepth, final int queueCapacity,
+                                          final long currentLag, final long lastLag, final long processedCount,
+                                          final long overflowCount )
+    {
+        this.inspectorName = inspectorName;
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.currentLag = currentLag;
+        this.lastLag = lastLag;
+        this.processedCount = processedCount;
+        this.overflowCount = overflowCount;
+    }
+
+    public String getInspectorName()
+    {
+        return inspectorName;
+    }
+
+    /**
+     * Returns the count of events waiting for the inspector.
+     */
+    public int getQueueDepth()
+    {
+        return queueDepth;
+    }
+
+    public int getQueueCapacity()
+    {
+        return queueCapacity;
+    }
+
+    /**
+     * Returns the age in millis of the oldest event waiting for the inspector, 0 if the queue is empty.
+     */
+    public long getCurrentLag()
+    {
+        return currentLag;
+    }
+
+    /**
+     * Returns the millis the last inspected event spent in the queue.
+     */
+    public long getLastLag()
+    {
+        return lastLag;
+    }
+
+    public long getProcessedCount()
+    {
+        return processedCount;
+    }
+
+    /**
+     * Returns the count of events that found the queue full, even after waiting for a while, and were inspected by the
+     * emitting thread instead, out of order. Events emitted by other inspectors while inspecting do not wait.
+     */
+    public long getOverflowCount()
+    {
+        return overflowCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "EventInspectorQueueStatistics(" + inspectorName + ": depth=" + queueDepth + "/" + queueCapacity
+            + ", currentLag=" + currentLag + "ms, lastLag=" + lastLag + "ms, processed=" + processedCount
+            + ", overflows=" + overflowCount + ")";
+    }
+}
@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.maven.index.artifact.Gav;
@@ -43,6 +44,7 @@ import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StorageItemInfo;
 import org.sonatype.nexus.proxy.maven.MavenHostedRepository;
 import org.sonatype.nexus.proxy.maven.MavenProxyRepository;
 import org.sonatype.nexus.proxy.maven.MavenRepository;
@@ -86,6 +88,9 @@ public class DefaultSnapshotRemover
 
     private VersionScheme versionScheme = new GenericVersionScheme();
 
+    // the release lookup of the removeSnapshots() run in progress on this thread
+    private final ThreadLocal<ReleasedGavIndex> runReleasedGavIndex = new ThreadLocal<ReleasedGavIndex>();
+
     protected RepositoryRegistry getRepositoryRegistry()
     {
         return repositoryRegistry;
@@ -98,23 +103,36 @@ public class DefaultSnapshotRemover
 
         logDetails( request );
 
-        if ( request.getRepositoryId() != null )
+        // built once per run, used by all processed repositories
+        if ( request.isRemoveIfReleaseExists() )
         {
-            Repository repository = getRepositoryRegistry().getRepository( request.getRepositoryId() );
+            runReleasedGavIndex.set( new ReleasedGavIndex() );
+        }
 
-            if ( !process( request, result, repository ) )
+        try
+        {
+            if ( request.getRepositoryId() != null )
             {
-                throw new IllegalArgumentException( "The repository with ID=" + repository.getId()
-                    + " is not valid for Snapshot Removal Task!" );
+                Repository repository = getRepositoryRegistry().getRepository( request.getRepositoryId() );
+
+                if ( !process( request, result, repository ) )
+                {
+                    throw new IllegalArgumentException( "The repository with ID=" + repository.getId()
+                        + " is not valid for Snapshot Removal Task!" );
+                }
             }
-        }
-        else
-        {
-            for ( Repository repository : getRepositoryRegistry().getRepositories() )
+            else
             {
-                process( request, result, repository );
+                for ( Repository repository : getRepositoryRegistry().getRepositories() )
+                {
+                    process( request, result, repository );
+                }
             }
         }
+        finally
+        {
+            runReleasedGavIndex.remove();
+        }
 
         return result;
     }
@@ -163,6 +181,33 @@ public class DefaultSnapshotRemover
      */
     protected SnapshotRemovalRepositoryResult removeSnapshotsFromMavenRepository( MavenRepository repository,
                                                                                   SnapshotRemovalRequest request )
+    {
+        ReleasedGavIndex releasedGavIndex = null;
+
+        if ( request.isRemoveIfReleaseExists() )
+        {
+            releasedGavIndex = runReleasedGavIndex.get();
+
+            if ( releasedGavIndex == null )
+            {
+                // called outside of a removeSnapshots() run
+                releasedGavIndex = new ReleasedGavIndex();
+            }
+        }
+
+        return removeSnapshotsFromMavenRepository( repository, request, releasedGavIndex );
+    }
+
+    /**
+     * Removes the snapshots from maven repository, using the given release lookup.
+     * 
+     * @param repository the repository
+     * @param releasedGavIndex the release lookup of this run, null if releases are not considered
+     * @throws Exception the exception
+     */
+    protected SnapshotRemovalRepositoryResult removeSnapshotsFromMavenRepository( MavenRepository repository,
+                                                                                  SnapshotRemovalRequest request,
+                                                                                  ReleasedGavIndex releasedGavIndex )
     {
         SnapshotRemovalRepositoryResult result = new SnapshotRemovalRepositoryResult( repository.getId(), 0, 0, true );
 
@@ -196,7 +241,7 @@ public class DefaultSnapshotRemover
 
         // create a walker to collect deletables and let it loose on collections only
         SnapshotRemoverWalkerProcessor snapshotRemoveProcessor =
-            new SnapshotRemoverWalkerProcessor( repository, request );
+            new SnapshotRemoverWalkerProcessor( repository, request, releasedGavIndex );
 
         DefaultWalkerContext ctxMain =
             new DefaultWalkerContext( repository, new ResourceStoreRequest( "/" ), new DottedStoreWalkerFilter() );
@@ -286,6 +331,8 @@ public class DefaultSnapshotRemover
 
         private final long dateThreshold;
 
+        private final ReleasedGavIndex releasedGavIndex;
+
         private boolean shouldProcessCollection;
 
         private boolean removeWholeGAV;
@@ -294,12 +341,15 @@ public class DefaultSnapshotRemover
 
         private int deletedFiles = 0;
 
-        public SnapshotRemoverWalkerProcessor( MavenRepository repository, SnapshotRemovalRequest request )
+        public SnapshotRemoverWalkerProcessor( MavenRepository repository, SnapshotRemovalRequest request,
+                                               ReleasedGavIndex releasedGavIndex )
         {
             this.repository = repository;
 
             this.request = request;
 
+            this.releasedGavIndex = releasedGavIndex;
+
             int days = request.getRemoveSnapshotsOlderThanDays();
 
             if ( days > 0 )
@@ -616,6 +666,39 @@ public class DefaultSnapshotRemover
         }
 
         public boolean releaseExistsForSnapshot( Gav snapshotGav, Map<String, Object> context )
+        {
+            return releasedGavIndex.releaseExistsForSnapshot( snapshotGav, context );
+        }
+
+        public int getDeletedSnapshots()
+        {
+            return deletedSnapshots;
+        }
+
+        public int getDeletedFiles()
+        {
+            return deletedFiles;
+        }
+
+    }
+
+    /**
+     * Answers the "does a release exist for this snapshot" question during one snapshot removal run. The release
+     * repositories are collected once, and the local storage collections and release POMs looked up are remembered,
+     * so each release POM is probed at most once per repository in a run, and not probed at all when it's parent
+     * collection does not exist locally.
+     */
+    protected class ReleasedGavIndex
+    {
+        private final List<MavenRepository> releaseRepositories = new ArrayList<MavenRepository>();
+
+        // repoId + collection path -> names of collection members, or null if not listable
+        private final Map<String, Set<String>> collectionMembers = new HashMap<String, Set<String>>();
+
+        // repoId + release POM path -> exists
+        private final Map<String, Boolean> releasePoms = new HashMap<String, Boolean>();
+
+        public ReleasedGavIndex()
         {
             for ( Repository repository : repositoryRegistry.getRepositories() )
             {
@@ -633,66 +716,137 @@ public class DefaultSnapshotRemover
                     if ( mrepository.isUserManaged()
                         && RepositoryPolicy.RELEASE.equals( mrepository.getRepositoryPolicy() ) )
                     {
-                        try
-                        {
-                            String releaseVersion = null;
-
-                            // NEXUS-3148
-                            if ( snapshotGav.getBaseVersion().endsWith( "-SNAPSHOT" ) )
-                            {
-                                // "-SNAPSHOT" :== 9 chars
-                                releaseVersion =
-                                    snapshotGav.getBaseVersion().substring( 0,
-                                        snapshotGav.getBaseVersion().length() - 9 );
-                            }
-                            else
-                            {
-                                // "SNAPSHOT" :== 8 chars
-                                releaseVersion =
-                                    snapshotGav.getBaseVersion().substring( 0,
-                                        snapshotGav.getBaseVersion().length() - 8 );
-                            }
-
-                            Gav releaseGav =
-                                new Gav( snapshotGav.getGroupId(), snapshotGav.getArtifactId(), releaseVersion,
-                                    snapshotGav.getClassifier(), snapshotGav.getExtension(), null, null, null, 
-                                    false, null, false, null );
+                        releaseRepositories.add( mrepository );
+                    }
+                }
+            }
+        }
 
-                            String path = mrepository.getGavCalculator().gavToPath( releaseGav );
+        public synchronized boolean releaseExistsForSnapshot( Gav snapshotGav, Map<String, Object> context )
+        {
+            for ( MavenRepository mrepository : releaseRepositories )
+            {
+                try
+                {
+                    String releaseVersion = null;
 
-                            ResourceStoreRequest req = new ResourceStoreRequest( path, true );
+                    // NEXUS-3148
+                    if ( snapshotGav.getBaseVersion().endsWith( "-SNAPSHOT" ) )
+                    {
+                        // "-SNAPSHOT" :== 9 chars
+                        releaseVersion =
+                            snapshotGav.getBaseVersion().substring( 0, snapshotGav.getBaseVersion().length() - 9 );
+                    }
+                    else
+                    {
+                        // "SNAPSHOT" :== 8 chars
+                        releaseVersion =
+                            snapshotGav.getBaseVersion().substring( 0, snapshotGav.getBaseVersion().length() - 8 );
+                    }
 
-                            req.getRequestContext().putAll( context );
+                    Gav releaseGav =
+                        new Gav( snapshotGav.getGroupId(), snapshotGav.getArtifactId(), releaseVersion,
+                            snapshotGav.getClassifier(), snapshotGav.getExtension(), null, null, null, false, null,
+                            false, null );
 
-                            mrepository.retrieveItem( false, req );
+                    String path = mrepository.getGavCalculator().gavToPath( releaseGav );
 
-                            return true;
-                        }
-                        catch ( ItemNotFoundException e )
-                        {
-                            // nothing
-                        }
-                        catch ( Exception e )
-                        {
-                            // nothing
-                        }
+                    if ( releasePomExists( mrepository, path, context ) )
+                    {
+                        return true;
                     }
                 }
+                catch ( Exception e )
+                {
+                    // nothing
+                }
             }
 
             return false;
         }
 
-        public int getDeletedSnapshots()
+        protected boolean releasePomExists( MavenRepository mrepository, String path, Map<String, Object> context )
         {
-            return deletedSnapshots;
+            String key = mrepository.getId() + ":" + path;
+
+            Boolean exists = releasePoms.get( key );
+
+            if ( exists == null )
+            {
+                exists = Boolean.FALSE;
+
+                String parentPath = ItemPathUtils.getParentPath( path );
+
+                if ( mayContain( mrepository, ItemPathUtils.getParentPath( parentPath ),
+                    parentPath.substring( parentPath.lastIndexOf( '/' ) + 1 ) ) )
+                {
+                    try
+                    {
+                        ResourceStoreRequest req = new ResourceStoreRequest( path, true );
+
+                        req.getRequestContext().putAll( context );
+
+                        mrepository.retrieveItem( false, req );
+
+                        exists = Boolean.TRUE;
+                    }
+                    catch ( ItemNotFoundException e )
+                    {
+                        // nothing
+                    }
+                    catch ( Exception e )
+                    {
+                        // nothing
+                    }
+                }
+
+                releasePoms.put( key, exists );
+            }
+
+            return exists.booleanValue();
         }
 
-        public int getDeletedFiles()
+        /**
+         * Returns false only if the local storage collection is known not to have a member with given name. The
+         * release POM is looked up locally only, so it cannot exist without it's parent collection.
+         */
+        protected boolean mayContain( MavenRepository mrepository, String collectionPath, String name )
         {
-            return deletedFiles;
-        }
+            String key = mrepository.getId() + ":" + collectionPath;
+
+            Set<String> members = null;
+
+            if ( collectionMembers.containsKey( key ) )
+            {
+                members = collectionMembers.get( key );
+            }
+            else
+            {
+                try
+                {
+                    members = new HashSet<String>();
+
+                    for ( StorageItemInfo info : mrepository.getLocalStorage().listItemInfos( mrepository,
+                        new ResourceStoreRequest( collectionPath, true ) ) )
+                    {
+                        members.add( info.getName() );
+                    }
+                }
+                catch ( ItemNotFoundException e )
+                {
+                    // no such collection, it has no members
+                }
+                catch ( Exception e )
+                {
+                    // we cannot tell, probe the item itself
+                    members = null;
+                }
+
+                collectionMembers.put( key, members );
+            }
 
+            return members == null || members.contains( name );
+        }
     }
 
 }
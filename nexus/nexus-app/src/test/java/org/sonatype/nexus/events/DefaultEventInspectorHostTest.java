@@ -0,0 +1,348 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.sonatype.nexus.proxy.events.AsynchronousEventInspector;
+import org.sonatype.nexus.proxy.events.EventInspector;
+import org.sonatype.plexus.appevents.AbstractEvent;
+import org.sonatype.plexus.appevents.Event;
+
+public class DefaultEventInspectorHostTest
+    extends TestCase
+{
+    private Map<String, EventInspector> eventInspectors;
+
+    private DefaultEventInspectorHost host;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        eventInspectors = new HashMap<String, EventInspector>();
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        if ( host != null )
+        {
+            host.shutdown();
+        }
+
+        super.tearDown();
+    }
+
+    protected DefaultEventInspectorHost createHost( final int queueCapacity )
+        throws Exception
+    {
+        return createHost( queueCapacity, 5000 );
+    }
+
+    protected DefaultEventInspectorHost createHost( final int queueCapacity, final long offerTimeoutMillis )
+        throws Exception
+    {
+        host = new DefaultEventInspectorHost( eventInspectors, queueCapacity, offerTimeoutMillis );
+
+        host.enableLogging( new ConsoleLogger( Logger.LEVEL_INFO, "test" ) );
+
+        host.start();
+
+        return host;
+    }
+
+    protected void waitForCalmPeriod()
+        throws InterruptedException
+    {
+        for ( int i = 0; i < 500 && !host.isCalmPeriod(); i++ )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertTrue( "Host did not calm down", host.isCalmPeriod() );
+    }
+
+    public void testEventsQueuedAndDrainedInOrder()
+        throws Exception
+    {
+        final RecordingInspector inspector = new RecordingInspector( "a" );
+
+        eventInspectors.put( "a", inspector );
+
+        createHost( 10 );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            host.processEvent( new TestEvent( "a", i ) );
+        }
+
+        // not accepted, not queued
+        host.processEvent( new TestEvent( "b", 0 ) );
+
+        waitForCalmPeriod();
+
+        assertEquals( 1000, inspector.events.size() );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertEquals( i, inspector.events.get( i ).index );
+        }
+
+        // drained by pooled thread, not the emitting one
+        assertFalse( inspector.threads.contains( Thread.currentThread() ) );
+
+        final EventInspectorQueueStatistics statistics = host.getQueueStatistics().get( "a" );
+
+        assertEquals( "a", statistics.getInspectorName() );
+        assertEquals( 0, statistics.getQueueDepth() );
+        assertEquals( 10, statistics.getQueueCapacity() );
+        assertEquals( 0, statistics.getCurrentLag() );
+        assertEquals( 1000, statistics.getProcessedCount() );
+        assertEquals( 0, statistics.getOverflowCount() );
+    }
+
+    public void testFullQueueBlocksEmitter()
+        throws Exception
+    {
+        final RecordingInspector inspector = new RecordingInspector( "a" );
+
+        inspector.blocked = new CountDownLatch( 1 );
+
+        eventInspectors.put( "a", inspector );
+
+        createHost( 2 );
+
+        // 0 is being inspected, 1 and 2 fill the queue
+        host.processEvent( new TestEvent( "a", 0 ) );
+        inspector.inspecting.await( 5, TimeUnit.SECONDS );
+        host.processEvent( new TestEvent( "a", 1 ) );
+        host.processEvent( new TestEvent( "a", 2 ) );
+
+        final Thread emitter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                host.processEvent( new TestEvent( "a", 3 ) );
+            }
+        };
+
+        emitter.start();
+        emitter.join( 200 );
+
+        assertTrue( "Emitter should wait for room in the queue", emitter.isAlive() );
+
+        final EventInspectorQueueStatistics statistics = host.getQueueStatistics().get( "a" );
+
+        assertEquals( 2, statistics.getQueueDepth() );
+        assertTrue( statistics.getCurrentLag() > 0 );
+        assertEquals( 0, statistics.getProcessedCount() );
+
+        inspector.blocked.countDown();
+
+        emitter.join( 5000 );
+
+        assertFalse( emitter.isAlive() );
+
+        waitForCalmPeriod();
+
+        assertEquals( 4, inspector.events.size() );
+
+        for ( int i = 0; i < 4; i++ )
+        {
+            assertEquals( i, inspector.events.get( i ).index );
+        }
+
+        assertEquals( 4, host.getQueueStatistics().get( "a" ).getProcessedCount() );
+        assertEquals( 0, host.getQueueStatistics().get( "a" ).getOverflowCount() );
+    }
+
+    public void testFullQueueOverflowsAfterTimeout()
+        throws Exception
+    {
+        final RecordingInspector inspector = new RecordingInspector( "a" );
+
+        inspector.blocked = new CountDownLatch( 1 );
+
+        eventInspectors.put( "a", inspector );
+
+        createHost( 1, 100 );
+
+        // 0 is being inspected, 1 fills the queue
+        host.processEvent( new TestEvent( "a", 0 ) );
+        inspector.inspecting.await( 5, TimeUnit.SECONDS );
+        host.processEvent( new TestEvent( "a", 1 ) );
+
+        final Thread emitter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                host.processEvent( new TestEvent( "a", 2 ) );
+            }
+        };
+
+        emitter.start();
+
+        for ( int i = 0; i < 500 && !inspector.threads.contains( emitter ); i++ )
+        {
+            Thread.sleep( 10 );
+        }
+
+        // the emitter gave up waiting and inspected the event itself (it is blocked in the inspector until released)
+        assertTrue( inspector.threads.contains( emitter ) );
+        assertEquals( 1, host.getQueueStatistics().get( "a" ).getOverflowCount() );
+
+        inspector.blocked.countDown();
+
+        emitter.join( 5000 );
+
+        assertFalse( emitter.isAlive() );
+
+        waitForCalmPeriod();
+
+        assertEquals( 3, inspector.events.size() );
+        assertEquals( 3, host.getQueueStatistics().get( "a" ).getProcessedCount() );
+    }
+
+    public void testOverflowOfEventsEmittedByInspectors()
+        throws Exception
+    {
+        final RecordingInspector b = new RecordingInspector( "b" );
+
+        b.blocked = new CountDownLatch( 1 );
+
+        final RecordingInspector a = new RecordingInspector( "a" )
+        {
+            @Override
+            public void inspect( Event<?> evt )
+            {
+                super.inspect( evt );
+
+                host.processEvent( new TestEvent( "b", 2 ) );
+            }
+        };
+
+        eventInspectors.put( "a", a );
+        eventInspectors.put( "b", b );
+
+        createHost( 1 );
+
+        // 0 is being inspected, 1 fills the queue
+        host.processEvent( new TestEvent( "b", 0 ) );
+        b.inspecting.await( 5, TimeUnit.SECONDS );
+        host.processEvent( new TestEvent( "b", 1 ) );
+
+        // the drain thread of "a" must not wait for "b" queue, it inspects the event itself
+        host.processEvent( new TestEvent( "a", 0 ) );
+
+        for ( int i = 0; i < 500 && b.threads.size() < 2; i++ )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertTrue( b.threads.containsAll( a.threads ) );
+        assertEquals( 1, host.getQueueStatistics().get( "b" ).getOverflowCount() );
+
+        b.blocked.countDown();
+
+        waitForCalmPeriod();
+
+        assertEquals( 3, b.events.size() );
+        assertEquals( 3, host.getQueueStatistics().get( "b" ).getProcessedCount() );
+        assertEquals( 1, host.getQueueStatistics().get( "a" ).getProcessedCount() );
+        assertEquals( 0, host.getQueueStatistics().get( "a" ).getOverflowCount() );
+    }
+
+    // ==
+
+    protected static class TestEvent
+        extends AbstractEvent<Object>
+    {
+        private final String target;
+
+        private final int index;
+
+        public TestEvent( final String target, final int index )
+        {
+            super( target );
+            this.target = target;
+            this.index = index;
+        }
+    }
+
+    protected static class RecordingInspector
+        implements EventInspector, AsynchronousEventInspector
+    {
+        private final String target;
+
+        private final List<TestEvent> events = Collections.synchronizedList( new ArrayList<TestEvent>() );
+
+        private final List<Thread> threads = Collections.synchronizedList( new ArrayList<Thread>() );
+
+        private final CountDownLatch inspecting = new CountDownLatch( 1 );
+
+        private volatile CountDownLatch blocked;
+
+        public RecordingInspector( final String target )
+        {
+            this.target = target;
+        }
+
+        public boolean accepts( Event<?> evt )
+        {
+            return evt instanceof TestEvent && target.equals( ( (TestEvent) evt ).target );
+        }
+
+        public void inspect( Event<?> evt )
+        {
+            threads.add( Thread.currentThread() );
+
+            inspecting.countDown();
+
+            try
+            {
+                if ( blocked != null )
+                {
+                    blocked.await( 5, TimeUnit.SECONDS );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            events.add( (TestEvent) evt );
+        }
+    }
+}
@@ -28,13 +28,18 @@ import java.util.Map;
 import junit.framework.Assert;
 
 import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.index.artifact.Gav;
 import org.sonatype.nexus.AbstractMavenRepoContentTests;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.maven.MavenRepository;
 import org.sonatype.nexus.proxy.maven.metadata.operations.MetadataBuilder;
 import org.sonatype.nexus.proxy.maven.metadata.operations.MetadataException;
+import org.sonatype.nexus.proxy.maven.MavenHostedRepository;
+import org.sonatype.nexus.proxy.maven.MavenProxyRepository;
+import org.sonatype.nexus.proxy.maven.RepositoryPolicy;
 import org.sonatype.nexus.proxy.repository.LocalStatus;
+import org.sonatype.nexus.proxy.repository.Repository;
 
 /**
  * @author juven
@@ -226,6 +231,104 @@ public class DefaultSnapshotRemoverTest
         validateResults( snapshots, expecting );
     }
 
+    public void testReleasedGavIndexMatchesPerSnapshotLookups()
+        throws Exception
+    {
+        fillInRepo();
+
+        repositoryRegistry.getRepository( "central" ).setLocalStatus( LocalStatus.OUT_OF_SERVICE );
+
+        nexusConfiguration.saveConfiguration();
+
+        DefaultSnapshotRemover snapshotRemover = (DefaultSnapshotRemover) lookup( SnapshotRemover.class );
+
+        DefaultSnapshotRemover.ReleasedGavIndex releasedGavIndex = snapshotRemover.new ReleasedGavIndex();
+
+        String[] snapshotPaths =
+            new String[] {
+                "/org/sonatype/nexus/nexus-indexer/1.0-beta-4-SNAPSHOT/nexus-indexer-1.0-beta-4-SNAPSHOT.pom",
+                "/org/sonatype/nexus/nexus-indexer/1.0-beta-4-SNAPSHOT/nexus-indexer-1.0-beta-4-SNAPSHOT.jar",
+                "/org/sonatype/nexus/nexus-indexer/1.0-beta-4-SNAPSHOT/nexus-indexer-1.0-beta-4-SNAPSHOT-sources.jar",
+                "/org/sonatype/nexus/nexus-indexer/1.0-beta-3-SNAPSHOT/nexus-indexer-1.0-beta-3-20010711.162119-2.pom",
+                "/org/sonatype/nexus/nexus-indexer/1.0-beta-5-SNAPSHOT/nexus-indexer-1.0-beta-5-20080731.150252-163.pom",
+                "/org/sonatype/nexus/nexus-indexer/1.0-beta-5-SNAPSHOT/nexus-indexer-1.0-beta-5-20080711.162119-2.pom",
+                "/org/sonatype/nexus-3148/1.0.SNAPSHOT/nexus-3148-1.0.20100111.064938-1.pom",
+                "/org/sonatype/nonexistent/1.0-SNAPSHOT/nonexistent-1.0-SNAPSHOT.pom" };
+
+        boolean anyReleased = false;
+
+        // ask twice, the second round is answered from what the index remembered
+        for ( int round = 0; round < 2; round++ )
+        {
+            for ( String snapshotPath : snapshotPaths )
+            {
+                Gav snapshotGav = snapshots.getGavCalculator().pathToGav( snapshotPath );
+
+                assertNotNull( snapshotPath, snapshotGav );
+
+                boolean expected = releaseExistsPerSnapshotLookup( snapshotGav );
+
+                anyReleased |= expected;
+
+                assertEquals( "Released GAV answer differs for " + snapshotPath, expected,
+                    releasedGavIndex.releaseExistsForSnapshot( snapshotGav, new HashMap<String, Object>() ) );
+            }
+        }
+
+        assertTrue( "The released 1.0-beta-4 should have been found", anyReleased );
+    }
+
+    /**
+     * The per-snapshot lookup {@link DefaultSnapshotRemover.ReleasedGavIndex} replaced: probes every user managed
+     * release repository for the release POM of the snapshot.
+     */
+    protected boolean releaseExistsPerSnapshotLookup( Gav snapshotGav )
+        throws Exception
+    {
+        String baseVersion = snapshotGav.getBaseVersion();
+
+        String releaseVersion =
+            baseVersion.substring( 0, baseVersion.length() - ( baseVersion.endsWith( "-SNAPSHOT" ) ? 9 : 8 ) );
+
+        for ( Repository repository : repositoryRegistry.getRepositories() )
+        {
+            if ( !repository.getRepositoryKind().isFacetAvailable( MavenHostedRepository.class )
+                && !repository.getRepositoryKind().isFacetAvailable( MavenProxyRepository.class ) )
+            {
+                continue;
+            }
+
+            MavenRepository mrepository = repository.adaptToFacet( MavenRepository.class );
+
+            if ( !mrepository.isUserManaged() || !RepositoryPolicy.RELEASE.equals( mrepository.getRepositoryPolicy() ) )
+            {
+                continue;
+            }
+
+            Gav releaseGav =
+                new Gav( snapshotGav.getGroupId(), snapshotGav.getArtifactId(), releaseVersion,
+                    snapshotGav.getClassifier(), snapshotGav.getExtension(), null, null, null, false, null, false, null );
+
+            try
+            {
+                mrepository.retrieveItem( false,
+                    new ResourceStoreRequest( mrepository.getGavCalculator().gavToPath( releaseGav ), true ) );
+
+                return true;
+            }
+            catch ( ItemNotFoundException e )
+            {
+                // nothing
+            }
+            catch ( Exception e )
+            {
+                // nothing, like out of service repositories
+            }
+        }
+
+        return false;
+    }
+
     public void testSnapshotRemoverDoNotRemoveReleased()
         throws Exception
     {
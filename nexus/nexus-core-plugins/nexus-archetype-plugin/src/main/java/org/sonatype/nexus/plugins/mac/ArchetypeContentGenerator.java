@@ -21,9 +21,6 @@ package org.sonatype.nexus.plugins.mac;
 import javax.inject.Inject;
 import javax.inject.Named;
 
-import org.apache.maven.index.ArtifactInfo;
-import org.apache.maven.index.ArtifactInfoFilter;
-import org.apache.maven.index.context.IndexingContext;
 import org.sonatype.nexus.index.DefaultIndexerManager;
 import org.sonatype.nexus.index.IndexArtifactFilter;
 import org.sonatype.nexus.index.IndexerManager;
@@ -70,12 +67,6 @@ public class ArchetypeContentGenerator
 
         return new ArchetypeContentLocator( repository.getId(), 
             ( (DefaultIndexerManager) indexerManager ).getRepositoryIndexContext( repository ), macPlugin,
-            new ArtifactInfoFilter()
-            {
-                public boolean accepts( IndexingContext ctx, ArtifactInfo ai )
-                {
-                    return indexArtifactFilter.filterArtifactInfo( ai );
-                }
-            } );
+            indexArtifactFilter.createArtifactInfoFilter() );
     }
 }
@@ -71,11 +71,11 @@ public class IndexerManagerEventInspector
             {
                 if ( ievt instanceof RepositoryItemEventCache || ievt instanceof RepositoryItemEventStore )
                 {
-                    getIndexerManager().addItemToIndex( ievt.getRepository(), ievt.getItem() );
+                    getIndexerManager().enqueueAddItemToIndex( ievt.getRepository(), ievt.getItem() );
                 }
                 else if ( ievt instanceof RepositoryItemEventDelete )
                 {
-                    getIndexerManager().removeItemFromIndex( ievt.getRepository(), ievt.getItem() );
+                    getIndexerManager().enqueueRemoveItemFromIndex( ievt.getRepository(), ievt.getItem() );
                 }
             }
         }
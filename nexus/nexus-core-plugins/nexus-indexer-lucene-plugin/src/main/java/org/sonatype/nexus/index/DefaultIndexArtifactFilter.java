@@ -20,23 +20,29 @@ package org.sonatype.nexus.index;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.ArtifactInfoFilter;
 import org.apache.maven.index.artifact.Gav;
+import org.apache.maven.index.context.IndexingContext;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.AbstractLogEnabled;
 import org.sonatype.nexus.proxy.NoSuchRepositoryException;
-import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.access.Action;
 import org.sonatype.nexus.proxy.access.NexusItemAuthorizer;
+import org.sonatype.nexus.proxy.access.RepositoryAuthorization;
 import org.sonatype.nexus.proxy.maven.MavenRepository;
 import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
 import org.sonatype.nexus.proxy.repository.Repository;
 
 /**
- * Filters artifact info collection, based on user permissions.
+ * Filters artifact info collection, based on user permissions. Permissions are resolved on repository and target
+ * granularity, once per repository, and artifact paths are calculated only for repositories partially readable by the
+ * user.
  * 
  * @author cstamas
  */
@@ -57,10 +63,11 @@ public class DefaultIndexArtifactFilter
         {
             return null;
         }
+        ArtifactInfoFilter filter = createArtifactInfoFilter();
         List<ArtifactInfo> result = new ArrayList<ArtifactInfo>( artifactInfos.size() );
         for ( ArtifactInfo artifactInfo : artifactInfos )
         {
-            if ( this.filterArtifactInfo( artifactInfo ) )
+            if ( filter.accepts( null, artifactInfo ) )
             {
                 result.add( artifactInfo );
             }
@@ -69,23 +76,19 @@ public class DefaultIndexArtifactFilter
     }
 
     public boolean filterArtifactInfo( ArtifactInfo artifactInfo )
+    {
+        return createArtifactInfoFilter().accepts( null, artifactInfo );
+    }
+
+    public boolean filterRepository( String repositoryId )
     {
         try
         {
-            Repository repository = this.repositoryRegistry.getRepository( artifactInfo.repository );
+            Repository repository = this.repositoryRegistry.getRepository( repositoryId );
 
             if ( MavenRepository.class.isAssignableFrom( repository.getClass() ) )
             {
-                MavenRepository mr = (MavenRepository) repository;
-
-                Gav gav =
-                    new Gav( artifactInfo.groupId, artifactInfo.artifactId, artifactInfo.version,
-                        artifactInfo.classifier, mr.getArtifactPackagingMapper().getExtensionForPackaging(
-                            artifactInfo.packaging ), null, null, null, false, null, false, null );
-
-                ResourceStoreRequest req = new ResourceStoreRequest( mr.getGavCalculator().gavToPath( gav ) );
-
-                return this.nexusItemAuthorizer.authorizePath( mr, req, Action.read );
+                return !this.nexusItemAuthorizer.getRepositoryAuthorization( repository, Action.read ).isNonePermitted();
             }
             else
             {
@@ -95,12 +98,102 @@ public class DefaultIndexArtifactFilter
         }
         catch ( NoSuchRepositoryException e )
         {
-            this.getLogger().warn(
-                "Repository not found for artifact: " + artifactInfo.groupId + ":" + artifactInfo.artifactId + ":"
-                    + artifactInfo.version + " in repository: " + artifactInfo.repository, e );
+            // leave it to artifacts
+            return true;
+        }
+    }
+
+    public ArtifactInfoFilter createArtifactInfoFilter()
+    {
+        return new AuthorizingArtifactInfoFilter();
+    }
+
+    // ==
+
+    /**
+     * Filter used by one search, hence by one user, resolving the authorization of each repository on first artifact of
+     * it. Not thread safe.
+     */
+    protected class AuthorizingArtifactInfoFilter
+        implements ArtifactInfoFilter
+    {
+        // null value for repositories not found
+        private final Map<String, AuthorizedRepository> repositories = new HashMap<String, AuthorizedRepository>();
+
+        public boolean accepts( IndexingContext ctx, ArtifactInfo artifactInfo )
+        {
+            AuthorizedRepository authorized = repositories.get( artifactInfo.repository );
+
+            if ( authorized == null && !repositories.containsKey( artifactInfo.repository ) )
+            {
+                authorized = authorize( artifactInfo );
+
+                repositories.put( artifactInfo.repository, authorized );
+            }
+
+            if ( authorized == null )
+            {
+                // artifact does not exist, filter it out
+                return false;
+            }
+            else if ( authorized.authorization.isAllPermitted() )
+            {
+                return true;
+            }
+            else if ( authorized.authorization.isNonePermitted() )
+            {
+                return false;
+            }
+
+            MavenRepository mr = authorized.repository;
+
+            Gav gav =
+                new Gav( artifactInfo.groupId, artifactInfo.artifactId, artifactInfo.version, artifactInfo.classifier,
+                    mr.getArtifactPackagingMapper().getExtensionForPackaging( artifactInfo.packaging ), null, null,
+                    null, false, null, false, null );
+
+            return authorized.authorization.isPermitted( mr.getGavCalculator().gavToPath( gav ) );
+        }
+
+        protected AuthorizedRepository authorize( ArtifactInfo artifactInfo )
+        {
+            try
+            {
+                Repository repository = repositoryRegistry.getRepository( artifactInfo.repository );
+
+                if ( MavenRepository.class.isAssignableFrom( repository.getClass() ) )
+                {
+                    return new AuthorizedRepository( (MavenRepository) repository,
+                        nexusItemAuthorizer.getRepositoryAuthorization( repository, Action.read ) );
+                }
+                else
+                {
+                    // we are only filtering maven artifacts
+                    return new AuthorizedRepository( null, RepositoryAuthorization.ALL );
+                }
+            }
+            catch ( NoSuchRepositoryException e )
+            {
+                getLogger().warn(
+                    "Repository not found for artifact: " + artifactInfo.groupId + ":" + artifactInfo.artifactId + ":"
+                        + artifactInfo.version + " in repository: " + artifactInfo.repository, e );
+
+                return null;
+            }
+        }
+    }
+
+    private static class AuthorizedRepository
+    {
+        private final MavenRepository repository;
+
+        private final RepositoryAuthorization authorization;
+
+        public AuthorizedRepository( MavenRepository repository, RepositoryAuthorization authorization )
+        {
+            this.repository = repository;
 
-            // artifact does not exist, filter it out
-            return false;
+            this.authorization = authorization;
         }
     }
 }
@@ -27,14 +27,22 @@ import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.lucene.document.Document;
@@ -113,6 +121,8 @@ import org.sonatype.nexus.proxy.repository.ProxyRepository;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.repository.ShadowRepository;
 import org.sonatype.nexus.proxy.storage.local.fs.DefaultFSLocalRepositoryStorage;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 
 /**
  * <p>
@@ -145,6 +155,8 @@ public class DefaultIndexerManager
 
     private static final Map<String, ReadWriteLock> locks = new HashMap<String, ReadWriteLock>();
 
+    private static final Map<String, ReentrantLock> updateLocks = new HashMap<String, ReentrantLock>();
+
     @Requirement
     private Logger logger;
 
@@ -185,6 +197,23 @@ public class DefaultIndexerManager
 
     private File tempDirectory;
 
+    /** Queued index updates of a repository are applied at most this late. */
+    private static final int NRT_INTERVAL_MILLIS = SystemPropertiesHelper.getInteger(
+        "nexus.indexer.nrtIntervalMillis", 1000 );
+
+    /** Queued index updates of a repository are applied immediately when there are this many. */
+    private static final int MAX_BATCH_SIZE = SystemPropertiesHelper.getInteger( "nexus.indexer.maxBatchSize", 1000 );
+
+    private static final int INDEX_UPDATE_THREADS = SystemPropertiesHelper.getInteger(
+        "nexus.indexer.updateThreads", 2 );
+
+    private final boolean queuedUpdates;
+
+    private final ConcurrentHashMap<String, IndexUpdateQueue> indexUpdateQueues =
+        new ConcurrentHashMap<String, IndexUpdateQueue>();
+
+    private ScheduledExecutorService indexUpdateExecutor;
+
     public DefaultIndexerManager()
     {
         // Note: this is needed and used in ITs only!
@@ -196,6 +225,10 @@ public class DefaultIndexerManager
             DefaultIndexingContext.BLOCKING_COMMIT = true;
         }
         // This above is needed and used in ITs only!
+
+        // ITs expect index to be updated once events calmed down, so no queueing there
+        queuedUpdates =
+            !mavenIndexerBlockingCommits && SystemPropertiesHelper.getBoolean( "nexus.indexer.queuedUpdates", true );
     }
 
     protected Logger getLogger()
@@ -230,6 +263,19 @@ public class DefaultIndexerManager
     {
         getLogger().info( "Shutting down Nexus IndexerManager" );
 
+        // apply what is queued, before contexts are gone
+        flushIndexUpdates();
+
+        synchronized ( this )
+        {
+            if ( indexUpdateExecutor != null )
+            {
+                indexUpdateExecutor.shutdownNow();
+
+                indexUpdateExecutor = null;
+            }
+        }
+
         for ( IndexingContext ctx : nexusIndexer.getIndexingContexts().values() )
         {
             nexusIndexer.removeIndexingContext( ctx, false );
@@ -399,6 +445,13 @@ public class DefaultIndexerManager
 
             if ( ctx != null )
             {
+                IndexUpdateQueue queue = indexUpdateQueues.remove( repository.getId() );
+
+                if ( queue != null )
+                {
+                    queue.clear();
+                }
+
                 nexusIndexer.removeIndexingContext( ctx, deleteFiles );
             }
         }
@@ -560,6 +613,59 @@ public class DefaultIndexerManager
     // ----------------------------------------------------------------------------
     public void addItemToIndex( Repository repository, StorageItem item )
         throws IOException
+    {
+        IndexingContext context = getIndexingContextForAdd( repository, item );
+
+        if ( context != null )
+        {
+            item.getRepositoryItemUid().lock( Action.read );
+
+            try
+            {
+                ArtifactContext ac = createArtifactContextForAdd( repository, context, item );
+
+                if ( ac != null )
+                {
+                    // and finally: index it
+                    getNexusIndexer().addArtifactToIndex( ac, context );
+                }
+            }
+            finally
+            {
+                item.getRepositoryItemUid().unlock();
+            }
+        }
+    }
+
+    public void removeItemFromIndex( Repository repository, StorageItem item )
+        throws IOException
+    {
+        IndexingContext context = getIndexingContextForRemove( repository, item );
+
+        if ( context != null )
+        {
+            ArtifactContext ac = createArtifactContextForRemove( repository, context, item );
+
+            if ( ac != null )
+            {
+                item.getRepositoryItemUid().lock( Action.read );
+
+                try
+                {
+                    getNexusIndexer().deleteArtifactFromIndex( ac, context );
+                }
+                finally
+                {
+                    item.getRepositoryItemUid().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the indexing context to add the item to, or null if the item should not be indexed.
+     */
+    protected IndexingContext getIndexingContextForAdd( Repository repository, StorageItem item )
     {
         // is indexing supported at all on this repository?
         // sadly, the nexus-indexer is maven2 only, hence we check is the repo
@@ -568,7 +674,7 @@ public class DefaultIndexerManager
         {
             logSkippingRepositoryMessage( repository );
 
-            return;
+            return null;
         }
 
         // do we have to maintain index context at all?
@@ -576,7 +682,7 @@ public class DefaultIndexerManager
         {
             logSkippingRepositoryMessage( repository );
 
-            return;
+            return null;
         }
 
         // is this hidden path?
@@ -584,7 +690,7 @@ public class DefaultIndexerManager
         {
             getLogger().debug( "Will not index hidden file path: " + item.getRepositoryItemUid().toString() );
 
-            return;
+            return null;
         }
 
         // do the work
@@ -592,178 +698,584 @@ public class DefaultIndexerManager
         // for nothing
         IndexingContext context = getRepositoryIndexContext( repository );
 
-        if ( context != null )
+        if ( context != null && getIndexableGav( repository, item ) != null )
         {
-            // by calculating GAV we check wether the request is against a repo artifact at all
-            Gav gav = null;
+            return context;
+        }
 
-            gav = ( (MavenRepository) repository ).getGavCalculator().pathToGav( item.getRepositoryItemUid().getPath() );
+        return null;
+    }
 
-            // signatures and hashes are not considered for processing
-            // reason (NEXUS-814 related): the actual artifact and it's POM will (or already did)
-            // emitted events about modifying them
-            if ( gav == null || gav.isSignature() || gav.isHash() )
-            {
-                // we do not index these
-                return;
-            }
+    /**
+     * Returns the indexing context to remove the item from, or null if the index should not be changed.
+     */
+    protected IndexingContext getIndexingContextForRemove( Repository repository, StorageItem item )
+    {
+        // is indexing supported at all on this repository?
+        // sadly, the nexus-indexer is maven2 only, hence we check is the repo
+        // from where we get the event is a maven2 repo, is indexing supported at all
+        if ( !isIndexingSupported( repository ) || !MavenRepository.class.isAssignableFrom( repository.getClass() ) )
+        {
+            logSkippingRepositoryMessage( repository );
 
-            item.getRepositoryItemUid().lock( Action.read );
+            return null;
+        }
 
-            try
-            {
+        // do we have to maintain index context at all?
+        if ( !repository.isIndexable() )
+        {
+            logSkippingRepositoryMessage( repository );
+
+            return null;
+        }
+
+        // index for proxy repos shouldn't change just because you deleted something locally
+        if ( repository.getRepositoryKind().isFacetAvailable( ProxyRepository.class ) )
+        {
+            logSkippingRepositoryMessage( repository );
+
+            return null;
+        }
+
+        // do the work
+        IndexingContext context = getRepositoryIndexContext( repository );
+
+        if ( context != null && getIndexableGav( repository, item ) != null )
+        {
+            return context;
+        }
+
+        return null;
+    }
+
+    /**
+     * Calculates the GAV of item, returning null if the item is not an indexed repository artifact.
+     */
+    protected Gav getIndexableGav( Repository repository, StorageItem item )
+    {
+        // by calculating GAV we check wether the request is against a repo artifact at all
+        Gav gav = ( (MavenRepository) repository ).getGavCalculator().pathToGav( item.getRepositoryItemUid().getPath() );
+
+        // signatures and hashes are not considered for processing
+        // reason (NEXUS-814 related): the actual artifact and it's POM will (or already did)
+        // emitted events about modifying them
+        if ( gav == null || gav.isSignature() || gav.isHash() )
+        {
+            // we do not index these
+            return null;
+        }
+
+        return gav;
+    }
 
-                ArtifactContext ac = null;
+    /**
+     * Creates the artifact context of an item to be added to index, reading the file. Caller should hold the read lock
+     * of item UID. Returns null if the item cannot be indexed.
+     */
+    protected ArtifactContext createArtifactContextForAdd( Repository repository, IndexingContext context,
+                                                           StorageItem item )
+    {
+        ArtifactContext ac = null;
 
-                // if we have a valid indexing context and have access to a File
-                if ( DefaultFSLocalRepositoryStorage.class.isAssignableFrom( repository.getLocalStorage().getClass() ) )
+        // if we have a valid indexing context and have access to a File
+        if ( DefaultFSLocalRepositoryStorage.class.isAssignableFrom( repository.getLocalStorage().getClass() ) )
+        {
+            File file =
+                ( (DefaultFSLocalRepositoryStorage) repository.getLocalStorage() ).getFileFromBase( repository,
+                    new ResourceStoreRequest( item ) );
+
+            if ( file.exists() )
+            {
+                try
+                {
+                    ac = artifactContextProducer.getArtifactContext( context, file );
+                }
+                catch ( IllegalArgumentException e )
                 {
-                    File file =
-                        ( (DefaultFSLocalRepositoryStorage) repository.getLocalStorage() ).getFileFromBase( repository,
-                            new ResourceStoreRequest( item ) );
+                    // cannot create artifact context, forget it
+                    return null;
+                }
 
-                    if ( file.exists() )
+                if ( ac != null )
+                {
+                    if ( getLogger().isDebugEnabled() )
                     {
-                        try
-                        {
-                            ac = artifactContextProducer.getArtifactContext( context, file );
-                        }
-                        catch ( IllegalArgumentException e )
-                        {
-                            // cannot create artifact context, forget it
-                            return;
-                        }
-
-                        if ( ac != null )
-                        {
-                            if ( getLogger().isDebugEnabled() )
-                            {
-                                getLogger().debug( "The ArtifactContext created from file is fine, continuing." );
-                            }
+                        getLogger().debug( "The ArtifactContext created from file is fine, continuing." );
+                    }
 
-                            ArtifactInfo ai = ac.getArtifactInfo();
+                    ArtifactInfo ai = ac.getArtifactInfo();
 
-                            if ( ai.sha1 == null )
-                            {
-                                // if repo has no sha1 checksum, odd nexus one
-                                ai.sha1 = item.getAttributes().get( DigestCalculatingInspector.DIGEST_SHA1_KEY );
-                            }
-                        }
+                    if ( ai.sha1 == null )
+                    {
+                        // if repo has no sha1 checksum, odd nexus one
+                        ai.sha1 = item.getAttributes().get( DigestCalculatingInspector.DIGEST_SHA1_KEY );
                     }
                 }
-
-                // and finally: index it
-                getNexusIndexer().addArtifactToIndex( ac, context );
             }
-            finally
+        }
+
+        return ac;
+    }
+
+    /**
+     * Creates the artifact context of an item to be removed from index. Returns null if the index should not be
+     * changed.
+     */
+    protected ArtifactContext createArtifactContextForRemove( Repository repository, IndexingContext context,
+                                                              StorageItem item )
+    {
+        Gav gav = getIndexableGav( repository, item );
+
+        if ( gav == null )
+        {
+            return null;
+        }
+
+        ArtifactInfo ai =
+            new ArtifactInfo( context.getRepositoryId(), gav.getGroupId(), gav.getArtifactId(), gav.getBaseVersion(),
+                gav.getClassifier() );
+
+        // store extension if classifier is not empty
+        if ( !StringUtils.isEmpty( ai.classifier ) )
+        {
+            ai.packaging = gav.getExtension();
+        }
+
+        ArtifactContext ac = null;
+
+        try
+        {
+            ac = new ArtifactContext( null, null, null, ai, gav );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // ac cannot be created, just forget it being indexed
+            return null;
+        }
+
+        // NEXUS-814: we should not delete always
+        if ( item.getItemContext().containsKey( SnapshotRemover.MORE_TS_SNAPSHOTS_EXISTS_FOR_GAV ) )
+        {
+            // do NOT remove file from index
+            if ( getLogger().isDebugEnabled() )
             {
-                item.getRepositoryItemUid().unlock();
+                getLogger().debug(
+                    "NOT deleting artifact " + ai.groupId + ":" + ai.artifactId + ":" + ai.version
+                        + " from index (DELETE), since it is a timestamped snapshot and more builds exists." );
             }
+
+            return null;
         }
+
+        // remove file from index
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug(
+                "Deleting artifact " + ai.groupId + ":" + ai.artifactId + ":" + ai.version + " from index (DELETE)." );
+        }
+
+        return ac;
     }
 
-    public void removeItemFromIndex( Repository repository, StorageItem item )
-        throws IOException
+    // ----------------------------------------------------------------------------
+    // queued updates
+    // ----------------------------------------------------------------------------
+
+    public void enqueueAddItemToIndex( Repository repository, StorageItem item )
     {
-        // is indexing supported at all on this repository?
-        // sadly, the nexus-indexer is maven2 only, hence we check is the repo
-        // from where we get the event is a maven2 repo, is indexing supported at all
-        if ( !isIndexingSupported( repository ) || !MavenRepository.class.isAssignableFrom( repository.getClass() ) )
-        {
-            logSkippingRepositoryMessage( repository );
+        enqueueIndexUpdate( repository, item, false );
+    }
 
-            return;
+    public void enqueueRemoveItemFromIndex( Repository repository, StorageItem item )
+    {
+        enqueueIndexUpdate( repository, item, true );
+    }
+
+    public Map<String, IndexUpdateQueueStatistics> getIndexUpdateQueueStatistics()
+    {
+        HashMap<String, IndexUpdateQueueStatistics> result =
+            new HashMap<String, IndexUpdateQueueStatistics>( indexUpdateQueues.size() );
+
+        for ( IndexUpdateQueue queue : indexUpdateQueues.values() )
+        {
+            result.put( queue.repositoryId, queue.getStatistics() );
         }
 
-        // do we have to maintain index context at all?
-        if ( !repository.isIndexable() )
+        return result;
+    }
+
+    protected void enqueueIndexUpdate( Repository repository, StorageItem item, boolean remove )
+    {
+        if ( !queuedUpdates )
         {
-            logSkippingRepositoryMessage( repository );
+            // apply it directly, but let the queue record it for the shadow index being built, if any
+            try
+            {
+                getIndexUpdateQueue( repository.getId() ).apply( new IndexUpdate( repository, item, remove ) );
+            }
+            catch ( IOException e )
+            {
+                getLogger().error( "Could not maintain index of repository ID='" + repository.getId() + "'!", e );
+            }
 
             return;
         }
 
-        // index for proxy repos shouldn't change just because you deleted something locally
-        if ( repository.getRepositoryKind().isFacetAvailable( ProxyRepository.class ) )
+        // filter early, not to queue what would be skipped anyway
+        IndexingContext context =
+            remove ? getIndexingContextForRemove( repository, item ) : getIndexingContextForAdd( repository, item );
+
+        if ( context == null )
         {
-            logSkippingRepositoryMessage( repository );
+            return;
+        }
 
+        if ( remove && item.getItemContext().containsKey( SnapshotRemover.MORE_TS_SNAPSHOTS_EXISTS_FOR_GAV ) )
+        {
+            // NEXUS-814: this removal does not change index at all, and must not cancel a queued add
             return;
         }
 
-        // do the work
-        IndexingContext context = getRepositoryIndexContext( repository );
+        getIndexUpdateQueue( repository.getId() ).enqueue( new IndexUpdate( repository, item, remove ) );
+    }
 
-        if ( context != null )
+    protected IndexUpdateQueue getIndexUpdateQueue( String repositoryId )
+    {
+        IndexUpdateQueue queue = indexUpdateQueues.get( repositoryId );
+
+        if ( queue == null )
         {
-            // by calculating GAV we check wether the request is against a repo artifact at all
-            Gav gav = null;
+            IndexUpdateQueue newQueue = new IndexUpdateQueue( repositoryId );
 
-            gav = ( (MavenRepository) repository ).getGavCalculator().pathToGav( item.getRepositoryItemUid().getPath() );
+            queue = indexUpdateQueues.putIfAbsent( repositoryId, newQueue );
 
-            // signatures and hashes are not considered for processing
-            // reason (NEXUS-814 related): the actual artifact and it's POM will (or already did)
-            // emitted events about modifying them
-            if ( gav == null || gav.isSignature() || gav.isHash() )
+            if ( queue == null )
             {
-                return;
+                queue = newQueue;
             }
+        }
+
+        return queue;
+    }
+
+    protected synchronized ScheduledExecutorService getIndexUpdateExecutor()
+    {
+        if ( indexUpdateExecutor == null )
+        {
+            indexUpdateExecutor =
+                Executors.newScheduledThreadPool( INDEX_UPDATE_THREADS, new NexusThreadFactory( "nxindexupdate",
+                    "Index Updates", Thread.NORM_PRIORITY, true ) );
+        }
+
+        return indexUpdateExecutor;
+    }
+
+    /**
+     * Applies a batch of coalesced updates, using one commit for removals and one for additions.
+     */
+    protected void applyIndexUpdates( String repositoryId, Collection<IndexUpdate> updates )
+        throws IOException
+    {
+        IndexingContext context = nexusIndexer.getIndexingContexts().get( getContextId( repositoryId ) );
+
+        if ( context == null )
+        {
+            // context removed meanwhile
+            return;
+        }
+
+        applyIndexUpdates( context, updates );
+    }
+
+    /**
+     * Applies a batch of coalesced updates to given context, using one commit for removals and one for additions.
+     */
+    protected void applyIndexUpdates( IndexingContext context, Collection<IndexUpdate> updates )
+        throws IOException
+    {
+        ArrayList<ArtifactContext> removals = new ArrayList<ArtifactContext>();
 
-            ArtifactInfo ai =
-                new ArtifactInfo( context.getRepositoryId(), gav.getGroupId(), gav.getArtifactId(),
-                    gav.getBaseVersion(), gav.getClassifier() );
+        ArrayList<ArtifactContext> additions = new ArrayList<ArtifactContext>();
 
-            // store extension if classifier is not empty
-            if ( !StringUtils.isEmpty( ai.classifier ) )
+        for ( IndexUpdate update : updates )
+        {
+            if ( update.remove )
             {
-                ai.packaging = gav.getExtension();
+                ArtifactContext ac = createArtifactContextForRemove( update.repository, context, update.item );
+
+                if ( ac != null )
+                {
+                    removals.add( ac );
+                }
             }
+            else
+            {
+                // hold the lock only while reading the file
+                update.item.getRepositoryItemUid().lock( Action.read );
 
-            ArtifactContext ac = null;
+                try
+                {
+                    ArtifactContext ac = createArtifactContextForAdd( update.repository, context, update.item );
 
-            try
+                    if ( ac != null )
+                    {
+                        additions.add( ac );
+                    }
+                }
+                finally
+                {
+                    update.item.getRepositoryItemUid().unlock();
+                }
+            }
+        }
+
+        if ( !removals.isEmpty() )
+        {
+            getNexusIndexer().deleteArtifactsFromIndex( removals, context );
+        }
+
+        if ( !additions.isEmpty() )
+        {
+            getNexusIndexer().addArtifactsToIndex( additions, context );
+        }
+    }
+
+    protected void flushIndexUpdates()
+    {
+        for ( IndexUpdateQueue queue : indexUpdateQueues.values() )
+        {
+            queue.flush();
+        }
+    }
+
+    private static class IndexUpdate
+    {
+        private final Repository repository;
+
+        private final StorageItem item;
+
+        private final boolean remove;
+
+        private long enqueued;
+
+        public IndexUpdate( Repository repository, StorageItem item, boolean remove )
+        {
+            this.repository = repository;
+            this.item = item;
+            this.remove = remove;
+            this.enqueued = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * The pending updates of one repository, coalesced by path: a later update of a path replaces the queued one (but
+     * keeps it's age). It is flushed by one thread at a time, after the near real time interval elapsed since the
+     * first update was queued, or immediately if the batch is full.
+     */
+    protected class IndexUpdateQueue
+        implements Runnable
+    {
+        private final String repositoryId;
+
+        // guarded by this
+        private LinkedHashMap<String, IndexUpdate> pending = new LinkedHashMap<String, IndexUpdate>();
+
+        // guarded by this
+        private boolean scheduled;
+
+        private final ReentrantLock writerLock = new ReentrantLock();
+
+        // guarded by writerLock, not null while a shadow index of the repository is being built
+        private LinkedHashMap<String, IndexUpdate> shadowed;
+
+        private final AtomicLong appliedCount = new AtomicLong();
+
+        private final AtomicLong coalescedCount = new AtomicLong();
+
+        private volatile int lastBatchSize;
+
+        private volatile long lastBatchDuration;
+
+        public IndexUpdateQueue( String repositoryId )
+        {
+            this.repositoryId = repositoryId;
+        }
+
+        public void enqueue( IndexUpdate update )
+        {
+            boolean full;
+
+            synchronized ( this )
             {
-                ac = new ArtifactContext( null, null, null, ai, gav );
+                IndexUpdate replaced = pending.remove( update.item.getRepositoryItemUid().getPath() );
+
+                if ( replaced != null )
+                {
+                    coalescedCount.incrementAndGet();
+
+                    update.enqueued = replaced.enqueued;
+                }
+
+                pending.put( update.item.getRepositoryItemUid().getPath(), update );
+
+                full = pending.size() >= MAX_BATCH_SIZE;
+
+                if ( !scheduled && !full )
+                {
+                    scheduled = true;
+
+                    getIndexUpdateExecutor().schedule( this, NRT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS );
+                }
             }
-            catch ( IllegalArgumentException e )
+
+            if ( full )
             {
-                // ac cannot be created, just forget it being indexed
-                return;
+                // the queuing thread does the work (backpressure)
+                flush();
             }
+        }
 
-            // remove file from index
-            if ( getLogger().isDebugEnabled() )
+        public void run()
+        {
+            synchronized ( this )
             {
-                getLogger().debug(
-                    "Deleting artifact " + ai.groupId + ":" + ai.artifactId + ":" + ai.version
-                        + " from index (DELETE)." );
+                scheduled = false;
             }
 
-            // NEXUS-814: we should not delete always
-            if ( !item.getItemContext().containsKey( SnapshotRemover.MORE_TS_SNAPSHOTS_EXISTS_FOR_GAV ) )
+            flush();
+        }
+
+        public void flush()
+        {
+            writerLock.lock();
+
+            try
             {
-                item.getRepositoryItemUid().lock( Action.read );
+                LinkedHashMap<String, IndexUpdate> batch;
+
+                synchronized ( this )
+                {
+                    if ( pending.isEmpty() )
+                    {
+                        return;
+                    }
+
+                    batch = pending;
+
+                    pending = new LinkedHashMap<String, IndexUpdate>();
+                }
+
+                long started = System.currentTimeMillis();
 
                 try
                 {
-                    getNexusIndexer().deleteArtifactFromIndex( ac, context );
+                    applyIndexUpdates( repositoryId, batch.values() );
                 }
-                finally
+                catch ( Exception e )
                 {
-                    item.getRepositoryItemUid().unlock();
+                    getLogger().error( "Could not maintain index of repository ID='" + repositoryId + "'!", e );
+                }
+
+                for ( Map.Entry<String, IndexUpdate> entry : batch.entrySet() )
+                {
+                    recordShadowed( entry.getKey(), entry.getValue() );
                 }
+
+                lastBatchSize = batch.size();
+
+                lastBatchDuration = System.currentTimeMillis() - started;
+
+                appliedCount.addAndGet( batch.size() );
             }
-            else
+            finally
             {
-                // do NOT remove file from index
-                if ( getLogger().isDebugEnabled() )
+                writerLock.unlock();
+            }
+        }
+
+        /**
+         * Applies an update directly, without queuing it, and records it if a shadow index is being built.
+         */
+        public void apply( IndexUpdate update )
+            throws IOException
+        {
+            writerLock.lock();
+
+            try
+            {
+                if ( update.remove )
+                {
+                    removeItemFromIndex( update.repository, update.item );
+                }
+                else
                 {
-                    getLogger().debug(
-                        "NOT deleting artifact " + ac.getArtifactInfo().groupId + ":" + ac.getArtifactInfo().artifactId
-                            + ":" + ac.getArtifactInfo().version
-                            + " from index (DELETE), since it is a timestamped snapshot and more builds exists." );
+                    addItemToIndex( update.repository, update.item );
                 }
+
+                recordShadowed( update.item.getRepositoryItemUid().getPath(), update );
+            }
+            finally
+            {
+                writerLock.unlock();
+            }
+        }
+
+        public synchronized void clear()
+        {
+            pending.clear();
+        }
+
+        /**
+         * Records an applied update, to be applied again once the shadow index is swapped in. Must be called while
+         * holding the writer lock.
+         */
+        protected void recordShadowed( String path, IndexUpdate update )
+        {
+            if ( shadowed != null )
+            {
+                shadowed.remove( path );
+
+                shadowed.put( path, update );
+            }
+        }
+
+        /**
+         * Starts recording the applied updates. Must be called while holding the writer lock.
+         */
+        protected void startShadowing()
+        {
+            shadowed = new LinkedHashMap<String, IndexUpdate>();
+        }
+
+        /**
+         * Stops recording the applied updates, and returns the ones recorded. Must be called while holding the writer
+         * lock.
+         */
+        protected Collection<IndexUpdate> stopShadowing()
+        {
+            if ( shadowed == null )
+            {
+                return Collections.emptyList();
+            }
+
+            Collection<IndexUpdate> result = shadowed.values();
+
+            shadowed = null;
+
+            return result;
+        }
+
+        public synchronized IndexUpdateQueueStatistics getStatistics()
+        {
+            long currentLag = 0;
+
+            for ( IndexUpdate update : pending.values() )
+            {
+                currentLag = Math.max( currentLag, System.currentTimeMillis() - update.enqueued );
             }
+
+            return new IndexUpdateQueueStatistics( repositoryId, pending.size(), currentLag, lastBatchSize,
+                lastBatchDuration, appliedCount.get(), coalescedCount.get() );
         }
     }
 
@@ -862,6 +1374,13 @@ public class DefaultIndexerManager
             return;
         }
 
+        if ( fullReindex && !repository.getRepositoryKind().isFacetAvailable( GroupRepository.class ) )
+        {
+            rebuildRepositoryIndex( repository, fromPath );
+
+            return;
+        }
+
         Lock lock = getLock( repository.getId() ).writeLock();
         lock.lock();
 
@@ -874,22 +1393,74 @@ public class DefaultIndexerManager
                 context.purge();
 
                 deleteIndexItems( repository );
-            }
+            }
+
+            if ( repository.getRepositoryKind().isFacetAvailable( ProxyRepository.class ) )
+            {
+                downloadRepositoryIndex( repository.adaptToFacet( ProxyRepository.class ), fullReindex );
+            }
+
+            if ( !repository.getRepositoryKind().isFacetAvailable( GroupRepository.class ) )
+            {
+                // update always true, since we manually manage ctx purge
+                nexusIndexer.scan( context, fromPath, null, true );
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Builds the index of the repository from scratch into a shadow index, that replaces the current index once done.
+     * Searches are served from the current index meanwhile.
+     */
+    protected void rebuildRepositoryIndex( final Repository repository, final String fromPath )
+        throws IOException
+    {
+        ReentrantLock updateLock = getUpdateLock( repository.getId() );
+
+        if ( !updateLock.tryLock() )
+        {
+            return;
+        }
+
+        try
+        {
+            IndexingContext context = getRepositoryIndexContext( repository );
+
+            IndexingContext shadowContext = createShadowContext( repository, context, false );
+
+            boolean built = false;
+
+            try
+            {
+                if ( repository.getRepositoryKind().isFacetAvailable( ProxyRepository.class ) )
+                {
+                    fetchRemoteIndex( repository.adaptToFacet( ProxyRepository.class ), shadowContext, true );
+                }
+
+                // update always true, since we manually manage ctx purge
+                nexusIndexer.scan( shadowContext, fromPath, null, true );
+
+                deleteIndexItems( repository );
 
-            if ( repository.getRepositoryKind().isFacetAvailable( ProxyRepository.class ) )
-            {
-                downloadRepositoryIndex( repository.adaptToFacet( ProxyRepository.class ), fullReindex );
+                built = true;
             }
-
-            if ( !repository.getRepositoryKind().isFacetAvailable( GroupRepository.class ) )
+            finally
             {
-                // update always true, since we manually manage ctx purge
-                nexusIndexer.scan( context, fromPath, null, true );
+                if ( !built )
+                {
+                    discardShadowContext( repository, shadowContext );
+                }
             }
+
+            swapShadowContext( repository, context, shadowContext );
         }
         finally
         {
-            lock.unlock();
+            updateLock.unlock();
         }
     }
 
@@ -970,65 +1541,103 @@ public class DefaultIndexerManager
             return false;
         }
 
+        if ( !repository.adaptToFacet( MavenProxyRepository.class ).isDownloadRemoteIndexes() )
+        {
+            return false;
+        }
+
         if ( isAlreadyBeingIndexed( repository.getId() ) )
         {
             return false;
         }
 
-        MavenProxyRepository mpr = repository.adaptToFacet( MavenProxyRepository.class );
+        ReentrantLock updateLock = getUpdateLock( repository.getId() );
 
-        Lock lock = getLock( repository.getId() ).writeLock();
-        lock.lock();
+        if ( !updateLock.tryLock() )
+        {
+            return false;
+        }
 
         try
         {
+            IndexingContext context = getRepositoryIndexContext( repository );
 
-            // just keep the context 'out of service' while indexing, will be added at end
-            boolean shouldDownloadRemoteIndex = mpr.isDownloadRemoteIndexes();
+            // fetch into a copy of the index, searches are served from the current one meanwhile
+            IndexingContext shadowContext = createShadowContext( repository, context, true );
 
             boolean hasRemoteIndex = false;
 
-            if ( shouldDownloadRemoteIndex )
+            try
             {
-                try
-                {
-                    getLogger().info( "Trying to get remote index for repository " + repository.getId() );
-
-                    hasRemoteIndex = updateRemoteIndex( repository, forceFullUpdate );
-
-                    if ( hasRemoteIndex )
-                    {
-                        getLogger().info( "Remote indexes updated successfully for repository " + repository.getId() );
-                    }
-                    else
-                    {
-                        getLogger().info(
-                            "Remote indexes unchanged (no update needed) for repository " + repository.getId() );
-                    }
-                }
-                catch ( Exception e )
+                hasRemoteIndex = fetchRemoteIndex( repository, shadowContext, forceFullUpdate );
+            }
+            finally
+            {
+                if ( !hasRemoteIndex )
                 {
-                    getLogger().warn( "Cannot fetch remote index for repository " + repository.getId(), e );
+                    discardShadowContext( repository, shadowContext );
                 }
             }
 
-            return hasRemoteIndex;
+            if ( hasRemoteIndex )
+            {
+                swapShadowContext( repository, context, shadowContext );
+            }
 
+            return hasRemoteIndex;
         }
         finally
         {
-            lock.unlock();
+            updateLock.unlock();
+        }
+    }
+
+    protected boolean fetchRemoteIndex( final ProxyRepository repository, final IndexingContext targetContext,
+                                        final boolean forceFullUpdate )
+    {
+        // ensure this is a proxy repo, since download may happen with proxies only
+        if ( !repository.getRepositoryKind().isFacetAvailable( MavenProxyRepository.class ) )
+        {
+            return false;
+        }
+
+        if ( !repository.adaptToFacet( MavenProxyRepository.class ).isDownloadRemoteIndexes() )
+        {
+            return false;
+        }
+
+        boolean hasRemoteIndex = false;
+
+        try
+        {
+            getLogger().info( "Trying to get remote index for repository " + repository.getId() );
+
+            hasRemoteIndex = updateRemoteIndex( repository, targetContext, forceFullUpdate );
+
+            if ( hasRemoteIndex )
+            {
+                getLogger().info( "Remote indexes updated successfully for repository " + repository.getId() );
+            }
+            else
+            {
+                getLogger().info( "Remote indexes unchanged (no update needed) for repository " + repository.getId() );
+            }
+        }
+        catch ( Exception e )
+        {
+            getLogger().warn( "Cannot fetch remote index for repository " + repository.getId(), e );
         }
+
+        return hasRemoteIndex;
     }
 
-    protected boolean updateRemoteIndex( final ProxyRepository repository, boolean forceFullUpdate )
+    protected boolean updateRemoteIndex( final ProxyRepository repository, final IndexingContext context,
+                                         boolean forceFullUpdate )
         throws IOException, IllegalOperationException, ItemNotFoundException
     {
         // this will force remote check for newer files
         repository.expireCaches( new ResourceStoreRequest( PUBLISHING_PATH_PREFIX ) );
 
-        IndexingContext context = getRepositoryIndexContext( repository );
-
         IndexUpdateRequest updateRequest = new IndexUpdateRequest( context, new ResourceFetcher()
         {
             public void connect( String id, String url )
@@ -1692,11 +2301,13 @@ public class DefaultIndexerManager
     @Deprecated
     protected void postprocessResults( Collection<ArtifactInfo> res )
     {
+        ArtifactInfoFilter filter = indexArtifactFilter.createArtifactInfoFilter();
+
         for ( Iterator<ArtifactInfo> i = res.iterator(); i.hasNext(); )
         {
             ArtifactInfo ai = i.next();
 
-            if ( indexArtifactFilter.filterArtifactInfo( ai ) )
+            if ( filter.accepts( null, ai ) )
             {
                 ai.context = formatContextId( ai );
             }
@@ -1736,14 +2347,8 @@ public class DefaultIndexerManager
 
         List<ArtifactInfoFilter> filters = new ArrayList<ArtifactInfoFilter>();
 
-        // security filter
-        filters.add( new ArtifactInfoFilter()
-        {
-            public boolean accepts( IndexingContext ctx, ArtifactInfo ai )
-            {
-                return indexArtifactFilter.filterArtifactInfo( ai );
-            }
-        } );
+        // security filter, authorizing once per repository
+        filters.add( indexArtifactFilter.createArtifactInfoFilter() );
 
         if ( extraFilters != null && extraFilters.size() > 0 )
         {
@@ -1809,6 +2414,32 @@ public class DefaultIndexerManager
         return req;
     }
 
+    /**
+     * Performs the search. When searching all the repositories, leaves out the repositories of which current user may
+     * not read any artifact, before any hit is produced.
+     */
+    protected IteratorSearchResponse searchIterator( IteratorSearchRequest req )
+        throws IOException
+    {
+        if ( req.getContexts().isEmpty() )
+        {
+            for ( IndexingContext context : nexusIndexer.getIndexingContexts().values() )
+            {
+                if ( context.isSearchable() && indexArtifactFilter.filterRepository( context.getRepositoryId() ) )
+                {
+                    req.getContexts().add( context );
+                }
+            }
+
+            if ( req.getContexts().isEmpty() )
+            {
+                return IteratorSearchResponse.empty( req.getQuery() );
+            }
+        }
+
+        return nexusIndexer.searchIterator( req );
+    }
+
     public IteratorSearchResponse searchQueryIterator( Query query, String repositoryId, Integer from, Integer count,
                                                        Integer hitLimit, boolean uniqueRGA,
                                                        List<ArtifactInfoFilter> filters )
@@ -1828,7 +2459,7 @@ public class DefaultIndexerManager
 
         try
         {
-            IteratorSearchResponse result = nexusIndexer.searchIterator( req );
+            IteratorSearchResponse result = searchIterator( req );
 
             return result;
         }
@@ -1908,7 +2539,7 @@ public class DefaultIndexerManager
 
         try
         {
-            IteratorSearchResponse result = nexusIndexer.searchIterator( req );
+            IteratorSearchResponse result = searchIterator( req );
 
             return result;
         }
@@ -1960,7 +2591,7 @@ public class DefaultIndexerManager
 
         try
         {
-            IteratorSearchResponse result = nexusIndexer.searchIterator( req );
+            IteratorSearchResponse result = searchIterator( req );
 
             return result;
         }
@@ -2054,7 +2685,7 @@ public class DefaultIndexerManager
 
         try
         {
-            IteratorSearchResponse result = nexusIndexer.searchIterator( req );
+            IteratorSearchResponse result = searchIterator( req );
 
             return result;
         }
@@ -2111,7 +2742,7 @@ public class DefaultIndexerManager
 
         try
         {
-            IteratorSearchResponse result = nexusIndexer.searchIterator( req );
+            IteratorSearchResponse result = searchIterator( req );
 
             return result;
         }
@@ -2237,6 +2868,251 @@ public class DefaultIndexerManager
         return tmpContext;
     }
 
+    /**
+     * Creates a shadow context for the context of the repository, being a copy of it's index or an empty one. The
+     * incremental updates applied to the context from now on are recorded, to be applied to the shadow index too once
+     * it is swapped in.
+     */
+    protected IndexingContext createShadowContext( Repository repository, IndexingContext context, boolean copy )
+        throws IOException
+    {
+        IndexingContext shadowContext = getTempContext( context );
+
+        IndexUpdateQueue queue = getIndexUpdateQueue( repository.getId() );
+
+        queue.writerLock.lock();
+
+        try
+        {
+            if ( copy )
+            {
+                shadowContext.replace( context.getIndexDirectory() );
+            }
+
+            queue.startShadowing();
+        }
+        catch ( IOException e )
+        {
+            discardShadowContext( repository, shadowContext );
+
+            throw e;
+        }
+        finally
+        {
+            queue.writerLock.unlock();
+        }
+
+        return shadowContext;
+    }
+
+    /**
+     * Replaces the index of the context with the shadow index, and applies the incremental updates recorded meanwhile.
+     * The updates recorded while the shadow index was built are applied to the shadow index first, without blocking
+     * searches. The write lock of the repository is held only for the swap itself: the context is closed, the shadow
+     * index directory is renamed to the index directory of the context, and the context is reopened on it, followed by
+     * applying the few updates recorded since. Only if the rename fails (ie. on platforms not renaming directories
+     * having open files) the shadow index is copied over under the lock. The previous index is deleted once the lock is
+     * released. The shadow context is consumed by this method (swapped in, or discarded on failure), and must not be
+     * used anymore.
+     */
+    protected void swapShadowContext( Repository repository, IndexingContext context, IndexingContext shadowContext )
+        throws IOException
+    {
+        IndexUpdateQueue queue = getIndexUpdateQueue( repository.getId() );
+
+        boolean closed = false;
+
+        File shadowDir = shadowContext.getIndexDirectoryFile();
+
+        File indexDir = context.getIndexDirectoryFile();
+
+        File previousDir =
+            new File( indexDir.getParentFile(), indexDir.getName() + "-old-" + Long.toHexString( System.nanoTime() ) );
+
+        try
+        {
+            queue.writerLock.lock();
+
+            try
+            {
+                Collection<IndexUpdate> recorded = queue.stopShadowing();
+
+                queue.startShadowing();
+
+                if ( !recorded.isEmpty() )
+                {
+                    applyIndexUpdates( shadowContext, recorded );
+                }
+            }
+            finally
+            {
+                queue.writerLock.unlock();
+            }
+
+            shadowContext.commit();
+
+            shadowContext.close( false );
+
+            closed = true;
+
+            Lock lock = getLock( repository.getId() ).writeLock();
+            lock.lock();
+
+            try
+            {
+                queue.writerLock.lock();
+
+                try
+                {
+                    swapIndexDirectory( repository, queue, shadowDir, indexDir, previousDir );
+                }
+                finally
+                {
+                    queue.writerLock.unlock();
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        finally
+        {
+            if ( closed )
+            {
+                queue.writerLock.lock();
+
+                try
+                {
+                    queue.stopShadowing();
+                }
+                finally
+                {
+                    queue.writerLock.unlock();
+                }
+
+                deleteIndexDirectory( repository, previousDir );
+
+                deleteIndexDirectory( repository, shadowDir );
+            }
+            else
+            {
+                discardShadowContext( repository, shadowContext );
+            }
+        }
+    }
+
+    /**
+     * Moves the shadow index directory in place of the index directory of the repository context, and reopens the
+     * context. Must be called while holding the write lock of the repository and the writer lock of its queue.
+     */
+    protected void swapIndexDirectory( Repository repository, IndexUpdateQueue queue, File shadowDir, File indexDir,
+                                       File previousDir )
+        throws IOException
+    {
+        IndexingContext current = getRepositoryIndexContext( repository );
+
+        if ( current == null )
+        {
+            // context removed meanwhile, nothing to swap
+            return;
+        }
+
+        nexusIndexer.removeIndexingContext( current, false );
+
+        boolean renamed = false;
+
+        if ( indexDir.renameTo( previousDir ) )
+        {
+            renamed = shadowDir.renameTo( indexDir );
+
+            if ( !renamed )
+            {
+                // put it back, it is replaced by a copy below
+                previousDir.renameTo( indexDir );
+            }
+        }
+
+        if ( !indexDir.isDirectory() && !indexDir.mkdirs() )
+        {
+            throw new IOException( "Cannot create index directory: " + indexDir );
+        }
+
+        IndexingContext swapped =
+            nexusIndexer.addIndexingContextForced( current.getId(), current.getRepositoryId(), current.getRepository(),
+                indexDir, current.getRepositoryUrl(), current.getIndexUpdateUrl(), current.getIndexCreators() );
+
+        swapped.setSearchable( current.isSearchable() );
+
+        if ( !renamed )
+        {
+            getLogger().info(
+                "Could not rename shadow index of repository ID='" + repository.getId() + "', copying it instead." );
+
+            FSDirectory shadowDirectory = FSDirectory.open( shadowDir );
+
+            try
+            {
+                swapped.replace( shadowDirectory );
+            }
+            finally
+            {
+                shadowDirectory.close();
+            }
+        }
+
+        Collection<IndexUpdate> recorded = queue.stopShadowing();
+
+        if ( !recorded.isEmpty() )
+        {
+            applyIndexUpdates( swapped, recorded );
+        }
+    }
+
+    protected void deleteIndexDirectory( Repository repository, File dir )
+    {
+        try
+        {
+            if ( dir.exists() )
+            {
+                FileUtils.deleteDirectory( dir );
+            }
+        }
+        catch ( IOException e )
+        {
+            getLogger().warn( "Could not delete index directory " + dir + " of repository " + repository.getId(), e );
+        }
+    }
+
+    protected void discardShadowContext( Repository repository, IndexingContext shadowContext )
+    {
+        IndexUpdateQueue queue = getIndexUpdateQueue( repository.getId() );
+
+        queue.writerLock.lock();
+
+        try
+        {
+            queue.stopShadowing();
+        }
+        finally
+        {
+            queue.writerLock.unlock();
+        }
+
+        try
+        {
+            File shadowDir = shadowContext.getIndexDirectoryFile();
+
+            shadowContext.close( true );
+
+            FileUtils.deleteDirectory( shadowDir );
+        }
+        catch ( IOException e )
+        {
+            getLogger().warn( "Could not delete shadow index of repository " + repository.getId(), e );
+        }
+    }
+
     // Lock management
 
     protected synchronized ReadWriteLock getLock( String repositoryId )
@@ -2249,8 +3125,26 @@ public class DefaultIndexerManager
         return locks.get( repositoryId );
     }
 
+    protected synchronized ReentrantLock getUpdateLock( String repositoryId )
+    {
+        if ( !updateLocks.containsKey( repositoryId ) )
+        {
+            updateLocks.put( repositoryId, new ReentrantLock() );
+        }
+
+        return updateLocks.get( repositoryId );
+    }
+
     protected boolean isAlreadyBeingIndexed( String repositoryId )
     {
+        ReentrantLock updateLock = getUpdateLock( repositoryId );
+
+        // shadow index being built by someone else
+        if ( updateLock.isLocked() && !updateLock.isHeldByCurrentThread() )
+        {
+            return true;
+        }
+
         Lock lock = getLock( repositoryId ).readLock();
 
         boolean locked = lock.tryLock();
@@ -21,6 +21,7 @@ package org.sonatype.nexus.index;
 import java.util.Collection;
 
 import org.apache.maven.index.ArtifactInfo;
+import org.apache.maven.index.ArtifactInfoFilter;
 
 /**
  * Filters the search result by various conditions.
@@ -32,4 +33,21 @@ public interface IndexArtifactFilter
     Collection<ArtifactInfo> filterArtifactInfos( Collection<ArtifactInfo> artifactInfos );
 
     boolean filterArtifactInfo( ArtifactInfo artifactInfo );
+
+    /**
+     * Returns false if no artifact of the repository would pass this filter, hence it's index needs not to be searched
+     * at all.
+     * 
+     * @param repositoryId
+     * @return
+     */
+    boolean filterRepository( String repositoryId );
+
+    /**
+     * Creates a filter to be used by one search, that resolves the needed information (ie. the authorization of
+     * current subject) once per repository, instead of once per artifact.
+     * 
+     * @return
+     */
+    ArtifactInfoFilter createArtifactInfoFilter();
 }
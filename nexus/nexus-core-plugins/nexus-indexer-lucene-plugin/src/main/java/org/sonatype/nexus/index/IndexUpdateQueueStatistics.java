@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.index;
+
+/**
+ * Snapshot of the queued index updates of one repository.
+ * 
+ * @author cstamas
+ */
+public class IndexUpdateQueueStatistics
+{
+    private final String repositoryId;
+
+    private final int queueDepth;
+
+    private final long currentLag;
+
+    private final int lastBatchSize;
+
+    private final long lastBatchDuration;
+
+    private final long appliedCount;
+
+    private final long coalescedCount;
+
+    public IndexUpdateQueueStatistics( final String repositoryId, final int queueDepth, final long currentLag,
+                                       final int lastBatchSize, final long lastBatchDuration, final long appliedCount,
+                                       final long coalescedCount )
+    {
+        this.repositoryId = repositoryId;
+        this.queueDepth = queueDepth;
+        this.currentLag = currentLag;
+        this.lastBatchSize = lastBatchSize;
+        this.lastBatchDuration = lastBatchDuration;
+        this.appliedCount = appliedCount;
+        this.coalescedCount = coalescedCount;
+    }
+
+    public String getRepositoryId()
+    {
+        return repositoryId;
+    }
+
+    /**
+     * Returns the count of paths with pending index update.
+     */
+    public int getQueueDepth()
+    {
+        return queueDepth;
+    }
+
+    /**
+     * Returns the age in millis of the oldest pending update, 0 if none is pending.
+     */
+    public long getCurrentLag()
+    {
+        return currentLag;
+    }
+
+    public int getLastBatchSize()
+    {
+        return lastBatchSize;
+    }
+
+    public long getLastBatchDuration()
+    {
+        return lastBatchDuration;
+    }
+
+    public long getAppliedCount()
+    {
+        return appliedCount;
+    }
+
+    /**
+     * Returns the count of updates that were superseded by a later update of same path while queued.
+     */
+    public long getCoalescedCount()
+    {
+        return coalescedCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "IndexUpdateQueueStatistics(" + repositoryId + ": depth=" + queueDepth + ", currentLag=" + currentLag
+            + "ms, lastBatch=" + lastBatchSize + " in " + lastBatchDuration + "ms, applied=" + appliedCount
+            + ", coalesced=" + coalescedCount + ")";
+    }
+}
@@ -131,6 +131,30 @@ public interface IndexerManager
     void removeItemFromIndex( Repository repository, StorageItem item )
         throws IOException;
 
+    /**
+     * Queues an item to be added to index. Queued updates of a repository are coalesced by path, and applied in
+     * batches, becoming searchable within the "near real time" interval.
+     * 
+     * @param repository
+     * @param item
+     */
+    void enqueueAddItemToIndex( Repository repository, StorageItem item );
+
+    /**
+     * Queues an item to be removed from index. See {@link #enqueueAddItemToIndex(Repository, StorageItem)}.
+     * 
+     * @param repository
+     * @param item
+     */
+    void enqueueRemoveItemFromIndex( Repository repository, StorageItem item );
+
+    /**
+     * Returns the statistics of queued index updates, keyed by repository ID.
+     * 
+     * @return
+     */
+    Map<String, IndexUpdateQueueStatistics> getIndexUpdateQueueStatistics();
+
     // ----------------------------------------------------------------------------
     // Reindexing related (will do local-scan, remote-download, merge, publish)
     // ----------------------------------------------------------------------------
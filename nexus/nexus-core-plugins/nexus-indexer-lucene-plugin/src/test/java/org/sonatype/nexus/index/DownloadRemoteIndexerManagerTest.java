@@ -29,6 +29,8 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -51,6 +53,10 @@ public class DownloadRemoteIndexerManagerTest
 
     private File fakeCentral;
 
+    private volatile CountDownLatch indexRequested;
+
+    private volatile CountDownLatch indexReleased;
+
     @Override
     protected void setUp()
         throws Exception
@@ -74,6 +80,7 @@ public class DownloadRemoteIndexerManagerTest
                 throws IOException, ServletException
             {
                 System.out.print( "JETTY: " + target );
+                awaitIndexReleased( target );
                 super.handle( target, request, response, dispatch );
                 System.out.println( "  ::  " + ((Response)response).getStatus() );
             }
@@ -139,6 +146,84 @@ public class DownloadRemoteIndexerManagerTest
         searchFor( "org.sonatype.nexus", 8, central.getId() );
     }
 
+    public void testSearchesServedWhileIndexDownloaded()
+        throws Exception
+    {
+        File index1 = new File( getBasedir(), "src/test/resources/repo-index/index" );
+        File index2 = new File( getBasedir(), "src/test/resources/repo-index/index2" );
+        File centralIndex = new File( fakeCentral, ".index" );
+
+        // copy index 02
+        overwriteIndex( index2, centralIndex );
+
+        super.indexerManager.reindexRepository( null, central.getId(), true );
+
+        searchFor( "org.sonatype.nexus", 8, central.getId() );
+
+        // copy index 01, and hold back it's download
+        overwriteIndex( index1, centralIndex );
+
+        indexRequested = new CountDownLatch( 1 );
+        indexReleased = new CountDownLatch( 1 );
+
+        final Exception[] failure = new Exception[1];
+
+        Thread download = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    indexerManager.downloadRepositoryIndex( central.getId() );
+                }
+                catch ( Exception e )
+                {
+                    failure[0] = e;
+                }
+            }
+        } );
+
+        download.start();
+
+        try
+        {
+            assertTrue( indexRequested.await( 30, TimeUnit.SECONDS ) );
+
+            // the index being downloaded is built aside, the current one is still served
+            searchFor( "org.sonatype.nexus", 8, central.getId() );
+
+            assertTrue( ( (DefaultIndexerManager) indexerManager ).isAlreadyBeingIndexed( central.getId() ) );
+        }
+        finally
+        {
+            indexReleased.countDown();
+
+            download.join();
+        }
+
+        assertNull( failure[0] );
+
+        searchFor( "org.sonatype.nexus", 1, central.getId() );
+    }
+
+    private void awaitIndexReleased( String target )
+    {
+        if ( indexReleased != null && target.contains( "nexus-maven-repository-index." )
+            && !target.endsWith( ".properties" ) )
+        {
+            indexRequested.countDown();
+
+            try
+            {
+                indexReleased.await( 30, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     private void overwriteIndex( File source, File destination )
         throws Exception
     {
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.index;
+
+import java.io.File;
+
+import org.apache.maven.index.IteratorSearchResponse;
+import org.apache.maven.index.SearchType;
+import org.apache.maven.index.context.IndexingContext;
+import org.sonatype.nexus.mime.MimeUtil;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.storage.local.fs.FileContentLocator;
+
+public class QueuedIndexUpdatesTest
+    extends AbstractIndexerManagerTest
+{
+    protected static File jarFile =
+        getTestFile( "src/test/resources/nexus-3578/maven-pmd-plugin-2.6-20100607.233625-29.jar" );
+
+    protected static String jarPath =
+        "/org/apache/maven/plugins/maven-pmd-plugin/2.6-SNAPSHOT/maven-pmd-plugin-2.6-20100607.233625-29.jar";
+
+    protected MimeUtil mimeUtil;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        this.mimeUtil = lookup( MimeUtil.class );
+    }
+
+    public void testQueuedUpdatesAreCoalescedAndApplied()
+        throws Exception
+    {
+        fillInRepo();
+
+        waitForTasksToStop();
+
+        waitForIndexUpdates();
+
+        StorageFileItem item = sneakyStoreAFile( jarPath, jarFile );
+
+        IndexUpdateQueueStatistics stats = indexerManager.getIndexUpdateQueueStatistics().get( snapshots.getId() );
+
+        long coalesced = stats == null ? 0 : stats.getCoalescedCount();
+
+        long applied = stats == null ? 0 : stats.getAppliedCount();
+
+        // add, remove and add again: only last one counts
+        indexerManager.enqueueAddItemToIndex( snapshots, item );
+        indexerManager.enqueueRemoveItemFromIndex( snapshots, item );
+        indexerManager.enqueueAddItemToIndex( snapshots, item );
+
+        stats = indexerManager.getIndexUpdateQueueStatistics().get( snapshots.getId() );
+
+        assertEquals( coalesced + 2, stats.getCoalescedCount() );
+
+        waitForIndexUpdates();
+
+        assertEquals( applied + 1,
+            indexerManager.getIndexUpdateQueueStatistics().get( snapshots.getId() ).getAppliedCount() );
+
+        assertEquals( 1, search() );
+
+        indexerManager.enqueueRemoveItemFromIndex( snapshots, item );
+
+        waitForIndexUpdates();
+
+        assertEquals( 0, search() );
+    }
+
+    public void testUpdatesRecordedDuringShadowBuildAreReapplied()
+        throws Exception
+    {
+        fillInRepo();
+
+        waitForTasksToStop();
+
+        waitForIndexUpdates();
+
+        DefaultIndexerManager defaultIndexerManager = (DefaultIndexerManager) indexerManager;
+
+        IndexingContext context = defaultIndexerManager.getRepositoryIndexContext( snapshots );
+
+        // an empty shadow index, as when the index is rebuilt
+        IndexingContext shadowContext = defaultIndexerManager.createShadowContext( snapshots, context, false );
+
+        File shadowDir = shadowContext.getIndexDirectoryFile();
+
+        StorageFileItem item = sneakyStoreAFile( jarPath, jarFile );
+
+        indexerManager.enqueueAddItemToIndex( snapshots, item );
+
+        waitForIndexUpdates();
+
+        // applied to current index while the shadow one is being built
+        assertEquals( 1, search() );
+
+        // consumes the shadow context
+        defaultIndexerManager.swapShadowContext( snapshots, context, shadowContext );
+
+        // the shadow index directory was moved in place of the index directory of the context
+        assertFalse( shadowDir.exists() );
+        assertEquals( context.getIndexDirectoryFile(),
+            defaultIndexerManager.getRepositoryIndexContext( snapshots ).getIndexDirectoryFile() );
+
+        // the shadow index did not have it, but the recorded update was applied again
+        assertEquals( 1, search() );
+    }
+
+    // ==
+
+    protected StorageFileItem sneakyStoreAFile( String path, File file )
+        throws Exception
+    {
+        ResourceStoreRequest request = new ResourceStoreRequest( path );
+
+        FileContentLocator fc = new FileContentLocator( file, mimeUtil.getMimeType( file ) );
+
+        StorageFileItem item = new DefaultStorageFileItem( snapshots, request, true, true, fc );
+
+        // store it without events, we maintain the index
+        snapshots.getLocalStorage().storeItem( snapshots, item );
+
+        return (StorageFileItem) snapshots.retrieveItem( request );
+    }
+
+    protected int search()
+        throws Exception
+    {
+        IteratorSearchResponse response =
+            indexerManager.searchArtifactIterator( "org.apache.maven.plugins", "maven-pmd-plugin", "2.6-SNAPSHOT",
+                null, null, snapshots.getId(), null, null, null, false, SearchType.EXACT, null );
+
+        try
+        {
+            return response.getTotalHits();
+        }
+        finally
+        {
+            response.close();
+        }
+    }
+
+    protected void waitForIndexUpdates()
+        throws Exception
+    {
+        wairForAsyncEventsToCalmDown();
+
+        // applies the queued updates in this thread, waiting for the batch being applied (if any) to finish first
+        ( (DefaultIndexerManager) indexerManager ).flushIndexUpdates();
+    }
+}
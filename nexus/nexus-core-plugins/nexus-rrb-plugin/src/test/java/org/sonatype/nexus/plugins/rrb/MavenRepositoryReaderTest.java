@@ -59,6 +59,7 @@ import org.sonatype.nexus.proxy.item.AbstractStorageItem;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StorageItemInfo;
 import org.sonatype.nexus.proxy.item.uid.RepositoryItemUidAttributeManager;
 import org.sonatype.nexus.proxy.mirror.DownloadMirrors;
 import org.sonatype.nexus.proxy.mirror.PublishedMirrors;
@@ -808,6 +809,13 @@ public class MavenRepositoryReaderTest
             return null;
         }
 
+        public Collection<StorageItemInfo> listItemInfos( boolean fromTask, ResourceStoreRequest request )
+            throws IllegalOperationException, ItemNotFoundException, StorageException
+        {
+
+            return null;
+        }
+
         public StorageItem retrieveItem( ResourceStoreRequest request )
             throws ItemNotFoundException, IllegalOperationException, StorageException, AccessDeniedException
         {
@@ -894,17 +902,6 @@ public class MavenRepositoryReaderTest
             return null;
         }
 
-        public Thread getRepositoryStatusCheckerThread()
-        {
-
-            return null;
-        }
-
-        public void setRepositoryStatusCheckerThread( Thread thread )
-        {
-
-        }
-
         public long getCurrentRemoteStatusRetainTime()
         {
 
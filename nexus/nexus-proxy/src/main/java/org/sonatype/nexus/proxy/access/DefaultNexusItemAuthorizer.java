@@ -20,34 +20,125 @@ package org.sonatype.nexus.proxy.access;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
+import org.apache.shiro.subject.PrincipalCollection;
 import org.apache.shiro.subject.Subject;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.AbstractLogEnabled;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Initializable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.InitializationException;
+import org.codehaus.plexus.util.StringUtils;
+import org.sonatype.nexus.configuration.ConfigurationChangeEvent;
 import org.sonatype.nexus.proxy.NoSuchRepositoryException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.events.RepositoryGroupMembersChangedEvent;
+import org.sonatype.nexus.proxy.events.RepositoryRegistryRepositoryEvent;
+import org.sonatype.nexus.proxy.events.TargetRegistryEvent;
+import org.sonatype.nexus.proxy.registry.ContentClass;
 import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
 import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.proxy.target.Target;
 import org.sonatype.nexus.proxy.target.TargetMatch;
+import org.sonatype.nexus.proxy.target.TargetRegistry;
 import org.sonatype.nexus.proxy.target.TargetSet;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+import org.sonatype.plexus.appevents.ApplicationEventMulticaster;
+import org.sonatype.plexus.appevents.Event;
+import org.sonatype.plexus.appevents.EventListener;
 import org.sonatype.security.SecuritySystem;
+import org.sonatype.security.events.AuthorizationConfigurationChangedEvent;
+import org.sonatype.security.events.SecurityConfigurationChangedEvent;
 
 /**
- * Default implementation of Nexus Authorizer, that relies onto JSecurity.
+ * Default implementation of Nexus Authorizer, that relies onto JSecurity. The authorization decisions are cached per
+ * subject principal and the set of needed permissions (that is the set of target, repository and action triplets the
+ * requested path resolves to), the repository authorizations per subject principal, repository and action. The caches
+ * are flushed on any change of targets, repositories, group membership or security configuration.
  */
 @Component( role = NexusItemAuthorizer.class )
 public class DefaultNexusItemAuthorizer
     extends AbstractLogEnabled
-    implements NexusItemAuthorizer
+    implements NexusItemAuthorizer, EventListener, Initializable
 {
+    /** The maximum count of cached authorization decisions. */
+    private static final int DECISION_CACHE_SIZE = SystemPropertiesHelper.getInteger(
+        "nexus.authorizer.decisionCache.size", 10000 );
+
+    /** The time to live of cached authorization decisions, to limit staleness caused by unannounced changes. */
+    private static final int DECISION_CACHE_TTL = SystemPropertiesHelper.getInteger(
+        "nexus.authorizer.decisionCache.ttlMillis", 30000 );
+
     @Requirement
     private SecuritySystem securitySystem;
 
     @Requirement
     private RepositoryRegistry repoRegistry;
-    
+
+    @Requirement
+    private TargetRegistry targetRegistry;
+
+    @Requirement
+    private ApplicationEventMulticaster applicationEventMulticaster;
+
+    /** The cached decisions, keyed by principal and needed permissions, LRU */
+    private final Map<String, Decision> decisionCache = Collections.synchronizedMap( new LinkedHashMap<String, Decision>(
+        16, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, Decision> eldest )
+        {
+            return size() > DECISION_CACHE_SIZE;
+        }
+    } );
+
+    /** The cached repository authorizations, keyed by principal, repository and action, LRU */
+    private final Map<String, CachedAuthorization> authorizationCache =
+        Collections.synchronizedMap( new LinkedHashMap<String, CachedAuthorization>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, CachedAuthorization> eldest )
+            {
+                return size() > DECISION_CACHE_SIZE;
+            }
+        } );
+
+    public void initialize()
+        throws InitializationException
+    {
+        applicationEventMulticaster.addEventListener( this );
+    }
+
+    public void onEvent( Event<?> evt )
+    {
+        // security system announces realm changes with SecurityConfigurationChangedEvent, and user, role and
+        // privilege changes with AuthorizationConfigurationChangedEvent
+        if ( evt instanceof TargetRegistryEvent || evt instanceof RepositoryGroupMembersChangedEvent
+            || evt instanceof RepositoryRegistryRepositoryEvent || evt instanceof ConfigurationChangeEvent
+            || evt instanceof SecurityConfigurationChangedEvent
+            || evt instanceof AuthorizationConfigurationChangedEvent )
+        {
+            clearDecisionCache();
+        }
+    }
+
+    public void clearDecisionCache()
+    {
+        decisionCache.clear();
+
+        authorizationCache.clear();
+    }
+
     public boolean authorizePath( Repository repository, ResourceStoreRequest request, Action action )
     {
         TargetSet matched = repository.getTargetsForRequest( request );
@@ -63,6 +154,46 @@ public class DefaultNexusItemAuthorizer
         return authorizePath( matched, action );
     }
 
+    public RepositoryAuthorization getRepositoryAuthorization( Repository repository, Action action )
+    {
+        if ( !this.securitySystem.isSecurityEnabled() )
+        {
+            // sec is disabled, simply say YES
+            return RepositoryAuthorization.ALL;
+        }
+
+        Subject subject = this.securitySystem.getSubject();
+
+        final String key =
+            subject == null ? null : getDecisionKey( subject,
+                Collections.singletonList( "repository:" + repository.getId() + ":" + action ) );
+
+        if ( key != null )
+        {
+            final CachedAuthorization cached = authorizationCache.get( key );
+
+            if ( cached != null && cached.isValid() )
+            {
+                return cached.getAuthorization();
+            }
+        }
+
+        List<TargetMatch> permitted = new ArrayList<TargetMatch>();
+
+        List<TargetMatch> denied = new ArrayList<TargetMatch>();
+
+        collectTargetMatches( subject, repository, action, permitted, denied, new HashSet<String>() );
+
+        RepositoryAuthorization authorization = new RepositoryAuthorization( permitted, denied );
+
+        if ( key != null )
+        {
+            authorizationCache.put( key, new CachedAuthorization( authorization ) );
+        }
+
+        return authorization;
+    }
+
     public boolean authorizePermission( String permission )
     {
         return isPermitted( Collections.singletonList( permission ) );
@@ -92,6 +223,48 @@ public class DefaultNexusItemAuthorizer
         return targetSet;
     }
 
+    /**
+     * Sorts the targets applicable to repository, and to the groups it is member of (recursively), into permitted and
+     * denied ones for the subject.
+     */
+    protected void collectTargetMatches( Subject subject, Repository repository, Action action,
+                                         List<TargetMatch> permitted, List<TargetMatch> denied, Set<String> visited )
+    {
+        if ( !visited.add( repository.getId() ) )
+        {
+            return;
+        }
+
+        ContentClass contentClass = repository.getRepositoryContentClass();
+
+        for ( Target target : targetRegistry.getRepositoryTargets() )
+        {
+            // same content class check as in Target.isPathContained()
+            if ( StringUtils.equals( target.getContentClass().getId(), contentClass.getId() )
+                || target.getContentClass().isCompatible( contentClass )
+                || contentClass.isCompatible( target.getContentClass() ) )
+            {
+                TargetMatch match = new TargetMatch( target, repository );
+
+                String perm = "nexus:target:" + target.getId() + ":" + repository.getId() + ":" + action;
+
+                if ( subject != null && subject.isPermitted( perm ) )
+                {
+                    permitted.add( match );
+                }
+                else
+                {
+                    denied.add( match );
+                }
+            }
+        }
+
+        for ( Repository group : getListOfGroups( repository.getId() ) )
+        {
+            collectTargetMatches( subject, group, action, permitted, denied, visited );
+        }
+    }
+
     protected List<Repository> getListOfGroups( String repositoryId )
     {
         List<Repository> groups = new ArrayList<Repository>();
@@ -157,22 +330,43 @@ public class DefaultNexusItemAuthorizer
                     getLogger().debug( "Checking isPermitted() with perms: " + perms.toString() );
                 }
 
+                final String key = getDecisionKey( subject, perms );
+
+                if ( key != null )
+                {
+                    final Decision decision = decisionCache.get( key );
+
+                    if ( decision != null && decision.isValid() )
+                    {
+                        return decision.isPermitted();
+                    }
+                }
+
                 // And finally check each of the target permissions and see if the user
                 // has access, all it takes is one
+                boolean permitted = false;
+
                 for ( String perm : perms )
                 {
                     if ( subject.isPermitted( perm ) )
                     {
-                        return true;
+                        permitted = true;
+
+                        break;
                     }
                 }
 
-                if ( getLogger().isDebugEnabled() )
+                if ( !permitted && getLogger().isDebugEnabled() )
                 {
                     getLogger().debug( "Subject is authenticated, but has none of the needed permissions, rejecting." );
                 }
 
-                return false;
+                if ( key != null )
+                {
+                    decisionCache.put( key, new Decision( permitted ) );
+                }
+
+                return permitted;
             }
             else
             {
@@ -196,4 +390,81 @@ public class DefaultNexusItemAuthorizer
     {
         return authorizePermission( "nexus:view:" + objectType + ":" + objectId );
     }
+
+    // ==
+
+    /**
+     * Returns the key of decision for given subject and permissions, or null if subject has no principal to key with.
+     */
+    protected String getDecisionKey( Subject subject, List<String> perms )
+    {
+        PrincipalCollection principals = subject.getPrincipals();
+
+        if ( principals == null || principals.isEmpty() )
+        {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder();
+
+        key.append( new TreeSet<String>( principals.getRealmNames() ) ).append( '/' );
+
+        key.append( principals.getPrimaryPrincipal() );
+
+        // the order of perms is not relevant, "all it takes is one"
+        for ( String perm : new TreeSet<String>( perms ) )
+        {
+            key.append( '\n' ).append( perm );
+        }
+
+        return key.toString();
+    }
+
+    private static class CachedAuthorization
+    {
+        private final RepositoryAuthorization authorization;
+
+        private final long created;
+
+        public CachedAuthorization( RepositoryAuthorization authorization )
+        {
+            this.authorization = authorization;
+
+            this.created = System.currentTimeMillis();
+        }
+
+        public RepositoryAuthorization getAuthorization()
+        {
+            return authorization;
+        }
+
+        public boolean isValid()
+        {
+            return System.currentTimeMillis() - created < DECISION_CACHE_TTL;
+        }
+    }
+
+    private static class Decision
+    {
+        private final boolean permitted;
+
+        private final long created;
+
+        public Decision( boolean permitted )
+        {
+            this.permitted = permitted;
+
+            this.created = System.currentTimeMillis();
+        }
+
+        public boolean isPermitted()
+        {
+            return permitted;
+        }
+
+        public boolean isValid()
+        {
+            return System.currentTimeMillis() - created < DECISION_CACHE_TTL;
+        }
+    }
 }
@@ -0,0 +1,927 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.codehaus.plexus.logging.Logger;
+
+/**
+ * Append-only, memory mapped key-value store of one repository's attributes. The store is made of segment files of
+ * bounded size, where only the last one (the "active" segment) is appended to. Segments start small and their file and
+ * mapping grow on demand, up to the segment size. An in-memory index maps keys (item paths) to the location of their
+ * latest record, so reads never scan. Deletions are recorded as tombstones, and sealed segments with mostly superseded
+ * records are reclaimed by {@link #compact(double)}, that moves their live records into the active segment. Mappings of
+ * grown, compacted and closed segments are released explicitly, not to wait for the garbage collector.
+ * <p>
+ * A record is laid out as: payload length (int), CRC32 of payload (int), payload. Payload is: operation (byte), key
+ * (int length + UTF-8 bytes) and value (int length + bytes), the latter for puts only. A zero length marks the end of
+ * the records in a segment.
+ * 
+ * @author cstamas
+ */
+public class AttributeSegmentStore
+{
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * The initial size of new segments, doubled as they fill up.
+     */
+    private static final int INITIAL_SEGMENT_SIZE = 64 * 1024;
+
+    private static final byte OP_PUT = 1;
+
+    private static final byte OP_DELETE = 2;
+
+    private final Logger logger;
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    /**
+     * Key to location of the latest put record. Location is segment number in upper, offset in lower 32 bits.
+     */
+    private final ConcurrentHashMap<String, Long> index = new ConcurrentHashMap<String, Long>();
+
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<Integer, Segment>();
+
+    /**
+     * Guards all the mutations: appends, segment rolling and compaction. Reads are lock free.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private Segment activeSegment;
+
+    public AttributeSegmentStore( final Logger logger, final File directory, final int segmentSize )
+    {
+        this.logger = logger;
+
+        this.directory = directory;
+
+        this.segmentSize = segmentSize;
+    }
+
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Maps the existing segments and rebuilds the index by replaying them in order.
+     * 
+     * @throws IOException
+     */
+    public void open()
+        throws IOException
+    {
+        writeLock.lock();
+
+        try
+        {
+            if ( !directory.isDirectory() && !directory.mkdirs() )
+            {
+                throw new IOException( "Could not create the attribute segment directory on path "
+                    + directory.getAbsolutePath() );
+            }
+
+            final File[] files = directory.listFiles();
+
+            final List<Integer> numbers = new ArrayList<Integer>();
+
+            for ( File file : files )
+            {
+                final String name = file.getName();
+
+                if ( file.isFile() && name.endsWith( SEGMENT_SUFFIX ) )
+                {
+                    try
+                    {
+                        numbers.add( Integer.valueOf( name.substring( 0, name.length() - SEGMENT_SUFFIX.length() ) ) );
+                    }
+                    catch ( NumberFormatException e )
+                    {
+                        logger.warn( "Ignoring unexpected file in attribute segment directory: " + file );
+                    }
+                }
+            }
+
+            final Integer[] sorted = numbers.toArray( new Integer[numbers.size()] );
+
+            Arrays.sort( sorted );
+
+            for ( Integer number : sorted )
+            {
+                final Segment segment = mapSegment( number, false );
+
+                segments.put( number, segment );
+
+                replay( segment );
+            }
+
+            if ( segments.isEmpty() )
+            {
+                activeSegment = newSegment( 1 );
+            }
+            else
+            {
+                activeSegment = segments.lastEntry().getValue();
+            }
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the mapped segments to disk and releases them.
+     */
+    public void close()
+    {
+        writeLock.lock();
+
+        try
+        {
+            flush();
+
+            for ( Segment segment : segments.values() )
+            {
+                release( segment );
+            }
+
+            segments.clear();
+
+            index.clear();
+
+            activeSegment = null;
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    public void flush()
+    {
+        for ( Segment segment : segments.values() )
+        {
+            segment.force();
+        }
+    }
+
+    public int size()
+    {
+        return index.size();
+    }
+
+    public boolean contains( final String key )
+    {
+        return index.containsKey( key );
+    }
+
+    public byte[] get( final String key )
+        throws IOException
+    {
+        while ( true )
+        {
+            final Long location = index.get( key );
+
+            if ( location == null )
+            {
+                return null;
+            }
+
+            final Segment segment = segments.get( getSegmentNumber( location ) );
+
+            if ( segment != null )
+            {
+                final Record record = readRecord( segment, getOffset( location ) );
+
+                if ( record == null && segment.isReleased() )
+                {
+                    // the segment was compacted meanwhile, retry
+                    continue;
+                }
+
+                if ( record == null || record.getOperation() != OP_PUT || !key.equals( record.getKey() ) )
+                {
+                    throw new IOException( "Corrupt attribute record for key " + key + " in " + segment.getFile() );
+                }
+
+                return record.getValue();
+            }
+            else if ( location.equals( index.get( key ) ) )
+            {
+                // the segment is gone but the index still points at it
+                throw new IOException( "Missing attribute segment " + getSegmentNumber( location ) + " for key "
+                    + key );
+            }
+
+            // the record was moved by compaction meanwhile, retry
+        }
+    }
+
+    public void put( final String key, final byte[] value )
+        throws IOException
+    {
+        writeLock.lock();
+
+        try
+        {
+            checkOpen();
+
+            final long location = append( encodeRecord( OP_PUT, key, value ) );
+
+            supersede( index.put( key, location ) );
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean delete( final String key )
+        throws IOException
+    {
+        writeLock.lock();
+
+        try
+        {
+            checkOpen();
+
+            final Long previous = index.get( key );
+
+            if ( previous == null )
+            {
+                return false;
+            }
+
+            final long location = append( encodeRecord( OP_DELETE, key, null ) );
+
+            index.remove( key );
+
+            supersede( previous );
+
+            // tombstone is garbage from the start, it is kept only to shadow the older records
+            supersede( location );
+
+            return true;
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Reclaims sealed segments having at least the given ratio of superseded records, by moving their live records
+     * to the active segment and deleting them.
+     * 
+     * @param garbageRatio
+     * @return the count of reclaimed segments.
+     * @throws IOException
+     */
+    public int compact( final double garbageRatio )
+        throws IOException
+    {
+        int reclaimed = 0;
+
+        for ( Segment candidate : new ArrayList<Segment>( segments.values() ) )
+        {
+            writeLock.lock();
+
+            try
+            {
+                if ( activeSegment == null || candidate == activeSegment
+                    || segments.get( candidate.getNumber() ) != candidate )
+                {
+                    continue;
+                }
+
+                if ( candidate.getWritePosition() == 0
+                    || candidate.getGarbage() >= garbageRatio * candidate.getWritePosition() )
+                {
+                    compactSegment( candidate );
+
+                    reclaimed++;
+                }
+            }
+            finally
+            {
+                writeLock.unlock();
+            }
+        }
+
+        return reclaimed;
+    }
+
+    // ==
+
+    protected void compactSegment( final Segment segment )
+        throws IOException
+    {
+        final boolean oldest = segments.firstKey().intValue() == segment.getNumber();
+
+        int offset = 0;
+
+        Record record;
+
+        while ( ( record = readRecord( segment, offset ) ) != null )
+        {
+            final long location = getLocation( segment.getNumber(), offset );
+
+            if ( record.getOperation() == OP_PUT )
+            {
+                final Long current = index.get( record.getKey() );
+
+                if ( current != null && current.longValue() == location )
+                {
+                    index.put( record.getKey(), append( encodeRecord( OP_PUT, record.getKey(), record.getValue() ) ) );
+                }
+            }
+            else if ( !oldest && !index.containsKey( record.getKey() ) )
+            {
+                // still deleted, and older segments may hold records this tombstone shadows
+                supersede( append( encodeRecord( OP_DELETE, record.getKey(), null ) ) );
+            }
+
+            offset += record.getSize();
+        }
+
+        segments.remove( segment.getNumber() );
+
+        // must be unmapped before deletion, as mapped files cannot be deleted on some platforms
+        release( segment );
+
+        if ( !segment.getFile().delete() )
+        {
+            logger.warn( "Could not delete compacted attribute segment " + segment.getFile()
+                + ", will try again on exit." );
+
+            segment.getFile().deleteOnExit();
+        }
+
+        if ( logger.isDebugEnabled() )
+        {
+            logger.debug( "Compacted attribute segment " + segment.getFile() );
+        }
+    }
+
+    protected void replay( final Segment segment )
+    {
+        int offset = 0;
+
+        Record record;
+
+        while ( ( record = readRecord( segment, offset ) ) != null )
+        {
+            final long location = getLocation( segment.getNumber(), offset );
+
+            if ( record.getOperation() == OP_PUT )
+            {
+                supersede( index.put( record.getKey(), location ) );
+            }
+            else
+            {
+                supersede( index.remove( record.getKey() ) );
+
+                supersede( location );
+            }
+
+            offset += record.getSize();
+        }
+
+        segment.setWritePosition( offset );
+    }
+
+    protected long append( final byte[] record )
+        throws IOException
+    {
+        if ( record.length > segmentSize )
+        {
+            throw new IOException( "Attribute record of " + record.length + " bytes exceeds the segment size of "
+                + segmentSize + " bytes!" );
+        }
+
+        final int required = activeSegment.getWritePosition() + record.length;
+
+        if ( required > activeSegment.getCapacity() )
+        {
+            if ( required <= segmentSize )
+            {
+                growSegment( activeSegment, required );
+            }
+            else
+            {
+                activeSegment.force();
+
+                activeSegment = newSegment( activeSegment.getNumber() + 1 );
+            }
+        }
+
+        final int offset = activeSegment.getWritePosition();
+
+        final ByteBuffer buffer = activeSegment.getBuffer().duplicate();
+
+        buffer.position( offset );
+
+        buffer.put( record );
+
+        // keep the end marker right after the last record
+        if ( buffer.remaining() >= RECORD_HEADER_SIZE )
+        {
+            buffer.putInt( 0 );
+        }
+
+        activeSegment.setWritePosition( offset + record.length );
+
+        return getLocation( activeSegment.getNumber(), offset );
+    }
+
+    protected void supersede( final Long location )
+    {
+        if ( location != null )
+        {
+            final Segment segment = segments.get( getSegmentNumber( location ) );
+
+            if ( segment != null )
+            {
+                final Record record = readRecord( segment, getOffset( location ) );
+
+                if ( record != null )
+                {
+                    segment.addGarbage( record.getSize() );
+                }
+            }
+        }
+    }
+
+    protected Record readRecord( final Segment segment, final int offset )
+    {
+        final byte[] payload;
+
+        final int checksum;
+
+        // the mapping must not be released while it is read
+        segment.getBufferLock().readLock().lock();
+
+        try
+        {
+            if ( segment.isReleased() )
+            {
+                return null;
+            }
+
+            final ByteBuffer buffer = segment.getBuffer().duplicate();
+
+            if ( offset + RECORD_HEADER_SIZE > buffer.capacity() )
+            {
+                return null;
+            }
+
+            buffer.position( offset );
+
+            final int length = buffer.getInt();
+
+            checksum = buffer.getInt();
+
+            if ( length <= 0 || length > buffer.remaining() )
+            {
+                return null;
+            }
+
+            payload = new byte[length];
+
+            buffer.get( payload );
+        }
+        finally
+        {
+            segment.getBufferLock().readLock().unlock();
+        }
+
+        final CRC32 crc = new CRC32();
+
+        crc.update( payload );
+
+        if ( (int) crc.getValue() != checksum )
+        {
+            // most probably a torn write on crash, everything from here is lost
+            logger.warn( "Attribute segment " + segment.getFile() + " has a corrupt record at offset " + offset
+                + ", ignoring the rest of the segment." );
+
+            return null;
+        }
+
+        final ByteBuffer payloadBuffer = ByteBuffer.wrap( payload );
+
+        final byte operation = payloadBuffer.get();
+
+        final byte[] key = new byte[payloadBuffer.getInt()];
+
+        payloadBuffer.get( key );
+
+        byte[] value = null;
+
+        if ( operation == OP_PUT )
+        {
+            value = new byte[payloadBuffer.getInt()];
+
+            payloadBuffer.get( value );
+        }
+
+        try
+        {
+            return new Record( operation, new String( key, "UTF-8" ), value, RECORD_HEADER_SIZE + payload.length );
+        }
+        catch ( IOException e )
+        {
+            // UTF-8 is always supported
+            throw new IllegalStateException( e );
+        }
+    }
+
+    protected byte[] encodeRecord( final byte operation, final String key, final byte[] value )
+        throws IOException
+    {
+        final ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+
+        final DataOutputStream payload = new DataOutputStream( payloadBytes );
+
+        final byte[] keyBytes = key.getBytes( "UTF-8" );
+
+        payload.writeByte( operation );
+        payload.writeInt( keyBytes.length );
+        payload.write( keyBytes );
+
+        if ( value != null )
+        {
+            payload.writeInt( value.length );
+            payload.write( value );
+        }
+
+        payload.flush();
+
+        final byte[] payloadArray = payloadBytes.toByteArray();
+
+        final CRC32 crc = new CRC32();
+
+        crc.update( payloadArray );
+
+        final ByteBuffer record = ByteBuffer.allocate( RECORD_HEADER_SIZE + payloadArray.length );
+
+        record.putInt( payloadArray.length );
+        record.putInt( (int) crc.getValue() );
+        record.put( payloadArray );
+
+        return record.array();
+    }
+
+    protected Segment newSegment( final int number )
+        throws IOException
+    {
+        final Segment segment = mapSegment( number, true );
+
+        segments.put( number, segment );
+
+        return segment;
+    }
+
+    protected Segment mapSegment( final int number, final boolean create )
+        throws IOException
+    {
+        final File file = new File( directory, String.format( "%08d", number ) + SEGMENT_SUFFIX );
+
+        return new Segment( number, file, map( file, create ? Math.min( INITIAL_SEGMENT_SIZE, segmentSize ) : -1 ) );
+    }
+
+    /**
+     * Grows the file and mapping of the segment to hold at least the required bytes, doubling its size up to the
+     * segment size. The previous mapping is released.
+     */
+    protected void growSegment( final Segment segment, final int required )
+        throws IOException
+    {
+        long capacity = Math.max( segment.getCapacity(), 1 );
+
+        while ( capacity < required )
+        {
+            capacity *= 2;
+        }
+
+        segment.force();
+
+        release( segment.setBuffer( map( segment.getFile(), (int) Math.min( capacity, segmentSize ) ) ) );
+    }
+
+    /**
+     * Maps the whole file, setting it's length first if the passed in length is not negative.
+     */
+    protected MappedByteBuffer map( final File file, final int length )
+        throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+
+        try
+        {
+            if ( length >= 0 )
+            {
+                raf.setLength( length );
+            }
+
+            final FileChannel channel = raf.getChannel();
+
+            // the mapping stays valid after the channel is closed
+            return channel.map( MapMode.READ_WRITE, 0, channel.size() );
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Releases the mapping of the segment, it cannot be read anymore.
+     */
+    protected void release( final Segment segment )
+    {
+        release( segment.setBuffer( null ) );
+    }
+
+    /**
+     * Unmaps the buffer, not waiting for it to be garbage collected. There is no public API for this, so it is done
+     * reflectively: using Unsafe.invokeCleaner on Java 9 and later, or the cleaner of the buffer before. If neither
+     * works, the buffer is left to the garbage collector.
+     */
+    protected void release( final MappedByteBuffer buffer )
+    {
+        if ( buffer == null )
+        {
+            return;
+        }
+
+        try
+        {
+            final Class<?> unsafeClass = Class.forName( "sun.misc.Unsafe" );
+
+            final Method invokeCleaner = unsafeClass.getMethod( "invokeCleaner", ByteBuffer.class );
+
+            final Field theUnsafe = unsafeClass.getDeclaredField( "theUnsafe" );
+
+            theUnsafe.setAccessible( true );
+
+            invokeCleaner.invoke( theUnsafe.get( null ), buffer );
+
+            return;
+        }
+        catch ( NoSuchMethodException e )
+        {
+            // pre Java 9, try the cleaner of the buffer
+        }
+        catch ( Exception e )
+        {
+            logger.debug( "Could not unmap attribute segment buffer, leaving it to the garbage collector.", e );
+
+            return;
+        }
+
+        try
+        {
+            final Method cleanerMethod = buffer.getClass().getMethod( "cleaner" );
+
+            cleanerMethod.setAccessible( true );
+
+            final Object cleaner = cleanerMethod.invoke( buffer );
+
+            if ( cleaner != null )
+            {
+                cleaner.getClass().getMethod( "clean" ).invoke( cleaner );
+            }
+        }
+        catch ( Exception e )
+        {
+            logger.debug( "Could not unmap attribute segment buffer, leaving it to the garbage collector.", e );
+        }
+    }
+
+    protected void checkOpen()
+        throws IOException
+    {
+        if ( activeSegment == null )
+        {
+            throw new IOException( "Attribute segment store in " + directory + " is closed!" );
+        }
+    }
+
+    protected static long getLocation( final int segmentNumber, final int offset )
+    {
+        return ( ( (long) segmentNumber ) << 32 ) | ( offset & 0xFFFFFFFFL );
+    }
+
+    protected static int getSegmentNumber( final long location )
+    {
+        return (int) ( location >>> 32 );
+    }
+
+    protected static int getOffset( final long location )
+    {
+        return (int) location;
+    }
+
+    // ==
+
+    protected static class Segment
+    {
+        private final int number;
+
+        private final File file;
+
+        /**
+         * Guards the mapping: held for reading while the buffer is read by lock free readers, and for writing while
+         * the buffer is replaced or released.
+         */
+        private final ReentrantReadWriteLock bufferLock = new ReentrantReadWriteLock();
+
+        // null once released
+        private volatile MappedByteBuffer buffer;
+
+        private volatile int writePosition;
+
+        private volatile int garbage;
+
+        public Segment( final int number, final File file, final MappedByteBuffer buffer )
+        {
+            this.number = number;
+
+            this.file = file;
+
+            this.buffer = buffer;
+        }
+
+        public int getNumber()
+        {
+            return number;
+        }
+
+        public File getFile()
+        {
+            return file;
+        }
+
+        public MappedByteBuffer getBuffer()
+        {
+            return buffer;
+        }
+
+        public ReentrantReadWriteLock getBufferLock()
+        {
+            return bufferLock;
+        }
+
+        /**
+         * Replaces the mapping, returning the previous one, that is not read by anyone anymore.
+         */
+        public MappedByteBuffer setBuffer( final MappedByteBuffer buffer )
+        {
+            bufferLock.writeLock().lock();
+
+            try
+            {
+                final MappedByteBuffer previous = this.buffer;
+
+                this.buffer = buffer;
+
+                return previous;
+            }
+            finally
+            {
+                bufferLock.writeLock().unlock();
+            }
+        }
+
+        public boolean isReleased()
+        {
+            return buffer == null;
+        }
+
+        public void force()
+        {
+            bufferLock.readLock().lock();
+
+            try
+            {
+                if ( buffer != null )
+                {
+                    buffer.force();
+                }
+            }
+            finally
+            {
+                bufferLock.readLock().unlock();
+            }
+        }
+
+        public int getCapacity()
+        {
+            return buffer.capacity();
+        }
+
+        public int getWritePosition()
+        {
+            return writePosition;
+        }
+
+        public void setWritePosition( final int writePosition )
+        {
+            this.writePosition = writePosition;
+        }
+
+        public int getGarbage()
+        {
+            return garbage;
+        }
+
+        public void addGarbage( final int size )
+        {
+            this.garbage += size;
+        }
+    }
+
+    protected static class Record
+    {
+        private final byte operation;
+
+        private final String key;
+
+        private final byte[] value;
+
+        private final int size;
+
+        public Record( final byte operation, final String key, final byte[] value, final int size )
+        {
+            this.operation = operation;
+
+            this.key = key;
+
+            this.value = value;
+
+            this.size = size;
+        }
+
+        public byte getOperation()
+        {
+            return operation;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public byte[] getValue()
+        {
+            return value;
+        }
+
+        public int getSize()
+        {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.plexus.logging.Logger;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+
+/**
+ * A content inspection fanning out the content to multiple streaming inspectors. A failing inspection is dropped
+ * (logged, but not propagated), hence an inspector failing during the write pass will simply be processed the usual
+ * way, when item attributes are stored. Inspectors that completed are recorded in item context.
+ * 
+ * @author cstamas
+ */
+public class CompositeContentInspection
+    implements ContentInspection
+{
+    /**
+     * Key of item context entry holding the set of inspectors that already inspected the stored content.
+     */
+    public static final String INSPECTED_BY_KEY = CompositeContentInspection.class.getName() + ".inspectedBy";
+
+    private final Logger logger;
+
+    private final Map<StreamingStorageFileItemInspector, ContentInspection> inspections =
+        new LinkedHashMap<StreamingStorageFileItemInspector, ContentInspection>();
+
+    public CompositeContentInspection( final Logger logger )
+    {
+        this.logger = logger;
+    }
+
+    public void addInspection( final StreamingStorageFileItemInspector inspector, final ContentInspection inspection )
+    {
+        inspections.put( inspector, inspection );
+    }
+
+    public boolean isEmpty()
+    {
+        return inspections.isEmpty();
+    }
+
+    public void update( final byte[] buffer, final int offset, final int length )
+        throws IOException
+    {
+        for ( Iterator<Map.Entry<StreamingStorageFileItemInspector, ContentInspection>> i =
+            inspections.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry<StreamingStorageFileItemInspector, ContentInspection> entry = i.next();
+
+            try
+            {
+                entry.getValue().update( buffer, offset, length );
+            }
+            catch ( Exception ex )
+            {
+                logger.warn( "Inspector " + entry.getKey().getClass()
+                    + " throw exception during inspection of content stream, continuing...", ex );
+
+                i.remove();
+            }
+        }
+    }
+
+    public void complete( final StorageFileItem item )
+    {
+        Set<StorageFileItemInspector> inspected = new HashSet<StorageFileItemInspector>( inspections.size() );
+
+        for ( Map.Entry<StreamingStorageFileItemInspector, ContentInspection> entry : inspections.entrySet() )
+        {
+            try
+            {
+                entry.getValue().complete( item );
+
+                inspected.add( entry.getKey() );
+            }
+            catch ( Exception ex )
+            {
+                logger.warn( "Inspector " + entry.getKey().getClass() + " throw exception during inspection of "
+                    + item.getRepositoryItemUid() + ", continuing...", ex );
+            }
+        }
+
+        inspections.clear();
+
+        item.getItemContext().put( INSPECTED_BY_KEY, inspected );
+    }
+
+    // ==
+
+    /**
+     * Returns the inspectors that already inspected the content of the item while it was stored, and clears them from
+     * item context, as they are valid for one store only.
+     * 
+     * @param item
+     * @return
+     */
+    @SuppressWarnings( "unchecked" )
+    public static Set<StorageFileItemInspector> takeInspectedBy( final StorageItem item )
+    {
+        Object inspected = item.getItemContext().remove( INSPECTED_BY_KEY );
+
+        if ( inspected instanceof Set )
+        {
+            return (Set<StorageFileItemInspector>) inspected;
+        }
+
+        return Collections.emptySet();
+    }
+}
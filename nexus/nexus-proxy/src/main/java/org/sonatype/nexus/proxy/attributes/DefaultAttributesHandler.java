@@ -25,17 +25,26 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.IOUtils;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Initializable;
 import org.codehaus.plexus.util.IOUtil;
 import org.sonatype.nexus.configuration.application.ApplicationConfiguration;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.access.AccessManager;
+import org.sonatype.nexus.proxy.attributes.inspectors.DigestCalculatingInspector;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
 import org.sonatype.nexus.proxy.item.ContentLocator;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
@@ -43,6 +52,8 @@ import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.storage.local.fs.FileContentLocator;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 
 /**
  * The Class DefaultAttributesHandler.
@@ -51,8 +62,28 @@ import org.sonatype.nexus.proxy.storage.local.fs.FileContentLocator;
  */
 @Component( role = AttributesHandler.class )
 public class DefaultAttributesHandler
-    implements AttributesHandler
+    implements AttributesHandler, Initializable, Disposable
 {
+    /**
+     * Key of the system property enabling the write-behind of "lastRequested" and "remoteChecked" touches.
+     */
+    public static final String WRITE_BEHIND_ENABLED_KEY = "nexus.attributes.writeBehind.enabled";
+
+    /**
+     * Key of the system property setting the period of write-behind flushes in seconds.
+     */
+    public static final String WRITE_BEHIND_PERIOD_KEY = "nexus.attributes.writeBehind.periodSeconds";
+
+    /**
+     * Key of the system property setting the count of pending touches that triggers an early flush.
+     */
+    public static final String WRITE_BEHIND_MAX_PENDING_KEY = "nexus.attributes.writeBehind.maxPending";
+
+    /**
+     * The size of buffer used to read content for inspection, when it was not inspected while written.
+     */
+    private static final int INSPECTION_BUFFER_SIZE = 8192;
+
     @Requirement
     private Logger logger;
 
@@ -80,6 +111,21 @@ public class DefaultAttributesHandler
     @Requirement( role = StorageFileItemInspector.class )
     protected List<StorageFileItemInspector> fileItemInspectorList;
 
+    private final boolean writeBehindEnabled = SystemPropertiesHelper.getBoolean( WRITE_BEHIND_ENABLED_KEY, true );
+
+    private final int writeBehindPeriod = SystemPropertiesHelper.getInteger( WRITE_BEHIND_PERIOD_KEY, 10 );
+
+    private final int writeBehindMaxPending = SystemPropertiesHelper.getInteger( WRITE_BEHIND_MAX_PENDING_KEY, 50000 );
+
+    /**
+     * The write-behind layer over attribute storage, null if disabled.
+     */
+    private volatile WriteBehindAttributeStorage writeBehindAttributeStorage;
+
+    private ScheduledExecutorService writeBehindExecutor;
+
+    private final AtomicBoolean earlyFlushScheduled = new AtomicBoolean( false );
+
     // ==
 
     protected Logger getLogger()
@@ -87,6 +133,46 @@ public class DefaultAttributesHandler
         return logger;
     }
 
+    public void initialize()
+    {
+        if ( writeBehindEnabled )
+        {
+            writeBehindAttributeStorage = new WriteBehindAttributeStorage( getLogger(), attributeStorage );
+
+            writeBehindExecutor =
+                Executors.newSingleThreadScheduledExecutor( new NexusThreadFactory( "nxattrflush",
+                    "Nexus attribute write-behind", Thread.NORM_PRIORITY, true ) );
+
+            writeBehindExecutor.scheduleWithFixedDelay( new Runnable()
+            {
+                public void run()
+                {
+                    flushTouches();
+                }
+            }, writeBehindPeriod, writeBehindPeriod, TimeUnit.SECONDS );
+        }
+    }
+
+    public void dispose()
+    {
+        if ( writeBehindExecutor != null )
+        {
+            writeBehindExecutor.shutdown();
+
+            try
+            {
+                writeBehindExecutor.awaitTermination( writeBehindPeriod, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // write out whatever is left
+        flushTouches();
+    }
+
     /**
      * Gets the attribute storage.
      * 
@@ -94,6 +180,11 @@ public class DefaultAttributesHandler
      */
     public AttributeStorage getAttributeStorage()
     {
+        if ( writeBehindAttributeStorage != null )
+        {
+            return writeBehindAttributeStorage;
+        }
+
         return attributeStorage;
     }
 
@@ -104,9 +195,34 @@ public class DefaultAttributesHandler
      */
     public void setAttributeStorage( AttributeStorage attributeStorage )
     {
+        if ( writeBehindAttributeStorage != null )
+        {
+            writeBehindAttributeStorage.flush();
+
+            writeBehindAttributeStorage = new WriteBehindAttributeStorage( getLogger(), attributeStorage );
+        }
+
         this.attributeStorage = attributeStorage;
     }
 
+    /**
+     * Writes out the buffered "lastRequested" and "remoteChecked" touches, if write-behind is enabled.
+     */
+    public void flushTouches()
+    {
+        final WriteBehindAttributeStorage writeBehind = writeBehindAttributeStorage;
+
+        if ( writeBehind != null )
+        {
+            final int flushed = writeBehind.flush();
+
+            if ( flushed > 0 && getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( "Wrote out touched attributes of " + flushed + " items." );
+            }
+        }
+    }
+
     /**
      * Gets the item inspector list.
      * 
@@ -181,6 +297,30 @@ public class DefaultAttributesHandler
         }
     }
 
+    public ContentInspection startContentInspection( final StorageFileItem item )
+    {
+        if ( item.isVirtual() )
+        {
+            return null;
+        }
+
+        ArrayList<StorageFileItemInspector> handlingInspectors = new ArrayList<StorageFileItemInspector>();
+        for ( StorageFileItemInspector inspector : getFileItemInspectorList() )
+        {
+            if ( inspector instanceof StreamingStorageFileItemInspector && inspector.isHandled( item ) )
+            {
+                handlingInspectors.add( inspector );
+            }
+        }
+
+        if ( handlingInspectors.isEmpty() )
+        {
+            return null;
+        }
+
+        return startContentInspection( item, handlingInspectors );
+    }
+
     public void storeAttributes( final StorageItem item, final ContentLocator content )
     {
         if ( content != null )
@@ -218,6 +358,17 @@ public class DefaultAttributesHandler
     {
         RepositoryItemUid uid = repository.createUid( request.getRequestPath() );
 
+        final WriteBehindAttributeStorage writeBehind = writeBehindAttributeStorage;
+
+        if ( writeBehind != null )
+        {
+            writeBehind.touchRemoteChecked( uid, timestamp );
+
+            afterTouch( writeBehind );
+
+            return;
+        }
+
         AbstractStorageItem item = getAttributeStorage().getAttributes( uid );
 
         if ( item != null )
@@ -245,6 +396,21 @@ public class DefaultAttributesHandler
     {
         RepositoryItemUid uid = repository.createUid( request.getRequestPath() );
 
+        final WriteBehindAttributeStorage writeBehind = writeBehindAttributeStorage;
+
+        if ( writeBehind != null )
+        {
+            // no need to load the attributes, the flush will do it
+            if ( isUserRequest( request ) )
+            {
+                writeBehind.touchLastRequested( uid, timestamp );
+
+                afterTouch( writeBehind );
+            }
+
+            return;
+        }
+
         AbstractStorageItem item = getAttributeStorage().getAttributes( uid );
 
         if ( item != null )
@@ -264,11 +430,22 @@ public class DefaultAttributesHandler
         // TODO: touch it only if this is user-originated request
         // Currently, we test for IP address presence, since that makes sure it is user request (from REST API) and not
         // a request from "internals" (ie. a running task).
-        if ( request.getRequestContext().containsKey( AccessManager.REQUEST_REMOTE_ADDRESS ) )
+        if ( isUserRequest( request ) )
         {
             storageItem.setLastRequested( timestamp );
 
-            getAttributeStorage().putAttribute( storageItem );
+            final WriteBehindAttributeStorage writeBehind = writeBehindAttributeStorage;
+
+            if ( writeBehind != null )
+            {
+                writeBehind.touchLastRequested( storageItem.getRepositoryItemUid(), timestamp );
+
+                afterTouch( writeBehind );
+            }
+            else
+            {
+                getAttributeStorage().putAttribute( storageItem );
+            }
         }
     }
 
@@ -281,19 +458,67 @@ public class DefaultAttributesHandler
     // ======================================================================
     // Internal
 
+    protected boolean isUserRequest( ResourceStoreRequest request )
+    {
+        return request.getRequestContext().containsKey( AccessManager.REQUEST_REMOTE_ADDRESS );
+    }
+
     /**
-     * Expand custom item attributes.
+     * Triggers an early flush when too many touches are pending, to bound the memory used by them.
+     * 
+     * @param writeBehind
+     */
+    protected void afterTouch( final WriteBehindAttributeStorage writeBehind )
+    {
+        if ( writeBehind.getPendingCount() > writeBehindMaxPending && writeBehindExecutor != null
+            && earlyFlushScheduled.compareAndSet( false, true ) )
+        {
+            try
+            {
+                writeBehindExecutor.execute( new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            flushTouches();
+                        }
+                        finally
+                        {
+                            earlyFlushScheduled.set( false );
+                        }
+                    }
+                } );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                // shutting down, dispose() will flush
+                earlyFlushScheduled.set( false );
+            }
+        }
+    }
+
+    /**
+     * Expand custom item attributes. Inspectors that already inspected the content while it was written are skipped,
+     * while the streaming ones are fed in one single pass over the content, without the need for a file. Only the
+     * "plain" file inspectors need a file, hence the temporary copy of non-file content is made only for them.
      * 
      * @param item the item
      * @param inputStream the input stream
      */
     protected void expandCustomItemAttributes( StorageItem item, ContentLocator content )
     {
+        // digests calculated while the content was transferred are not calculated again
+        DigestCalculatingInspector.liftDigests( item );
+
+        // inspectors that took part in the write pass did their job already
+        Set<StorageFileItemInspector> inspectedBy = CompositeContentInspection.takeInspectedBy( item );
+
         // gather inspectors willing to participate first, to save file copying below
         ArrayList<StorageFileItemInspector> handlingInspectors = new ArrayList<StorageFileItemInspector>();
         for ( StorageFileItemInspector inspector : getFileItemInspectorList() )
         {
-            if ( inspector.isHandled( item ) )
+            if ( !inspectedBy.contains( inspector ) && inspector.isHandled( item ) )
             {
                 handlingInspectors.add( inspector );
             }
@@ -304,120 +529,216 @@ public class DefaultAttributesHandler
             return;
         }
 
-        boolean deleteTmpFile = false;
-        File tmpFile = null;
-
-        if ( content != null )
+        if ( StorageFileItem.class.isAssignableFrom( item.getClass() ) )
         {
-            if ( content instanceof FileContentLocator )
+            StorageFileItem fItem = (StorageFileItem) item;
+
+            if ( !fItem.isVirtual() && content != null )
             {
-                deleteTmpFile = false;
-                tmpFile = ( (FileContentLocator) content ).getFile();
+                // streaming inspectors get the content in one pass
+                CompositeContentInspection inspection = startContentInspection( fItem, handlingInspectors );
+
+                if ( inspection != null )
+                {
+                    inspectContent( fItem, content, inspection );
+
+                    handlingInspectors.removeAll( CompositeContentInspection.takeInspectedBy( fItem ) );
+                }
+
+                if ( !handlingInspectors.isEmpty() )
+                {
+                    inspectFile( fItem, content, handlingInspectors );
+                }
             }
-            else
+        }
+        else
+        {
+            for ( StorageItemInspector inspector : getItemInspectorList() )
             {
-                getLogger().info(
-                    "Doing a temporary copy of the \""
-                        + item.getPath()
-                        + "\" item's content for expanding custom attributes. This should NOT happen, but is left in as \"fallback\"!" );
+                if ( inspector.isHandled( item ) )
+                {
+                    try
+                    {
+                        inspector.processStorageItem( item );
+                    }
+                    catch ( Exception ex )
+                    {
+                        getLogger().warn(
+                            "Inspector " + inspector.getClass() + " throw exception during inspection of "
+                                + item.getRepositoryItemUid() + ", continuing...", ex );
+                    }
+                }
+            }
+        }
+        // result.setDate( LocalStorageItem.LOCAL_ITEM_LAST_INSPECTED_KEY, new Date() );
+    }
 
-                deleteTmpFile = true;
+    /**
+     * Starts the inspection of item content by those of the passed in inspectors that are able to inspect the content
+     * stream.
+     * 
+     * @param item the item
+     * @param inspectors the inspectors handling the item
+     * @return the inspection, or null if none of the inspectors is interested in content stream
+     */
+    protected CompositeContentInspection startContentInspection( StorageFileItem item,
+                                                                 List<StorageFileItemInspector> inspectors )
+    {
+        CompositeContentInspection inspection = new CompositeContentInspection( getLogger() );
 
+        for ( StorageFileItemInspector inspector : inspectors )
+        {
+            if ( inspector instanceof StreamingStorageFileItemInspector )
+            {
                 try
                 {
-                    InputStream inputStream = null;
-                    OutputStream tmpFileStream = null;
+                    ContentInspection single = ( (StreamingStorageFileItemInspector) inspector ).startInspection( item );
 
-                    try
+                    if ( single != null )
                     {
-                        // unpack the file
-                        tmpFile =
-                            File.createTempFile( "px-" + item.getName(), ".tmp",
-                                applicationConfiguration.getTemporaryDirectory() );
-
-                        inputStream = content.getContent();
+                        inspection.addInspection( (StreamingStorageFileItemInspector) inspector, single );
+                    }
+                }
+                catch ( Exception ex )
+                {
+                    getLogger().warn(
+                        "Inspector " + inspector.getClass() + " throw exception during inspection of "
+                            + item.getRepositoryItemUid() + ", continuing...", ex );
+                }
+            }
+        }
 
-                        tmpFileStream = new FileOutputStream( tmpFile );
+        return inspection.isEmpty() ? null : inspection;
+    }
 
-                        IOUtils.copy( inputStream, tmpFileStream );
+    /**
+     * Feeds the content to the inspection, and completes it.
+     * 
+     * @param item the item
+     * @param content the content
+     * @param inspection the inspection
+     */
+    protected void inspectContent( StorageFileItem item, ContentLocator content, CompositeContentInspection inspection )
+    {
+        try
+        {
+            InputStream is = content.getContent();
 
-                        tmpFileStream.flush();
+            try
+            {
+                byte[] buffer = new byte[INSPECTION_BUFFER_SIZE];
 
-                        tmpFileStream.close();
-                    }
-                    finally
-                    {
-                        IOUtil.close( inputStream );
+                int read;
 
-                        IOUtil.close( tmpFileStream );
-                    }
-                }
-                catch ( IOException ex )
+                while ( ( read = is.read( buffer ) ) != -1 )
                 {
-                    getLogger().warn( "Could not create file from " + item.getRepositoryItemUid(), ex );
-
-                    tmpFile = null;
+                    inspection.update( buffer, 0, read );
                 }
             }
+            finally
+            {
+                IOUtil.close( is );
+            }
+
+            inspection.complete( item );
+        }
+        catch ( IOException ex )
+        {
+            getLogger().warn( "Could not read content of " + item.getRepositoryItemUid() + " for inspection", ex );
         }
+    }
 
-        if ( StorageFileItem.class.isAssignableFrom( item.getClass() ) )
+    /**
+     * Processes the item with inspectors needing the content as file, doing a temporary copy of content if needed.
+     * 
+     * @param item the item
+     * @param content the content
+     * @param inspectors the inspectors
+     */
+    protected void inspectFile( StorageFileItem item, ContentLocator content, List<StorageFileItemInspector> inspectors )
+    {
+        boolean deleteTmpFile = false;
+        File tmpFile = null;
+
+        if ( content instanceof FileContentLocator )
         {
-            StorageFileItem fItem = (StorageFileItem) item;
+            tmpFile = ( (FileContentLocator) content ).getFile();
+        }
+        else
+        {
+            getLogger().info(
+                "Doing a temporary copy of the \""
+                    + item.getPath()
+                    + "\" item's content for expanding custom attributes. This should NOT happen, but is left in as \"fallback\"!" );
+
+            deleteTmpFile = true;
 
-            if ( !fItem.isVirtual() && tmpFile != null )
+            try
             {
+                InputStream inputStream = null;
+                OutputStream tmpFileStream = null;
+
                 try
                 {
-                    // we should prepare a file for inspectors
-                    for ( StorageFileItemInspector inspector : handlingInspectors )
-                    {
-                        if ( inspector.isHandled( item ) )
-                        {
-                            try
-                            {
-                                inspector.processStorageFileItem( fItem, tmpFile );
-                            }
-                            catch ( Exception ex )
-                            {
-                                getLogger().warn(
-                                    "Inspector " + inspector.getClass() + " throw exception during inspection of "
-                                        + item.getRepositoryItemUid() + ", continuing...", ex );
-                            }
-                        }
-                    }
+                    // unpack the file
+                    tmpFile =
+                        File.createTempFile( "px-" + item.getName(), ".tmp",
+                            applicationConfiguration.getTemporaryDirectory() );
+
+                    inputStream = content.getContent();
+
+                    tmpFileStream = new FileOutputStream( tmpFile );
+
+                    IOUtils.copy( inputStream, tmpFileStream );
+
+                    tmpFileStream.flush();
+
+                    tmpFileStream.close();
                 }
                 finally
                 {
-                    if ( deleteTmpFile && tmpFile != null )
-                    {
-                        tmpFile.delete();
-                    }
+                    IOUtil.close( inputStream );
+
+                    IOUtil.close( tmpFileStream );
+                }
+            }
+            catch ( IOException ex )
+            {
+                getLogger().warn( "Could not create file from " + item.getRepositoryItemUid(), ex );
 
-                    tmpFile = null;
+                if ( tmpFile != null )
+                {
+                    tmpFile.delete();
                 }
+
+                return;
             }
         }
-        else
+
+        try
         {
-            for ( StorageItemInspector inspector : getItemInspectorList() )
+            // we should prepare a file for inspectors
+            for ( StorageFileItemInspector inspector : inspectors )
             {
-                if ( inspector.isHandled( item ) )
+                try
                 {
-                    try
-                    {
-                        inspector.processStorageItem( item );
-                    }
-                    catch ( Exception ex )
-                    {
-                        getLogger().warn(
-                            "Inspector " + inspector.getClass() + " throw exception during inspection of "
-                                + item.getRepositoryItemUid() + ", continuing...", ex );
-                    }
+                    inspector.processStorageFileItem( item, tmpFile );
+                }
+                catch ( Exception ex )
+                {
+                    getLogger().warn(
+                        "Inspector " + inspector.getClass() + " throw exception during inspection of "
+                            + item.getRepositoryItemUid() + ", continuing...", ex );
                 }
             }
         }
-        // result.setDate( LocalStorageItem.LOCAL_ITEM_LAST_INSPECTED_KEY, new Date() );
+        finally
+        {
+            if ( deleteTmpFile )
+            {
+                tmpFile.delete();
+            }
+        }
     }
 
 }
@@ -0,0 +1,501 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Initializable;
+import org.codehaus.plexus.util.IOUtil;
+import org.sonatype.nexus.configuration.application.ApplicationConfiguration;
+import org.sonatype.nexus.proxy.access.Action;
+import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.DefaultStorageCollectionItem;
+import org.sonatype.nexus.proxy.item.DefaultStorageCompositeFileItem;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.DefaultStorageLinkItem;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StorageCollectionItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.uid.IsMetadataMaintainedAttribute;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+
+/**
+ * AttributeStorage implementation keeping attributes in compact binary form, in append-only memory mapped segment
+ * files, one set of segments per repository (see {@link AttributeSegmentStore}). Lookups are served from an in-memory
+ * index, superseded records are reclaimed by a background compaction. On first use of a repository, the attributes
+ * stored by {@link DefaultFSAttributeStorage} (if any) are migrated.
+ * 
+ * @author cstamas
+ */
+@Component( role = AttributeStorage.class, hint = "mapped" )
+public class DefaultMappedAttributeStorage
+    implements AttributeStorage, Initializable, Disposable
+{
+    public static final String SEGMENT_SIZE_KEY = "nexus.attributes.mapped.segmentSize";
+
+    public static final String COMPACTION_PERIOD_KEY = "nexus.attributes.mapped.compactionPeriodMinutes";
+
+    /**
+     * Sealed segments having at least this ratio of superseded records are compacted.
+     */
+    private static final double COMPACTION_GARBAGE_RATIO = 0.5d;
+
+    private static final String MIGRATED_MARKER = "migrated";
+
+    @Requirement
+    private Logger logger;
+
+    @Requirement
+    private ApplicationConfiguration applicationConfiguration;
+
+    private final StorageItemBinaryCodec codec = new StorageItemBinaryCodec();
+
+    private final ConcurrentHashMap<String, AttributeSegmentStore> stores =
+        new ConcurrentHashMap<String, AttributeSegmentStore>();
+
+    private final int segmentSize = SystemPropertiesHelper.getInteger( SEGMENT_SIZE_KEY, 4 * 1024 * 1024 );
+
+    private final int compactionPeriod = SystemPropertiesHelper.getInteger( COMPACTION_PERIOD_KEY, 10 );
+
+    /**
+     * The base dir.
+     */
+    private File workingDirectory;
+
+    private ScheduledExecutorService compactionExecutor;
+
+    protected Logger getLogger()
+    {
+        return logger;
+    }
+
+    public void initialize()
+    {
+        compactionExecutor =
+            Executors.newSingleThreadScheduledExecutor( new NexusThreadFactory( "nxattrcompact",
+                "Nexus attribute compaction", Thread.MIN_PRIORITY, true ) );
+
+        compactionExecutor.scheduleWithFixedDelay( new Runnable()
+        {
+            public void run()
+            {
+                compact();
+            }
+        }, compactionPeriod, compactionPeriod, TimeUnit.MINUTES );
+    }
+
+    public void dispose()
+    {
+        if ( compactionExecutor != null )
+        {
+            compactionExecutor.shutdownNow();
+        }
+
+        closeStores();
+    }
+
+    /**
+     * Gets the base dir.
+     * 
+     * @return the base dir
+     */
+    public synchronized File getWorkingDirectory()
+    {
+        if ( workingDirectory == null )
+        {
+            workingDirectory = applicationConfiguration.getWorkingDirectory( "proxy/attributes-mapped" );
+        }
+
+        return workingDirectory;
+    }
+
+    public synchronized void setWorkingDirectory( File baseDir )
+    {
+        closeStores();
+
+        this.workingDirectory = baseDir;
+    }
+
+    /**
+     * Compacts the segments of all the opened repository stores.
+     */
+    public void compact()
+    {
+        for ( Map.Entry<String, AttributeSegmentStore> entry : stores.entrySet() )
+        {
+            try
+            {
+                int reclaimed = entry.getValue().compact( COMPACTION_GARBAGE_RATIO );
+
+                if ( reclaimed > 0 && getLogger().isDebugEnabled() )
+                {
+                    getLogger().debug(
+                        "Reclaimed " + reclaimed + " attribute segment(s) of repository " + entry.getKey() );
+                }
+            }
+            catch ( IOException e )
+            {
+                getLogger().warn( "Got IOException during compaction of attributes of repository " + entry.getKey(),
+                    e );
+            }
+        }
+    }
+
+    protected boolean IsMetadataMaintained( RepositoryItemUid uid )
+    {
+        Boolean isMetadataMaintained = uid.getAttributeValue( IsMetadataMaintainedAttribute.class );
+
+        if ( isMetadataMaintained != null )
+        {
+            return isMetadataMaintained.booleanValue();
+        }
+        else
+        {
+            // safest
+            return true;
+        }
+    }
+
+    public boolean deleteAttributes( RepositoryItemUid uid )
+    {
+        if ( !IsMetadataMaintained( uid ) )
+        {
+            // do nothing
+            return false;
+        }
+
+        uid.lockAttributes( Action.delete );
+
+        try
+        {
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( "Deleting attributes on UID=" + uid.toString() );
+            }
+
+            try
+            {
+                return getStore( uid.getRepository().getId() ).delete( uid.getPath() );
+            }
+            catch ( IOException e )
+            {
+                getLogger().warn( "Got IOException during delete of UID=" + uid.toString(), e );
+
+                return false;
+            }
+        }
+        finally
+        {
+            uid.unlockAttributes();
+        }
+    }
+
+    public AbstractStorageItem getAttributes( RepositoryItemUid uid )
+    {
+        if ( !IsMetadataMaintained( uid ) )
+        {
+            // do nothing
+            return null;
+        }
+
+        uid.lockAttributes( Action.read );
+
+        try
+        {
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( "Loading attributes on UID=" + uid.toString() );
+            }
+
+            return doGetAttributes( uid );
+        }
+        finally
+        {
+            uid.unlockAttributes();
+        }
+    }
+
+    public void putAttribute( StorageItem item )
+    {
+        if ( !IsMetadataMaintained( item.getRepositoryItemUid() ) )
+        {
+            // do nothing
+            return;
+        }
+
+        RepositoryItemUid origUid = item.getRepositoryItemUid();
+
+        origUid.lockAttributes( Action.create );
+
+        try
+        {
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( "Storing attributes on UID=" + item.getRepositoryItemUid() );
+            }
+
+            if ( StorageCollectionItem.class.isAssignableFrom( item.getClass() ) )
+            {
+                // not saving attributes for directories anymore
+                return;
+            }
+
+            try
+            {
+                AbstractStorageItem onDisk = doGetAttributes( origUid );
+
+                if ( onDisk != null && ( onDisk.getGeneration() > item.getGeneration() ) )
+                {
+                    // change detected, overlay the to be saved onto the newer one and swap
+                    onDisk.setResourceStoreRequest( item.getResourceStoreRequest() );
+
+                    onDisk.overlay( item );
+
+                    // and overlay other things too
+                    onDisk.setRepositoryItemUid( item.getRepositoryItemUid() );
+                    onDisk.setReadable( item.isReadable() );
+                    onDisk.setWritable( item.isWritable() );
+
+                    item = onDisk;
+                }
+
+                item.incrementGeneration();
+
+                getStore( origUid.getRepository().getId() ).put( origUid.getPath(), codec.encode( item ) );
+            }
+            catch ( IOException ex )
+            {
+                getLogger().error( "Got IOException during store of UID=" + item.getRepositoryItemUid(), ex );
+            }
+        }
+        finally
+        {
+            origUid.unlockAttributes();
+        }
+    }
+
+    // ==
+
+    protected AbstractStorageItem doGetAttributes( RepositoryItemUid uid )
+    {
+        AbstractStorageItem result = null;
+
+        try
+        {
+            final byte[] bytes = getStore( uid.getRepository().getId() ).get( uid.getPath() );
+
+            if ( bytes != null )
+            {
+                result = codec.decode( uid, bytes );
+
+                // fixing remoteChecked
+                if ( result.getRemoteChecked() == 0 || result.getRemoteChecked() == 1 )
+                {
+                    result.setRemoteChecked( System.currentTimeMillis() );
+
+                    result.setExpired( true );
+                }
+
+                // fixing lastRequested
+                if ( result.getLastRequested() == 0 )
+                {
+                    result.setLastRequested( System.currentTimeMillis() );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            // it is corrupt
+            if ( getLogger().isDebugEnabled() )
+            {
+                // we log the stacktrace
+                getLogger().info( "Attributes of " + uid + " are corrupt, deleting it.", e );
+            }
+            else
+            {
+                // just remark about this
+                getLogger().info( "Attributes of " + uid + " are corrupt, deleting it." );
+            }
+
+            deleteAttributes( uid );
+        }
+
+        return result;
+    }
+
+    protected AttributeSegmentStore getStore( final String repositoryId )
+        throws IOException
+    {
+        AttributeSegmentStore store = stores.get( repositoryId );
+
+        if ( store == null )
+        {
+            store = openStore( repositoryId );
+        }
+
+        return store;
+    }
+
+    protected synchronized AttributeSegmentStore openStore( final String repositoryId )
+        throws IOException
+    {
+        AttributeSegmentStore store = stores.get( repositoryId );
+
+        if ( store == null )
+        {
+            final File directory = new File( getWorkingDirectory(), repositoryId );
+
+            store = new AttributeSegmentStore( getLogger(), directory, segmentSize );
+
+            store.open();
+
+            final File marker = new File( store.getDirectory(), MIGRATED_MARKER );
+
+            if ( !marker.exists() )
+            {
+                migrateFromXStreamStorage( repositoryId, store );
+
+                if ( !marker.createNewFile() )
+                {
+                    getLogger().warn( "Could not create attribute migration marker " + marker );
+                }
+            }
+
+            stores.put( repositoryId, store );
+        }
+
+        return store;
+    }
+
+    protected synchronized void closeStores()
+    {
+        for ( AttributeSegmentStore store : stores.values() )
+        {
+            store.close();
+        }
+
+        stores.clear();
+    }
+
+    // ==
+
+    /**
+     * One-shot migration of the XStream attribute files of {@link DefaultFSAttributeStorage} belonging to the given
+     * repository. The legacy files are left untouched.
+     * 
+     * @param repositoryId
+     * @param store
+     * @throws IOException
+     */
+    protected void migrateFromXStreamStorage( final String repositoryId, final AttributeSegmentStore store )
+        throws IOException
+    {
+        final File legacyBase =
+            new File( new File( applicationConfiguration.getWorkingDirectory(), "proxy/attributes" ), repositoryId );
+
+        if ( !legacyBase.isDirectory() )
+        {
+            return;
+        }
+
+        getLogger().info( "Migrating attributes of repository " + repositoryId + " from " + legacyBase );
+
+        final XStream xstream = new XStream();
+        xstream.alias( "file", DefaultStorageFileItem.class );
+        xstream.alias( "compositeFile", DefaultStorageCompositeFileItem.class );
+        xstream.alias( "collection", DefaultStorageCollectionItem.class );
+        xstream.alias( "link", DefaultStorageLinkItem.class );
+
+        final int migrated = migrateDirectory( xstream, store, legacyBase, "" );
+
+        getLogger().info( "Migrated attributes of " + migrated + " items of repository " + repositoryId );
+    }
+
+    protected int migrateDirectory( final XStream xstream, final AttributeSegmentStore store, final File directory,
+        final String path )
+        throws IOException
+    {
+        int migrated = 0;
+
+        final File[] files = directory.listFiles();
+
+        if ( files == null )
+        {
+            return migrated;
+        }
+
+        for ( File file : files )
+        {
+            final String itemPath = path + RepositoryItemUid.PATH_SEPARATOR + file.getName();
+
+            if ( file.isDirectory() )
+            {
+                migrated += migrateDirectory( xstream, store, file, itemPath );
+            }
+            else if ( !store.contains( itemPath ) )
+            {
+                FileInputStream fis = null;
+
+                try
+                {
+                    fis = new FileInputStream( file );
+
+                    final StorageItem item = (StorageItem) xstream.fromXML( fis );
+
+                    if ( !( item instanceof StorageCollectionItem ) )
+                    {
+                        store.put( itemPath, codec.encode( item ) );
+
+                        migrated++;
+                    }
+                }
+                catch ( XStreamException e )
+                {
+                    getLogger().info( "Attributes in " + file + " are corrupt, not migrating them." );
+                }
+                catch ( NullPointerException e )
+                {
+                    // NEXUS-3911: the XMLpull parser throws NPE on malformed XML
+                    getLogger().info( "Attributes in " + file + " are corrupt, not migrating them." );
+                }
+                finally
+                {
+                    IOUtil.close( fis );
+                }
+            }
+        }
+
+        return migrated;
+    }
+}
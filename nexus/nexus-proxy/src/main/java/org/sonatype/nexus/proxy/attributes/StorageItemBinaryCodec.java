@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.DefaultStorageCollectionItem;
+import org.sonatype.nexus.proxy.item.DefaultStorageCompositeFileItem;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.DefaultStorageLinkItem;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StorageCollectionItem;
+import org.sonatype.nexus.proxy.item.StorageCompositeFileItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StorageLinkItem;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Compact binary form of the persisted item attributes, covering the same fields XStream persists for the "file",
+ * "compositeFile", "collection" and "link" items.
+ * 
+ * @author cstamas
+ */
+public class StorageItemBinaryCodec
+{
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte TYPE_FILE = 1;
+
+    private static final byte TYPE_COMPOSITE_FILE = 2;
+
+    private static final byte TYPE_COLLECTION = 3;
+
+    private static final byte TYPE_LINK = 4;
+
+    public byte[] encode( final StorageItem item )
+        throws IOException
+    {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream( 256 );
+
+        final DataOutputStream out = new DataOutputStream( bos );
+
+        out.writeByte( FORMAT_VERSION );
+        out.writeByte( getType( item ) );
+        out.writeInt( item.getGeneration() );
+        writeString( out, item.getPath() );
+        out.writeBoolean( item.isReadable() );
+        out.writeBoolean( item.isWritable() );
+        writeString( out, item.getRepositoryId() );
+        out.writeLong( item.getCreated() );
+        out.writeLong( item.getModified() );
+        out.writeLong( item.getStoredLocally() );
+        out.writeLong( item.getRemoteChecked() );
+        out.writeLong( item.getLastRequested() );
+        out.writeBoolean( item.isExpired() );
+        writeString( out, item.getRemoteUrl() );
+
+        final Map<String, String> attributes = item.getAttributes();
+
+        out.writeInt( attributes.size() );
+
+        for ( Map.Entry<String, String> entry : attributes.entrySet() )
+        {
+            writeString( out, entry.getKey() );
+            writeString( out, entry.getValue() );
+        }
+
+        if ( item instanceof StorageFileItem )
+        {
+            out.writeLong( ( (StorageFileItem) item ).getLength() );
+        }
+
+        out.flush();
+
+        return bos.toByteArray();
+    }
+
+    public AbstractStorageItem decode( final RepositoryItemUid uid, final byte[] bytes )
+        throws IOException
+    {
+        final DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes ) );
+
+        final byte version = in.readByte();
+
+        if ( version != FORMAT_VERSION )
+        {
+            throw new IOException( "Unsupported attributes format version " + version + " for UID=" + uid );
+        }
+
+        final byte type = in.readByte();
+        final int generation = in.readInt();
+        final String path = readString( in );
+        final boolean readable = in.readBoolean();
+        final boolean writable = in.readBoolean();
+
+        final AbstractStorageItem result = createItem( uid.getRepository(), type, path, readable, writable );
+
+        result.setRepositoryItemUid( uid );
+        result.setGeneration( generation );
+        result.setRepositoryId( readString( in ) );
+        result.setCreated( in.readLong() );
+        result.setModified( in.readLong() );
+        result.setStoredLocally( in.readLong() );
+        result.setRemoteChecked( in.readLong() );
+        result.setLastRequested( in.readLong() );
+        result.setExpired( in.readBoolean() );
+        result.setRemoteUrl( readString( in ) );
+
+        final int attributeCount = in.readInt();
+
+        for ( int i = 0; i < attributeCount; i++ )
+        {
+            final String key = readString( in );
+
+            result.getAttributes().put( key, readString( in ) );
+        }
+
+        if ( result instanceof DefaultStorageFileItem )
+        {
+            ( (DefaultStorageFileItem) result ).setLength( in.readLong() );
+        }
+
+        return result;
+    }
+
+    // ==
+
+    protected byte getType( final StorageItem item )
+    {
+        if ( item instanceof StorageCompositeFileItem )
+        {
+            return TYPE_COMPOSITE_FILE;
+        }
+        else if ( item instanceof StorageFileItem )
+        {
+            return TYPE_FILE;
+        }
+        else if ( item instanceof StorageCollectionItem )
+        {
+            return TYPE_COLLECTION;
+        }
+        else if ( item instanceof StorageLinkItem )
+        {
+            return TYPE_LINK;
+        }
+        else
+        {
+            throw new IllegalArgumentException( "Unsupported item of class " + item.getClass().getName() );
+        }
+    }
+
+    protected AbstractStorageItem createItem( final Repository repository, final byte type, final String path,
+        final boolean readable, final boolean writable )
+        throws IOException
+    {
+        final ResourceStoreRequest request = new ResourceStoreRequest( path, true, false );
+
+        switch ( type )
+        {
+            case TYPE_FILE:
+                return new DefaultStorageFileItem( repository, request, readable, writable, null );
+
+            case TYPE_COMPOSITE_FILE:
+                return new DefaultStorageCompositeFileItem( repository, request, readable, writable, null, null );
+
+            case TYPE_COLLECTION:
+                return new DefaultStorageCollectionItem( repository, request, readable, writable );
+
+            case TYPE_LINK:
+                return new DefaultStorageLinkItem( repository, request, readable, writable, null );
+
+            default:
+                throw new IOException( "Unknown item type " + type + " on path " + path );
+        }
+    }
+
+    protected void writeString( final DataOutputStream out, final String str )
+        throws IOException
+    {
+        if ( str == null )
+        {
+            out.writeInt( -1 );
+        }
+        else
+        {
+            final byte[] bytes = str.getBytes( "UTF-8" );
+
+            out.writeInt( bytes.length );
+
+            out.write( bytes );
+        }
+    }
+
+    protected String readString( final DataInputStream in )
+        throws IOException
+    {
+        final int length = in.readInt();
+
+        if ( length < 0 )
+        {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length];
+
+        in.readFully( bytes );
+
+        return new String( bytes, "UTF-8" );
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.plexus.logging.Logger;
+import org.sonatype.nexus.proxy.access.Action;
+import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StorageItem;
+
+/**
+ * AttributeStorage decorator buffering the timestamp-only updates ("lastRequested" and "remoteChecked" touches) in
+ * memory. Repeated touches of the same UID are merged (last one wins), and are written to the delegate in batches by
+ * {@link #flush()}. Reads overlay the pending touches onto the attributes coming from the delegate, so the buffering
+ * is not visible to callers. Every other write goes synchronously to the delegate, and supersedes the pending touches
+ * of the item.
+ * 
+ * @author cstamas
+ */
+public class WriteBehindAttributeStorage
+    implements AttributeStorage
+{
+    private final Logger logger;
+
+    private final AttributeStorage delegate;
+
+    private final ConcurrentHashMap<RepositoryItemUid, PendingTouch> pendingTouches =
+        new ConcurrentHashMap<RepositoryItemUid, PendingTouch>();
+
+    public WriteBehindAttributeStorage( final Logger logger, final AttributeStorage delegate )
+    {
+        this.logger = logger;
+
+        this.delegate = delegate;
+    }
+
+    public AttributeStorage getDelegate()
+    {
+        return delegate;
+    }
+
+    public int getPendingCount()
+    {
+        return pendingTouches.size();
+    }
+
+    public AbstractStorageItem getAttributes( final RepositoryItemUid uid )
+    {
+        final AbstractStorageItem item = delegate.getAttributes( uid );
+
+        if ( item != null )
+        {
+            final PendingTouch touch = pendingTouches.get( uid );
+
+            if ( touch != null )
+            {
+                touch.applyTo( item );
+            }
+        }
+
+        return item;
+    }
+
+    public void putAttribute( final StorageItem item )
+    {
+        // this write carries the latest state of the item
+        discardPendingTouch( item.getRepositoryItemUid() );
+
+        delegate.putAttribute( item );
+    }
+
+    public boolean deleteAttributes( final RepositoryItemUid uid )
+    {
+        discardPendingTouch( uid );
+
+        return delegate.deleteAttributes( uid );
+    }
+
+    // ==
+
+    public void touchLastRequested( final RepositoryItemUid uid, final long timestamp )
+    {
+        while ( !getPendingTouch( uid ).setLastRequested( timestamp ) )
+        {
+            // it was being flushed, retry with a new one
+        }
+    }
+
+    public void touchRemoteChecked( final RepositoryItemUid uid, final long timestamp )
+    {
+        while ( !getPendingTouch( uid ).setRemoteChecked( timestamp ) )
+        {
+            // it was being flushed, retry with a new one
+        }
+    }
+
+    /**
+     * Writes out all the pending touches.
+     * 
+     * @return the count of UIDs having touches written out.
+     */
+    public int flush()
+    {
+        int flushed = 0;
+
+        for ( RepositoryItemUid uid : new ArrayList<RepositoryItemUid>( pendingTouches.keySet() ) )
+        {
+            if ( flush( uid ) )
+            {
+                flushed++;
+            }
+        }
+
+        return flushed;
+    }
+
+    /**
+     * Writes out the pending touches of given UID, if any.
+     * 
+     * @param uid
+     * @return true if there were pending touches.
+     */
+    public boolean flush( final RepositoryItemUid uid )
+    {
+        uid.lockAttributes( Action.create );
+
+        try
+        {
+            final PendingTouch touch = pendingTouches.remove( uid );
+
+            if ( touch == null || !touch.seal() )
+            {
+                return false;
+            }
+
+            final AbstractStorageItem item = delegate.getAttributes( uid );
+
+            if ( item != null )
+            {
+                touch.applyTo( item );
+
+                item.setRepositoryItemUid( uid );
+
+                delegate.putAttribute( item );
+            }
+
+            return true;
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "Could not write out touched attributes of UID=" + uid, e );
+
+            return false;
+        }
+        finally
+        {
+            uid.unlockAttributes();
+        }
+    }
+
+    // ==
+
+    /**
+     * Drops the pending touches of given UID, sealing them as flush does, so a concurrent toucher still holding them
+     * retries with a new one instead of touching a dropped one.
+     */
+    protected void discardPendingTouch( final RepositoryItemUid uid )
+    {
+        final PendingTouch touch = pendingTouches.remove( uid );
+
+        if ( touch != null )
+        {
+            touch.seal();
+        }
+    }
+
+    protected PendingTouch getPendingTouch( final RepositoryItemUid uid )
+    {
+        PendingTouch touch = pendingTouches.get( uid );
+
+        if ( touch == null )
+        {
+            touch = new PendingTouch();
+
+            final PendingTouch existing = pendingTouches.putIfAbsent( uid, touch );
+
+            if ( existing != null )
+            {
+                touch = existing;
+            }
+        }
+
+        return touch;
+    }
+
+    /**
+     * The merged touches of one UID. Once sealed by flush, it does not accept more touches.
+     */
+    protected static class PendingTouch
+    {
+        private static final long UNSET = -1;
+
+        private long lastRequested = UNSET;
+
+        private long remoteChecked = UNSET;
+
+        private boolean sealed = false;
+
+        public synchronized boolean setLastRequested( final long lastRequested )
+        {
+            if ( sealed )
+            {
+                return false;
+            }
+
+            this.lastRequested = lastRequested;
+
+            return true;
+        }
+
+        public synchronized boolean setRemoteChecked( final long remoteChecked )
+        {
+            if ( sealed )
+            {
+                return false;
+            }
+
+            this.remoteChecked = remoteChecked;
+
+            return true;
+        }
+
+        public synchronized boolean seal()
+        {
+            if ( sealed )
+            {
+                return false;
+            }
+
+            sealed = true;
+
+            return true;
+        }
+
+        public synchronized void applyTo( final StorageItem item )
+        {
+            if ( lastRequested != UNSET )
+            {
+                item.setLastRequested( lastRequested );
+            }
+
+            if ( remoteChecked != UNSET )
+            {
+                item.setRemoteChecked( remoteChecked );
+
+                item.setExpired( false );
+            }
+        }
+    }
+}
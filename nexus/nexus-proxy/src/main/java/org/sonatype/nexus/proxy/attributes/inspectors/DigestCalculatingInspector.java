@@ -22,25 +22,29 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.apache.commons.codec.binary.Hex;
 import org.codehaus.plexus.component.annotations.Component;
 import org.sonatype.nexus.proxy.attributes.AbstractStorageFileItemInspector;
+import org.sonatype.nexus.proxy.attributes.ContentInspection;
 import org.sonatype.nexus.proxy.attributes.StorageFileItemInspector;
+import org.sonatype.nexus.proxy.attributes.StreamingStorageFileItemInspector;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 
 /**
  * The Class DigestCalculatingInspector calculates MD5 and SHA1 digests of a file and stores them into extended
- * attributes.
+ * attributes. The digests are calculated while the content is written to local storage, if possible.
  * 
  * @author cstamas
  */
 @Component( role = StorageFileItemInspector.class, hint = "digest" )
 public class DigestCalculatingInspector
     extends AbstractStorageFileItemInspector
+    implements StreamingStorageFileItemInspector
 {
 
     /** The digest md5 key. */
@@ -60,56 +64,102 @@ public class DigestCalculatingInspector
 
     public boolean isHandled( StorageItem item )
     {
-        if ( item instanceof StorageFileItem )
+        if ( item instanceof StorageFileItem && item.getItemContext().containsKey( StorageFileItem.DIGEST_SHA1_KEY ) )
         {
-            if ( item.getItemContext().containsKey( StorageFileItem.DIGEST_SHA1_KEY ) )
-            {
-                item.getAttributes().put( DIGEST_SHA1_KEY,
-                    String.valueOf( item.getItemContext().get( StorageFileItem.DIGEST_SHA1_KEY ) ) );
+            // digests are already known, they are lifted from context by liftDigests()
+            return false;
+        }
+
+        // handling all files otherwise
+        return true;
+    }
 
-                // do this one "blindly"
-                item.getAttributes().put( DIGEST_MD5_KEY,
-                    String.valueOf( item.getItemContext().get( StorageFileItem.DIGEST_MD5_KEY ) ) );
+    /**
+     * Copies the digests already calculated (ie. while the content was transferred from remote) from item context
+     * into item attributes.
+     * 
+     * @param item
+     * @return true if the digests were known, false if they need to be calculated
+     */
+    public static boolean liftDigests( StorageItem item )
+    {
+        if ( item instanceof StorageFileItem && item.getItemContext().containsKey( StorageFileItem.DIGEST_SHA1_KEY ) )
+        {
+            item.getAttributes().put( DIGEST_SHA1_KEY,
+                String.valueOf( item.getItemContext().get( StorageFileItem.DIGEST_SHA1_KEY ) ) );
 
-                // we did our job, we "lifted" the digest from context
-                return false;
-            }
+            // do this one "blindly"
+            item.getAttributes().put( DIGEST_MD5_KEY,
+                String.valueOf( item.getItemContext().get( StorageFileItem.DIGEST_MD5_KEY ) ) );
 
+            return true;
         }
 
-        // handling all files otherwise
-        return true;
+        return false;
+    }
+
+    public ContentInspection startInspection( StorageFileItem item )
+        throws Exception
+    {
+        return new DigestInspection();
     }
 
     public void processStorageFileItem( StorageFileItem item, File file )
         throws Exception
     {
+        DigestInspection inspection = new DigestInspection();
+
         InputStream fis = new FileInputStream( file );
         try
         {
-            byte[] buffer = new byte[1024];
-            MessageDigest md5 = MessageDigest.getInstance( "MD5" );
-            MessageDigest sha1 = MessageDigest.getInstance( "SHA1" );
+            byte[] buffer = new byte[8192];
             int numRead;
-            do
+            while ( ( numRead = fis.read( buffer ) ) != -1 )
             {
-                numRead = fis.read( buffer );
-                if ( numRead > 0 )
-                {
-                    md5.update( buffer, 0, numRead );
-                    sha1.update( buffer, 0, numRead );
-                }
+                inspection.update( buffer, 0, numRead );
             }
-            while ( numRead != -1 );
-            String md5digestStr = new String( Hex.encodeHex( md5.digest() ) );
-            String sha1DigestStr = new String( Hex.encodeHex( sha1.digest() ) );
-            item.getAttributes().put( DIGEST_MD5_KEY, md5digestStr );
-            item.getAttributes().put( DIGEST_SHA1_KEY, sha1DigestStr );
         }
         finally
         {
             fis.close();
         }
+
+        inspection.complete( item );
+    }
+
+    // ==
+
+    private static class DigestInspection
+        implements ContentInspection
+    {
+        private final MessageDigest md5;
+
+        private final MessageDigest sha1;
+
+        public DigestInspection()
+            throws NoSuchAlgorithmException
+        {
+            this.md5 = MessageDigest.getInstance( "MD5" );
+            this.sha1 = MessageDigest.getInstance( "SHA1" );
+        }
+
+        public void update( byte[] buffer, int offset, int length )
+        {
+            md5.update( buffer, offset, length );
+            sha1.update( buffer, offset, length );
+        }
+
+        public void complete( StorageFileItem item )
+        {
+            String md5digestStr = new String( Hex.encodeHex( md5.digest() ) );
+            String sha1DigestStr = new String( Hex.encodeHex( sha1.digest() ) );
+            item.getAttributes().put( DIGEST_MD5_KEY, md5digestStr );
+            item.getAttributes().put( DIGEST_SHA1_KEY, sha1DigestStr );
+
+            // keep them in context too, as ChecksummingContentLocator did
+            item.getItemContext().put( StorageFileItem.DIGEST_MD5_KEY, md5digestStr );
+            item.getItemContext().put( StorageFileItem.DIGEST_SHA1_KEY, sha1DigestStr );
+        }
     }
 
 }
@@ -28,7 +28,7 @@ import org.sonatype.plexus.components.ehcache.PlexusEhCacheWrapper;
  * 
  * @author cstamas
  */
-@Component( role = CacheManager.class )
+@Component( role = CacheManager.class, hint = "ehcache" )
 public class EhCacheCacheManager
     extends AbstractLogEnabled
     implements CacheManager
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.config.CacheConfiguration;
+
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.logging.AbstractLogEnabled;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Initializable;
+import org.sonatype.nexus.proxy.events.RepositoryRegistryEventRemove;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+import org.sonatype.plexus.appevents.ApplicationEventMulticaster;
+import org.sonatype.plexus.appevents.Event;
+import org.sonatype.plexus.appevents.EventListener;
+import org.sonatype.plexus.components.ehcache.PlexusEhCacheWrapper;
+
+/**
+ * The cache manager handing out one {@link TriePathCache} per repository. Unlike the single EhCache shared by all
+ * repositories, expiring the cache of one repository costs only the size of expired subtree. The cache of a removed
+ * repository is dropped. All repository caches share one {@link TriePathCacheBudget}, hence the bound on the count of
+ * elements is global as it was with EhCache, and the least recently used elements of all repositories are evicted
+ * first. Unless set by {@link #MAX_ELEMENTS_KEY} and {@link #DEFAULT_TTL_KEY} system properties, the bound and the
+ * default time to live are taken from the {@value EhCacheCacheManager#SINGLE_PATH_CACHE_NAME} cache configured in
+ * ehcache.xml.
+ * 
+ * @author cstamas
+ */
+@Component( role = CacheManager.class )
+public class TrieCacheManager
+    extends AbstractLogEnabled
+    implements CacheManager, EventListener, Initializable
+{
+    /**
+     * Key of the system property setting the maximum count of elements in the path caches of all repositories.
+     */
+    public static final String MAX_ELEMENTS_KEY = "nexus.pathCache.maxElements";
+
+    /**
+     * Key of the system property setting the time to live of elements put without explicit expiration.
+     */
+    public static final String DEFAULT_TTL_KEY = "nexus.pathCache.defaultTimeToLiveSeconds";
+
+    @Requirement
+    private ApplicationEventMulticaster applicationEventMulticaster;
+
+    @Requirement
+    private PlexusEhCacheWrapper cacheWrapper;
+
+    private final TriePathCacheBudget budget =
+        new TriePathCacheBudget( SystemPropertiesHelper.getInteger( MAX_ELEMENTS_KEY, 100000 ) );
+
+    private volatile int defaultTimeToLive = SystemPropertiesHelper.getInteger( DEFAULT_TTL_KEY, 120 );
+
+    private final ConcurrentHashMap<String, TriePathCache> caches = new ConcurrentHashMap<String, TriePathCache>();
+
+    public void initialize()
+    {
+        applicationEventMulticaster.addEventListener( this );
+
+        applyEhCacheConfiguration();
+    }
+
+    public PathCache getPathCache( String cache )
+    {
+        TriePathCache result = caches.get( cache );
+
+        if ( result == null )
+        {
+            final TriePathCache created = new TriePathCache( cache, budget, defaultTimeToLive );
+
+            result = caches.putIfAbsent( cache, created );
+
+            if ( result == null )
+            {
+                result = created;
+            }
+            else
+            {
+                budget.unregister( created );
+            }
+        }
+
+        return result;
+    }
+
+    public void onEvent( Event<?> evt )
+    {
+        if ( evt instanceof RepositoryRegistryEventRemove )
+        {
+            TriePathCache removed = caches.remove( ( (RepositoryRegistryEventRemove) evt ).getRepository().getId() );
+
+            if ( removed != null )
+            {
+                removed.purge();
+
+                budget.unregister( removed );
+            }
+        }
+    }
+
+    public TriePathCacheBudget getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * Takes the bound and the time to live not set by system properties from the path cache configured in
+     * ehcache.xml, where they were tuned when the path caches were backed by EhCache.
+     */
+    protected void applyEhCacheConfiguration()
+    {
+        final boolean maxElementsSet = System.getProperty( MAX_ELEMENTS_KEY ) != null;
+
+        final boolean defaultTtlSet = System.getProperty( DEFAULT_TTL_KEY ) != null;
+
+        if ( cacheWrapper == null || ( maxElementsSet && defaultTtlSet ) )
+        {
+            return;
+        }
+
+        final Ehcache ehcache =
+            cacheWrapper.getEhCacheManager().getEhcache( EhCacheCacheManager.SINGLE_PATH_CACHE_NAME );
+
+        if ( ehcache == null )
+        {
+            return;
+        }
+
+        final CacheConfiguration configuration = ehcache.getCacheConfiguration();
+
+        if ( !maxElementsSet )
+        {
+            // 0 is unbounded in EhCache
+            budget.setMaxElements( configuration.getMaxElementsInMemory() > 0 ? configuration.getMaxElementsInMemory()
+                : Integer.MAX_VALUE );
+        }
+
+        if ( !defaultTtlSet )
+        {
+            defaultTimeToLive = configuration.isEternal() ? 0 : (int) configuration.getTimeToLiveSeconds();
+        }
+
+        getLogger().debug(
+            "Path caches are bound to " + budget.getMaxElements() + " elements, with default time to live of "
+                + defaultTimeToLive + " seconds." );
+    }
+}
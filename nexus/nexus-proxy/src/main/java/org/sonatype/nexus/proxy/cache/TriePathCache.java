@@ -0,0 +1,519 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A path cache of one repository, backed by a path trie (one node per path segment). Lookups are lock-free for
+ * misses, while modifications and hits (that maintain the LRU order) are done under lock of the cache. Removal with
+ * children and purge costs the size of removed subtree, and does not depend on the size of other caches or other
+ * subtrees. The count of elements is bounded by a {@link TriePathCacheBudget}, that may be shared with the caches of
+ * other repositories, the least recently used elements are evicted when the bound is reached.
+ * 
+ * @author cstamas
+ */
+public class TriePathCache
+    extends AbstractPathCache
+{
+    private final String repositoryId;
+
+    private final TriePathCacheBudget budget;
+
+    private final int defaultTimeToLiveSeconds;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    // structure is modified under lock of this, readers traverse it without lock
+    private volatile Node root = new Node( null, null );
+
+    // guarded by this: head of LRU list is the most recently used element
+    private final Node lru = new Node( null, null );
+
+    // guarded by this
+    private int size;
+
+    public TriePathCache( final String repositoryId, final int maxElements, final int defaultTimeToLiveSeconds )
+    {
+        this( repositoryId, new TriePathCacheBudget( maxElements ), defaultTimeToLiveSeconds );
+    }
+
+    public TriePathCache( final String repositoryId, final TriePathCacheBudget budget,
+                          final int defaultTimeToLiveSeconds )
+    {
+        this.repositoryId = repositoryId;
+
+        this.budget = budget;
+
+        this.defaultTimeToLiveSeconds = defaultTimeToLiveSeconds;
+
+        lru.prev = lru;
+
+        lru.next = lru;
+
+        budget.register( this );
+    }
+
+    protected String getRepositoryId()
+    {
+        return repositoryId;
+    }
+
+    public TriePathCacheBudget getBudget()
+    {
+        return budget;
+    }
+
+    public int getMaxElements()
+    {
+        return budget.getMaxElements();
+    }
+
+    /**
+     * Sets the maximum count of elements in the caches sharing the budget of this cache, evicting the least recently
+     * used elements if needed.
+     * 
+     * @param maxElements
+     */
+    public void setMaxElements( final int maxElements )
+    {
+        budget.setMaxElements( maxElements );
+    }
+
+    // ==
+
+    @Override
+    protected boolean doContains( String key )
+    {
+        final Node node = find( key );
+
+        if ( node != null && node.element != null )
+        {
+            synchronized ( this )
+            {
+                // recheck, it might be removed meanwhile
+                if ( node.element != null )
+                {
+                    if ( node.isExpired( getCurrentTime() ) )
+                    {
+                        removeElement( node );
+                    }
+                    else
+                    {
+                        unlinkLru( node );
+
+                        linkLru( node );
+
+                        hits.incrementAndGet();
+
+                        return true;
+                    }
+                }
+            }
+        }
+
+        misses.incrementAndGet();
+
+        return false;
+    }
+
+    @Override
+    protected boolean doIsExpired( String key )
+    {
+        final Node node = find( key );
+
+        return node != null && node.element != null && node.isExpired( getCurrentTime() );
+    }
+
+    @Override
+    protected void doPut( String key, Object element, int expiration )
+    {
+        synchronized ( this )
+        {
+            Node node = root;
+
+            for ( String segment : split( key ) )
+            {
+                Node child = node.getChild( segment );
+
+                if ( child == null )
+                {
+                    child = node.addChild( segment );
+                }
+
+                node = child;
+            }
+
+            final int ttl = expiration != -1 ? expiration : defaultTimeToLiveSeconds;
+
+            node.expiresAt = ttl > 0 ? getCurrentTime() + ttl * 1000L : Long.MAX_VALUE;
+
+            if ( node.element == null )
+            {
+                resize( 1 );
+            }
+            else
+            {
+                unlinkLru( node );
+            }
+
+            node.element = element;
+
+            linkLru( node );
+        }
+
+        // outside of the lock, the eldest element may be in an other cache
+        if ( budget.isExceeded() )
+        {
+            budget.evict();
+        }
+    }
+
+    @Override
+    protected synchronized boolean doRemove( String key )
+    {
+        final Node node = find( key );
+
+        if ( node != null && node.element != null )
+        {
+            removeElement( node );
+
+            return true;
+        }
+
+        return false;
+    }
+
+    public boolean removeWithChildren( String path )
+    {
+        final String key = makeKeyFromPath( path );
+
+        synchronized ( this )
+        {
+            final Node node = find( key );
+
+            if ( node == null )
+            {
+                return true;
+            }
+
+            if ( node == root )
+            {
+                doPurge();
+
+                return true;
+            }
+
+            node.parent.removeChild( node.name );
+
+            unlinkSubtree( node );
+
+            prune( node.parent );
+        }
+
+        return true;
+    }
+
+    @Override
+    protected synchronized void doPurge()
+    {
+        root = new Node( null, null );
+
+        // lookups started before the purge may still reach the old nodes, detach them so they are seen as removed and
+        // are not linked into the LRU list again
+        Node node = lru.next;
+
+        while ( node != lru )
+        {
+            final Node next = node.next;
+
+            node.element = null;
+
+            node.prev = null;
+
+            node.next = null;
+
+            node = next;
+        }
+
+        lru.prev = lru;
+
+        lru.next = lru;
+
+        resize( -size );
+    }
+
+    public synchronized CacheStatistics getStatistics()
+    {
+        return new CacheStatistics( size, misses.get(), hits.get() );
+    }
+
+    public Collection<String> listKeysInCache()
+    {
+        final List<String> keys = new ArrayList<String>();
+
+        final long now = getCurrentTime();
+
+        synchronized ( this )
+        {
+            for ( Node node = lru.next; node != lru; node = node.next )
+            {
+                if ( !node.isExpired( now ) )
+                {
+                    keys.add( node.getKey() );
+                }
+            }
+        }
+
+        return keys;
+    }
+
+    // ==
+
+    protected long getCurrentTime()
+    {
+        return System.currentTimeMillis();
+    }
+
+    protected String[] split( final String key )
+    {
+        if ( key.length() == 0 )
+        {
+            return new String[0];
+        }
+
+        return key.split( "/" );
+    }
+
+    protected Node find( final String key )
+    {
+        Node node = root;
+
+        for ( String segment : split( key ) )
+        {
+            node = node.getChild( segment );
+
+            if ( node == null )
+            {
+                return null;
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     * Returns the access stamp of the least recently used element of this cache, or {@link Long#MAX_VALUE} if the
+     * cache is empty.
+     */
+    protected synchronized long getEldestAccess()
+    {
+        return lru.prev != lru ? lru.prev.accessed : Long.MAX_VALUE;
+    }
+
+    /**
+     * Evicts the least recently used element of this cache, if it is still the one having passed in access stamp.
+     */
+    protected synchronized boolean evictEldest( final long access )
+    {
+        if ( lru.prev != lru && lru.prev.accessed == access )
+        {
+            removeElement( lru.prev );
+
+            return true;
+        }
+
+        return false;
+    }
+
+    // guarded by this
+
+    private void resize( final int delta )
+    {
+        size += delta;
+
+        budget.resize( delta );
+    }
+
+    private void removeElement( final Node node )
+    {
+        node.element = null;
+
+        unlinkLru( node );
+
+        resize( -1 );
+
+        prune( node );
+    }
+
+    /**
+     * Removes the nodes not holding elements nor children, going upward from the passed in node.
+     */
+    private void prune( Node node )
+    {
+        while ( node != null && node.parent != null && node.element == null && !node.hasChildren() )
+        {
+            node.parent.removeChild( node.name );
+
+            node = node.parent;
+        }
+    }
+
+    private void unlinkSubtree( final Node node )
+    {
+        if ( node.element != null )
+        {
+            node.element = null;
+
+            unlinkLru( node );
+
+            resize( -1 );
+        }
+
+        if ( node.children != null )
+        {
+            for ( Node child : node.children.values() )
+            {
+                unlinkSubtree( child );
+            }
+        }
+    }
+
+    private void linkLru( final Node node )
+    {
+        node.accessed = budget.nextAccess();
+
+        node.prev = lru;
+
+        node.next = lru.next;
+
+        lru.next.prev = node;
+
+        lru.next = node;
+    }
+
+    private void unlinkLru( final Node node )
+    {
+        if ( node.prev != null )
+        {
+            node.prev.next = node.next;
+
+            node.next.prev = node.prev;
+
+            node.prev = null;
+
+            node.next = null;
+        }
+    }
+
+    // ==
+
+    protected static class Node
+    {
+        private final Node parent;
+
+        private final String name;
+
+        // created lazily, as most of the nodes are leafs
+        private volatile ConcurrentHashMap<String, Node> children;
+
+        private volatile Object element;
+
+        private volatile long expiresAt;
+
+        // LRU list, guarded by the cache
+        private long accessed;
+
+        private Node prev;
+
+        private Node next;
+
+        public Node( final Node parent, final String name )
+        {
+            this.parent = parent;
+
+            this.name = name;
+        }
+
+        public Node getChild( final String name )
+        {
+            final ConcurrentHashMap<String, Node> children = this.children;
+
+            return children != null ? children.get( name ) : null;
+        }
+
+        public boolean hasChildren()
+        {
+            final ConcurrentHashMap<String, Node> children = this.children;
+
+            return children != null && !children.isEmpty();
+        }
+
+        // modifications are guarded by the cache
+
+        public Node addChild( final String name )
+        {
+            if ( children == null )
+            {
+                children = new ConcurrentHashMap<String, Node>( 4, 0.75f, 1 );
+            }
+
+            final Node child = new Node( this, name );
+
+            children.put( name, child );
+
+            return child;
+        }
+
+        public void removeChild( final String name )
+        {
+            if ( children != null )
+            {
+                children.remove( name );
+            }
+        }
+
+        public boolean isExpired( final long now )
+        {
+            return expiresAt < now;
+        }
+
+        public String getKey()
+        {
+            if ( parent == null )
+            {
+                return "";
+            }
+            else if ( parent.parent == null )
+            {
+                return name;
+            }
+            else
+            {
+                return parent.getKey() + "/" + name;
+            }
+        }
+    }
+}
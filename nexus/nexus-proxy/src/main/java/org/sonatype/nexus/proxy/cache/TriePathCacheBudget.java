@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The bound on the count of elements shared by {@link TriePathCache}s, forming one LRU over all of them. Each cache
+ * keeps it's own LRU order, but stamps the elements from a common access sequence, so when the bound is exceeded the
+ * least recently used element of all caches is evicted, regardless of the cache holding it. Hence a busy cache may
+ * use the space left unused by the idle ones.
+ *
+ * @author cstamas
+ */
+public class TriePathCacheBudget
+{
+    private final CopyOnWriteArraySet<TriePathCache> caches = new CopyOnWriteArraySet<TriePathCache>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong accessSequence = new AtomicLong();
+
+    private volatile int maxElements;
+
+    public TriePathCacheBudget( final int maxElements )
+    {
+        this.maxElements = maxElements;
+    }
+
+    public int getMaxElements()
+    {
+        return maxElements;
+    }
+
+    /**
+     * Sets the maximum count of elements in all caches sharing this budget, evicting the least recently used elements
+     * if needed.
+     *
+     * @param maxElements
+     */
+    public void setMaxElements( final int maxElements )
+    {
+        this.maxElements = maxElements;
+
+        evict();
+    }
+
+    /**
+     * Returns the count of elements in all caches sharing this budget.
+     */
+    public int getSize()
+    {
+        return size.get();
+    }
+
+    /**
+     * Evicts the least recently used elements of all caches until the bound is met. Must not be called while holding
+     * the lock of a cache.
+     */
+    public synchronized void evict()
+    {
+        while ( size.get() > maxElements )
+        {
+            TriePathCache eldest = null;
+
+            long eldestAccess = Long.MAX_VALUE;
+
+            for ( TriePathCache cache : caches )
+            {
+                final long access = cache.getEldestAccess();
+
+                if ( access < eldestAccess )
+                {
+                    eldest = cache;
+
+                    eldestAccess = access;
+                }
+            }
+
+            if ( eldest == null )
+            {
+                // all caches are empty
+                return;
+            }
+
+            // it may have been used or removed meanwhile, in which case simply look again
+            eldest.evictEldest( eldestAccess );
+        }
+    }
+
+    // ==
+
+    protected void register( final TriePathCache cache )
+    {
+        caches.add( cache );
+    }
+
+    protected void unregister( final TriePathCache cache )
+    {
+        caches.remove( cache );
+    }
+
+    protected boolean isExceeded()
+    {
+        return size.get() > maxElements;
+    }
+
+    protected void resize( final int delta )
+    {
+        size.addAndGet( delta );
+    }
+
+    protected long nextAccess()
+    {
+        return accessSequence.incrementAndGet();
+    }
+}
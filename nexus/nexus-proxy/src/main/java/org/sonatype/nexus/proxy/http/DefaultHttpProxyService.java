@@ -24,11 +24,15 @@ import java.net.Socket;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import org.codehaus.plexus.PlexusContainer;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Configuration;
 import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
 import org.codehaus.plexus.logging.Logger;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.Startable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.StartingException;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.StoppingException;
 import org.codehaus.plexus.util.StringUtils;
 import org.sonatype.configuration.ConfigurationException;
 import org.sonatype.nexus.configuration.AbstractConfigurable;
@@ -40,7 +44,9 @@ import org.sonatype.nexus.configuration.model.CHttpProxySettings;
 import org.sonatype.nexus.threads.NexusThreadFactory;
 
 /**
- * A default HTTP Proxy service. A very simple network service based on Java 5 ExecutorService.
+ * A default HTTP Proxy service. A very simple network service based on Java 5 ExecutorService. If the
+ * "nexus.httpProxy.provider" system property names another HTTP Proxy service by it's role hint (like "nio"), this
+ * one starts and stops that one instead of serving connections itself.
  * 
  * @author cstamas
  */
@@ -51,9 +57,14 @@ public class DefaultHttpProxyService
 {
     public static final int DEFAULT_TIMEOUT = 20 * 1000;
 
+    public static final String PROVIDER_KEY = "nexus.httpProxy.provider";
+
     @Requirement
     private Logger logger;
 
+    @Requirement
+    private PlexusContainer plexusContainer;
+
     @Requirement
     private ApplicationConfiguration applicationConfiguration;
 
@@ -69,6 +80,8 @@ public class DefaultHttpProxyService
 
     private Thread serverThread;
 
+    private Startable delegate;
+
     private volatile boolean running;
 
     // ==
@@ -78,6 +91,11 @@ public class DefaultHttpProxyService
         return logger;
     }
 
+    protected int getPoolSize()
+    {
+        return poolSize;
+    }
+
     // ==
 
     public boolean isEnabled()
@@ -190,13 +208,21 @@ public class DefaultHttpProxyService
             return;
         }
 
+        if ( startDelegate() )
+        {
+            running = true;
+
+            return;
+        }
+
         try
         {
             running = true;
 
             serverSocket = new ServerSocket( getPort() );
 
-            pool = Executors.newFixedThreadPool( poolSize, new NexusThreadFactory( "nxhttpproxy", "Nexus HTTP Proxy" ) );
+            pool =
+                Executors.newFixedThreadPool( poolSize, new NexusThreadFactory( "nxhttpproxy", "Nexus HTTP Proxy" ) );
 
             serverThread = new Thread( new Server( this ) );
 
@@ -218,6 +244,20 @@ public class DefaultHttpProxyService
 
         running = false;
 
+        if ( delegate != null )
+        {
+            try
+            {
+                delegate.stop();
+            }
+            catch ( StoppingException e )
+            {
+                getLogger().warn( "Exception while stopping HttpProxy service:", e );
+            }
+
+            delegate = null;
+        }
+
         if ( serverSocket != null )
         {
             try
@@ -246,6 +286,52 @@ public class DefaultHttpProxyService
         return nexusURLResolver;
     }
 
+    /**
+     * Starts the HTTP Proxy service selected by the system property, if any.
+     * 
+     * @return true if the selected service serves the connections, false if we should do it.
+     */
+    protected boolean startDelegate()
+    {
+        String provider = System.getProperty( PROVIDER_KEY );
+
+        if ( StringUtils.isBlank( provider ) || "default".equals( provider ) )
+        {
+            return false;
+        }
+
+        try
+        {
+            HttpProxyService service = plexusContainer.lookup( HttpProxyService.class, provider );
+
+            if ( !( service instanceof Startable ) )
+            {
+                getLogger().warn( "HttpProxy service \"" + provider + "\" cannot be started, using the default one." );
+
+                return false;
+            }
+
+            delegate = (Startable) service;
+
+            // the lookup started it already if this is the first one
+            delegate.start();
+
+            return true;
+        }
+        catch ( ComponentLookupException e )
+        {
+            getLogger().warn( "HttpProxy service \"" + provider + "\" not found, using the default one.", e );
+        }
+        catch ( StartingException e )
+        {
+            getLogger().warn( "HttpProxy service \"" + provider + "\" cannot be started, using the default one.", e );
+        }
+
+        delegate = null;
+
+        return false;
+    }
+
     protected class Server
         implements Runnable
     {
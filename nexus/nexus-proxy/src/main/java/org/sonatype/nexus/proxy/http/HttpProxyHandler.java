@@ -21,6 +21,7 @@ package org.sonatype.nexus.proxy.http;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.Socket;
 import java.net.URL;
@@ -58,6 +59,15 @@ public class HttpProxyHandler
         this.socket = socket;
     }
 
+    /**
+     * Creates a handler not owning a connection, usable to {@link #handle(HttpRequest, OutputStream, boolean)}
+     * requests read by someone else.
+     */
+    public HttpProxyHandler( Logger logger, HttpProxyService service, HttpProxyPolicy policy )
+    {
+        this( logger, service, policy, null );
+    }
+
     public void run()
     {
         BufferedInputStream clientIn = null;
@@ -73,48 +83,104 @@ public class HttpProxyHandler
             HttpRequest clientRequest = new HttpRequest();
             clientRequest.readInput( clientIn );
 
+            handle( clientRequest, clientOut, false );
+        }
+        catch ( Exception e )
+        {
             if ( getLogger().isDebugEnabled() )
             {
-                getLogger().debug( "HTTP Proxy request for: " + clientRequest.getUri() );
+                getLogger().debug( "Error in HttpProxyHandler: ", e );
+            }
+        }
+        finally
+        {
+            // close all the client streams so we can listen again
+            if ( clientOut != null )
+            {
+                try
+                {
+                    clientOut.close();
+                }
+                catch ( IOException e )
+                {
+                }
+            }
+            if ( clientIn != null )
+            {
+                try
+                {
+                    clientIn.close();
+                }
+                catch ( IOException e )
+                {
+                }
+            }
+            if ( socket != null )
+            {
+                try
+                {
+                    socket.close();
+                }
+                catch ( IOException e )
+                {
+                }
             }
+        }
+    }
+
+    /**
+     * Handles one client request, writing the response to client. The response is marked to keep the connection
+     * alive only if keepAlive is requested and the response is delimited by it's content length.
+     * 
+     * @return true if the connection to the client may be kept alive.
+     */
+    public boolean handle( HttpRequest clientRequest, OutputStream clientOut, boolean keepAlive )
+        throws IOException
+    {
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug( "HTTP Proxy request for: " + clientRequest.getUri() );
+        }
+
+        HttpResponse clientResponse = new HttpResponse();
+
+        clientResponse.setHttpVersion( clientRequest.getHttpVersion() );
 
-            // we support only HTTP/1.0 or HTTP/1.1 GET requests
-            // we support only Maven2
-            if ( "GET".equals( clientRequest.getMethod() )
-                && ( "HTTP/1.0".equals( clientRequest.getHttpVersion() ) || "HTTP/1.1".equals( clientRequest
-                    .getHttpVersion() ) ) )
+        // we support only HTTP/1.0 or HTTP/1.1 GET requests
+        // we support only Maven2
+        if ( "GET".equals( clientRequest.getMethod() )
+            && ( "HTTP/1.0".equals( clientRequest.getHttpVersion() ) || "HTTP/1.1".equals( clientRequest
+                .getHttpVersion() ) ) )
+        {
+            URL requestedUrl = null;
+
+            try
             {
-                HttpResponse clientResponse = new HttpResponse();
+                requestedUrl = new URL( clientRequest.getUri() );
 
-                clientResponse.setHttpVersion( clientRequest.getHttpVersion() );
+                NexusURLResolver nexusURLResolver = service.getNexusURLResolver();
 
-                URL requestedUrl = null;
+                URL resolvedUrl = nexusURLResolver.resolve( requestedUrl );
 
-                try
+                if ( resolvedUrl == null && HttpProxyPolicy.PASS_THRU.equals( policy ) )
                 {
-                    requestedUrl = new URL( clientRequest.getUri() );
-
-                    NexusURLResolver nexusURLResolver = service.getNexusURLResolver();
+                    // it is not a nexus known repos, but we are allowed to make out-bound proxying
+                    resolvedUrl = requestedUrl;
+                }
 
-                    URL resolvedUrl = nexusURLResolver.resolve( requestedUrl );
+                if ( resolvedUrl != null )
+                {
+                    int port = resolvedUrl.getDefaultPort();
 
-                    if ( resolvedUrl == null && HttpProxyPolicy.PASS_THRU.equals( policy ) )
+                    if ( resolvedUrl.getPort() != -1 )
                     {
-                        // it is not a nexus known repos, but we are allowed to make out-bound proxying
-                        resolvedUrl = requestedUrl;
+                        port = resolvedUrl.getPort();
                     }
 
-                    if ( resolvedUrl != null )
-                    {
-                        int port = resolvedUrl.getDefaultPort();
+                    Socket serverSocket = new Socket( resolvedUrl.getHost(), port );
 
-                        if ( resolvedUrl.getPort() != -1 )
-                        {
-                            port = resolvedUrl.getPort();
-                        }
-
-                        Socket serverSocket = new Socket( resolvedUrl.getHost(), port );
-                        
+                    try
+                    {
                         //Hopefully this will resolve the problem of using up all teh system sockets
                         //and running out of resources
                         serverSocket.setSoLinger( false, 0 );
@@ -139,91 +205,62 @@ public class HttpProxyHandler
 
                         clientResponse.getHeaders().put( "Via", "Nexus HTTP Proxy 0.1" );
 
+                        keepAlive = keepAlive && clientResponse.getHeaders().containsKey( "content-length" );
+
+                        if ( keepAlive )
+                        {
+                            clientResponse.getHeaders().put( "connection", "keep-alive" );
+                        }
+                        else if ( clientResponse.getHeaders().containsKey( "connection" ) )
+                        {
+                            clientResponse.getHeaders().put( "connection", "close" );
+                        }
+
                         clientResponse.write( clientOut );
 
                         serverOut.close();
 
                         serverIn.close();
-
-                        serverSocket.close();
                     }
-                    else
+                    finally
                     {
-                        clientResponse.setStatusCode( HttpResponse.FORBIDDEN );
-
-                        clientResponse.setReasonPhrase( "Forbidden: out-bound proxying is forbidden by policy" );
-
-                        clientResponse.write( clientOut );
-
-                        getLogger().info(
-                            "OutBound proxying requested, but policy forbids it: " + requestedUrl.toString() );
+                        serverSocket.close();
                     }
+
+                    return keepAlive;
                 }
-                catch ( MalformedURLException e )
+                else
                 {
-                    clientResponse.setStatusCode( HttpResponse.BAD_REQUEST );
+                    clientResponse.setStatusCode( HttpResponse.FORBIDDEN );
 
-                    clientResponse.setReasonPhrase( "Bad request: the request should contain the full URL!" );
+                    clientResponse.setReasonPhrase( "Forbidden: out-bound proxying is forbidden by policy" );
 
                     clientResponse.write( clientOut );
 
-                    getLogger().info( "Bad request for proxying: ", e );
+                    getLogger().info( "OutBound proxying requested, but policy forbids it: " + requestedUrl.toString() );
                 }
             }
-            else
+            catch ( MalformedURLException e )
             {
-                HttpResponse clientResponse = new HttpResponse();
-
-                clientResponse.setHttpVersion( clientRequest.getHttpVersion() );
+                clientResponse.setStatusCode( HttpResponse.BAD_REQUEST );
 
-                clientResponse.setStatusCode( HttpResponse.NOT_IMPLEMENTED );
-
-                clientResponse.setReasonPhrase( "Not Implemented" );
+                clientResponse.setReasonPhrase( "Bad request: the request should contain the full URL!" );
 
                 clientResponse.write( clientOut );
+
+                getLogger().info( "Bad request for proxying: ", e );
             }
         }
-        catch ( Exception e )
-        {
-            if ( getLogger().isDebugEnabled() )
-            {
-                getLogger().debug( "Error in HttpProxyHandler: ", e );
-            }
-        }
-        finally
+        else
         {
-            // close all the client streams so we can listen again
-            if ( clientOut != null )
-            {
-                try
-                {
-                    clientOut.close();
-                }
-                catch ( IOException e )
-                {
-                }
-            }
-            if ( clientIn != null )
-            {
-                try
-                {
-                    clientIn.close();
-                }
-                catch ( IOException e )
-                {
-                }
-            }
-            if ( socket != null )
-            {
-                try
-                {
-                    socket.close();
-                }
-                catch ( IOException e )
-                {
-                }
-            }
+            clientResponse.setStatusCode( HttpResponse.NOT_IMPLEMENTED );
+
+            clientResponse.setReasonPhrase( "Not Implemented" );
+
+            clientResponse.write( clientOut );
         }
-    }
 
+        // error responses have no body length, client needs the close
+        return false;
+    }
 }
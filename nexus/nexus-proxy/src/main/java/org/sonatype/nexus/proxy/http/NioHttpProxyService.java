@@ -0,0 +1,788 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.http;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Configuration;
+import org.codehaus.plexus.logging.Logger;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+
+/**
+ * A HTTP Proxy service based on NIO selectors. Connections are served by a few worker loops while they are idle or
+ * sending their request, and a pooled thread is used only while a request is being proxied. Connections are kept
+ * alive between requests if the client asks for it, and are closed after being idle for too long, or right away if
+ * there are too many of them. The default HTTP Proxy service delegates to this one if the
+ * "nexus.httpProxy.provider" system property is set to "nio".
+ * 
+ * @author cstamas
+ */
+@Component( role = HttpProxyService.class, hint = "nio" )
+public class NioHttpProxyService
+    extends DefaultHttpProxyService
+{
+    /** The max length of a request line and headers. */
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    /** How often are idle connections looked for. */
+    private static final long IDLE_CHECK_PERIOD = 1000;
+
+    /** The count of worker loops, 0 means count of available processors. */
+    @Configuration( value = "0" )
+    private int workerLoopCount;
+
+    @Configuration( value = "1000" )
+    private int maxConnections = 1000;
+
+    @Configuration( value = "60000" )
+    private int idleTimeout = 60000;
+
+    private ServerSocketChannel serverChannel;
+
+    private WorkerLoop[] workerLoops;
+
+    private ExecutorService pool;
+
+    private Thread acceptorThread;
+
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    private volatile boolean running;
+
+    // ==
+
+    public synchronized void start()
+    {
+        if ( running || !isEnabled() )
+        {
+            return;
+        }
+
+        try
+        {
+            running = true;
+
+            serverChannel = ServerSocketChannel.open();
+
+            serverChannel.socket().setReuseAddress( true );
+
+            serverChannel.socket().bind( new InetSocketAddress( getPort() ) );
+
+            pool =
+                Executors.newFixedThreadPool( getPoolSize(),
+                    new NexusThreadFactory( "nxhttpproxy", "Nexus HTTP Proxy" ) );
+
+            int loops = getWorkerLoopCount();
+
+            NexusThreadFactory loopThreadFactory = new NexusThreadFactory( "nxhttpproxyio", "Nexus HTTP Proxy IO" );
+
+            workerLoops = new WorkerLoop[loops];
+
+            for ( int i = 0; i < loops; i++ )
+            {
+                workerLoops[i] = new WorkerLoop( Selector.open() );
+
+                loopThreadFactory.newThread( workerLoops[i] ).start();
+            }
+
+            acceptorThread = loopThreadFactory.newThread( new Acceptor() );
+
+            acceptorThread.start();
+
+            getLogger().info(
+                "HttpProxy service started on port " + getPort() + " (NIO, " + loops + " worker loops, max "
+                    + maxConnections + " connections)" );
+        }
+        catch ( IOException e )
+        {
+            getLogger().error( "Cannot start HttpProxy service:", e );
+
+            stop();
+        }
+    }
+
+    public synchronized void stop()
+    {
+        getLogger().info( "HttpProxy service stopped." );
+
+        running = false;
+
+        if ( serverChannel != null )
+        {
+            try
+            {
+                serverChannel.close();
+            }
+            catch ( IOException e )
+            {
+                getLogger().warn( "Exception while stopping HttpProxy service:", e );
+            }
+        }
+
+        if ( acceptorThread != null )
+        {
+            acceptorThread.interrupt();
+        }
+
+        if ( workerLoops != null )
+        {
+            for ( WorkerLoop workerLoop : workerLoops )
+            {
+                if ( workerLoop != null )
+                {
+                    workerLoop.stop();
+                }
+            }
+        }
+
+        if ( pool != null )
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    protected int getWorkerLoopCount()
+    {
+        return workerLoopCount > 0 ? workerLoopCount : Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getConnectionCount()
+    {
+        return connectionCount.get();
+    }
+
+    protected WorkerLoop[] getWorkerLoops()
+    {
+        return workerLoops;
+    }
+
+    // ==
+
+    protected boolean isKeepAliveRequested( HttpRequest request )
+    {
+        String connection = request.getHeaders().get( "connection" );
+
+        if ( connection == null )
+        {
+            // clients talking to a proxy usually send this one
+            connection = request.getHeaders().get( "proxy-connection" );
+        }
+
+        if ( "HTTP/1.1".equals( request.getHttpVersion() ) )
+        {
+            return !"close".equalsIgnoreCase( connection );
+        }
+        else
+        {
+            return "keep-alive".equalsIgnoreCase( connection );
+        }
+    }
+
+    /**
+     * Returns the position right after the empty line ending the request headers, or -1 if not all headers arrived
+     * yet.
+     */
+    protected static int findHeaderEnd( byte[] buf, int len )
+    {
+        for ( int i = 0; i < len; i++ )
+        {
+            if ( buf[i] == '\n' )
+            {
+                if ( i + 1 < len && buf[i + 1] == '\n' )
+                {
+                    return i + 2;
+                }
+
+                if ( i + 2 < len && buf[i + 1] == '\r' && buf[i + 2] == '\n' )
+                {
+                    return i + 3;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Accepts connections in blocking mode, and hands them over to the live worker loops in round robin. Stops
+     * accepting if all worker loops failed.
+     */
+    protected class Acceptor
+        implements Runnable
+    {
+        private int next = 0;
+
+        public void run()
+        {
+            try
+            {
+                while ( running )
+                {
+                    SocketChannel channel = serverChannel.accept();
+
+                    if ( connectionCount.incrementAndGet() > maxConnections )
+                    {
+                        connectionCount.decrementAndGet();
+
+                        if ( getLogger().isDebugEnabled() )
+                        {
+                            getLogger().debug(
+                                "HttpProxy connection limit of " + maxConnections + " reached, refusing "
+                                    + channel.socket().getRemoteSocketAddress() );
+                        }
+
+                        channel.close();
+
+                        continue;
+                    }
+
+                    try
+                    {
+                        channel.configureBlocking( false );
+
+                        channel.socket().setTcpNoDelay( true );
+                    }
+                    catch ( IOException e )
+                    {
+                        connectionCount.decrementAndGet();
+
+                        channel.close();
+
+                        continue;
+                    }
+
+                    WorkerLoop workerLoop = nextWorkerLoop();
+
+                    if ( workerLoop == null )
+                    {
+                        getLogger().error(
+                            "All HttpProxy worker loops failed, HttpProxy service stops accepting connections." );
+
+                        connectionCount.decrementAndGet();
+
+                        channel.close();
+
+                        serverChannel.close();
+
+                        return;
+                    }
+
+                    workerLoop.register( channel );
+                }
+            }
+            catch ( IOException e )
+            {
+                // server channel closed, we are stopping
+            }
+        }
+
+        /**
+         * Returns the next worker loop that is not stopped, or null if all of them are.
+         */
+        protected WorkerLoop nextWorkerLoop()
+        {
+            for ( int i = 0; i < workerLoops.length; i++ )
+            {
+                WorkerLoop workerLoop = workerLoops[next];
+
+                next = ( next + 1 ) % workerLoops.length;
+
+                if ( !workerLoop.stopped )
+                {
+                    return workerLoop;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * A selector loop reading requests of the connections it owns. Once a request is complete, it is handed over to
+     * the pool, and the connection is not read until the response is written. When the loop stops, either on request
+     * or because it failed, it closes all of it's connections, including the ones handed to it later.
+     */
+    protected class WorkerLoop
+        implements Runnable
+    {
+        private final Selector selector;
+
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        private final ByteBuffer readBuffer = ByteBuffer.allocate( READ_BUFFER_SIZE );
+
+        private final Logger handlerLogger = getLogger().getChildLogger( "handler" );
+
+        private long lastIdleCheck = System.currentTimeMillis();
+
+        private volatile boolean stopped;
+
+        public WorkerLoop( Selector selector )
+        {
+            this.selector = selector;
+        }
+
+        public void stop()
+        {
+            stopped = true;
+
+            selector.wakeup();
+        }
+
+        public void register( final SocketChannel channel )
+        {
+            execute( new Runnable()
+            {
+                public void run()
+                {
+                    Connection connection = new Connection( WorkerLoop.this, channel );
+
+                    if ( stopped )
+                    {
+                        connection.close();
+
+                        return;
+                    }
+
+                    try
+                    {
+                        connection.key = channel.register( selector, SelectionKey.OP_READ, connection );
+                    }
+                    catch ( ClosedChannelException e )
+                    {
+                        connection.close();
+                    }
+                }
+            } );
+        }
+
+        /**
+         * Runs the task in the loop thread, or in the calling thread if the loop is stopped already.
+         */
+        public void execute( Runnable task )
+        {
+            tasks.add( task );
+
+            if ( stopped )
+            {
+                // the loop might have run it's last tasks already
+                runTasks();
+            }
+            else
+            {
+                selector.wakeup();
+            }
+        }
+
+        protected void runTasks()
+        {
+            Runnable task;
+
+            while ( ( task = tasks.poll() ) != null )
+            {
+                task.run();
+            }
+        }
+
+        public void run()
+        {
+            try
+            {
+                while ( !stopped )
+                {
+                    selector.select( IDLE_CHECK_PERIOD );
+
+                    runTasks();
+
+                    for ( Iterator<SelectionKey> i = selector.selectedKeys().iterator(); i.hasNext(); )
+                    {
+                        SelectionKey key = i.next();
+
+                        i.remove();
+
+                        if ( key.isValid() && key.isReadable() )
+                        {
+                            read( (Connection) key.attachment() );
+                        }
+                    }
+
+                    closeIdleConnections();
+                }
+            }
+            catch ( Exception e )
+            {
+                getLogger().error( "HttpProxy worker loop failed, closing it's connections:", e );
+            }
+            finally
+            {
+                // the acceptor skips stopped loops from now on
+                stopped = true;
+
+                try
+                {
+                    for ( SelectionKey key : selector.keys() )
+                    {
+                        ( (Connection) key.attachment() ).close();
+                    }
+
+                    selector.close();
+                }
+                catch ( Exception e )
+                {
+                    // we are stopping anyway
+                }
+
+                // connections handed over meanwhile are closed by their tasks
+                runTasks();
+            }
+        }
+
+        protected void read( Connection connection )
+        {
+            readBuffer.clear();
+
+            int read;
+
+            try
+            {
+                read = connection.channel.read( readBuffer );
+            }
+            catch ( IOException e )
+            {
+                read = -1;
+            }
+
+            if ( read == -1 )
+            {
+                connection.close();
+
+                return;
+            }
+
+            connection.lastActivity = System.currentTimeMillis();
+
+            connection.request.write( readBuffer.array(), 0, read );
+
+            dispatchRequest( connection );
+        }
+
+        /**
+         * Hands over the request to the pool if all of it's headers arrived.
+         */
+        protected void dispatchRequest( Connection connection )
+        {
+            byte[] buf = connection.request.toByteArray();
+
+            int headerEnd = findHeaderEnd( buf, buf.length );
+
+            if ( headerEnd == -1 )
+            {
+                if ( buf.length > MAX_HEADER_SIZE )
+                {
+                    connection.close();
+                }
+
+                return;
+            }
+
+            // keep what is pipelined after this request
+            connection.request.reset();
+
+            connection.request.write( buf, headerEnd, buf.length - headerEnd );
+
+            connection.busy = true;
+
+            connection.key.interestOps( 0 );
+
+            try
+            {
+                pool.execute( new RequestHandler( connection, buf, headerEnd ) );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                connection.close();
+            }
+        }
+
+        protected void closeIdleConnections()
+        {
+            long now = System.currentTimeMillis();
+
+            if ( now - lastIdleCheck < IDLE_CHECK_PERIOD )
+            {
+                return;
+            }
+
+            lastIdleCheck = now;
+
+            for ( SelectionKey key : selector.keys() )
+            {
+                Connection connection = (Connection) key.attachment();
+
+                if ( !connection.busy && now - connection.lastActivity > idleTimeout )
+                {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * A client connection owned by a worker loop. Fields are accessed by the loop thread only, except while the
+     * connection is busy, when the handler thread owns it.
+     */
+    protected class Connection
+    {
+        private final WorkerLoop loop;
+
+        private final SocketChannel channel;
+
+        private final ByteArrayOutputStream request = new ByteArrayOutputStream( 512 );
+
+        private final AtomicBoolean closed = new AtomicBoolean( false );
+
+        private SelectionKey key;
+
+        private boolean busy;
+
+        private long lastActivity = System.currentTimeMillis();
+
+        public Connection( WorkerLoop loop, SocketChannel channel )
+        {
+            this.loop = loop;
+
+            this.channel = channel;
+        }
+
+        /**
+         * Continues reading the connection after a request was served.
+         */
+        public void resume()
+        {
+            loop.execute( new Runnable()
+            {
+                public void run()
+                {
+                    if ( !channel.isOpen() )
+                    {
+                        return;
+                    }
+
+                    if ( loop.stopped )
+                    {
+                        close();
+
+                        return;
+                    }
+
+                    busy = false;
+
+                    lastActivity = System.currentTimeMillis();
+
+                    key.interestOps( SelectionKey.OP_READ );
+
+                    // it might be pipelined already
+                    loop.dispatchRequest( Connection.this );
+                }
+            } );
+        }
+
+        public void close()
+        {
+            if ( closed.compareAndSet( false, true ) )
+            {
+                connectionCount.decrementAndGet();
+
+                try
+                {
+                    channel.close();
+                }
+                catch ( IOException e )
+                {
+                    // nothing
+                }
+            }
+        }
+    }
+
+    /**
+     * Proxies one request in a pooled thread, and gives the connection back to it's loop if it is kept alive.
+     */
+    protected class RequestHandler
+        implements Runnable
+    {
+        private final Connection connection;
+
+        private final byte[] header;
+
+        private final int headerLength;
+
+        public RequestHandler( Connection connection, byte[] header, int headerLength )
+        {
+            this.connection = connection;
+
+            this.header = header;
+
+            this.headerLength = headerLength;
+        }
+
+        public void run()
+        {
+            boolean keepAlive = false;
+
+            ChannelOutputStream channelOut = new ChannelOutputStream( connection.channel );
+
+            OutputStream clientOut = new BufferedOutputStream( channelOut, READ_BUFFER_SIZE );
+
+            try
+            {
+                HttpRequest clientRequest = new HttpRequest();
+
+                clientRequest.readInput( new ByteArrayInputStream( header, 0, headerLength ) );
+
+                HttpProxyHandler handler =
+                    new HttpProxyHandler( connection.loop.handlerLogger, NioHttpProxyService.this,
+                        getHttpProxyPolicy() );
+
+                keepAlive = handler.handle( clientRequest, clientOut, isKeepAliveRequested( clientRequest ) );
+
+                clientOut.flush();
+            }
+            catch ( Exception e )
+            {
+                if ( getLogger().isDebugEnabled() )
+                {
+                    getLogger().debug( "Error in HttpProxyHandler: ", e );
+                }
+
+                keepAlive = false;
+            }
+            finally
+            {
+                channelOut.close();
+
+                if ( keepAlive && !connection.loop.stopped )
+                {
+                    connection.resume();
+                }
+                else
+                {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes to a non blocking channel, waiting with a private selector while the channel cannot take more.
+     */
+    protected static class ChannelOutputStream
+        extends OutputStream
+    {
+        private final SocketChannel channel;
+
+        private Selector selector;
+
+        public ChannelOutputStream( SocketChannel channel )
+        {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write( int b )
+            throws IOException
+        {
+            write( new byte[] { (byte) b }, 0, 1 );
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len )
+            throws IOException
+        {
+            ByteBuffer buffer = ByteBuffer.wrap( b, off, len );
+
+            while ( buffer.hasRemaining() )
+            {
+                if ( channel.write( buffer ) == 0 )
+                {
+                    awaitWritable();
+                }
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            if ( selector != null )
+            {
+                try
+                {
+                    // cancels our registration of channel
+                    selector.close();
+                }
+                catch ( IOException e )
+                {
+                    // nothing
+                }
+
+                selector = null;
+            }
+        }
+
+        protected void awaitWritable()
+            throws IOException
+        {
+            if ( selector == null )
+            {
+                selector = Selector.open();
+
+                channel.register( selector, SelectionKey.OP_WRITE );
+            }
+
+            if ( selector.select( DEFAULT_TIMEOUT ) == 0 )
+            {
+                throw new SocketTimeoutException( "Timed out writing HttpProxy response" );
+            }
+
+            selector.selectedKeys().clear();
+        }
+    }
+}
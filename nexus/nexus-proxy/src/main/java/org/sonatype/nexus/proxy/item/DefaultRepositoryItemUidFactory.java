@@ -18,13 +18,14 @@
  */
 package org.sonatype.nexus.proxy.item;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
@@ -34,7 +35,9 @@ import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
 import org.sonatype.nexus.proxy.repository.Repository;
 
 /**
- * A default factory for UIDs.
+ * A default factory for UIDs. UIDs are kept in per-repository segments (concurrent maps keyed by path) holding weak
+ * references, so UID creation does not serialize on a global lock. Reclaimed UIDs are removed from their segment
+ * by polling a reference queue, instead of periodically sweeping the whole map.
  * 
  * @author cstamas
  */
@@ -48,10 +51,16 @@ public class DefaultRepositoryItemUidFactory
     @Requirement
     private RepositoryRegistry repositoryRegistry;
 
-    private final HashMap<String, WeakReference<RepositoryItemUid>> itemUidMap =
-        new HashMap<String, WeakReference<RepositoryItemUid>>();
+    /**
+     * The segments, keyed by repository ID. Every segment maps paths to weak references of UIDs.
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, UidReference>> segments =
+        new ConcurrentHashMap<String, ConcurrentHashMap<String, UidReference>>();
 
-    private final ReentrantLock uidCreateLock = new ReentrantLock();
+    /**
+     * The queue where GC enqueues the references of reclaimed UIDs.
+     */
+    private final ReferenceQueue<RepositoryItemUid> reclaimedUids = new ReferenceQueue<RepositoryItemUid>();
 
     public RepositoryItemUid createUid( Repository repository, String path )
     {
@@ -68,39 +77,43 @@ public class DefaultRepositoryItemUidFactory
             path = RepositoryItemUid.PATH_ROOT;
         }
 
-        final String key = repository.getId() + ":" + path;
+        expungeReclaimedUids();
 
-        RepositoryItemUid toBeReturned = null;
+        final ConcurrentHashMap<String, UidReference> segment = getSegment( repository.getId() );
 
-        uidCreateLock.lock();
-
-        try
+        while ( true )
         {
             // try to get it 1st
-            WeakReference<RepositoryItemUid> ref = itemUidMap.get( key );
+            final UidReference ref = segment.get( path );
 
             if ( ref != null )
             {
-                toBeReturned = ref.get();
+                final RepositoryItemUid existing = ref.get();
 
-                if ( toBeReturned != null )
+                if ( existing != null )
                 {
-                    cleanUpItemUidMap( false );
-
-                    return toBeReturned;
+                    return existing;
                 }
             }
 
-            // not here, then put it
-            RepositoryItemUid newGuy = new DefaultRepositoryItemUid( this, repository, path );
+            // not here (or already reclaimed), then put it
+            final RepositoryItemUid newGuy = new DefaultRepositoryItemUid( this, repository, path );
 
-            itemUidMap.put( key, new WeakReference<RepositoryItemUid>( newGuy ) );
+            final UidReference newRef = new UidReference( newGuy, segment, path, reclaimedUids );
 
-            return newGuy;
-        }
-        finally
-        {
-            uidCreateLock.unlock();
+            if ( ref == null )
+            {
+                if ( segment.putIfAbsent( path, newRef ) == null )
+                {
+                    return newGuy;
+                }
+            }
+            else if ( segment.replace( path, ref, newRef ) )
+            {
+                return newGuy;
+            }
+
+            // some other thread won the race, retry with the UID it put in
         }
     }
 
@@ -137,68 +150,103 @@ public class DefaultRepositoryItemUidFactory
 
     /**
      * Used in UTs only, NOT public method! This method call should be called from UTs only, not from production code
-     * since it interferes with locking!
+     * since it iterates over all the segments!
      * 
      * @return
      */
     public int getUidCount( boolean forceClean )
     {
-        if ( forceClean )
+        expungeReclaimedUids();
+
+        int count = 0;
+
+        for ( ConcurrentHashMap<String, UidReference> segment : segments.values() )
         {
-            cleanUpItemUidMap( true );
+            if ( forceClean )
+            {
+                // the GC might have cleared the references but not yet enqueued them
+                for ( Iterator<UidReference> i = segment.values().iterator(); i.hasNext(); )
+                {
+                    if ( i.next().get() == null )
+                    {
+                        i.remove();
+                    }
+                }
+            }
+
+            count += segment.size();
         }
 
-        return itemUidMap.size();
+        return count;
     }
 
     // ==
 
-    // =v=v=v=v=v=v= This part here probably needs polishing: the retention should depend on load too =v=v=v=v=v=v=
+    protected ConcurrentHashMap<String, UidReference> getSegment( final String repositoryId )
+    {
+        ConcurrentHashMap<String, UidReference> segment = segments.get( repositoryId );
 
-    private static final long ITEM_UID_MAP_RETENTION_TIME = 5000;
+        if ( segment == null )
+        {
+            segment = new ConcurrentHashMap<String, UidReference>();
 
-    private volatile long lastClearedItemUidMap;
+            final ConcurrentHashMap<String, UidReference> existing = segments.putIfAbsent( repositoryId, segment );
 
-    private final ReentrantLock cleanupLock = new ReentrantLock();
+            if ( existing != null )
+            {
+                segment = existing;
+            }
+        }
 
-    private void cleanUpItemUidMap( boolean force )
+        return segment;
+    }
+
+    /**
+     * Removes the entries of reclaimed UIDs from their segments. The removal is conditional, hence an entry already
+     * replaced by a fresh UID for the same path is left intact.
+     */
+    protected void expungeReclaimedUids()
     {
-        // just try to lock it. If we cannot lock it, leave it, since some other thread is
-        // already doing cleanup. But even if we do succeed in locking the cleanupLock, we have the
-        // time barrier, that have to be true, to do actual cleanup.
-        if ( cleanupLock.tryLock() )
+        Reference<? extends RepositoryItemUid> ref;
+
+        while ( ( ref = reclaimedUids.poll() ) != null )
         {
-            // we are in, that means no one else is doing cleanup, and also that
-            // we acquired the lock in the same time.
-            // still, it is undecided yet, will we actually perform the cleanup, since
-            // we have a time barrier to pass also (unless force=true).
-            try
-            {
-                long now = System.currentTimeMillis();
+            final UidReference uidRef = (UidReference) ref;
 
-                if ( force || ( now - lastClearedItemUidMap > ITEM_UID_MAP_RETENTION_TIME ) )
-                {
-                    lastClearedItemUidMap = now;
+            uidRef.getSegment().remove( uidRef.getPath(), uidRef );
+        }
+    }
 
-                    for ( Iterator<ConcurrentMap.Entry<String, WeakReference<RepositoryItemUid>>> i =
-                        itemUidMap.entrySet().iterator(); i.hasNext(); )
-                    {
-                        ConcurrentMap.Entry<String, WeakReference<RepositoryItemUid>> entry = i.next();
+    // ==
 
-                        if ( entry.getValue().get() == null )
-                        {
-                            i.remove();
-                        }
-                    }
-                }
-            }
-            finally
-            {
-                cleanupLock.unlock();
-            }
+    /**
+     * Weak reference to an UID that remembers where it is stored, so it can be removed once the UID is reclaimed.
+     */
+    protected static final class UidReference
+        extends WeakReference<RepositoryItemUid>
+    {
+        private final ConcurrentMap<String, UidReference> segment;
+
+        private final String path;
+
+        public UidReference( final RepositoryItemUid uid, final ConcurrentMap<String, UidReference> segment,
+            final String path, final ReferenceQueue<RepositoryItemUid> queue )
+        {
+            super( uid, queue );
+
+            this.segment = segment;
+
+            this.path = path;
         }
-    }
 
-    // =^=^=^=^=^=^= This part here probably needs polishing: the retention should depend on load too =^=^=^=^=^=^=
+        public ConcurrentMap<String, UidReference> getSegment()
+        {
+            return segment;
+        }
 
+        public String getPath()
+        {
+            return path;
+        }
+    }
 }
@@ -25,7 +25,6 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 
 import org.codehaus.plexus.component.annotations.Component;
@@ -85,14 +84,11 @@ public class DefaultRequestRepositoryMapper
     @Requirement
     private ApplicationConfigurationValidator validator;
 
-    /** The compiled flag. */
-    private volatile boolean compiled = false;
+    /** Incremented on every configuration change, the compiled mappings are stale if compiled for an earlier one. */
+    private volatile int configurationGeneration = 0;
 
-    private volatile List<RepositoryPathMapping> blockings = new CopyOnWriteArrayList<RepositoryPathMapping>();
-
-    private volatile List<RepositoryPathMapping> inclusions = new CopyOnWriteArrayList<RepositoryPathMapping>();
-
-    private volatile List<RepositoryPathMapping> exclusions = new CopyOnWriteArrayList<RepositoryPathMapping>();
+    /** The compiled mappings, immutable, replaced as a whole when recompiled. */
+    private volatile CompiledMappings compiledMappings;
 
     // ==
 
@@ -155,7 +151,7 @@ public class DefaultRequestRepositoryMapper
 
         if ( wasDirty )
         {
-            compiled = false;
+            invalidate();
         }
 
         return wasDirty;
@@ -167,9 +163,11 @@ public class DefaultRequestRepositoryMapper
                                                    List<Repository> resolvedRepositories )
         throws NoSuchRepositoryException
     {
-        if ( !compiled )
+        CompiledMappings compiled = compiledMappings;
+
+        if ( compiled == null || compiled.generation != configurationGeneration )
         {
-            compile();
+            compiled = compile();
         }
 
         // NEXUS-2852: to make our life easier, we will work with repository IDs,
@@ -187,84 +185,75 @@ public class DefaultRequestRepositoryMapper
         // if include found, add it to the list.
         boolean firstAdd = true;
 
-        for ( RepositoryPathMapping mapping : blockings )
+        for ( RepositoryPathMapping mapping : compiled.blockings.getMatchingMappings( repository, request ) )
         {
-            if ( mapping.matches( repository, request ) )
+            if ( getLogger().isDebugEnabled() )
             {
-                if ( getLogger().isDebugEnabled() )
-                {
-                    getLogger().debug(
-                        "The request path [" + request.toString() + "] is blocked by rule " + mapping.toString() );
-                }
-
-                return Collections.emptyList();
+                getLogger().debug(
+                    "The request path [" + request.toString() + "] is blocked by rule " + mapping.toString() );
             }
+
+            return Collections.emptyList();
         }
 
         // include, if found a match
         // NEXUS-2852: watch to not add multiple times same repository
         // ie. you have different inclusive rules that are triggered by same request
         // and contains some repositories. This is now solved using LinkedHashSet and using repo IDs.
-        for ( RepositoryPathMapping mapping : inclusions )
+        for ( RepositoryPathMapping mapping : compiled.inclusions.getMatchingMappings( repository, request ) )
         {
-            if ( mapping.matches( repository, request ) )
-            {
-                appliedMappings.add( mapping );
+            appliedMappings.add( mapping );
 
-                if ( firstAdd )
-                {
-                    reposIdSet.clear();
+            if ( firstAdd )
+            {
+                reposIdSet.clear();
 
-                    firstAdd = false;
-                }
+                firstAdd = false;
+            }
 
-                // add only those that are in initial resolvedRepositories list and that are non-user managed
-                // (preserve ordering)
-                if ( mapping.getMappedRepositories().size() == 1
-                    && "*".equals( mapping.getMappedRepositories().get( 0 ) ) )
+            // add only those that are in initial resolvedRepositories list and that are non-user managed
+            // (preserve ordering)
+            if ( mapping.getMappedRepositories().size() == 1
+                && "*".equals( mapping.getMappedRepositories().get( 0 ) ) )
+            {
+                for ( Repository repo : resolvedRepositories )
                 {
-                    for ( Repository repo : resolvedRepositories )
-                    {
-                        reposIdSet.add( repo.getId() );
-                    }
+                    reposIdSet.add( repo.getId() );
                 }
-                else
+            }
+            else
+            {
+                for ( Repository repo : resolvedRepositories )
                 {
-                    for ( Repository repo : resolvedRepositories )
+                    if ( mapping.getMappedRepositories().contains( repo.getId() ) || !repo.isUserManaged() )
                     {
-                        if ( mapping.getMappedRepositories().contains( repo.getId() ) || !repo.isUserManaged() )
-                        {
-                            reposIdSet.add( repo.getId() );
-                        }
+                        reposIdSet.add( repo.getId() );
                     }
                 }
             }
         }
 
         // then, if exlude found, remove those
-        for ( RepositoryPathMapping mapping : exclusions )
+        for ( RepositoryPathMapping mapping : compiled.exclusions.getMatchingMappings( repository, request ) )
         {
-            if ( mapping.matches( repository, request ) )
+            appliedMappings.add( mapping );
+
+            if ( mapping.getMappedRepositories().size() == 1
+                && "*".equals( mapping.getMappedRepositories().get( 0 ) ) )
             {
-                appliedMappings.add( mapping );
+                reposIdSet.clear();
 
-                if ( mapping.getMappedRepositories().size() == 1
-                    && "*".equals( mapping.getMappedRepositories().get( 0 ) ) )
-                {
-                    reposIdSet.clear();
+                break;
+            }
 
-                    break;
-                }
+            for ( String repositoryId : mapping.getMappedRepositories() )
+            {
+                Repository mappedRepository = repositoryRegistry.getRepository( repositoryId );
 
-                for ( String repositoryId : mapping.getMappedRepositories() )
+                // but only if is user managed
+                if ( mappedRepository.isUserManaged() )
                 {
-                    Repository mappedRepository = repositoryRegistry.getRepository( repositoryId );
-
-                    // but only if is user managed
-                    if ( mappedRepository.isUserManaged() )
-                    {
-                        reposIdSet.remove( mappedRepository.getId() );
-                    }
+                    reposIdSet.remove( mappedRepository.getId() );
                 }
             }
         }
@@ -338,19 +327,24 @@ public class DefaultRequestRepositoryMapper
 
     // ==
 
-    protected synchronized void compile()
+    protected synchronized void invalidate()
+    {
+        configurationGeneration++;
+    }
+
+    protected synchronized CompiledMappings compile()
         throws NoSuchRepositoryException
     {
-        if ( compiled )
+        if ( compiledMappings != null && compiledMappings.generation == configurationGeneration )
         {
-            return;
+            return compiledMappings;
         }
 
-        blockings.clear();
+        ArrayList<RepositoryPathMapping> blockings = new ArrayList<RepositoryPathMapping>();
 
-        inclusions.clear();
+        ArrayList<RepositoryPathMapping> inclusions = new ArrayList<RepositoryPathMapping>();
 
-        exclusions.clear();
+        ArrayList<RepositoryPathMapping> exclusions = new ArrayList<RepositoryPathMapping>();
 
         if ( getCurrentConfiguration( false ) == null )
         {
@@ -358,35 +352,37 @@ public class DefaultRequestRepositoryMapper
             {
                 getLogger().debug( "No Routes defined, have nothing to compile." );
             }
-
-            return;
         }
-
-        List<CPathMappingItem> pathMappings = getCurrentConfiguration( false ).getPathMappings();
-
-        for ( CPathMappingItem item : pathMappings )
+        else
         {
-            if ( CPathMappingItem.BLOCKING_RULE_TYPE.equals( item.getRouteType() ) )
-            {
-                blockings.add( convert( item ) );
-            }
-            else if ( CPathMappingItem.INCLUSION_RULE_TYPE.equals( item.getRouteType() ) )
-            {
-                inclusions.add( convert( item ) );
-            }
-            else if ( CPathMappingItem.EXCLUSION_RULE_TYPE.equals( item.getRouteType() ) )
-            {
-                exclusions.add( convert( item ) );
-            }
-            else
+            List<CPathMappingItem> pathMappings = getCurrentConfiguration( false ).getPathMappings();
+
+            for ( CPathMappingItem item : pathMappings )
             {
-                getLogger().warn( "Unknown route type: " + item.getRouteType() );
+                if ( CPathMappingItem.BLOCKING_RULE_TYPE.equals( item.getRouteType() ) )
+                {
+                    blockings.add( convert( item ) );
+                }
+                else if ( CPathMappingItem.INCLUSION_RULE_TYPE.equals( item.getRouteType() ) )
+                {
+                    inclusions.add( convert( item ) );
+                }
+                else if ( CPathMappingItem.EXCLUSION_RULE_TYPE.equals( item.getRouteType() ) )
+                {
+                    exclusions.add( convert( item ) );
+                }
+                else
+                {
+                    getLogger().warn( "Unknown route type: " + item.getRouteType() );
 
-                throw new IllegalArgumentException( "Unknown route type: " + item.getRouteType() );
+                    throw new IllegalArgumentException( "Unknown route type: " + item.getRouteType() );
+                }
             }
         }
 
-        compiled = true;
+        compiledMappings = new CompiledMappings( configurationGeneration, blockings, inclusions, exclusions );
+
+        return compiledMappings;
     }
 
     protected RepositoryPathMapping convert( CPathMappingItem item )
@@ -544,4 +540,32 @@ public class DefaultRequestRepositoryMapper
             }
         }
     }
+
+    // ==
+
+    /**
+     * Immutable snapshot of the routes, as they were configured in given configuration generation.
+     */
+    protected static class CompiledMappings
+    {
+        private final int generation;
+
+        private final RepositoryPathMappingIndex blockings;
+
+        private final RepositoryPathMappingIndex inclusions;
+
+        private final RepositoryPathMappingIndex exclusions;
+
+        public CompiledMappings( int generation, List<RepositoryPathMapping> blockings,
+                                 List<RepositoryPathMapping> inclusions, List<RepositoryPathMapping> exclusions )
+        {
+            this.generation = generation;
+
+            this.blockings = new RepositoryPathMappingIndex( blockings );
+
+            this.inclusions = new RepositoryPathMappingIndex( inclusions );
+
+            this.exclusions = new RepositoryPathMappingIndex( exclusions );
+        }
+    }
 }
@@ -0,0 +1,305 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.mapping;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.repository.GroupRepository;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * An immutable index of path mappings, to find the mappings matching a request without evaluating all of their
+ * patterns. The patterns are put in a trie (one per group) by the literal prefix they start with, so for a request
+ * only the patterns with a literal prefix of the request path, and the ones without literal prefix, are evaluated.
+ * Patterns without literal prefix but starting with ".*" and a literal are evaluated only if the path contains that
+ * literal. Matching mappings are returned in the order they were indexed.
+ * 
+ * @author cstamas
+ */
+public class RepositoryPathMappingIndex
+{
+    private final List<RepositoryPathMapping> mappings;
+
+    private final Map<String, Node> groupRoots;
+
+    private final Node allGroupsRoot;
+
+    public RepositoryPathMappingIndex( final List<RepositoryPathMapping> mappings )
+    {
+        this.mappings = Collections.unmodifiableList( new ArrayList<RepositoryPathMapping>( mappings ) );
+
+        this.groupRoots = new HashMap<String, Node>();
+
+        this.allGroupsRoot = new Node();
+
+        for ( int i = 0; i < this.mappings.size(); i++ )
+        {
+            RepositoryPathMapping mapping = this.mappings.get( i );
+
+            Node root = allGroupsRoot;
+
+            if ( !mapping.isAllGroups() )
+            {
+                root = groupRoots.get( mapping.getGroupId() );
+
+                if ( root == null )
+                {
+                    root = new Node();
+
+                    groupRoots.put( mapping.getGroupId(), root );
+                }
+            }
+
+            for ( Pattern pattern : mapping.getPatterns() )
+            {
+                String prefix = getLiteralPrefix( pattern.pattern() );
+
+                String infix = "";
+
+                if ( prefix.length() == 0 && pattern.pattern().startsWith( ".*" ) )
+                {
+                    infix = getLiteralPrefix( pattern.pattern().substring( 2 ) );
+                }
+
+                root.add( prefix, 0, new Entry( i, pattern, infix ) );
+            }
+        }
+    }
+
+    public List<RepositoryPathMapping> getMappings()
+    {
+        return mappings;
+    }
+
+    public boolean isEmpty()
+    {
+        return mappings.isEmpty();
+    }
+
+    /**
+     * Returns the mappings matching the request against the repository, in same order as
+     * {@link RepositoryPathMapping#matches(Repository, ResourceStoreRequest)} would find them iterating the indexed
+     * mappings.
+     */
+    public List<RepositoryPathMapping> getMatchingMappings( final Repository repository,
+                                                           final ResourceStoreRequest request )
+    {
+        if ( mappings.isEmpty() )
+        {
+            return Collections.emptyList();
+        }
+
+        final String path = request.getRequestPath();
+
+        final BitSet matched = new BitSet( mappings.size() );
+
+        allGroupsRoot.match( path, matched );
+
+        if ( !groupRoots.isEmpty() )
+        {
+            Node groupRoot = groupRoots.get( repository.getId() );
+
+            if ( groupRoot != null && repository.getRepositoryKind().isFacetAvailable( GroupRepository.class ) )
+            {
+                groupRoot.match( path, matched );
+            }
+        }
+
+        if ( matched.isEmpty() )
+        {
+            return Collections.emptyList();
+        }
+
+        ArrayList<RepositoryPathMapping> result = new ArrayList<RepositoryPathMapping>( matched.cardinality() );
+
+        for ( int i = matched.nextSetBit( 0 ); i >= 0; i = matched.nextSetBit( i + 1 ) )
+        {
+            result.add( mappings.get( i ) );
+        }
+
+        return result;
+    }
+
+    // ==
+
+    /**
+     * Returns the literal string every input fully matching the regular expression must start with. It is
+     * conservative: returns empty string for patterns that are not simple enough to tell, like those having
+     * alternation, since those must be evaluated against every path.
+     */
+    protected static String getLiteralPrefix( final String regexp )
+    {
+        if ( hasAlternation( regexp ) )
+        {
+            return "";
+        }
+
+        final StringBuilder prefix = new StringBuilder();
+
+        int i = regexp.startsWith( "^" ) ? 1 : 0;
+
+        while ( i < regexp.length() )
+        {
+            char c = regexp.charAt( i );
+
+            int next;
+
+            if ( c == '\\' )
+            {
+                // escaped non alphanumeric chars are literals, the others are classes, quotes or references
+                if ( i + 1 >= regexp.length() || Character.isLetterOrDigit( regexp.charAt( i + 1 ) ) )
+                {
+                    break;
+                }
+
+                c = regexp.charAt( i + 1 );
+
+                next = i + 2;
+            }
+            else if ( "[](){}.*+?|^$".indexOf( c ) > -1 )
+            {
+                break;
+            }
+            else
+            {
+                next = i + 1;
+            }
+
+            // a quantified char might not be there at all
+            if ( next < regexp.length() && "*+?{".indexOf( regexp.charAt( next ) ) > -1 )
+            {
+                break;
+            }
+
+            prefix.append( c );
+
+            i = next;
+        }
+
+        return prefix.toString();
+    }
+
+    protected static boolean hasAlternation( final String regexp )
+    {
+        for ( int i = 0; i < regexp.length(); i++ )
+        {
+            char c = regexp.charAt( i );
+
+            if ( c == '\\' )
+            {
+                // skip the escaped one
+                i++;
+            }
+            else if ( c == '|' )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // ==
+
+    private static class Entry
+    {
+        private final int ordinal;
+
+        private final Pattern pattern;
+
+        /** A literal the path must contain to match, or empty string. */
+        private final String infix;
+
+        public Entry( final int ordinal, final Pattern pattern, final String infix )
+        {
+            this.ordinal = ordinal;
+
+            this.pattern = pattern;
+
+            this.infix = infix;
+        }
+
+        public boolean matches( final String path )
+        {
+            return path.contains( infix ) && pattern.matcher( path ).matches();
+        }
+    }
+
+    private static class Node
+    {
+        private final HashMap<Character, Node> children = new HashMap<Character, Node>();
+
+        private final ArrayList<Entry> entries = new ArrayList<Entry>();
+
+        public void add( final String prefix, final int depth, final Entry entry )
+        {
+            if ( depth == prefix.length() )
+            {
+                entries.add( entry );
+            }
+            else
+            {
+                Character c = Character.valueOf( prefix.charAt( depth ) );
+
+                Node child = children.get( c );
+
+                if ( child == null )
+                {
+                    child = new Node();
+
+                    children.put( c, child );
+                }
+
+                child.add( prefix, depth + 1, entry );
+            }
+        }
+
+        public void match( final String path, final BitSet matched )
+        {
+            Node node = this;
+
+            int depth = 0;
+
+            while ( node != null )
+            {
+                for ( Entry entry : node.entries )
+                {
+                    if ( !matched.get( entry.ordinal ) && entry.matches( path ) )
+                    {
+                        matched.set( entry.ordinal );
+                    }
+                }
+
+                if ( depth == path.length() )
+                {
+                    break;
+                }
+
+                node = node.children.get( Character.valueOf( path.charAt( depth++ ) ) );
+            }
+        }
+    }
+}
@@ -157,26 +157,26 @@ public abstract class AbstractMavenGroupRepository
         throws UnsupportedStorageOperationException, ItemNotFoundException, IllegalOperationException,
         StorageException, AccessDeniedException
     {
-        getArtifactStoreHelper().storeItemWithChecksums( request, is, userAttributes );
+        doStoreItemWithChecksums( request, is, userAttributes );
     }
 
     public void storeItemWithChecksums( boolean fromTask, AbstractStorageItem item )
         throws UnsupportedStorageOperationException, IllegalOperationException, StorageException
     {
-        getArtifactStoreHelper().storeItemWithChecksums( fromTask, item );
+        doStoreItemWithChecksums( fromTask, item );
     }
 
     public void deleteItemWithChecksums( ResourceStoreRequest request )
         throws UnsupportedStorageOperationException, ItemNotFoundException, IllegalOperationException,
         StorageException, AccessDeniedException
     {
-        getArtifactStoreHelper().deleteItemWithChecksums( request );
+        doDeleteItemWithChecksums( request );
     }
 
     public void deleteItemWithChecksums( boolean fromTask, ResourceStoreRequest request )
         throws UnsupportedStorageOperationException, IllegalOperationException, ItemNotFoundException, StorageException
     {
-        getArtifactStoreHelper().deleteItemWithChecksums( fromTask, request );
+        doDeleteItemWithChecksums( fromTask, request );
     }
 
 }
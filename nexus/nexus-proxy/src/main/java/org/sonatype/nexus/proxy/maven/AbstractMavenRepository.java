@@ -18,6 +18,7 @@
  */
 package org.sonatype.nexus.proxy.maven;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collection;
@@ -337,7 +338,7 @@ public abstract class AbstractMavenRepository
             getLogger().debug( "storeItemWithChecksums() :: " + request.getRequestPath() );
         }
 
-        getArtifactStoreHelper().storeItemWithChecksums( request, is, userAttributes );
+        doStoreItemWithChecksums( request, is, userAttributes );
     }
 
     public void deleteItemWithChecksums( ResourceStoreRequest request )
@@ -349,7 +350,7 @@ public abstract class AbstractMavenRepository
             getLogger().debug( "deleteItemWithChecksums() :: " + request.getRequestPath() );
         }
 
-        getArtifactStoreHelper().deleteItemWithChecksums( request );
+        doDeleteItemWithChecksums( request );
     }
 
     public void storeItemWithChecksums( boolean fromTask, AbstractStorageItem item )
@@ -360,7 +361,7 @@ public abstract class AbstractMavenRepository
             getLogger().debug( "storeItemWithChecksums() :: " + item.getRepositoryItemUid().toString() );
         }
 
-        getArtifactStoreHelper().storeItemWithChecksums( fromTask, item );
+        doStoreItemWithChecksums( fromTask, item );
     }
 
     public void deleteItemWithChecksums( boolean fromTask, ResourceStoreRequest request )
@@ -371,7 +372,7 @@ public abstract class AbstractMavenRepository
             getLogger().debug( "deleteItemWithChecksums() :: " + request.toString() );
         }
 
-        getArtifactStoreHelper().deleteItemWithChecksums( fromTask, request );
+        doDeleteItemWithChecksums( fromTask, request );
     }
 
     public MetadataManager getMetadataManager()
@@ -381,6 +382,25 @@ public abstract class AbstractMavenRepository
 
     // =================================================================================
     // DefaultRepository customizations
+    @Override
+    public StorageItem retrieveItem( boolean fromTask, ResourceStoreRequest request )
+        throws IllegalOperationException, ItemNotFoundException, StorageException
+    {
+        // metadata updates of deploys may be pending, apply them before the item is locked for reading
+        try
+        {
+            getMetadataManager().flushMetadataUpdates( this, request.getRequestPath() );
+        }
+        catch ( IOException e )
+        {
+            getLogger().warn(
+                "Could not apply pending updates to metadata " + request.getRequestPath() + " in repository "
+                    + getId(), e );
+        }
+
+        return super.retrieveItem( fromTask, request );
+    }
+
     @Override
     protected StorageItem doRetrieveItem( ResourceStoreRequest request )
         throws IllegalOperationException, ItemNotFoundException, StorageException
@@ -400,14 +420,18 @@ public abstract class AbstractMavenRepository
     }
 
     @Override
-    public void storeItem( boolean fromTask, StorageItem item )
-        throws UnsupportedStorageOperationException, IllegalOperationException, StorageException
+    protected void checkStoreAllowed( StorageItem item )
+        throws UnsupportedStorageOperationException, IllegalOperationException
     {
-        if ( shouldServeByPolicies( new ResourceStoreRequest( item ) ) )
-        {
-            super.storeItem( fromTask, item );
-        }
-        else
+        checkStoreAllowedByPolicies( item );
+
+        super.checkStoreAllowed( item );
+    }
+
+    protected void checkStoreAllowedByPolicies( StorageItem item )
+        throws UnsupportedStorageOperationException
+    {
+        if ( !shouldServeByPolicies( new ResourceStoreRequest( item ) ) )
         {
             String msg =
                 "Storing of item " + item.getRepositoryItemUid().toString()
@@ -36,14 +36,10 @@ import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.StorageException;
-import org.sonatype.nexus.proxy.attributes.inspectors.DigestCalculatingInspector;
-import org.sonatype.nexus.proxy.item.AbstractStorageItem;
-import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
-import org.sonatype.nexus.proxy.item.StringContentLocator;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 
 /**
@@ -68,233 +64,6 @@ public class ArtifactStoreHelper
         return repository;
     }
 
-    public void storeItemWithChecksums( ResourceStoreRequest request, InputStream is, Map<String, String> userAttributes )
-        throws UnsupportedStorageOperationException, IllegalOperationException, StorageException, AccessDeniedException
-    {
-        String originalPath = request.getRequestPath();
-
-        try
-        {
-            try
-            {
-                getMavenRepository().storeItem( request, is, userAttributes );
-            }
-            catch ( IOException e )
-            {
-                throw new LocalStorageException( "Could not get the content from the ContentLocator!", e );
-            }
-
-            StorageFileItem storedFile = (StorageFileItem) getMavenRepository().retrieveItem( false, request );
-
-            String sha1Hash = storedFile.getAttributes().get( DigestCalculatingInspector.DIGEST_SHA1_KEY );
-
-            String md5Hash = storedFile.getAttributes().get( DigestCalculatingInspector.DIGEST_MD5_KEY );
-
-            if ( !StringUtils.isEmpty( sha1Hash ) )
-            {
-                request.setRequestPath( storedFile.getPath() + ".sha1" );
-
-                getMavenRepository().storeItem(
-                    false,
-                    new DefaultStorageFileItem( getMavenRepository(), request, true, true, new StringContentLocator(
-                        sha1Hash ) ) );
-            }
-
-            if ( !StringUtils.isEmpty( md5Hash ) )
-            {
-                request.setRequestPath( storedFile.getPath() + ".md5" );
-
-                getMavenRepository().storeItem(
-                    false,
-                    new DefaultStorageFileItem( getMavenRepository(), request, true, true, new StringContentLocator(
-                        md5Hash ) ) );
-            }
-        }
-        catch ( ItemNotFoundException e )
-        {
-            throw new LocalStorageException( "Storage inconsistency!", e );
-        }
-        finally
-        {
-            request.setRequestPath( originalPath );
-        }
-    }
-
-    public void deleteItemWithChecksums( ResourceStoreRequest request )
-        throws UnsupportedStorageOperationException, IllegalOperationException, ItemNotFoundException,
-        StorageException, AccessDeniedException
-    {
-        try
-        {
-            getMavenRepository().deleteItem( request );
-        }
-        catch ( ItemNotFoundException e )
-        {
-            if ( request.getRequestPath().endsWith( ".asc" ) )
-            {
-                // Do nothing no guarantee that the .asc files will exist
-            }
-            else
-            {
-                throw e;
-            }
-        }
-
-        String originalPath = request.getRequestPath();
-
-        request.setRequestPath( originalPath + ".sha1" );
-
-        try
-        {
-            getMavenRepository().deleteItem( request );
-        }
-        catch ( ItemNotFoundException e )
-        {
-            // ignore not found
-        }
-
-        request.setRequestPath( originalPath + ".md5" );
-
-        try
-        {
-            getMavenRepository().deleteItem( request );
-        }
-        catch ( ItemNotFoundException e )
-        {
-            // ignore not found
-        }
-
-        // Now remove the .asc files, and the checksums stored with them as well
-        // Note this is a recursive call, hence the check for .asc
-        if ( !originalPath.endsWith( ".asc" ) )
-        {
-            request.setRequestPath( originalPath + ".asc" );
-
-            deleteItemWithChecksums( request );
-        }
-    }
-
-    public void storeItemWithChecksums( boolean fromTask, AbstractStorageItem item )
-        throws UnsupportedStorageOperationException, IllegalOperationException, StorageException
-    {
-        try
-        {
-            try
-            {
-                getMavenRepository().storeItem( false, item );
-            }
-            catch ( IOException e )
-            {
-                throw new LocalStorageException( "Could not get the content from the ContentLocator!", e );
-            }
-
-            StorageFileItem storedFile =
-                (StorageFileItem) getMavenRepository().retrieveItem( false, new ResourceStoreRequest( item ) );
-
-            ResourceStoreRequest req = new ResourceStoreRequest( storedFile );
-
-            String sha1Hash = storedFile.getAttributes().get( DigestCalculatingInspector.DIGEST_SHA1_KEY );
-
-            String md5Hash = storedFile.getAttributes().get( DigestCalculatingInspector.DIGEST_MD5_KEY );
-
-            if ( !StringUtils.isEmpty( sha1Hash ) )
-            {
-                req.setRequestPath( item.getPath() + ".sha1" );
-
-                getMavenRepository().storeItem(
-                    false,
-                    new DefaultStorageFileItem( getMavenRepository(), req, true, true, new StringContentLocator(
-                        sha1Hash ) ) );
-            }
-
-            if ( !StringUtils.isEmpty( md5Hash ) )
-            {
-                req.setRequestPath( item.getPath() + ".md5" );
-
-                getMavenRepository().storeItem(
-                    false,
-                    new DefaultStorageFileItem( getMavenRepository(), req, true, true, new StringContentLocator(
-                        md5Hash ) ) );
-            }
-        }
-        catch ( ItemNotFoundException e )
-        {
-            throw new LocalStorageException( "Storage inconsistency!", e );
-        }
-    }
-
-    public void deleteItemWithChecksums( boolean fromTask, ResourceStoreRequest request )
-        throws UnsupportedStorageOperationException, IllegalOperationException, ItemNotFoundException, StorageException
-    {
-        try
-        {
-            getMavenRepository().deleteItem( fromTask, request );
-        }
-        catch ( ItemNotFoundException e )
-        {
-            if ( request.getRequestPath().endsWith( ".asc" ) )
-            {
-                // Do nothing no guarantee that the .asc files will exist
-            }
-            else
-            {
-                throw e;
-            }
-        }
-
-        try
-        {
-            request.pushRequestPath( request.getRequestPath() + ".sha1" );
-
-            try
-            {
-                getMavenRepository().deleteItem( fromTask, request );
-            }
-            catch ( ItemNotFoundException e )
-            {
-                // ignore not found
-            }
-        }
-        finally
-        {
-            request.popRequestPath();
-        }
-
-        try
-        {
-            request.pushRequestPath( request.getRequestPath() + ".md5" );
-
-            try
-            {
-                getMavenRepository().deleteItem( fromTask, request );
-            }
-            catch ( ItemNotFoundException e )
-            {
-                // ignore not found
-            }
-        }
-        finally
-        {
-            request.popRequestPath();
-        }
-
-        // Now remove the .asc files, and the checksums stored with them as well
-        // Note this is a recursive call, hence the check for .asc
-        if ( !request.getRequestPath().endsWith( ".asc" ) )
-        {
-            try
-            {
-                request.pushRequestPath( request.getRequestPath() + ".asc" );
-
-                deleteItemWithChecksums( fromTask, request );
-            }
-            finally
-            {
-                request.popRequestPath();
-            }
-        }
-    }
-
     public StorageFileItem retrieveArtifactPom( ArtifactStoreRequest gavRequest )
         throws IllegalOperationException, ItemNotFoundException, StorageException, AccessDeniedException
     {
@@ -65,6 +65,12 @@ public class DefaultMetadataManager
         metadataUpdater.undeployArtifact( request );
     }
 
+    public void flushMetadataUpdates( MavenRepository repository, String path )
+        throws IOException
+    {
+        metadataUpdater.flushMetadataUpdates( repository, path );
+    }
+
     public Gav resolveArtifact( ArtifactStoreRequest gavRequest )
         throws IOException
     {
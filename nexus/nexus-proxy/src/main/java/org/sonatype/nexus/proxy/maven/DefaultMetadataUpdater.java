@@ -22,6 +22,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.apache.maven.artifact.repository.metadata.Plugin;
@@ -30,8 +34,10 @@ import org.apache.maven.index.artifact.Gav;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.AbstractLogEnabled;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
 import org.codehaus.plexus.util.StringUtils;
 import org.sonatype.nexus.proxy.LocalStorageException;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.maven.metadata.operations.AddPluginOperation;
 import org.sonatype.nexus.proxy.maven.metadata.operations.AddVersionOperation;
@@ -44,15 +50,59 @@ import org.sonatype.nexus.proxy.maven.metadata.operations.SetSnapshotOperation;
 import org.sonatype.nexus.proxy.maven.metadata.operations.SnapshotOperand;
 import org.sonatype.nexus.proxy.maven.metadata.operations.StringOperand;
 import org.sonatype.nexus.proxy.maven.metadata.operations.TimeUtil;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 
+/**
+ * Default metadata updater. The updates caused by deployed artifacts are coalesced: the operations are gathered per
+ * metadata file for a short window, and applied in one read-change-write cycle, so a burst of deploys (like a multi
+ * module release) does not rewrite the same GA and G metadata over and over again. The pending updates of a metadata
+ * file are applied immediately when it is retrieved from the repository, so clients never see stale metadata.
+ * 
+ * @author cstamas
+ */
 @Component( role = MetadataUpdater.class )
 public class DefaultMetadataUpdater
     extends AbstractLogEnabled
-    implements MetadataUpdater
+    implements MetadataUpdater, Disposable
 {
+    /** The default time pending updates are gathered before applied, set to 0 to apply them immediately. */
+    private static final int COALESCING_WINDOW = SystemPropertiesHelper.getInteger(
+        "nexus.metadata.updateCoalescingWindowMillis", 1000 );
+
+    private static final String METADATA_FILENAME = "maven-metadata.xml";
+
     @Requirement
     private MetadataLocator locator;
 
+    /** The pending updates, keyed by repository ID and metadata path. */
+    private final ConcurrentHashMap<String, PendingUpdates> pendingUpdates =
+        new ConcurrentHashMap<String, PendingUpdates>();
+
+    private volatile int coalescingWindow = COALESCING_WINDOW;
+
+    // guarded by this
+    private ScheduledThreadPoolExecutor flushExecutor;
+
+    // guarded by this
+    private boolean disposed;
+
+    public int getCoalescingWindow()
+    {
+        return coalescingWindow;
+    }
+
+    /**
+     * Sets the time in millis pending updates are gathered before applied, 0 to apply them immediately. Affects the
+     * updates scheduled after the change only.
+     * 
+     * @param coalescingWindow
+     */
+    public void setCoalescingWindow( int coalescingWindow )
+    {
+        this.coalescingWindow = coalescingWindow;
+    }
+
     public void deployArtifact( ArtifactStoreRequest request )
         throws IOException
     {
@@ -64,75 +114,67 @@ public class DefaultMetadataUpdater
             return;
         }
 
-        try
-        {
-            List<MetadataOperation> operations = null;
-
-            Gav gav = locator.getGavForRequest( request );
-
-            // GAV
-
-            Metadata gavMd = locator.retrieveGAVMetadata( request );
+        final Gav gav = locator.getGavForRequest( request );
 
-            operations = new ArrayList<MetadataOperation>();
+        final String version = request.getVersion();
 
-            // simply making it foolproof?
-            gavMd.setGroupId( gav.getGroupId() );
+        List<String> keys = new ArrayList<String>();
 
-            gavMd.setArtifactId( gav.getArtifactId() );
+        // GAV metadata is only meaningful to snapshot artifacts
+        if ( gav.isSnapshot() )
+        {
+            final String timestamp = TimeUtil.getUTCTimestamp();
 
-            gavMd.setVersion( gav.getBaseVersion() );
+            final SnapshotVersion snapshotVersion = buildVersioning( gav );
 
-            // GAV metadata is only meaningful to snapshot artifacts
-            if ( gav.isSnapshot() )
+            keys.add( enqueue( request, MetadataLevel.GAV, new PendingOperation()
             {
-                operations.add( new SetSnapshotOperation( new SnapshotOperand(
-                    ModelVersionUtility.getModelVersion( gavMd ), TimeUtil.getUTCTimestamp(),
-                    MetadataBuilder.createSnapshot( request.getVersion() ), buildVersioning( gav ) ) ) );
+                public MetadataOperation create( Metadata md )
+                    throws MetadataException
+                {
+                    return new SetSnapshotOperation( new SnapshotOperand( ModelVersionUtility.getModelVersion( md ),
+                        timestamp, MetadataBuilder.createSnapshot( version ), snapshotVersion ) );
+                }
+            } ) );
+        }
 
-                MetadataBuilder.changeMetadata( gavMd, operations );
+        // GA
 
-                locator.storeGAVMetadata( request, gavMd );
+        keys.add( enqueue( request, MetadataLevel.GA, new PendingOperation()
+        {
+            public MetadataOperation create( Metadata md )
+                throws MetadataException
+            {
+                return new AddVersionOperation( new StringOperand( ModelVersionUtility.getModelVersion( md ), version ) );
             }
+        } ) );
 
-            // GA
-
-            operations = new ArrayList<MetadataOperation>();
-
-            Metadata gaMd = locator.retrieveGAMetadata( request );
-
-            operations.add( new AddVersionOperation( new StringOperand( ModelVersionUtility.getModelVersion( gaMd ),
-                request.getVersion() ) ) );
-
-            MetadataBuilder.changeMetadata( gaMd, operations );
+        // G (if is plugin)
 
-            locator.storeGAMetadata( request, gaMd );
-
-            // G (if is plugin)
-
-            operations = new ArrayList<MetadataOperation>();
+        if ( StringUtils.equals( "maven-plugin", locator.retrievePackagingFromPom( request ) ) )
+        {
+            final Plugin pluginElem = locator.extractPluginElementFromPom( request );
 
-            if ( StringUtils.equals( "maven-plugin", locator.retrievePackagingFromPom( request ) ) )
+            if ( pluginElem != null )
             {
-                Metadata gMd = locator.retrieveGMetadata( request );
-
-                Plugin pluginElem = locator.extractPluginElementFromPom( request );
-
-                if ( pluginElem != null )
+                keys.add( enqueue( request, MetadataLevel.G, new PendingOperation()
                 {
-                    operations.add( new AddPluginOperation( new PluginOperand(
-                        ModelVersionUtility.getModelVersion( gMd ), pluginElem ) ) );
-
-                    MetadataBuilder.changeMetadata( gMd, operations );
-
-                    locator.storeGMetadata( request, gMd );
-                }
-
+                    public MetadataOperation create( Metadata md )
+                        throws MetadataException
+                    {
+                        return new AddPluginOperation( new PluginOperand( ModelVersionUtility.getModelVersion( md ),
+                            pluginElem ) );
+                    }
+                } ) );
             }
         }
-        catch ( MetadataException e )
+
+        if ( coalescingWindow <= 0 )
         {
-            throw new LocalStorageException( "Not able to apply changes!", e );
+            for ( String key : keys )
+            {
+                flushMetadataUpdates( key );
+            }
         }
     }
 
@@ -157,6 +199,12 @@ public class DefaultMetadataUpdater
             return;
         }
 
+        // pending updates of deploys must not be applied over this change
+        for ( MetadataLevel level : MetadataLevel.values() )
+        {
+            flushMetadataUpdates( getKey( request.getMavenRepository(), getMetadataPath( request, level ) ) );
+        }
+
         try
         {
             List<MetadataOperation> operations = null;
@@ -251,4 +299,313 @@ public class DefaultMetadataUpdater
 
     }
 
+    // ==
+
+    public void flushMetadataUpdates( MavenRepository repository, String path )
+        throws IOException
+    {
+        if ( pendingUpdates.isEmpty() )
+        {
+            return;
+        }
+
+        // the hashes of metadata are stored along with it, and must reflect the pending updates too
+        String metadataPath = path;
+
+        if ( metadataPath.endsWith( ".sha1" ) || metadataPath.endsWith( ".md5" ) )
+        {
+            metadataPath = metadataPath.substring( 0, metadataPath.lastIndexOf( '.' ) );
+        }
+
+        if ( metadataPath.endsWith( METADATA_FILENAME ) )
+        {
+            flushMetadataUpdates( getKey( repository, metadataPath ) );
+        }
+    }
+
+    public void dispose()
+    {
+        synchronized ( this )
+        {
+            disposed = true;
+
+            if ( flushExecutor != null )
+            {
+                flushExecutor.shutdownNow();
+
+                flushExecutor = null;
+            }
+        }
+
+        // do not lose the pending updates
+        for ( String key : new ArrayList<String>( pendingUpdates.keySet() ) )
+        {
+            flushMetadataUpdatesQuietly( key );
+        }
+    }
+
+    /**
+     * Adds an operation to the pending updates of the metadata on given level, and returns the key of pending updates.
+     */
+    protected String enqueue( ArtifactStoreRequest request, MetadataLevel level, PendingOperation operation )
+    {
+        String key = getKey( request.getMavenRepository(), getMetadataPath( request, level ) );
+
+        while ( true )
+        {
+            PendingUpdates pending = pendingUpdates.get( key );
+
+            if ( pending == null )
+            {
+                PendingUpdates created =
+                    new PendingUpdates( new ArtifactStoreRequest( request.getMavenRepository(), request.getGav(), true ),
+                        level );
+
+                pending = pendingUpdates.putIfAbsent( key, created );
+
+                if ( pending == null )
+                {
+                    pending = created;
+
+                    scheduleFlush( key );
+                }
+            }
+
+            synchronized ( pending )
+            {
+                // lost the race against a flush, start a new batch
+                if ( !pending.isDiscarded() )
+                {
+                    pending.getOperations().add( operation );
+
+                    return key;
+                }
+            }
+        }
+    }
+
+    protected void scheduleFlush( final String key )
+    {
+        final int window = coalescingWindow;
+
+        if ( window <= 0 )
+        {
+            return;
+        }
+
+        try
+        {
+            getFlushExecutor().schedule( new Runnable()
+            {
+                public void run()
+                {
+                    flushMetadataUpdatesQuietly( key );
+                }
+            }, window, TimeUnit.MILLISECONDS );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            // we are disposed, apply them in caller thread
+            flushMetadataUpdatesQuietly( key );
+        }
+    }
+
+    protected synchronized ScheduledThreadPoolExecutor getFlushExecutor()
+    {
+        if ( disposed )
+        {
+            throw new RejectedExecutionException( "Metadata updater is disposed." );
+        }
+
+        if ( flushExecutor == null )
+        {
+            flushExecutor =
+                new ScheduledThreadPoolExecutor( 1, new NexusThreadFactory( "nxmetadata", "Metadata Updates",
+                    Thread.NORM_PRIORITY, true ) );
+        }
+
+        return flushExecutor;
+    }
+
+    /**
+     * Applies the pending updates with given key, if any. Threads flushing the same key concurrently are blocked until
+     * the updates are applied.
+     */
+    protected void flushMetadataUpdates( String key )
+        throws IOException
+    {
+        PendingUpdates pending = pendingUpdates.get( key );
+
+        // the applying thread reads the metadata too
+        if ( pending == null || Thread.holdsLock( pending ) )
+        {
+            return;
+        }
+
+        synchronized ( pending )
+        {
+            if ( pending.isDiscarded() )
+            {
+                return;
+            }
+
+            try
+            {
+                applyPendingUpdates( pending );
+            }
+            finally
+            {
+                pending.discard();
+
+                pendingUpdates.remove( key, pending );
+            }
+        }
+    }
+
+    protected void flushMetadataUpdatesQuietly( String key )
+    {
+        try
+        {
+            flushMetadataUpdates( key );
+        }
+        catch ( IOException e )
+        {
+            getLogger().warn(
+                "Could not apply deploy updates to metadata " + key
+                    + ", the metadata should be rebuilt to reflect the deployed artifacts.", e );
+        }
+    }
+
+    protected void applyPendingUpdates( PendingUpdates pending )
+        throws IOException
+    {
+        ArtifactStoreRequest request = pending.getRequest();
+
+        try
+        {
+            Metadata md = retrieveMetadata( request, pending.getLevel() );
+
+            // one by one, as operands depend on the model version of metadata they are applied to
+            for ( PendingOperation operation : pending.getOperations() )
+            {
+                MetadataBuilder.changeMetadata( md, operation.create( md ) );
+            }
+
+            storeMetadata( request, pending.getLevel(), md );
+        }
+        catch ( MetadataException e )
+        {
+            throw new LocalStorageException( "Not able to apply changes!", e );
+        }
+    }
+
+    protected Metadata retrieveMetadata( ArtifactStoreRequest request, MetadataLevel level )
+        throws IOException
+    {
+        switch ( level )
+        {
+            case GAV:
+                return locator.retrieveGAVMetadata( request );
+
+            case GA:
+                return locator.retrieveGAMetadata( request );
+
+            default:
+                return locator.retrieveGMetadata( request );
+        }
+    }
+
+    protected void storeMetadata( ArtifactStoreRequest request, MetadataLevel level, Metadata md )
+        throws IOException
+    {
+        switch ( level )
+        {
+            case GAV:
+                locator.storeGAVMetadata( request, md );
+                break;
+
+            case GA:
+                locator.storeGAMetadata( request, md );
+                break;
+
+            default:
+                locator.storeGMetadata( request, md );
+        }
+    }
+
+    protected String getKey( MavenRepository repository, String path )
+    {
+        return repository.getId() + ":" + path;
+    }
+
+    protected String getMetadataPath( ArtifactStoreRequest request, MetadataLevel level )
+    {
+        String path = request.getRequestPath();
+
+        // strip the file name for GAV, the version too for GA, and the artifactId too for G
+        for ( int i = 0; i <= level.ordinal(); i++ )
+        {
+            path = path.substring( 0, path.lastIndexOf( RepositoryItemUid.PATH_SEPARATOR ) );
+        }
+
+        return path + RepositoryItemUid.PATH_SEPARATOR + METADATA_FILENAME;
+    }
+
+    protected enum MetadataLevel
+    {
+        GAV, GA, G;
+    }
+
+    /**
+     * An operation, created against the metadata it is applied to.
+     */
+    protected interface PendingOperation
+    {
+        MetadataOperation create( Metadata md )
+            throws MetadataException;
+    }
+
+    protected static class PendingUpdates
+    {
+        private final ArtifactStoreRequest request;
+
+        private final MetadataLevel level;
+
+        private final List<PendingOperation> operations = new ArrayList<PendingOperation>();
+
+        private boolean discarded;
+
+        public PendingUpdates( ArtifactStoreRequest request, MetadataLevel level )
+        {
+            this.request = request;
+
+            this.level = level;
+        }
+
+        public ArtifactStoreRequest getRequest()
+        {
+            return request;
+        }
+
+        public MetadataLevel getLevel()
+        {
+            return level;
+        }
+
+        public List<PendingOperation> getOperations()
+        {
+            return operations;
+        }
+
+        public boolean isDiscarded()
+        {
+            return discarded;
+        }
+
+        public void discard()
+        {
+            discarded = true;
+        }
+    }
+
 }
@@ -40,6 +40,16 @@ public interface MetadataManager
     void undeployArtifact( ArtifactStoreRequest request )
         throws IOException;
 
+    /**
+     * Applies the pending updates of the metadata on given path, if any. Should be called before the metadata is
+     * served.
+     * 
+     * @param repository
+     * @param path
+     */
+    void flushMetadataUpdates( MavenRepository repository, String path )
+        throws IOException;
+
     /**
      * Resolves the artifact, honoring LATEST and RELEASE as version. In case of snapshots, it will try to resolve the
      * timestamped version too, if needed.
@@ -50,6 +50,16 @@ public interface MetadataUpdater
     void undeployArtifact( ArtifactStoreRequest request )
         throws IOException;
 
+    /**
+     * Applies the pending updates of the metadata on given path, if any. Updates caused by deployed artifacts may be
+     * gathered for a short while, and this method is called before the metadata is served.
+     * 
+     * @param repository
+     * @param path
+     */
+    void flushMetadataUpdates( MavenRepository repository, String path )
+        throws IOException;
+
     //
     // "Multi shot" methods, used from Nexus/CLI tools to maintain metadata in batch/scanning mode
     //
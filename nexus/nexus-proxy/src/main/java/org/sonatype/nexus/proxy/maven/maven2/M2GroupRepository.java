@@ -22,9 +22,13 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.apache.maven.index.artifact.GavCalculator;
@@ -44,6 +48,12 @@ import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.StorageException;
+import org.sonatype.nexus.proxy.events.RepositoryConfigurationUpdatedEvent;
+import org.sonatype.nexus.proxy.events.RepositoryGroupMembersChangedEvent;
+import org.sonatype.nexus.proxy.events.RepositoryItemEvent;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventCache;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventDelete;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventStore;
 import org.sonatype.nexus.proxy.item.ByteArrayContentLocator;
 import org.sonatype.nexus.proxy.item.ContentLocator;
 import org.sonatype.nexus.proxy.item.DefaultStorageCompositeFileItem;
@@ -63,6 +73,8 @@ import org.sonatype.nexus.proxy.registry.ContentClass;
 import org.sonatype.nexus.proxy.repository.GroupRepository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.util.DigesterUtils;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+import org.sonatype.plexus.appevents.Event;
 
 @Component( role = GroupRepository.class, hint = M2GroupRepository.ID, instantiationStrategy = "per-lookup", description = "Maven2 Repository Group" )
 public class M2GroupRepository
@@ -86,6 +98,33 @@ public class M2GroupRepository
     @Requirement
     private M2GroupRepositoryConfigurator m2GroupRepositoryConfigurator;
 
+    /**
+     * The maximum count of merged metadata kept in cache.
+     */
+    private static final int MERGED_METADATA_CACHE_SIZE = SystemPropertiesHelper.getInteger(
+        "nexus.m2.group.mergedMetadataCacheSize", 5000 );
+
+    /**
+     * Merged metadata cache (LRU), keyed by metadata path.
+     */
+    private final Map<String, MergedMetadata> mergedMetadataCache =
+        Collections.synchronizedMap( new LinkedHashMap<String, MergedMetadata>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, MergedMetadata> eldest )
+            {
+                return size() > MERGED_METADATA_CACHE_SIZE;
+            }
+        } );
+
+    /**
+     * Incremented on every invalidation of the merged metadata cache (guarded by the cache), so merges started before
+     * an invalidation do not put back their (possibly stale) result.
+     */
+    private final AtomicLong mergedMetadataCacheGeneration = new AtomicLong();
+
     @Override
     protected M2GroupRepositoryConfiguration getExternalConfiguration( boolean forWrite )
     {
@@ -126,6 +165,43 @@ public class M2GroupRepository
         return M2ArtifactRecognizer.isMetadata( path );
     }
 
+    @Override
+    public void onEvent( Event<?> evt )
+    {
+        super.onEvent( evt );
+
+        if ( evt instanceof RepositoryItemEventStore || evt instanceof RepositoryItemEventCache
+            || evt instanceof RepositoryItemEventDelete )
+        {
+            RepositoryItemEvent ievt = (RepositoryItemEvent) evt;
+
+            String path = ievt.getItemUid().getPath();
+
+            // is this a change of metadata we have merged from our members?
+            if ( ievt.getRepository() != this && mergedMetadataCache.containsKey( path )
+                && getTransitiveMemberRepositories().contains( ievt.getRepository() ) )
+            {
+                synchronized ( mergedMetadataCache )
+                {
+                    mergedMetadataCacheGeneration.incrementAndGet();
+
+                    mergedMetadataCache.remove( path );
+                }
+            }
+        }
+        else if ( evt instanceof RepositoryGroupMembersChangedEvent
+            || evt instanceof RepositoryConfigurationUpdatedEvent )
+        {
+            // membership or repository policies changed, merge results may be different
+            synchronized ( mergedMetadataCache )
+            {
+                mergedMetadataCacheGeneration.incrementAndGet();
+
+                mergedMetadataCache.clear();
+            }
+        }
+    }
+
     @Override
     protected StorageItem doRetrieveItem( ResourceStoreRequest request )
         throws IllegalOperationException, ItemNotFoundException, StorageException
@@ -145,6 +221,17 @@ public class M2GroupRepository
                 throw new LocalStorageException( e );
             }
         }
+        else if ( M2ArtifactRecognizer.isMetadata( request.getRequestPath() )
+            && M2ArtifactRecognizer.isChecksum( request.getRequestPath() ) )
+        {
+            // serve checksums of merged metadata, if we merge
+            StorageItem item = doRetrieveMergedMetadataDigest( request );
+
+            if ( item != null )
+            {
+                return item;
+            }
+        }
 
         return super.doRetrieveItem( request );
     }
@@ -215,6 +302,8 @@ public class M2GroupRepository
     private StorageItem doRetrieveMetadata( ResourceStoreRequest request )
         throws StorageException, IllegalOperationException, UnsupportedStorageOperationException, ItemNotFoundException
     {
+        long cacheGeneration = mergedMetadataCacheGeneration.get();
+
         List<StorageItem> items = doRetrieveItems( request );
 
         if ( items.isEmpty() )
@@ -228,6 +317,35 @@ public class M2GroupRepository
             return items.get( 0 );
         }
 
+        MergedMetadata mergedMetadata = getMergedMetadata( request, items, cacheGeneration );
+
+        return createMergedMetadataItem( request, mergedMetadata.getContent(), items );
+    }
+
+    /**
+     * Returns the merged metadata of items from cache if the items did not change since, or merges them (and stores
+     * the checksums of merge result).
+     */
+    private MergedMetadata getMergedMetadata( ResourceStoreRequest request, List<StorageItem> items,
+                                              long cacheGeneration )
+        throws StorageException, IllegalOperationException, UnsupportedStorageOperationException, ItemNotFoundException
+    {
+        String mergedMetadataKey = getMergedMetadataKey( items );
+
+        MergedMetadata mergedMetadata = mergedMetadataCache.get( getMergedMetadataCachePath( request ) );
+
+        if ( mergedMetadata != null && mergedMetadata.getKey().equals( mergedMetadataKey ) )
+        {
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug(
+                    "Item for path " + request.toString() + " served from merged metadata cache of "
+                        + Integer.toString( items.size() ) + " found items." );
+            }
+
+            return mergedMetadata;
+        }
+
         List<Metadata> existingMetadatas = new ArrayList<Metadata>();
 
         try
@@ -292,8 +410,6 @@ public class M2GroupRepository
 
             MetadataBuilder.write( result, resultOutputStream );
 
-            StorageItem item = createMergedMetadataItem( request, resultOutputStream.toByteArray(), items );
-
             // build checksum files
             String md5Digest = DigesterUtils.getMd5Digest( resultOutputStream.toByteArray() );
 
@@ -305,6 +421,18 @@ public class M2GroupRepository
 
             resultOutputStream.close();
 
+            mergedMetadata =
+                new MergedMetadata( mergedMetadataKey, resultOutputStream.toByteArray(), md5Digest, sha1Digest );
+
+            synchronized ( mergedMetadataCache )
+            {
+                // do not put back what was invalidated while we merged
+                if ( mergedMetadataCacheGeneration.get() == cacheGeneration )
+                {
+                    mergedMetadataCache.put( getMergedMetadataCachePath( request ), mergedMetadata );
+                }
+            }
+
             if ( getLogger().isDebugEnabled() )
             {
                 getLogger().debug(
@@ -312,8 +440,7 @@ public class M2GroupRepository
                         + " found items." );
             }
 
-            return item;
-
+            return mergedMetadata;
         }
         catch ( IOException e )
         {
@@ -331,22 +458,111 @@ public class M2GroupRepository
     {
         String digestFileName = request.getRequestPath() + "." + algorithm.toLowerCase();
 
+        ResourceStoreRequest req = new ResourceStoreRequest( digestFileName );
+
+        req.getRequestContext().setParentContext( request.getRequestContext() );
+
+        storeItem( false, createMergedMetadataDigestItem( req, digest ) );
+    }
+
+    protected DefaultStorageFileItem createMergedMetadataDigestItem( ResourceStoreRequest request, String digest )
+        throws IOException
+    {
         // see nexus-configuration mime-types.properties (defaulted to text/plain, as central reports them)
-        String mimeType = getMimeUtil().getMimeType( digestFileName );
+        String mimeType = getMimeUtil().getMimeType( request.getRequestPath() );
 
         byte[] bytes = ( digest + '\n' ).getBytes( "UTF-8" );
 
         ContentLocator contentLocator = new ByteArrayContentLocator( bytes, mimeType );
 
-        ResourceStoreRequest req = new ResourceStoreRequest( digestFileName );
-
-        req.getRequestContext().setParentContext( request.getRequestContext() );
-
         // Metadata checksum files are not composite ones, they are derivatives of the Metadata (and metadata file _is_
         // composite one)
-        DefaultStorageFileItem digestFileItem = new DefaultStorageFileItem( this, req, true, false, contentLocator );
+        DefaultStorageFileItem result = new DefaultStorageFileItem( this, request, true, false, contentLocator );
 
-        storeItem( false, digestFileItem );
+        result.setLength( bytes.length );
+
+        return result;
+    }
+
+    /**
+     * Returns the checksum item of merged metadata, or null if metadata is not merged. The checksum is validated
+     * against the current members the same way as the merged metadata is, so it always matches the served metadata.
+     */
+    protected StorageItem doRetrieveMergedMetadataDigest( ResourceStoreRequest request )
+        throws StorageException, IllegalOperationException, ItemNotFoundException
+    {
+        if ( !isMergeMetadata() )
+        {
+            return null;
+        }
+
+        String path = request.getRequestPath();
+
+        ResourceStoreRequest mdRequest = new ResourceStoreRequest( path.substring( 0, path.lastIndexOf( '.' ) ) );
+
+        mdRequest.getRequestContext().setParentContext( request.getRequestContext() );
+
+        long cacheGeneration = mergedMetadataCacheGeneration.get();
+
+        List<StorageItem> items = doRetrieveItems( mdRequest );
+
+        if ( items.isEmpty() )
+        {
+            return null;
+        }
+
+        try
+        {
+            MergedMetadata mergedMetadata = getMergedMetadata( mdRequest, items, cacheGeneration );
+
+            if ( path.endsWith( ".sha1" ) )
+            {
+                return createMergedMetadataDigestItem( request, mergedMetadata.getSha1Digest() );
+            }
+            else if ( path.endsWith( ".md5" ) )
+            {
+                return createMergedMetadataDigestItem( request, mergedMetadata.getMd5Digest() );
+            }
+        }
+        catch ( UnsupportedStorageOperationException e )
+        {
+            throw new LocalStorageException( e );
+        }
+        catch ( IOException e )
+        {
+            throw new LocalStorageException( "Got IOException during serving M2 metadata checksum.", e );
+        }
+
+        return null;
+    }
+
+    protected String getMergedMetadataCachePath( ResourceStoreRequest request )
+    {
+        return createUid( request.getRequestPath() ).getPath();
+    }
+
+    /**
+     * Creates a key of the merge sources: the merge result is the same as long as the sources are the same items with
+     * same generation and modification.
+     */
+    protected String getMergedMetadataKey( List<StorageItem> sources )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for ( StorageItem source : sources )
+        {
+            sb.append( source.getRepositoryId() ).append( ':' ).append( source.getModified() ).append( ':' ).append(
+                source.getGeneration() );
+
+            if ( source instanceof StorageFileItem )
+            {
+                sb.append( ':' ).append( ( (StorageFileItem) source ).getLength() );
+            }
+
+            sb.append( ';' );
+        }
+
+        return sb.toString();
     }
 
     protected StorageCompositeFileItem createMergedMetadataItem( ResourceStoreRequest request, byte[] content,
@@ -382,6 +598,51 @@ public class M2GroupRepository
         return result;
     }
 
+    /**
+     * Merged metadata content with it's digests, and the key of sources it was merged from.
+     */
+    private static class MergedMetadata
+    {
+        private final String key;
+
+        private final byte[] content;
+
+        private final String md5Digest;
+
+        private final String sha1Digest;
+
+        public MergedMetadata( String key, byte[] content, String md5Digest, String sha1Digest )
+        {
+            this.key = key;
+
+            this.content = content;
+
+            this.md5Digest = md5Digest;
+
+            this.sha1Digest = sha1Digest;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public byte[] getContent()
+        {
+            return content;
+        }
+
+        public String getMd5Digest()
+        {
+            return md5Digest;
+        }
+
+        public String getSha1Digest()
+        {
+            return sha1Digest;
+        }
+    }
+
     // TODO: clean up this! This is a copy+paste from org.sonatype.nexus.proxy.maven.ChecksumContentValidator
     // centralize this!
     private NexusArtifactEvent newMetadataFailureEvent( StorageFileItem item, String msg )
@@ -28,15 +28,22 @@ import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.Logger;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Initializable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.InitializationException;
+import org.sonatype.nexus.configuration.ConfigurationChangeEvent;
+import org.sonatype.nexus.configuration.ConfigurationCommitEvent;
+import org.sonatype.nexus.configuration.ConfigurationSaveEvent;
 import org.sonatype.nexus.proxy.NoSuchRepositoryException;
+import org.sonatype.nexus.proxy.events.RepositoryGroupMembersChangedEvent;
 import org.sonatype.nexus.proxy.events.RepositoryRegistryEventAdd;
 import org.sonatype.nexus.proxy.events.RepositoryRegistryEventPostRemove;
 import org.sonatype.nexus.proxy.events.RepositoryRegistryEventRemove;
 import org.sonatype.nexus.proxy.repository.GroupRepository;
 import org.sonatype.nexus.proxy.repository.ProxyRepository;
 import org.sonatype.nexus.proxy.repository.Repository;
-import org.sonatype.nexus.proxy.repository.RepositoryStatusCheckerThread;
+import org.sonatype.nexus.proxy.repository.RepositoryStatusCheckScheduler;
 import org.sonatype.plexus.appevents.ApplicationEventMulticaster;
+import org.sonatype.plexus.appevents.Event;
 import org.sonatype.plexus.appevents.EventListener;
 
 /**
@@ -55,7 +62,7 @@ import org.sonatype.plexus.appevents.EventListener;
  */
 @Component( role = RepositoryRegistry.class )
 public class DefaultRepositoryRegistry
-    implements RepositoryRegistry, Disposable
+    implements RepositoryRegistry, EventListener, Initializable, Disposable
 {
     @Requirement
     private Logger logger;
@@ -66,14 +73,39 @@ public class DefaultRepositoryRegistry
     @Requirement
     private RepositoryTypeRegistry repositoryTypeRegistry;
 
+    @Requirement
+    private RepositoryStatusCheckScheduler repositoryStatusCheckScheduler;
+
     /** The repo register, [Repository.getId, Repository] */
     private Map<String, Repository> repositories = new HashMap<String, Repository>();
 
+    /** The group membership index, null if invalidated and needs to be rebuilt. */
+    private volatile GroupMembership groupMembership;
+
+    /** Bumped on every invalidation, to not publish an index built from stale membership. Guarded by this. */
+    private long groupMembershipGeneration;
+
     protected Logger getLogger()
     {
         return logger;
     }
 
+    public void initialize()
+        throws InitializationException
+    {
+        applicationEventMulticaster.addEventListener( this );
+    }
+
+    public void onEvent( Event<?> evt )
+    {
+        // group member changes are announced before, but are applied when configuration is committed
+        if ( evt instanceof RepositoryGroupMembersChangedEvent || evt instanceof ConfigurationCommitEvent
+            || evt instanceof ConfigurationSaveEvent || evt instanceof ConfigurationChangeEvent )
+        {
+            invalidateGroupMembership();
+        }
+    }
+
     public void addRepository( Repository repository )
     {
         RepositoryTypeDescriptor rtd =
@@ -172,43 +204,67 @@ public class DefaultRepositoryRegistry
 
     public List<String> getGroupsOfRepository( String repositoryId )
     {
-        ArrayList<String> result = new ArrayList<String>();
+        List<String> result = getGroupMembership().getGroupIdsOfRepository( repositoryId );
 
-        try
+        if ( result == null )
         {
-            Repository repository = getRepository( repositoryId );
+            return Collections.emptyList();
+        }
 
-            for ( GroupRepository group : getGroupsOfRepository( repository ) )
-            {
-                result.add( group.getId() );
-            }
+        return result;
+    }
+
+    public List<GroupRepository> getGroupsOfRepository( Repository repository )
+    {
+        List<GroupRepository> result = getGroupMembership().getGroupsOfRepository( repository.getId() );
+
+        if ( result == null )
+        {
+            return Collections.emptyList();
         }
-        catch ( NoSuchRepositoryException e )
+
+        return result;
+    }
+
+    public List<Repository> getTransitiveMemberRepositories( GroupRepository group )
+    {
+        List<Repository> result = getGroupMembership().getTransitiveMemberRepositories( group.getId() );
+
+        if ( result == null || repositories.get( group.getId() ) != group )
         {
-            // ignore, just return empty collection
+            // not (yet) registered group
+            return Collections.unmodifiableList( collectTransitiveMemberRepositories( group,
+                new HashMap<String, List<Repository>>() ) );
         }
 
         return result;
     }
 
-    public List<GroupRepository> getGroupsOfRepository( Repository repository )
+    // ==
+
+    /**
+     * Returns the current group membership index, building it if needed.
+     */
+    protected GroupMembership getGroupMembership()
     {
-        ArrayList<GroupRepository> result = new ArrayList<GroupRepository>();
+        GroupMembership result = groupMembership;
 
-        for ( Repository repo : getRepositories() )
+        if ( result == null )
         {
-            if ( !repo.getId().equals( repository.getId() )
-                && repo.getRepositoryKind().isFacetAvailable( GroupRepository.class ) )
+            final long generation;
+
+            synchronized ( this )
             {
-                GroupRepository group = repo.adaptToFacet( GroupRepository.class );
+                generation = groupMembershipGeneration;
+            }
 
-                members: for ( Repository member : group.getMemberRepositories() )
+            result = buildGroupMembership();
+
+            synchronized ( this )
+            {
+                if ( generation == groupMembershipGeneration )
                 {
-                    if ( repository.getId().equals( member.getId() ) )
-                    {
-                        result.add( group );
-                        break members;
-                    }
+                    groupMembership = result;
                 }
             }
         }
@@ -216,31 +272,118 @@ public class DefaultRepositoryRegistry
         return result;
     }
 
-    //
-    // priv
-    //
+    protected void invalidateGroupMembership()
+    {
+        synchronized ( this )
+        {
+            groupMembershipGeneration++;
 
-    private void insertRepository( RepositoryTypeDescriptor rtd, Repository repository )
+            groupMembership = null;
+        }
+    }
+
+    protected GroupMembership buildGroupMembership()
     {
-        repositories.put( repository.getId(), repository );
+        final Map<String, List<String>> groupIdsOfRepository = new HashMap<String, List<String>>();
 
-        if ( repository.getRepositoryKind().isFacetAvailable( ProxyRepository.class ) )
+        final Map<String, List<GroupRepository>> groupsOfRepository = new HashMap<String, List<GroupRepository>>();
+
+        final Map<String, List<Repository>> transitiveMembers = new HashMap<String, List<Repository>>();
+
+        for ( GroupRepository group : getRepositoriesWithFacet( GroupRepository.class ) )
         {
-            ProxyRepository proxy = repository.adaptToFacet( ProxyRepository.class );
+            for ( Repository member : group.getMemberRepositories() )
+            {
+                if ( member.getId().equals( group.getId() ) )
+                {
+                    continue;
+                }
 
-            killMonitorThread( proxy );
+                List<GroupRepository> groups = groupsOfRepository.get( member.getId() );
 
-            RepositoryStatusCheckerThread thread =
-                new RepositoryStatusCheckerThread( getLogger().getChildLogger( repository.getId() ),
-                    (ProxyRepository) repository );
+                if ( groups == null )
+                {
+                    groups = new ArrayList<GroupRepository>();
 
-            proxy.setRepositoryStatusCheckerThread( thread );
+                    groupsOfRepository.put( member.getId(), groups );
+                }
 
-            thread.setRunning( true );
+                if ( !groups.contains( group ) )
+                {
+                    groups.add( group );
+                }
+            }
 
-            thread.setDaemon( true );
+            collectTransitiveMemberRepositories( group, transitiveMembers );
+        }
 
-            thread.start();
+        for ( Map.Entry<String, List<GroupRepository>> entry : groupsOfRepository.entrySet() )
+        {
+            ArrayList<String> groupIds = new ArrayList<String>( entry.getValue().size() );
+
+            for ( GroupRepository group : entry.getValue() )
+            {
+                groupIds.add( group.getId() );
+            }
+
+            groupIdsOfRepository.put( entry.getKey(), Collections.unmodifiableList( groupIds ) );
+
+            entry.setValue( Collections.unmodifiableList( entry.getValue() ) );
+        }
+
+        for ( Map.Entry<String, List<Repository>> entry : transitiveMembers.entrySet() )
+        {
+            entry.setValue( Collections.unmodifiableList( entry.getValue() ) );
+        }
+
+        return new GroupMembership( groupIdsOfRepository, groupsOfRepository, transitiveMembers );
+    }
+
+    /**
+     * Resolves the transitive members of group, using (and filling) the passed in map of already resolved groups.
+     */
+    protected List<Repository> collectTransitiveMemberRepositories( GroupRepository group,
+                                                                    Map<String, List<Repository>> resolved )
+    {
+        List<Repository> result = resolved.get( group.getId() );
+
+        if ( result == null )
+        {
+            result = new ArrayList<Repository>();
+
+            for ( Repository member : group.getMemberRepositories() )
+            {
+                if ( member.getRepositoryKind().isFacetAvailable( GroupRepository.class ) )
+                {
+                    result.addAll( collectTransitiveMemberRepositories(
+                        member.adaptToFacet( GroupRepository.class ), resolved ) );
+                }
+                else
+                {
+                    result.add( member );
+                }
+            }
+
+            resolved.put( group.getId(), result );
+        }
+
+        return result;
+    }
+
+    //
+    // priv
+    //
+
+    private void insertRepository( RepositoryTypeDescriptor rtd, Repository repository )
+    {
+        repositories.put( repository.getId(), repository );
+
+        invalidateGroupMembership();
+
+        if ( repository.getRepositoryKind().isFacetAvailable( ProxyRepository.class ) )
+        {
+            // (re)starts the remote status checks
+            repositoryStatusCheckScheduler.schedule( repository.adaptToFacet( ProxyRepository.class ) );
         }
 
         rtd.instanceRegistered( this );
@@ -265,8 +408,10 @@ public class DefaultRepositoryRegistry
 
         repositories.remove( repository.getId() );
 
-        killMonitorThread( repository.adaptToFacet( ProxyRepository.class ) );
-        
+        invalidateGroupMembership();
+
+        stopStatusChecks( repository.adaptToFacet( ProxyRepository.class ) );
+
         if (!silently) {
             applicationEventMulticaster.notifyEventListeners( new RepositoryRegistryEventPostRemove( this, repository ) );
         }
@@ -274,32 +419,60 @@ public class DefaultRepositoryRegistry
 
     public void dispose()
     {
-        // kill the checker daemon threads
+        // stop the remote status checks
         for ( Repository repository : repositories.values() )
         {
-            killMonitorThread( repository.adaptToFacet( ProxyRepository.class ) );
+            stopStatusChecks( repository.adaptToFacet( ProxyRepository.class ) );
         }
     }
 
     // ==
 
-    protected void killMonitorThread( ProxyRepository proxy )
+    protected void stopStatusChecks( ProxyRepository proxy )
     {
         if ( null == proxy )
         {
             return;
         }
 
-        if ( null != proxy.getRepositoryStatusCheckerThread() )
+        repositoryStatusCheckScheduler.unschedule( proxy );
+    }
+
+    /**
+     * Immutable snapshot of group membership: member to groups and group to transitive members.
+     */
+    protected static class GroupMembership
+    {
+        private final Map<String, List<String>> groupIdsOfRepository;
+
+        private final Map<String, List<GroupRepository>> groupsOfRepository;
+
+        private final Map<String, List<Repository>> transitiveMembers;
+
+        public GroupMembership( final Map<String, List<String>> groupIdsOfRepository,
+                                final Map<String, List<GroupRepository>> groupsOfRepository,
+                                final Map<String, List<Repository>> transitiveMembers )
+        {
+            this.groupIdsOfRepository = groupIdsOfRepository;
+
+            this.groupsOfRepository = groupsOfRepository;
+
+            this.transitiveMembers = transitiveMembers;
+        }
+
+        public List<String> getGroupIdsOfRepository( final String repositoryId )
         {
-            RepositoryStatusCheckerThread thread =
-                (RepositoryStatusCheckerThread) proxy.getRepositoryStatusCheckerThread();
+            return groupIdsOfRepository.get( repositoryId );
+        }
 
-            thread.setRunning( false );
+        public List<GroupRepository> getGroupsOfRepository( final String repositoryId )
+        {
+            return groupsOfRepository.get( repositoryId );
+        }
 
-            // and now interrupt it to die
-            thread.interrupt();
+        public List<Repository> getTransitiveMemberRepositories( final String groupId )
+        {
+            return transitiveMembers.get( groupId );
         }
     }
-
 }
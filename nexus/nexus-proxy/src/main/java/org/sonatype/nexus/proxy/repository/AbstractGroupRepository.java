@@ -22,7 +22,18 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.sonatype.nexus.configuration.ConfigurationPrepareForSaveEvent;
@@ -43,10 +54,13 @@ import org.sonatype.nexus.proxy.item.DefaultStorageCollectionItem;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StorageItemInfo;
 import org.sonatype.nexus.proxy.item.uid.IsGroupLocalOnlyAttribute;
 import org.sonatype.nexus.proxy.mapping.RequestRepositoryMapper;
 import org.sonatype.nexus.proxy.registry.RepositoryRegistry;
 import org.sonatype.nexus.proxy.utils.RepositoryUtils;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 import org.sonatype.plexus.appevents.Event;
 
 /**
@@ -64,6 +78,22 @@ public abstract class AbstractGroupRepository
     @Requirement
     private RequestRepositoryMapper requestRepositoryMapper;
 
+    /** The maximum count of threads doing member retrievals for all groups in parallel retrieval mode. */
+    private static final int PARALLEL_RETRIEVAL_MAX_THREADS = SystemPropertiesHelper.getInteger(
+        "nexus.group.parallelRetrieval.maxThreads", 100 );
+
+    private static final ExecutorService parallelRetrievalExecutorService = new ThreadPoolExecutor( 0,
+        PARALLEL_RETRIEVAL_MAX_THREADS, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new NexusThreadFactory( "nxgroup", "Group Member Retrieval" ) );
+
+    /**
+     * The permits for concurrent member retrievals of this group, sized by the parallel retrieval limit. Guarded by
+     * this.
+     */
+    private Semaphore parallelRetrievalPermits;
+
+    private int parallelRetrievalPermitsLimit;
+
     @Override
     protected AbstractGroupRepositoryConfiguration getExternalConfiguration( boolean forWrite )
     {
@@ -196,6 +226,86 @@ public abstract class AbstractGroupRepository
         return result;
     }
 
+    @Override
+    protected Collection<StorageItemInfo> doListItemInfos( ResourceStoreRequest request )
+        throws ItemNotFoundException, StorageException
+    {
+        // merged by name, first one wins (local, then members in order), as with items
+        LinkedHashMap<String, StorageItemInfo> result = new LinkedHashMap<String, StorageItemInfo>();
+        boolean found = false;
+        try
+        {
+            addItemInfos( result, getLocalStorage().listItemInfos( this, request ) );
+
+            found = true;
+        }
+        catch ( ItemNotFoundException ignored )
+        {
+            // ignored
+        }
+
+        RepositoryItemUid uid = createUid( request.getRequestPath() );
+
+        final boolean isRequestGroupLocalOnly =
+            request.isRequestGroupLocalOnly() || uid.getBooleanAttributeValue( IsGroupLocalOnlyAttribute.class );
+
+        if ( !isRequestGroupLocalOnly )
+        {
+            for ( Repository repo : getMemberRepositories() )
+            {
+                if ( !request.getProcessedRepositories().contains( repo.getId() ) )
+                {
+                    try
+                    {
+                        addItemInfos( result, repo.listItemInfos( false, request ) );
+
+                        found = true;
+                    }
+                    catch ( ItemNotFoundException e )
+                    {
+                        // ignored
+                    }
+                    catch ( IllegalOperationException e )
+                    {
+                        // ignored
+                    }
+                    catch ( StorageException e )
+                    {
+                        // ignored
+                    }
+                }
+                else
+                {
+                    if ( getLogger().isDebugEnabled() )
+                    {
+                        getLogger().debug(
+                            "Repository ID='" + repo.getId() + "' in group ID='" + this.getId()
+                                + "' was already processed during this request! This repository is skipped from"
+                                + " processing. Request: " + request.toString() );
+                    }
+                }
+            }
+        }
+
+        if ( !found )
+        {
+            throw new ItemNotFoundException( request, this );
+        }
+
+        return result.values();
+    }
+
+    private static void addItemInfos( LinkedHashMap<String, StorageItemInfo> result, Collection<StorageItemInfo> infos )
+    {
+        for ( StorageItemInfo info : infos )
+        {
+            if ( !result.containsKey( info.getName() ) )
+            {
+                result.put( info.getName(), info );
+            }
+        }
+    }
+
     private static void addItems( HashSet<String> names, ArrayList<StorageItem> result,
                                   Collection<StorageItem> listItems )
     {
@@ -238,13 +348,30 @@ public abstract class AbstractGroupRepository
 
             if ( !isRequestGroupLocalOnly )
             {
-                for ( Repository repo : getRequestRepositories( request ) )
+                List<MemberRetrieval> retrievals =
+                    startMemberRetrievals( request, getRequestRepositories( request ), false );
+
+                try
                 {
-                    if ( !request.getProcessedRepositories().contains( repo.getId() ) )
+                    // member order is kept: first member having the item wins, no matter which one answered first
+                    for ( MemberRetrieval retrieval : retrievals )
                     {
                         try
                         {
-                            StorageItem item = repo.retrieveItem( request );
+                            StorageItem item = retrieval.getItem();
+
+                            if ( retrieval.isSkipped() )
+                            {
+                                getLogger().info(
+                                    "Repository ID='"
+                                        + retrieval.getRepository().getId()
+                                        + "' in group ID='"
+                                        + this.getId()
+                                        + "' was already processed during this request! This repository is skipped from processing. Request: "
+                                        + request.toString() );
+
+                                continue;
+                            }
 
                             if ( item instanceof StorageCollectionItem )
                             {
@@ -270,17 +397,11 @@ public abstract class AbstractGroupRepository
                             // cannot happen, since we add/check for AccessManager.REQUEST_AUTHORIZED flag
                         }
                     }
-                    else
-                    {
-                        getLogger().info(
-                            "Repository ID='"
-                                + repo.getId()
-                                + "' in group ID='"
-                                + this.getId()
-                                + "' was already processed during this request! This repository is skipped from processing. Request: "
-                                + request.toString() );
-
-                    }
+                }
+                finally
+                {
+                    // we have a winner (or failed), the slower ones are not needed anymore
+                    cancelMemberRetrievals( retrievals );
                 }
             }
         }
@@ -416,13 +537,33 @@ public abstract class AbstractGroupRepository
 
         if ( !isRequestGroupLocalOnly )
         {
-            for ( Repository repository : getRequestRepositories( request ) )
+            List<MemberRetrieval> retrievals =
+                startMemberRetrievals( request, getRequestRepositories( request ), true );
+
+            try
             {
-                if ( !request.getProcessedRepositories().contains( repository.getId() ) )
+                // collect results in member order
+                for ( MemberRetrieval retrieval : retrievals )
                 {
                     try
                     {
-                        StorageItem item = repository.retrieveItem( false, request );
+                        StorageItem item = retrieval.getItem();
+
+                        if ( retrieval.isSkipped() )
+                        {
+                            if ( getLogger().isDebugEnabled() )
+                            {
+                                getLogger().debug(
+                                    "Repository ID='"
+                                        + retrieval.getRepository().getId()
+                                        + "' in group ID='"
+                                        + this.getId()
+                                        + "' was already processed during this request! This repository is skipped from processing. Request: "
+                                        + request.toString() );
+                            }
+
+                            continue;
+                        }
 
                         items.add( item );
                     }
@@ -444,25 +585,288 @@ public abstract class AbstractGroupRepository
                     {
                         getLogger().warn( "Member repository request failed", e );
                     }
+                    catch ( AccessDeniedException e )
+                    {
+                        // cannot happen, we use unprotected content access
+                        getLogger().warn( "Member repository request failed", e );
+                    }
                 }
-                else
+            }
+            finally
+            {
+                cancelMemberRetrievals( retrievals );
+            }
+        }
+
+        return items;
+    }
+
+    public boolean isParallelRetrieval()
+    {
+        return getExternalConfiguration( false ).isParallelRetrieval();
+    }
+
+    public void setParallelRetrieval( boolean parallelRetrieval )
+    {
+        getExternalConfiguration( true ).setParallelRetrieval( parallelRetrieval );
+    }
+
+    public int getParallelRetrievalLimit()
+    {
+        return getExternalConfiguration( false ).getParallelRetrievalLimit();
+    }
+
+    public void setParallelRetrievalLimit( int parallelRetrievalLimit )
+    {
+        getExternalConfiguration( true ).setParallelRetrievalLimit( parallelRetrievalLimit );
+    }
+
+    /**
+     * Starts the retrieval of requested item from passed in members, and returns the retrievals in member order. In
+     * parallel retrieval mode, members are asked concurrently using forked requests, up to the limit of this group (and
+     * capacity of the shared executor), while the rest of retrievals are deferred: they are performed by the caller
+     * thread, when their result is asked for. Otherwise, all retrievals are deferred, and performed one by one with the
+     * passed in request. The repositories processed by forked requests are merged back into the passed in request as
+     * the result of each retrieval is asked for, hence in member order, and a retrieval is skipped if its member was
+     * already processed by an earlier one (ie. it is reachable through a nested group too).
+     * 
+     * @param request
+     * @param members
+     * @param unprotected true if members should be asked using unprotected content access (see
+     *            {@link Repository#retrieveItem(boolean, ResourceStoreRequest)})
+     * @return
+     */
+    protected List<MemberRetrieval> startMemberRetrievals( ResourceStoreRequest request, List<Repository> members,
+                                                           boolean unprotected )
+    {
+        ArrayList<MemberRetrieval> result = new ArrayList<MemberRetrieval>( members.size() );
+
+        boolean parallel = isParallelRetrieval() && members.size() > 1;
+
+        Semaphore permits = parallel ? getParallelRetrievalPermits() : null;
+
+        for ( Repository member : members )
+        {
+            if ( parallel && permits.tryAcquire() )
+            {
+                MemberRetrieval retrieval = new MemberRetrieval( member, request, true, unprotected, permits );
+
+                try
                 {
-                    if ( getLogger().isDebugEnabled() )
+                    parallelRetrievalExecutorService.execute( retrieval );
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    // executor is full, the caller will do it
+                    permits.release();
+
+                    retrieval = new MemberRetrieval( member, request, true, unprotected, null );
+                }
+
+                result.add( retrieval );
+            }
+            else
+            {
+                result.add( new MemberRetrieval( member, request, parallel, unprotected, null ) );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Cancels the retrievals not yet started, they will not run at all. Retrievals already in progress are let to
+     * finish, as interrupting them might leave half written items in the local storage of members.
+     * 
+     * @param retrievals
+     */
+    protected void cancelMemberRetrievals( List<MemberRetrieval> retrievals )
+    {
+        for ( MemberRetrieval retrieval : retrievals )
+        {
+            retrieval.cancel( false );
+        }
+    }
+
+    protected synchronized Semaphore getParallelRetrievalPermits()
+    {
+        int limit = Math.max( 1, getParallelRetrievalLimit() );
+
+        if ( parallelRetrievalPermits == null || parallelRetrievalPermitsLimit != limit )
+        {
+            // limit changed, new retrievals will use new permits
+            parallelRetrievalPermits = new Semaphore( limit );
+
+            parallelRetrievalPermitsLimit = limit;
+        }
+
+        return parallelRetrievalPermits;
+    }
+
+    /**
+     * A retrieval of item from a group member.
+     */
+    protected static class MemberRetrieval
+        extends FutureTask<StorageItem>
+    {
+        private final Repository repository;
+
+        private final ResourceStoreRequest request;
+
+        private final ResourceStoreRequest forkedRequest;
+
+        private final boolean deferred;
+
+        private volatile boolean skipped;
+
+        public MemberRetrieval( final Repository repository, final ResourceStoreRequest request, final boolean fork,
+                                final boolean unprotected, final Semaphore permits )
+        {
+            this( repository, request, fork ? request.fork() : request, unprotected, permits );
+        }
+
+        private MemberRetrieval( final Repository repository, final ResourceStoreRequest parentRequest,
+                                 final ResourceStoreRequest memberRequest, final boolean unprotected,
+                                 final Semaphore permits )
+        {
+            super( new Callable<StorageItem>()
+            {
+                public StorageItem call()
+                    throws Exception
+                {
+                    try
                     {
-                        getLogger().debug(
-                            "Repository ID='"
-                                + repository.getId()
-                                + "' in group ID='"
-                                + this.getId()
-                                + "' was already processed during this request! This repository is skipped from processing. Request: "
-                                + request.toString() );
+                        if ( memberRequest.getProcessedRepositories().contains( repository.getId() ) )
+                        {
+                            return null;
+                        }
 
+                        if ( unprotected )
+                        {
+                            return repository.retrieveItem( false, memberRequest );
+                        }
+                        else
+                        {
+                            return repository.retrieveItem( memberRequest );
+                        }
+                    }
+                    finally
+                    {
+                        if ( permits != null )
+                        {
+                            permits.release();
+                        }
                     }
                 }
-            }
+            } );
+
+            this.repository = repository;
+
+            this.request = parentRequest;
+
+            this.forkedRequest = memberRequest != parentRequest ? memberRequest : null;
+
+            this.deferred = permits == null;
         }
 
-        return items;
+        public Repository getRepository()
+        {
+            return repository;
+        }
+
+        /**
+         * Returns true if member was skipped, since it was already processed during this request.
+         */
+        public boolean isSkipped()
+        {
+            return skipped;
+        }
+
+        /**
+         * Returns the retrieved item, performing the retrieval in caller thread if it was deferred, and waiting for
+         * it otherwise. Repositories processed by the forked request, if any, are merged back into the request of
+         * caller, and if the member was processed by an earlier retrieval meanwhile, the result is discarded and the
+         * retrieval is marked as skipped.
+         */
+        public StorageItem getItem()
+            throws IllegalOperationException, ItemNotFoundException, StorageException, AccessDeniedException
+        {
+            if ( forkedRequest != null && request.getProcessedRepositories().contains( repository.getId() ) )
+            {
+                cancel( false );
+
+                skipped = true;
+
+                return null;
+            }
+
+            if ( deferred )
+            {
+                run();
+            }
+
+            try
+            {
+                StorageItem item = get();
+
+                skipped = item == null;
+
+                return item;
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+
+                throw new LocalStorageException( "Interrupted while retrieving from member repository "
+                    + RepositoryUtils.getLoggedNameString( repository ), e );
+            }
+            catch ( CancellationException e )
+            {
+                throw new LocalStorageException( "Retrieval from member repository "
+                    + RepositoryUtils.getLoggedNameString( repository ) + " was cancelled", e );
+            }
+            catch ( ExecutionException e )
+            {
+                Throwable cause = e.getCause();
+
+                if ( cause instanceof IllegalOperationException )
+                {
+                    throw (IllegalOperationException) cause;
+                }
+                else if ( cause instanceof ItemNotFoundException )
+                {
+                    throw (ItemNotFoundException) cause;
+                }
+                else if ( cause instanceof StorageException )
+                {
+                    throw (StorageException) cause;
+                }
+                else if ( cause instanceof AccessDeniedException )
+                {
+                    throw (AccessDeniedException) cause;
+                }
+                else if ( cause instanceof RuntimeException )
+                {
+                    throw (RuntimeException) cause;
+                }
+                else if ( cause instanceof Error )
+                {
+                    throw (Error) cause;
+                }
+                else
+                {
+                    throw new LocalStorageException( "Retrieval from member repository "
+                        + RepositoryUtils.getLoggedNameString( repository ) + " failed", cause );
+                }
+            }
+            finally
+            {
+                if ( forkedRequest != null && isDone() && !isCancelled() )
+                {
+                    request.addProcessedRepositories( forkedRequest );
+                }
+            }
+        }
     }
 
     // ===================================================================================
@@ -499,24 +903,8 @@ public abstract class AbstractGroupRepository
     @Override
     public List<Repository> getTransitiveMemberRepositories()
     {
-        return getTransitiveMemberRepositories( this );
-    }
-
-    protected List<Repository> getTransitiveMemberRepositories( GroupRepository group )
-    {
-        List<Repository> repos = new ArrayList<Repository>();
-        for ( Repository repo : group.getMemberRepositories() )
-        {
-            if ( repo.getRepositoryKind().isFacetAvailable( GroupRepository.class ) )
-            {
-                repos.addAll( getTransitiveMemberRepositories( repo.adaptToFacet( GroupRepository.class ) ) );
-            }
-            else
-            {
-                repos.add( repo );
-            }
-        }
-        return repos;
+        // registry keeps an index of these
+        return repoRegistry.getTransitiveMemberRepositories( this );
     }
 
     @Override
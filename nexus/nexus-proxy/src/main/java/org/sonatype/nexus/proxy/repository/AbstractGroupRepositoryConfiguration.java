@@ -34,6 +34,13 @@ public class AbstractGroupRepositoryConfiguration
 {
     private static final String MEMBER_REPOSITORIES = "memberRepositories";
 
+    private static final String PARALLEL_RETRIEVAL = "parallelRetrieval";
+
+    private static final String PARALLEL_RETRIEVAL_LIMIT = "parallelRetrievalLimit";
+
+    /** The default count of concurrent member retrievals per group. */
+    public static final int DEFAULT_PARALLEL_RETRIEVAL_LIMIT = 8;
+
     public AbstractGroupRepositoryConfiguration( Xpp3Dom configuration )
     {
         super( configuration );
@@ -66,6 +73,27 @@ public class AbstractGroupRepositoryConfiguration
         removeFromCollection( getRootNode(), MEMBER_REPOSITORIES, repositoryId );
     }
 
+    public boolean isParallelRetrieval()
+    {
+        return Boolean.parseBoolean( getNodeValue( getRootNode(), PARALLEL_RETRIEVAL, Boolean.FALSE.toString() ) );
+    }
+
+    public void setParallelRetrieval( boolean val )
+    {
+        setNodeValue( getRootNode(), PARALLEL_RETRIEVAL, Boolean.toString( val ) );
+    }
+
+    public int getParallelRetrievalLimit()
+    {
+        return Integer.parseInt( getNodeValue( getRootNode(), PARALLEL_RETRIEVAL_LIMIT,
+            String.valueOf( DEFAULT_PARALLEL_RETRIEVAL_LIMIT ) ) );
+    }
+
+    public void setParallelRetrievalLimit( int val )
+    {
+        setNodeValue( getRootNode(), PARALLEL_RETRIEVAL_LIMIT, String.valueOf( val ) );
+    }
+
     @Override
     public ValidationResponse doValidateChanges( ApplicationConfiguration applicationConfiguration,
                                                  CoreConfiguration owner, Xpp3Dom config )
@@ -92,6 +120,15 @@ public class AbstractGroupRepositoryConfiguration
             response.addValidationError( message );
         }
 
+        if ( getParallelRetrievalLimit() < 1 )
+        {
+            ValidationMessage message =
+                new ValidationMessage( PARALLEL_RETRIEVAL_LIMIT, "Parallel retrieval limit must be positive!",
+                    "The count of concurrent member retrievals must be at least 1." );
+
+            response.addValidationError( message );
+        }
+
         // we cannot check for cycles here, since this class is not a component and to unravel groups, you would need
         // repo registry to do so. But the AbstractGroupRepository checks and does not allow itself to introduce cycles
         // anyway.
@@ -18,6 +18,7 @@
  */
 package org.sonatype.nexus.proxy.repository;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -25,10 +26,15 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.util.ExceptionUtils;
 import org.codehaus.plexus.util.StringUtils;
 import org.sonatype.configuration.ConfigurationException;
@@ -41,7 +47,9 @@ import org.sonatype.nexus.proxy.InvalidItemContentException;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.RemoteAccessDeniedException;
 import org.sonatype.nexus.proxy.RemoteAccessException;
+import org.sonatype.nexus.proxy.RemoteItemNotModifiedException;
 import org.sonatype.nexus.proxy.RemoteStorageException;
+import org.sonatype.nexus.proxy.RequestContext;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.StorageException;
 import org.sonatype.nexus.proxy.access.Action;
@@ -51,14 +59,22 @@ import org.sonatype.nexus.proxy.events.RepositoryEventProxyModeChanged;
 import org.sonatype.nexus.proxy.events.RepositoryEventProxyModeSet;
 import org.sonatype.nexus.proxy.events.RepositoryItemEventCache;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.ReadLockingContentLocator;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
+import org.sonatype.nexus.proxy.item.StorageCompositeFileItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.mirror.DefaultDownloadMirrors;
 import org.sonatype.nexus.proxy.mirror.DownloadMirrorSelector;
 import org.sonatype.nexus.proxy.mirror.DownloadMirrors;
 import org.sonatype.nexus.proxy.repository.EvictUnusedItemsWalkerProcessor.EvictUnusedItemsWalkerFilter;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
+import org.sonatype.nexus.proxy.storage.local.fs.DefaultFSLocalRepositoryStorage;
+import org.sonatype.nexus.proxy.storage.local.fs.FileContentLocator;
+import org.sonatype.nexus.proxy.storage.local.fs.StreamThroughContentLocator;
+import org.sonatype.nexus.proxy.storage.remote.AbstractRemoteRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.remote.DefaultRemoteStorageContext;
 import org.sonatype.nexus.proxy.storage.remote.RemoteRepositoryStorage;
 import org.sonatype.nexus.proxy.storage.remote.RemoteStorageContext;
@@ -70,6 +86,7 @@ import org.sonatype.nexus.threads.NexusThreadFactory;
 import org.sonatype.nexus.util.ConstantNumberSequence;
 import org.sonatype.nexus.util.FibonacciNumberSequence;
 import org.sonatype.nexus.util.NumberSequence;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 
 /**
  * Adds the proxying capability to a simple repository. The proxying will happen only if reposiory has remote storage!
@@ -92,8 +109,34 @@ public abstract class AbstractProxyRepository
      */
     private static final long AUTO_BLOCK_STATUS_MAX_RETAIN_TIME = 60L * 60L * 1000L;
 
-    private static final ExecutorService remoteStatusUpdateExecutorService =
-        Executors.newCachedThreadPool( new NexusThreadFactory( "nxproxy", "Remote Status Update" ) );
+    /**
+     * Is "stream-through" of remote content enabled: remote content is served to requesting clients while it is being
+     * cached, instead of serving it once it is completely cached.
+     */
+    private static final boolean STREAM_THROUGH_ENABLED = SystemPropertiesHelper.getBoolean(
+        "nexus.proxy.streamThrough.enabled", false );
+
+    /** The minimal length of remote content to be streamed through, content of unknown length is always eligible. */
+    private static final int STREAM_THROUGH_MIN_LENGTH = SystemPropertiesHelper.getInteger(
+        "nexus.proxy.streamThrough.minLength", 1024 * 1024 );
+
+    /** The maximum count of concurrent stream-through downloads, when reached, downloads are done "classic" way. */
+    private static final int STREAM_THROUGH_MAX_DOWNLOADS = SystemPropertiesHelper.getInteger(
+        "nexus.proxy.streamThrough.maxDownloads", 50 );
+
+    /**
+     * Are aged items revalidated with one conditional GET (if remote storage supports it), instead of HEAD and GET.
+     */
+    private static final boolean CONDITIONAL_REVALIDATION_ENABLED = SystemPropertiesHelper.getBoolean(
+        "nexus.proxy.conditionalRevalidation.enabled", true );
+
+    private static final ExecutorService streamThroughExecutorService = new ThreadPoolExecutor( 0,
+        STREAM_THROUGH_MAX_DOWNLOADS, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new NexusThreadFactory(
+            "nxproxy", "Stream Through Download" ) );
+
+    /** The stream-through downloads in progress, keyed by item path */
+    private final ConcurrentMap<String, StreamThroughDownload> streamThroughDownloads =
+        new ConcurrentHashMap<String, StreamThroughDownload>();
 
     /** if remote url changed, need special handling after save */
     private boolean remoteUrlChanged = false;
@@ -108,7 +151,8 @@ public abstract class AbstractProxyRepository
     private volatile NumberSequence remoteStatusRetainTimeSequence = new ConstantNumberSequence(
         REMOTE_STATUS_RETAIN_TIME );
 
-    private Thread repositoryStatusCheckerThread;
+    @Requirement
+    private RepositoryStatusCheckScheduler repositoryStatusCheckScheduler;
 
     /** The remote storage. */
     private RemoteRepositoryStorage remoteStorage;
@@ -272,14 +316,9 @@ public abstract class AbstractProxyRepository
         getExternalConfiguration( true ).setAutoBlockActive( val );
     }
 
-    public Thread getRepositoryStatusCheckerThread()
+    protected RepositoryStatusCheckScheduler getRepositoryStatusCheckScheduler()
     {
-        return repositoryStatusCheckerThread;
-    }
-
-    public void setRepositoryStatusCheckerThread( Thread repositoryStatusCheckerThread )
-    {
-        this.repositoryStatusCheckerThread = repositoryStatusCheckerThread;
+        return repositoryStatusCheckScheduler;
     }
 
     public long getCurrentRemoteStatusRetainTime()
@@ -365,11 +404,8 @@ public abstract class AbstractProxyRepository
                     // make it step one
                     this.remoteStatusRetainTimeSequence.next();
 
-                    // ping the monitor thread
-                    if ( this.repositoryStatusCheckerThread != null )
-                    {
-                        this.repositoryStatusCheckerThread.interrupt();
-                    }
+                    // postpone the next scheduled check, as sequence changed
+                    getRepositoryStatusCheckScheduler().reschedule( this );
                 }
             }
             else
@@ -656,7 +692,7 @@ public abstract class AbstractProxyRepository
             // check for thread and go check it
             _remoteStatusChecking = true;
 
-            remoteStatusUpdateExecutorService.submit( new RemoteStatusUpdateCallable( request ) );
+            getRepositoryStatusCheckScheduler().execute( this, new RemoteStatusUpdate( request ) );
         }
 
         return remoteStatus;
@@ -990,7 +1026,67 @@ public abstract class AbstractProxyRepository
                 {
                     boolean shouldGetRemote = false;
 
-                    if ( localItem != null )
+                    if ( localItem != null && isConditionalRevalidationActive() )
+                    {
+                        if ( getLogger().isDebugEnabled() )
+                        {
+                            getLogger().debug(
+                                "Item " + request.toString() + " is old, revalidating it against remote storage: "
+                                    + new Date( localItem.getModified() ) );
+                        }
+
+                        // one conditional request: not modified renews the local one, otherwise we got the newer
+                        try
+                        {
+                            remoteItem = doRevalidateRemoteItem( localItem, request );
+
+                            if ( remoteItem == null )
+                            {
+                                markItemRemotelyChecked( request );
+
+                                if ( getLogger().isDebugEnabled() )
+                                {
+                                    getLogger().debug(
+                                        "No newer version of item " + request.toString() + " found on remote storage." );
+                                }
+                            }
+                            else
+                            {
+                                if ( getLogger().isDebugEnabled() )
+                                {
+                                    getLogger().debug(
+                                        "Newer version of item " + request.toString()
+                                            + " is found on remote storage and is retrieved." );
+                                }
+                            }
+                        }
+                        catch ( ItemNotFoundException ex )
+                        {
+                            if ( ex.getCause() instanceof InvalidItemContentException )
+                            {
+                                // the newer content was invalid, and local copy is gone
+                                throw ex;
+                            }
+
+                            // not found remotely, keep the local one, just like existence check does
+                            markItemRemotelyChecked( request );
+
+                            remoteItem = null;
+                        }
+                        catch ( RemoteStorageException ex )
+                        {
+                            autoBlockProxying( ex );
+
+                            // do not go remote, but we did not mark it as "remote checked" also.
+                            remoteItem = null;
+                        }
+                        catch ( StorageException ex )
+                        {
+                            // do not go remote, but we did not mark it as "remote checked" also.
+                            remoteItem = null;
+                        }
+                    }
+                    else if ( localItem != null )
                     {
                         if ( getLogger().isDebugEnabled() )
                         {
@@ -1085,10 +1181,8 @@ public abstract class AbstractProxyRepository
                             }
                         }
                     }
-                    else
-                    {
-                        remoteItem = null;
-                    }
+
+                    // otherwise remoteItem is either null, or is the newer item got by conditional revalidation
                 }
                 catch ( ItemNotFoundException ex )
                 {
@@ -1239,6 +1333,59 @@ public abstract class AbstractProxyRepository
         }
     }
 
+    /**
+     * Returns true if aged items should be revalidated with one conditional retrieval, instead of checking for newer
+     * remote item and retrieving it afterwards.
+     * 
+     * @return
+     */
+    protected boolean isConditionalRevalidationActive()
+    {
+        return CONDITIONAL_REVALIDATION_ENABLED && getRemoteStorage() instanceof AbstractRemoteRepositoryStorage
+            && ( (AbstractRemoteRepositoryStorage) getRemoteStorage() ).isConditionalRetrievalSupported();
+    }
+
+    /**
+     * Retrieves the item from remote storage only if remote item was modified since the local copy was cached, using
+     * one conditional request. The retrieved item is cached as usual.
+     * 
+     * @param localItem
+     * @param request
+     * @return the newer remote item, or null if remote item is not modified.
+     * @throws ItemNotFoundException
+     * @throws RemoteAccessException
+     * @throws StorageException
+     */
+    protected AbstractStorageItem doRevalidateRemoteItem( StorageItem localItem, ResourceStoreRequest request )
+        throws ItemNotFoundException, RemoteAccessException, StorageException
+    {
+        final RequestContext context = request.getRequestContext();
+
+        context.put( RemoteRepositoryStorage.CTX_REVALIDATE_MODIFIED, Long.valueOf( localItem.getModified() ) );
+
+        final String etag = localItem.getAttributes().get( RemoteRepositoryStorage.REMOTE_ETAG_KEY );
+
+        if ( etag != null )
+        {
+            context.put( RemoteRepositoryStorage.CTX_REVALIDATE_ETAG, etag );
+        }
+
+        try
+        {
+            return doRetrieveRemoteItem( request );
+        }
+        catch ( RemoteItemNotModifiedException e )
+        {
+            return null;
+        }
+        finally
+        {
+            context.remove( RemoteRepositoryStorage.CTX_REVALIDATE_MODIFIED );
+
+            context.remove( RemoteRepositoryStorage.CTX_REVALIDATE_ETAG );
+        }
+    }
+
     /**
      * Retrieves item with specified uid from remote storage according to the following retry-fallback-blacklist rules.
      * <li>Only retrieve item operation will use mirrors, other operations, like check availability and retrieve
@@ -1265,6 +1412,15 @@ public abstract class AbstractProxyRepository
     protected AbstractStorageItem doRetrieveRemoteItem( ResourceStoreRequest request )
         throws ItemNotFoundException, RemoteAccessException, StorageException
     {
+        // is a download of this very same item already streamed through? just follow it, the exclusive lock would wait
+        // for the followers reading it
+        AbstractStorageItem streamedItem = joinStreamThrough( request );
+
+        if ( streamedItem != null )
+        {
+            return streamedItem;
+        }
+
         RepositoryItemUid itemUid = createUid( request.getRequestPath() );
 
         // all this remote download happens in exclusive lock
@@ -1272,6 +1428,14 @@ public abstract class AbstractProxyRepository
 
         try
         {
+            // it might have been started while we waited for the lock
+            streamedItem = joinStreamThrough( request );
+
+            if ( streamedItem != null )
+            {
+                return streamedItem;
+            }
+
             DownloadMirrorSelector selector = this.openDownloadMirrorSelector( request );
 
             List<Mirror> mirrors = new ArrayList<Mirror>( selector.getMirrors() );
@@ -1328,6 +1492,18 @@ public abstract class AbstractProxyRepository
 
                             remoteItem.getItemContext().putAll( request.getRequestContext() );
 
+                            streamedItem =
+                                doStreamThroughItem( request, mirror,
+                                    mirrors.subList( mirrors.indexOf( mirror ) + 1, mirrors.size() ), remoteItem );
+
+                            if ( streamedItem != null )
+                            {
+                                // content will be cached and validated once download is done
+                                selector.feedbackSuccess( mirror );
+
+                                return streamedItem;
+                            }
+
                             remoteItem = doCacheItem( remoteItem );
 
                             if ( doValidateRemoteItemContent( request, mirror.getUrl(), remoteItem, events ) )
@@ -1350,6 +1526,13 @@ public abstract class AbstractProxyRepository
                                 continue all_urls; // retry with next url
                             }
                         }
+                        catch ( RemoteItemNotModifiedException e )
+                        {
+                            // conditional retrieval, local copy is up to date
+                            selector.feedbackSuccess( mirror );
+
+                            throw e;
+                        }
                         catch ( ItemNotFoundException e )
                         {
                             lastException = e;
@@ -1413,17 +1596,22 @@ public abstract class AbstractProxyRepository
 
             sendContentValidationEvents( request, events, false );
 
-            try
-            {
-                getLocalStorage().deleteItem( this, request );
-            }
-            catch ( ItemNotFoundException e )
-            {
-                // good, we want this item deleted
-            }
-            catch ( UnsupportedStorageOperationException e )
+            // when revalidating, the local copy is still good unless invalid content overwrote it
+            if ( !request.getRequestContext().containsKey( RemoteRepositoryStorage.CTX_REVALIDATE_MODIFIED )
+                || lastException instanceof InvalidItemContentException )
             {
-                getLogger().warn( "Unexpected Exception", e );
+                try
+                {
+                    getLocalStorage().deleteItem( this, request );
+                }
+                catch ( ItemNotFoundException e )
+                {
+                    // good, we want this item deleted
+                }
+                catch ( UnsupportedStorageOperationException e )
+                {
+                    getLogger().warn( "Unexpected Exception", e );
+                }
             }
 
             if ( lastException instanceof InvalidItemContentException )
@@ -1450,6 +1638,313 @@ public abstract class AbstractProxyRepository
         }
     }
 
+    /**
+     * Returns true if the remotely retrieved item should be "streamed through": handed over to client(s) while it's
+     * content is being downloaded and cached, instead of being handed over once the content is completely cached. Only
+     * file local storage supports this.
+     */
+    protected boolean shouldStreamThrough( AbstractStorageItem remoteItem )
+    {
+        if ( !STREAM_THROUGH_ENABLED || !( getLocalStorage() instanceof DefaultFSLocalRepositoryStorage )
+            || !( remoteItem instanceof DefaultStorageFileItem ) || remoteItem instanceof StorageCompositeFileItem )
+        {
+            return false;
+        }
+
+        long length = ( (StorageFileItem) remoteItem ).getLength();
+
+        if ( length >= 0 && length < STREAM_THROUGH_MIN_LENGTH )
+        {
+            // small enough to be cached first
+            return false;
+        }
+
+        for ( RequestProcessor processor : getRequestProcessors().values() )
+        {
+            if ( !processor.shouldCache( this, remoteItem ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Starts a stream-through download of the remote item if possible, and returns an item following the download, or
+     * null if the remote item should be cached the "classic" way. Invoked with exclusive lock held on item UID. If the
+     * downloaded content turns out to be invalid, the followers fail, and the remaining mirrors are tried the "classic"
+     * way, so the item gets cached for subsequent requests.
+     */
+    protected AbstractStorageItem doStreamThroughItem( ResourceStoreRequest request, Mirror mirror,
+                                                       List<Mirror> remainingMirrors, AbstractStorageItem remoteItem )
+        throws StorageException
+    {
+        if ( !shouldStreamThrough( remoteItem ) )
+        {
+            return null;
+        }
+
+        DefaultStorageFileItem remoteFileItem = (DefaultStorageFileItem) remoteItem;
+
+        StreamThroughContentLocator content =
+            ( (DefaultFSLocalRepositoryStorage) getLocalStorage() ).prepareStreamThrough( this, remoteFileItem );
+
+        StreamThroughDownload download =
+            new StreamThroughDownload( request, mirror, remainingMirrors, remoteFileItem, content );
+
+        String path = remoteItem.getRepositoryItemUid().getPath();
+
+        streamThroughDownloads.put( path, download );
+
+        try
+        {
+            streamThroughExecutorService.execute( download );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            // too many downloads in progress, go "classic" way, remote item content is not touched yet
+            streamThroughDownloads.remove( path, download );
+
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug(
+                    "Too many stream-through downloads in progress, caching " + request.toString() + " first." );
+            }
+
+            return null;
+        }
+
+        return download.createFollowingItem( request );
+    }
+
+    /**
+     * Returns an item following a stream-through download of the requested item in progress, or null if there is no
+     * such download.
+     */
+    protected AbstractStorageItem joinStreamThrough( ResourceStoreRequest request )
+    {
+        StreamThroughDownload download = streamThroughDownloads.get( createUid( request.getRequestPath() ).getPath() );
+
+        if ( download != null )
+        {
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug( "Item " + request.toString() + " is being downloaded, following the download." );
+            }
+
+            return download.createFollowingItem( request );
+        }
+
+        return null;
+    }
+
+    /**
+     * A download of remote content that is streamed through: it transfers the remote content into local storage,
+     * validates and caches it, while any number of clients follows the transfer. Followers read the content holding
+     * the read lock of the item UID, as any other reader does, hence the content is committed (renamed to it's final
+     * place) once all the followers are done reading it.
+     */
+    protected class StreamThroughDownload
+        implements Runnable
+    {
+        private final ResourceStoreRequest request;
+
+        private final Mirror mirror;
+
+        private final List<Mirror> remainingMirrors;
+
+        private final DefaultStorageFileItem remoteItem;
+
+        private final DefaultStorageFileItem template;
+
+        private final StreamThroughContentLocator content;
+
+        public StreamThroughDownload( ResourceStoreRequest request, Mirror mirror, List<Mirror> remainingMirrors,
+                                      DefaultStorageFileItem remoteItem, StreamThroughContentLocator content )
+        {
+            this.request = request;
+
+            this.mirror = mirror;
+
+            this.remainingMirrors = new ArrayList<Mirror>( remainingMirrors );
+
+            this.remoteItem = remoteItem;
+
+            this.content = content;
+
+            // remote item is modified during download, so keep a snapshot for the followers
+            this.template = createItem( new ResourceStoreRequest( remoteItem ), remoteItem );
+        }
+
+        public AbstractStorageItem createFollowingItem( ResourceStoreRequest request )
+        {
+            DefaultStorageFileItem result = createItem( request, template );
+
+            result.setContentLocator( new ReadLockingContentLocator( result.getRepositoryItemUid(), content ) );
+
+            return result;
+        }
+
+        protected DefaultStorageFileItem createItem( ResourceStoreRequest request, DefaultStorageFileItem source )
+        {
+            DefaultStorageFileItem result =
+                new DefaultStorageFileItem( AbstractProxyRepository.this, request, true, true, content );
+
+            result.overlay( source );
+
+            result.setLength( source.getLength() );
+
+            return result;
+        }
+
+        public void run()
+        {
+            String path = remoteItem.getRepositoryItemUid().getPath();
+
+            try
+            {
+                content.transfer();
+
+                // validate the completely transferred content, before it gets committed
+                remoteItem.getItemContext().put( StorageFileItem.DIGEST_SHA1_KEY, content.getSha1Digest() );
+                remoteItem.getItemContext().put( StorageFileItem.DIGEST_MD5_KEY, content.getMd5Digest() );
+                remoteItem.getAttributes().put( StorageFileItem.DIGEST_SHA1_KEY, content.getSha1Digest() );
+                remoteItem.getAttributes().put( StorageFileItem.DIGEST_MD5_KEY, content.getMd5Digest() );
+                remoteItem.setLength( content.getBytesWritten() );
+                remoteItem.setContentLocator( new FileContentLocator( content.getFile(), content.getMimeType() ) );
+
+                List<NexusArtifactEvent> events = new ArrayList<NexusArtifactEvent>();
+
+                boolean isContentValid = doValidateRemoteItemContent( request, mirror.getUrl(), remoteItem, events );
+
+                sendContentValidationEvents( request, events, isContentValid );
+
+                if ( !isContentValid )
+                {
+                    newContentValidationEvent( new InvalidItemContentException( request, mirror, remoteItem ) );
+
+                    content.fail( new IOException( "Item content is invalid on path '" + request.toString()
+                        + "' on mirror '" + mirror.getUrl() + "'" ) );
+
+                    // followers got the invalid content already, but subsequent requests should not
+                    retryRemainingMirrors();
+
+                    return;
+                }
+
+                content.accepted();
+
+                remoteItem.setContentLocator( content );
+
+                doCacheItem( remoteItem );
+
+                if ( !content.isCommitted() )
+                {
+                    content.fail( new IOException( "Item on path '" + request.toString() + "' was not cached!" ) );
+                }
+            }
+            catch ( Exception e )
+            {
+                getLogger().warn( "Got exception during stream-through download of " + request.toString(), e );
+
+                IOException ioe = new IOException( e.getMessage() );
+
+                ioe.initCause( e );
+
+                content.fail( ioe );
+            }
+            finally
+            {
+                streamThroughDownloads.remove( path, this );
+
+                if ( !content.isCommitted() )
+                {
+                    content.getFile().delete();
+                }
+            }
+        }
+
+        /**
+         * Retrieves, caches and validates the item from the remaining mirrors one by one, the "classic" way, until one
+         * of them has valid content. If all of them have invalid content, the cached item is deleted.
+         */
+        protected void retryRemainingMirrors()
+        {
+            if ( remainingMirrors.isEmpty() )
+            {
+                return;
+            }
+
+            RepositoryItemUid itemUid = remoteItem.getRepositoryItemUid();
+
+            itemUid.lock( Action.create );
+
+            try
+            {
+                boolean invalidCached = false;
+
+                for ( Mirror next : remainingMirrors )
+                {
+                    try
+                    {
+                        getRemoteStorage().validateStorageUrl( next.getUrl() );
+
+                        AbstractStorageItem nextItem =
+                            getRemoteStorage().retrieveItem( AbstractProxyRepository.this, request, next.getUrl() );
+
+                        nextItem.getItemContext().putAll( request.getRequestContext() );
+
+                        nextItem = doCacheItem( nextItem );
+
+                        List<NexusArtifactEvent> events = new ArrayList<NexusArtifactEvent>();
+
+                        boolean isContentValid = doValidateRemoteItemContent( request, next.getUrl(), nextItem, events );
+
+                        sendContentValidationEvents( request, events, isContentValid );
+
+                        if ( isContentValid )
+                        {
+                            return;
+                        }
+
+                        invalidCached = true;
+
+                        newContentValidationEvent( new InvalidItemContentException( request, next, nextItem ) );
+                    }
+                    catch ( ItemNotFoundException e )
+                    {
+                        // try next
+                    }
+                    catch ( Exception e )
+                    {
+                        logFailedMirror( next, e );
+                    }
+                }
+
+                if ( invalidCached )
+                {
+                    try
+                    {
+                        getLocalStorage().deleteItem( AbstractProxyRepository.this, request );
+                    }
+                    catch ( ItemNotFoundException e )
+                    {
+                        // good, we want this item deleted
+                    }
+                    catch ( Exception e )
+                    {
+                        getLogger().warn( "Could not delete invalid content of " + request.toString(), e );
+                    }
+                }
+            }
+            finally
+            {
+                itemUid.unlock();
+            }
+        }
+    }
+
     private void newContentValidationEvent( InvalidItemContentException iice )
     {
         NexusItemInfo ai = new NexusItemInfo();
@@ -1537,51 +2032,63 @@ public abstract class AbstractProxyRepository
         }
     }
 
-    private class RemoteStatusUpdateCallable
-        implements Callable<Object>
+    private class RemoteStatusUpdate
+        implements Runnable
     {
         private ResourceStoreRequest request;
 
-        public RemoteStatusUpdateCallable( ResourceStoreRequest request )
+        public RemoteStatusUpdate( ResourceStoreRequest request )
         {
             this.request = request;
         }
 
-        public Object call()
-            throws Exception
+        public void run()
         {
             try
             {
-                try
+                if ( !getProxyMode().shouldCheckRemoteStatus() )
                 {
-                    if ( !getProxyMode().shouldCheckRemoteStatus() )
-                    {
-                        setRemoteStatus( RemoteStatus.UNAVAILABLE, new ItemNotFoundException( request ) );
-                    }
-                    else
+                    setRemoteStatus( RemoteStatus.UNAVAILABLE, new ItemNotFoundException( request ) );
+                }
+                else
+                {
+                    final long started = System.currentTimeMillis();
+
+                    try
                     {
                         if ( isRemoteStorageReachable( request ) )
                         {
+                            getRepositoryStatusCheckScheduler().statusChecked( AbstractProxyRepository.this,
+                                System.currentTimeMillis() - started, false );
+
                             autoUnBlockProxying();
                         }
                         else
                         {
+                            getRepositoryStatusCheckScheduler().statusChecked( AbstractProxyRepository.this,
+                                System.currentTimeMillis() - started, true );
+
                             autoBlockProxying( new ItemNotFoundException( request ) );
                         }
                     }
-                }
-                catch ( RemoteStorageException e )
-                {
-                    // autoblock only when remote problems occur
-                    autoBlockProxying( e );
+                    catch ( RemoteStorageException e )
+                    {
+                        getRepositoryStatusCheckScheduler().statusChecked( AbstractProxyRepository.this,
+                            System.currentTimeMillis() - started, true );
+
+                        // autoblock only when remote problems occur
+                        autoBlockProxying( e );
+                    }
                 }
             }
+            catch ( StorageException e )
+            {
+                getLogger().debug( "Could not update remote status of repository ID='" + getId() + "'", e );
+            }
             finally
             {
                 _remoteStatusChecking = false;
             }
-
-            return null;
         }
     }
 
@@ -20,9 +20,11 @@ package org.sonatype.nexus.proxy.repository;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.codehaus.plexus.component.annotations.Requirement;
@@ -45,6 +47,7 @@ import org.sonatype.nexus.proxy.StorageException;
 import org.sonatype.nexus.proxy.access.AccessManager;
 import org.sonatype.nexus.proxy.access.Action;
 import org.sonatype.nexus.proxy.attributes.AttributesHandler;
+import org.sonatype.nexus.proxy.attributes.inspectors.DigestCalculatingInspector;
 import org.sonatype.nexus.proxy.cache.CacheManager;
 import org.sonatype.nexus.proxy.cache.PathCache;
 import org.sonatype.nexus.proxy.events.RepositoryConfigurationUpdatedEvent;
@@ -67,6 +70,8 @@ import org.sonatype.nexus.proxy.item.RepositoryItemUidFactory;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StorageItemInfo;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
 import org.sonatype.nexus.proxy.item.uid.RepositoryItemUidAttributeManager;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.storage.local.DefaultLocalStorageContext;
@@ -635,6 +640,13 @@ public abstract class AbstractRepository
 
     public void storeItem( ResourceStoreRequest request, InputStream is, Map<String, String> userAttributes )
         throws UnsupportedStorageOperationException, IllegalOperationException, StorageException, AccessDeniedException
+    {
+        storeItem( false, createStoredFileItem( request, is, userAttributes ) );
+    }
+
+    protected DefaultStorageFileItem createStoredFileItem( ResourceStoreRequest request, InputStream is,
+                                                           Map<String, String> userAttributes )
+        throws AccessDeniedException
     {
         if ( !checkConditions( request, getResultingActionOnWrite( request ) ) )
         {
@@ -650,7 +662,7 @@ public abstract class AbstractRepository
             fItem.getAttributes().putAll( userAttributes );
         }
 
-        storeItem( false, fItem );
+        return fItem;
     }
 
     public void createCollection( ResourceStoreRequest request, Map<String, String> userAttributes )
@@ -984,6 +996,8 @@ public abstract class AbstractRepository
             getLogger().debug( getId() + ".storeItem() :: " + item.getRepositoryItemUid().toString() );
         }
 
+        checkStoreAllowed( item );
+
         if ( !getLocalStatus().shouldServiceRequest() )
         {
             throw new RepositoryNotAvailableException( this );
@@ -1012,6 +1026,240 @@ public abstract class AbstractRepository
         getApplicationEventMulticaster().notifyEventListeners( new RepositoryItemEventStore( this, item ) );
     }
 
+    /**
+     * Checks whether the item may be stored into this repository, before anything is stored. It is the one hook
+     * shared by {@link #storeItem(boolean, StorageItem)} and {@link #doStoreItemWithChecksums(boolean, StorageItem)},
+     * subclasses vetoing stores should override this method instead of the store methods, otherwise items stored with
+     * checksums would bypass their checks.
+     * 
+     * @param item the item to be stored
+     * @throws UnsupportedStorageOperationException if the item may not be stored
+     */
+    protected void checkStoreAllowed( StorageItem item )
+        throws UnsupportedStorageOperationException, IllegalOperationException
+    {
+        // nothing by default
+    }
+
+    /**
+     * Stores the item and it's ".sha1" and ".md5" checksum files as one operation. The checksums are the digests
+     * calculated while the item content was written, hence the content is not read again, and the checksum files are
+     * stored while still holding the write lock of the item. Store events of all the stored items are fired together,
+     * once all of them are stored.
+     */
+    protected void doStoreItemWithChecksums( ResourceStoreRequest request, InputStream is,
+                                             Map<String, String> userAttributes )
+        throws UnsupportedStorageOperationException, IllegalOperationException, StorageException, AccessDeniedException
+    {
+        doStoreItemWithChecksums( false, createStoredFileItem( request, is, userAttributes ) );
+    }
+
+    /**
+     * Stores the item and it's ".sha1" and ".md5" checksum files as one operation.
+     * 
+     * @see #doStoreItemWithChecksums(ResourceStoreRequest, InputStream, Map)
+     */
+    protected void doStoreItemWithChecksums( boolean fromTask, StorageItem item )
+        throws UnsupportedStorageOperationException, IllegalOperationException, StorageException
+    {
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug( getId() + ".storeItemWithChecksums() :: " + item.getRepositoryItemUid().toString() );
+        }
+
+        checkStoreAllowed( item );
+
+        if ( !getLocalStatus().shouldServiceRequest() )
+        {
+            throw new RepositoryNotAvailableException( this );
+        }
+
+        RepositoryItemUid uid = createUid( item.getPath() );
+
+        // replace UID to own one
+        item.setRepositoryItemUid( uid );
+
+        List<StorageItem> storedItems = new ArrayList<StorageItem>( 3 );
+
+        uid.lock( getResultingActionOnWrite( new ResourceStoreRequest( item ) ) );
+
+        try
+        {
+            // store it
+            getLocalStorage().storeItem( this, item );
+
+            storedItems.add( item );
+
+            // digests were calculated in the write pass above
+            if ( item instanceof StorageFileItem )
+            {
+                storeChecksumItem( item, ".sha1", DigestCalculatingInspector.DIGEST_SHA1_KEY, storedItems );
+
+                storeChecksumItem( item, ".md5", DigestCalculatingInspector.DIGEST_MD5_KEY, storedItems );
+            }
+        }
+        finally
+        {
+            uid.unlock();
+        }
+
+        for ( StorageItem storedItem : storedItems )
+        {
+            // remove the "request" item from n-cache if there
+            removeFromNotFoundCache( storedItem.getResourceStoreRequest() );
+        }
+
+        for ( StorageItem storedItem : storedItems )
+        {
+            getApplicationEventMulticaster().notifyEventListeners( new RepositoryItemEventStore( this, storedItem ) );
+        }
+    }
+
+    /**
+     * Deletes the item along with it's ".sha1" and ".md5" checksum files and it's ".asc" signature (having checksums
+     * too). Missing checksums and signature are ignored.
+     */
+    protected void doDeleteItemWithChecksums( ResourceStoreRequest request )
+        throws UnsupportedStorageOperationException, IllegalOperationException, ItemNotFoundException,
+        StorageException, AccessDeniedException
+    {
+        try
+        {
+            deleteItem( request );
+        }
+        catch ( ItemNotFoundException e )
+        {
+            // no guarantee that the .asc files will exist
+            if ( !request.getRequestPath().endsWith( ".asc" ) )
+            {
+                throw e;
+            }
+        }
+
+        String originalPath = request.getRequestPath();
+
+        try
+        {
+            for ( String suffix : new String[] { ".sha1", ".md5" } )
+            {
+                request.setRequestPath( originalPath + suffix );
+
+                try
+                {
+                    deleteItem( request );
+                }
+                catch ( ItemNotFoundException e )
+                {
+                    // ignore not found
+                }
+            }
+
+            // Now remove the .asc files, and the checksums stored with them as well
+            // Note this is a recursive call, hence the check for .asc
+            if ( !originalPath.endsWith( ".asc" ) )
+            {
+                request.setRequestPath( originalPath + ".asc" );
+
+                doDeleteItemWithChecksums( request );
+            }
+        }
+        finally
+        {
+            request.setRequestPath( originalPath );
+        }
+    }
+
+    /**
+     * Deletes the item along with it's checksum files and signature.
+     * 
+     * @see #doDeleteItemWithChecksums(ResourceStoreRequest)
+     */
+    protected void doDeleteItemWithChecksums( boolean fromTask, ResourceStoreRequest request )
+        throws UnsupportedStorageOperationException, IllegalOperationException, ItemNotFoundException, StorageException
+    {
+        try
+        {
+            deleteItem( fromTask, request );
+        }
+        catch ( ItemNotFoundException e )
+        {
+            // no guarantee that the .asc files will exist
+            if ( !request.getRequestPath().endsWith( ".asc" ) )
+            {
+                throw e;
+            }
+        }
+
+        for ( String suffix : new String[] { ".sha1", ".md5" } )
+        {
+            try
+            {
+                request.pushRequestPath( request.getRequestPath() + suffix );
+
+                deleteItem( fromTask, request );
+            }
+            catch ( ItemNotFoundException e )
+            {
+                // ignore not found
+            }
+            finally
+            {
+                request.popRequestPath();
+            }
+        }
+
+        // Now remove the .asc files, and the checksums stored with them as well
+        // Note this is a recursive call, hence the check for .asc
+        if ( !request.getRequestPath().endsWith( ".asc" ) )
+        {
+            try
+            {
+                request.pushRequestPath( request.getRequestPath() + ".asc" );
+
+                doDeleteItemWithChecksums( fromTask, request );
+            }
+            finally
+            {
+                request.popRequestPath();
+            }
+        }
+    }
+
+    private void storeChecksumItem( StorageItem item, String suffix, String digestKey, List<StorageItem> storedItems )
+        throws UnsupportedStorageOperationException, LocalStorageException
+    {
+        String digest = item.getAttributes().get( digestKey );
+
+        if ( StringUtils.isEmpty( digest ) )
+        {
+            return;
+        }
+
+        ResourceStoreRequest request = new ResourceStoreRequest( item );
+
+        request.setRequestPath( item.getPath() + suffix );
+
+        DefaultStorageFileItem checksumItem =
+            new DefaultStorageFileItem( this, request, true, true, new StringContentLocator( digest ) );
+
+        RepositoryItemUid checksumUid = createUid( checksumItem.getPath() );
+
+        checksumItem.setRepositoryItemUid( checksumUid );
+
+        checksumUid.lock( getResultingActionOnWrite( request ) );
+
+        try
+        {
+            getLocalStorage().storeItem( this, checksumItem );
+        }
+        finally
+        {
+            checksumUid.unlock();
+        }
+
+        storedItems.add( checksumItem );
+    }
+
     public Collection<StorageItem> list( boolean fromTask, ResourceStoreRequest request )
         throws IllegalOperationException, ItemNotFoundException, StorageException
     {
@@ -1064,6 +1312,26 @@ public abstract class AbstractRepository
         return items;
     }
 
+    public Collection<StorageItemInfo> listItemInfos( boolean fromTask, ResourceStoreRequest request )
+        throws IllegalOperationException, ItemNotFoundException, StorageException
+    {
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug( getId() + ".listItemInfos() :: " + request.toString() );
+        }
+
+        if ( !getLocalStatus().shouldServiceRequest() )
+        {
+            throw new RepositoryNotAvailableException( this );
+        }
+
+        request.addProcessedRepository( this );
+
+        maintainNotFoundCache( request );
+
+        return doListItemInfos( request );
+    }
+
     public RepositoryItemUid createUid( String path )
     {
         return getRepositoryItemUidFactory().createUid( this, path );
@@ -1256,6 +1524,12 @@ public abstract class AbstractRepository
         return getLocalStorage().listItems( this, request );
     }
 
+    protected Collection<StorageItemInfo> doListItemInfos( ResourceStoreRequest request )
+        throws ItemNotFoundException, StorageException
+    {
+        return getLocalStorage().listItemInfos( this, request );
+    }
+
     protected StorageItem doRetrieveItem( ResourceStoreRequest request )
         throws IllegalOperationException, ItemNotFoundException, StorageException
     {
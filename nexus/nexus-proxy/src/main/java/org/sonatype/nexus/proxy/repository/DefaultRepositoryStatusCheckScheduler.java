@@ -0,0 +1,617 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.time.DurationFormatUtils;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+
+/**
+ * Default implementation of {@link RepositoryStatusCheckScheduler}, using a "hashed timer wheel": scheduled checks are
+ * hashed into the buckets of the wheel by their due "tick", and a single timer thread advances the wheel once per tick,
+ * handing over the due checks to a small bounded thread pool. Scheduling and cancelling a check is O(1), and the
+ * timer thread does not care how many proxy repositories exists. To avoid bursts of checks (ie. at startup, or when
+ * many repositories share same retain time), a random jitter is added to every delay.
+ * 
+ * @author cstamas
+ */
+@Component( role = RepositoryStatusCheckScheduler.class )
+public class DefaultRepositoryStatusCheckScheduler
+    implements RepositoryStatusCheckScheduler, Disposable
+{
+    /** The duration of one tick of the wheel (the resolution of scheduling): 1 second. */
+    private static final long TICK_DURATION = SystemPropertiesHelper.getInteger(
+        "nexus.proxy.statusCheck.tickMillis", 1000 );
+
+    /** The count of buckets in the wheel, must be power of 2. */
+    private static final int WHEEL_SIZE = 512;
+
+    /** The count of threads performing the remote status checks and updates. */
+    private static final int THREADS = SystemPropertiesHelper.getInteger( "nexus.proxy.statusCheck.threads", 5 );
+
+    /** The maximum jitter added to the check delays, in percents of the delay. */
+    private static final int JITTER_PERCENT = SystemPropertiesHelper.getInteger(
+        "nexus.proxy.statusCheck.jitterPercent", 10 );
+
+    /** The maximum delay of the very first check of a repository. */
+    private static final int INITIAL_JITTER = SystemPropertiesHelper.getInteger(
+        "nexus.proxy.statusCheck.initialJitterMillis", 30000 );
+
+    @Requirement
+    private Logger logger;
+
+    private final Random random = new Random();
+
+    /** The scheduled checks, keyed by repository ID */
+    private final ConcurrentMap<String, StatusCheck> statusChecks = new ConcurrentHashMap<String, StatusCheck>();
+
+    /** The wheel, also used as lock for the wheel state */
+    private final List<Set<StatusCheck>> wheel;
+
+    // guarded by wheel
+    private long startTime;
+
+    // guarded by wheel
+    private long currentTick;
+
+    // guarded by wheel
+    private Thread timer;
+
+    // guarded by wheel
+    private ThreadPoolExecutor executor;
+
+    // guarded by wheel
+    private boolean disposed;
+
+    public DefaultRepositoryStatusCheckScheduler()
+    {
+        this.wheel = new ArrayList<Set<StatusCheck>>( WHEEL_SIZE );
+
+        for ( int i = 0; i < WHEEL_SIZE; i++ )
+        {
+            wheel.add( new HashSet<StatusCheck>() );
+        }
+    }
+
+    protected Logger getLogger()
+    {
+        return logger;
+    }
+
+    public void schedule( final ProxyRepository repository )
+    {
+        final StatusCheck statusCheck = new StatusCheck( repository );
+
+        final StatusCheck oldStatusCheck = statusChecks.put( repository.getId(), statusCheck );
+
+        if ( oldStatusCheck != null )
+        {
+            cancel( oldStatusCheck );
+        }
+
+        enqueue( statusCheck, INITIAL_JITTER > 0 ? nextRandom( INITIAL_JITTER ) : 0, true );
+    }
+
+    public void reschedule( final ProxyRepository repository )
+    {
+        final StatusCheck statusCheck = statusChecks.get( repository.getId() );
+
+        if ( statusCheck != null && statusCheck.getRepository() == repository )
+        {
+            enqueue( statusCheck, getNextDelay( statusCheck ), true );
+        }
+    }
+
+    public void unschedule( final ProxyRepository repository )
+    {
+        final StatusCheck statusCheck = statusChecks.get( repository.getId() );
+
+        if ( statusCheck != null && statusCheck.getRepository() == repository )
+        {
+            statusChecks.remove( repository.getId(), statusCheck );
+
+            cancel( statusCheck );
+        }
+    }
+
+    public void execute( final ProxyRepository repository, final Runnable update )
+    {
+        try
+        {
+            getExecutor().execute( update );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            // we are disposed, but someone still wants the status: do it in caller thread
+            getLogger().debug(
+                "Remote status update of repository ID='" + repository.getId()
+                    + "' rejected by pool, performing it directly." );
+
+            update.run();
+        }
+    }
+
+    public void statusChecked( final ProxyRepository repository, final long latency, final boolean failed )
+    {
+        final StatusCheck statusCheck = statusChecks.get( repository.getId() );
+
+        if ( statusCheck != null && statusCheck.getRepository() == repository )
+        {
+            statusCheck.checked( latency, failed );
+        }
+    }
+
+    public RepositoryStatusCheckStatistics getStatistics( final String repositoryId )
+    {
+        final StatusCheck statusCheck = statusChecks.get( repositoryId );
+
+        if ( statusCheck == null )
+        {
+            return null;
+        }
+
+        return statusCheck.getStatistics();
+    }
+
+    public void dispose()
+    {
+        final Thread timerToStop;
+
+        final ThreadPoolExecutor executorToStop;
+
+        synchronized ( wheel )
+        {
+            disposed = true;
+
+            for ( Set<StatusCheck> bucket : wheel )
+            {
+                bucket.clear();
+            }
+
+            timerToStop = timer;
+
+            executorToStop = executor;
+
+            timer = null;
+
+            executor = null;
+        }
+
+        statusChecks.clear();
+
+        if ( timerToStop != null )
+        {
+            timerToStop.interrupt();
+        }
+
+        if ( executorToStop != null )
+        {
+            executorToStop.shutdownNow();
+        }
+    }
+
+    // ==
+
+    protected ThreadPoolExecutor getExecutor()
+    {
+        synchronized ( wheel )
+        {
+            if ( disposed )
+            {
+                throw new RejectedExecutionException( "Remote status check scheduler is disposed." );
+            }
+
+            if ( executor == null )
+            {
+                executor =
+                    new ThreadPoolExecutor( THREADS, THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new NexusThreadFactory( "nxproxy", "Remote Status Check", Thread.NORM_PRIORITY, true ) );
+
+                executor.allowCoreThreadTimeOut( true );
+            }
+
+            return executor;
+        }
+    }
+
+    /**
+     * Puts the check into the wheel, to be performed after delay (in millis). If the check is already in the wheel, it
+     * is moved only if replace is true.
+     */
+    protected void enqueue( final StatusCheck statusCheck, final long delay, final boolean replace )
+    {
+        synchronized ( wheel )
+        {
+            if ( disposed || statusCheck.isCancelled() )
+            {
+                return;
+            }
+
+            if ( statusCheck.getBucket() != null )
+            {
+                if ( !replace )
+                {
+                    return;
+                }
+
+                statusCheck.getBucket().remove( statusCheck );
+            }
+
+            final long now = System.currentTimeMillis();
+
+            if ( timer == null )
+            {
+                startTime = now;
+
+                currentTick = 0;
+
+                timer = new NexusThreadFactory( "nxproxy", "Remote Status Check Timer", Thread.NORM_PRIORITY, true )
+                    .newThread( new Timer() );
+
+                timer.start();
+            }
+
+            // round up, but at least next tick
+            final long tick = Math.max( currentTick + 1, ( now + delay - startTime + TICK_DURATION - 1 ) / TICK_DURATION );
+
+            final Set<StatusCheck> bucket = wheel.get( (int) ( tick & ( WHEEL_SIZE - 1 ) ) );
+
+            bucket.add( statusCheck );
+
+            statusCheck.enqueued( bucket, tick, startTime + tick * TICK_DURATION );
+        }
+    }
+
+    protected boolean isEnqueued( final StatusCheck statusCheck )
+    {
+        synchronized ( wheel )
+        {
+            return statusCheck.getBucket() != null;
+        }
+    }
+
+    protected void cancel( final StatusCheck statusCheck )
+    {
+        synchronized ( wheel )
+        {
+            statusCheck.cancel();
+
+            if ( statusCheck.getBucket() != null )
+            {
+                statusCheck.getBucket().remove( statusCheck );
+
+                statusCheck.dequeued();
+            }
+        }
+    }
+
+    /**
+     * Advances the wheel by one tick, and returns the checks that are due.
+     */
+    protected List<StatusCheck> advance()
+    {
+        synchronized ( wheel )
+        {
+            currentTick++;
+
+            final ArrayList<StatusCheck> due = new ArrayList<StatusCheck>();
+
+            final Set<StatusCheck> bucket = wheel.get( (int) ( currentTick & ( WHEEL_SIZE - 1 ) ) );
+
+            for ( StatusCheck statusCheck : bucket )
+            {
+                // the bucket holds checks of later "rounds" of wheel too
+                if ( statusCheck.getTick() <= currentTick )
+                {
+                    due.add( statusCheck );
+                }
+            }
+
+            for ( StatusCheck statusCheck : due )
+            {
+                bucket.remove( statusCheck );
+
+                statusCheck.dequeued();
+            }
+
+            return due;
+        }
+    }
+
+    /**
+     * Steps the remote status retain time of the repository, and returns it with some jitter applied.
+     */
+    protected long getNextDelay( final StatusCheck statusCheck )
+    {
+        final long delay = statusCheck.getRepository().getNextRemoteStatusRetainTime();
+
+        final long jitter = delay * JITTER_PERCENT / 100L;
+
+        if ( jitter > 0 )
+        {
+            return delay + nextRandom( jitter );
+        }
+        else
+        {
+            return delay;
+        }
+    }
+
+    protected long nextRandom( final long bound )
+    {
+        synchronized ( random )
+        {
+            return (long) ( random.nextDouble() * bound );
+        }
+    }
+
+    // ==
+
+    /**
+     * The timer, advancing the wheel.
+     */
+    private class Timer
+        implements Runnable
+    {
+        public void run()
+        {
+            while ( true )
+            {
+                final long deadline;
+
+                synchronized ( wheel )
+                {
+                    if ( disposed )
+                    {
+                        return;
+                    }
+
+                    deadline = startTime + ( currentTick + 1 ) * TICK_DURATION;
+                }
+
+                final long sleepTime = deadline - System.currentTimeMillis();
+
+                if ( sleepTime > 0 )
+                {
+                    try
+                    {
+                        Thread.sleep( sleepTime );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        // just ignore it, disposed will take care
+                        continue;
+                    }
+                }
+
+                for ( StatusCheck statusCheck : advance() )
+                {
+                    try
+                    {
+                        getExecutor().execute( statusCheck );
+                    }
+                    catch ( RejectedExecutionException e )
+                    {
+                        // we are disposed
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The scheduled remote status check of one proxy repository, also holding the statistics of it.
+     */
+    protected class StatusCheck
+        implements Runnable
+    {
+        private final ProxyRepository repository;
+
+        // guarded by wheel
+        private Set<StatusCheck> bucket;
+
+        // guarded by wheel
+        private long tick;
+
+        private volatile boolean cancelled;
+
+        private volatile long nextCheckTime;
+
+        // guarded by this
+        private long lastCheckTime;
+
+        // guarded by this
+        private long lastLatency;
+
+        // guarded by this
+        private long checks;
+
+        // guarded by this
+        private long failures;
+
+        // guarded by this
+        private long consecutiveFailures;
+
+        public StatusCheck( final ProxyRepository repository )
+        {
+            this.repository = repository;
+        }
+
+        public ProxyRepository getRepository()
+        {
+            return repository;
+        }
+
+        public boolean isCancelled()
+        {
+            return cancelled;
+        }
+
+        public void cancel()
+        {
+            cancelled = true;
+        }
+
+        protected Set<StatusCheck> getBucket()
+        {
+            return bucket;
+        }
+
+        protected long getTick()
+        {
+            return tick;
+        }
+
+        protected void enqueued( final Set<StatusCheck> bucket, final long tick, final long nextCheckTime )
+        {
+            this.bucket = bucket;
+
+            this.tick = tick;
+
+            this.nextCheckTime = nextCheckTime;
+        }
+
+        protected void dequeued()
+        {
+            this.bucket = null;
+
+            this.nextCheckTime = 0;
+        }
+
+        public synchronized void checked( final long latency, final boolean failed )
+        {
+            lastCheckTime = System.currentTimeMillis();
+
+            lastLatency = latency;
+
+            checks++;
+
+            if ( failed )
+            {
+                failures++;
+
+                consecutiveFailures++;
+            }
+            else
+            {
+                consecutiveFailures = 0;
+            }
+        }
+
+        public synchronized RepositoryStatusCheckStatistics getStatistics()
+        {
+            return new RepositoryStatusCheckStatistics( repository.getId(), nextCheckTime, lastCheckTime,
+                lastLatency, checks, failures, consecutiveFailures );
+        }
+
+        public void run()
+        {
+            if ( isCancelled() )
+            {
+                return;
+            }
+
+            if ( getRepository().getProxyMode() == null )
+            {
+                // not a proxy (anymore)
+                unschedule( getRepository() );
+
+                return;
+            }
+
+            try
+            {
+                LocalStatus repositoryLocalStatus = getRepository().getLocalStatus();
+
+                // check only if repository is in service
+                if ( repositoryLocalStatus.shouldServiceRequest() )
+                {
+                    // get status check mode
+                    RepositoryStatusCheckMode repositoryStatusCheckMode =
+                        getRepository().getRepositoryStatusCheckMode();
+
+                    if ( RepositoryStatusCheckMode.ALWAYS.equals( repositoryStatusCheckMode ) )
+                    {
+                        // just do it, don't care for proxyMode
+                        getRepository().getRemoteStatus( new ResourceStoreRequest( RepositoryItemUid.PATH_ROOT ), true );
+                    }
+                    else if ( RepositoryStatusCheckMode.AUTO_BLOCKED_ONLY.equals( repositoryStatusCheckMode ) )
+                    {
+                        // do it only if proxyMode , don't care for proxyMode
+                        ProxyMode repositoryProxyMode = getRepository().getProxyMode();
+
+                        if ( repositoryProxyMode.shouldAutoUnblock() )
+                        {
+                            getRepository().getRemoteStatus( new ResourceStoreRequest( RepositoryItemUid.PATH_ROOT ),
+                                true );
+                        }
+                    }
+                    else if ( RepositoryStatusCheckMode.NEVER.equals( repositoryStatusCheckMode ) )
+                    {
+                        // nothing
+                    }
+                }
+            }
+            catch ( RuntimeException e )
+            {
+                getLogger().warn( "Could not check the remote status of repository ID='" + getRepository().getId() + "'",
+                    e );
+            }
+            finally
+            {
+                // if rescheduled meanwhile (ie. got auto-blocked), it is already in the wheel
+                if ( !isEnqueued( this ) )
+                {
+                    final long delay = getNextDelay( this );
+
+                    // say this message only if repository is auto-blocked, regardless of repositoryStatusCheckMode
+                    if ( getRepository().getProxyMode() != null && getRepository().getProxyMode().shouldAutoUnblock() )
+                    {
+                        getLogger().info(
+                            "Next attempt to auto-unblock the \"" + getRepository().getName() + "\" (id="
+                                + getRepository().getId()
+                                + ") repository by checking it's remote peer health will occur in "
+                                + DurationFormatUtils.formatDurationWords( delay, true, true ) + "." );
+                    }
+
+                    enqueue( this, delay, false );
+                }
+            }
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package org.sonatype.nexus.proxy.repository;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.sonatype.nexus.proxy.IllegalOperationException;
@@ -31,11 +32,13 @@ import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.walker.AbstractFileWalkerProcessor;
+import org.sonatype.nexus.proxy.walker.ThreadSafeWalkerProcessor;
 import org.sonatype.nexus.proxy.walker.WalkerContext;
 import org.sonatype.nexus.proxy.walker.WalkerFilter;
 
 public class EvictUnusedItemsWalkerProcessor
     extends AbstractFileWalkerProcessor
+    implements ThreadSafeWalkerProcessor
 {
     public static final String REQUIRED_FACET_KEY = "repository.facet";
 
@@ -43,13 +46,13 @@ public class EvictUnusedItemsWalkerProcessor
 
     private final long timestamp;
 
-    private final ArrayList<String> files;
+    private final List<String> files;
 
     public EvictUnusedItemsWalkerProcessor( long timestamp )
     {
         this.timestamp = timestamp;
 
-        this.files = new ArrayList<String>();
+        this.files = Collections.synchronizedList( new ArrayList<String>() );
     }
 
     protected Class<? extends Repository> getRequiredFacet( WalkerContext context )
@@ -21,10 +21,12 @@ package org.sonatype.nexus.proxy.repository;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.walker.AbstractFileWalkerProcessor;
+import org.sonatype.nexus.proxy.walker.ThreadSafeWalkerProcessor;
 import org.sonatype.nexus.proxy.walker.WalkerContext;
 
 public class ExpireCacheWalker
     extends AbstractFileWalkerProcessor
+    implements ThreadSafeWalkerProcessor
 {
     private final Repository repository;
 
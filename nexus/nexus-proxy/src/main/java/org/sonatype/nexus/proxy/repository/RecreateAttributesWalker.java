@@ -23,10 +23,12 @@ import java.util.Map;
 
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.walker.AbstractFileWalkerProcessor;
+import org.sonatype.nexus.proxy.walker.ThreadSafeWalkerProcessor;
 import org.sonatype.nexus.proxy.walker.WalkerContext;
 
 public class RecreateAttributesWalker
     extends AbstractFileWalkerProcessor
+    implements ThreadSafeWalkerProcessor
 {
     private final Repository repository;
 
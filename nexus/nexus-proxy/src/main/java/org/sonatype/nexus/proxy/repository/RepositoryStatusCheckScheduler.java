@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+/**
+ * Component scheduling and running the remote status checks of proxy repositories. All the checks of all proxy
+ * repositories share one timer and one small bounded thread pool, instead of having a thread per proxy repository.
+ * 
+ * @author cstamas
+ */
+public interface RepositoryStatusCheckScheduler
+{
+    /**
+     * Starts the periodic remote status checks of the passed in proxy repository. The first check is performed
+     * "shortly" (with some jitter applied), the subsequent ones are spaced by the remote status retain time of the
+     * repository (see {@link ProxyRepository#getNextRemoteStatusRetainTime()}). If repository was already scheduled,
+     * it's checks are restarted.
+     * 
+     * @param repository
+     */
+    void schedule( ProxyRepository repository );
+
+    /**
+     * Postpones the next remote status check of the passed in proxy repository, by stepping the repository remote
+     * status retain time. Used when repository gets auto-blocked: it is not checked immediately, but after the 1st
+     * amount of time the repository says.
+     * 
+     * @param repository
+     */
+    void reschedule( ProxyRepository repository );
+
+    /**
+     * Stops the periodic remote status checks of the passed in proxy repository.
+     * 
+     * @param repository
+     */
+    void unschedule( ProxyRepository repository );
+
+    /**
+     * Executes a remote status update (triggered by scheduled check or by some request) using the shared bounded
+     * thread pool.
+     * 
+     * @param repository
+     * @param update
+     */
+    void execute( ProxyRepository repository, Runnable update );
+
+    /**
+     * Records the outcome of a performed remote status update.
+     * 
+     * @param repository
+     * @param latency the time spent checking the remote peer (in millis)
+     * @param failed true if remote peer was found unreachable
+     */
+    void statusChecked( ProxyRepository repository, long latency, boolean failed );
+
+    /**
+     * Returns the statistics of remote status checks of the passed in repository, or null if repository is not
+     * scheduled.
+     * 
+     * @param repositoryId
+     * @return
+     */
+    RepositoryStatusCheckStatistics getStatistics( String repositoryId );
+}
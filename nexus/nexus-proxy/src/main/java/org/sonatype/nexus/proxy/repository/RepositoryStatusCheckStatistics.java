@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+public class RepositoryStatusCheckStatistics
+{
+    private final String repositoryId;
+
+    private final long nextCheckTime;
+
+    private final long lastCheckTime;
+
+    private final long lastLatency;
+
+    private final long checks;
+
+    private final long failures;
+
+    private final long consecutiveFailures;
+
+    public RepositoryStatusCheckStatistics( String repositoryId, long nextCheckTime, long lastCheckTime,
+                                            long lastLatency, long checks, long failures, long consecutiveFailures )
+    {
+        super();
+
+        this.repositoryId = repositoryId;
+
+        this.nextCheckTime = nextCheckTime;
+
+        this.lastCheckTime = lastCheckTime;
+
+        this.lastLatency = lastLatency;
+
+        this.checks = checks;
+
+        this.failures = failures;
+
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    public String getRepositoryId()
+    {
+        return repositoryId;
+    }
+
+    /**
+     * The time (in millis) when next scheduled check will happen, or 0 if not known (check is running).
+     */
+    public long getNextCheckTime()
+    {
+        return nextCheckTime;
+    }
+
+    /**
+     * The time (in millis) when last check happened, or 0 if not checked yet.
+     */
+    public long getLastCheckTime()
+    {
+        return lastCheckTime;
+    }
+
+    /**
+     * The time (in millis) last check took.
+     */
+    public long getLastLatency()
+    {
+        return lastLatency;
+    }
+
+    public long getChecks()
+    {
+        return checks;
+    }
+
+    public long getFailures()
+    {
+        return failures;
+    }
+
+    public long getConsecutiveFailures()
+    {
+        return consecutiveFailures;
+    }
+}
@@ -21,8 +21,8 @@ package org.sonatype.nexus.proxy.storage.local;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -34,11 +34,12 @@ import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreIteratorRequest;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
-import org.sonatype.nexus.proxy.item.ChecksummingContentLocator;
 import org.sonatype.nexus.proxy.item.LinkPersister;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StorageItemInfo;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.proxy.wastebasket.Wastebasket;
@@ -184,30 +185,30 @@ public abstract class AbstractLocalRepositoryStorage
         throw new UnsupportedOperationException( "Iteration not supported!" );
     }
 
-    // ==
-
-    protected void prepareStorageFileItemForStore( final StorageFileItem item )
-        throws LocalStorageException
+    /**
+     * Generic implementation based on {@link #listItems(Repository, ResourceStoreRequest)}, storages able to describe
+     * members without retrieving them should override it.
+     */
+    public Collection<StorageItemInfo> listItemInfos( Repository repository, ResourceStoreRequest request )
+        throws ItemNotFoundException, LocalStorageException
     {
-        try
+        if ( !( retrieveItem( repository, new ResourceStoreRequest( request ) ) instanceof StorageCollectionItem ) )
         {
-            // replace content locator
-            ChecksummingContentLocator sha1cl =
-                new ChecksummingContentLocator( item.getContentLocator(), MessageDigest.getInstance( "SHA1" ),
-                    StorageFileItem.DIGEST_SHA1_KEY, item.getItemContext() );
+            throw new ItemNotFoundException( request, repository );
+        }
 
-            // md5 is deprecated but still calculated
-            ChecksummingContentLocator md5cl =
-                new ChecksummingContentLocator( sha1cl, MessageDigest.getInstance( "MD5" ),
-                    StorageFileItem.DIGEST_MD5_KEY, item.getItemContext() );
+        Collection<StorageItem> items = listItems( repository, request );
 
-            item.setContentLocator( md5cl );
-        }
-        catch ( NoSuchAlgorithmException e )
+        ArrayList<StorageItemInfo> result = new ArrayList<StorageItemInfo>( items.size() );
+
+        for ( StorageItem item : items )
         {
-            throw new LocalStorageException(
-                "The JVM does not support SHA1 MessageDigest or MD5 MessageDigest, that is essential for Nexus. We cannot write to local storage! Please run Nexus on JVM that does provide these MessageDigests.",
-                e );
+            boolean collection = item instanceof StorageCollectionItem;
+
+            result.add( new StorageItemInfo( item.getName(), collection, item instanceof StorageFileItem
+                ? ( (StorageFileItem) item ).getLength() : -1, item.getModified() ) );
         }
+
+        return result;
     }
 }
@@ -43,6 +43,7 @@ import org.sonatype.nexus.proxy.item.PreparedContentLocator;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StorageItemInfo;
 import org.sonatype.nexus.proxy.item.StorageLinkItem;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
@@ -329,11 +330,9 @@ public class DefaultFSLocalRepositoryStorage
 
         if ( item instanceof StorageFileItem )
         {
-            StorageFileItem fItem = (StorageFileItem) item;
-
-            prepareStorageFileItemForStore( fItem );
-            
-            cl = fItem.getContentLocator();
+            // digests are calculated by the streaming inspection while the content is written by FSPeer, while
+            // stream-through content had them calculated during transfer already
+            cl = ( (StorageFileItem) item ).getContentLocator();
         }
         else if ( item instanceof StorageLinkItem )
         {
@@ -372,6 +371,25 @@ public class DefaultFSLocalRepositoryStorage
         repository.getAttributesHandler().storeAttributes( item, mdis );
     }
 
+    /**
+     * Prepares a "stream-through" of the passed in item content: the returned content locator should be transferred
+     * (by some download thread), while it may be handed over to any number of readers, following the download as it
+     * progresses. Once transfer is done, the item having the returned locator should be stored as usual, using
+     * {@link #storeItem(Repository, StorageItem)}, which will commit the downloaded content.
+     * 
+     * @param repository
+     * @param item
+     * @return
+     * @throws LocalStorageException
+     */
+    public StreamThroughContentLocator prepareStreamThrough( Repository repository, StorageFileItem item )
+        throws LocalStorageException
+    {
+        File target = getFileFromBase( repository, item.getResourceStoreRequest() );
+
+        return getFSPeer().prepareStreamThrough( repository, item, target, item.getContentLocator() );
+    }
+
     public void shredItem( Repository repository, ResourceStoreRequest request )
         throws ItemNotFoundException, UnsupportedStorageOperationException, LocalStorageException
     {
@@ -442,4 +460,32 @@ public class DefaultFSLocalRepositoryStorage
         return result;
     }
 
+    @Override
+    public Collection<StorageItemInfo> listItemInfos( Repository repository, ResourceStoreRequest request )
+        throws ItemNotFoundException, LocalStorageException
+    {
+        File target = getFileFromBase( repository, request );
+
+        Collection<File> files = getFSPeer().listItems( repository, request, target );
+
+        if ( files == null )
+        {
+            // not a collection
+            throw new ItemNotFoundException( request, repository );
+        }
+
+        List<StorageItemInfo> result = new ArrayList<StorageItemInfo>( files.size() );
+
+        for ( File file : files )
+        {
+            // straight from the file system, no attributes nor link content is read
+            boolean collection = file.isDirectory();
+
+            result.add( new StorageItemInfo( file.getName(), collection, collection ? -1 : file.length(),
+                file.lastModified() ) );
+        }
+
+        return result;
+    }
+
 }
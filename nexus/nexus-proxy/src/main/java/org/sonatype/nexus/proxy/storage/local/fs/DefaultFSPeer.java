@@ -23,6 +23,7 @@ import java.io.FileFilter;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -35,7 +36,9 @@ import org.codehaus.plexus.util.IOUtil;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.LocalStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.attributes.ContentInspection;
 import org.sonatype.nexus.proxy.item.ContentLocator;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
@@ -85,31 +88,74 @@ public class DefaultFSPeer
             // we have _content_ (content or link), hence we store a file
             File hiddenTarget = getHiddenTarget( target );
 
-            try
-            {
-                FileOutputStream os = new FileOutputStream( hiddenTarget );
+            StreamThroughContentLocator streamThrough = null;
 
-                InputStream is = cl.getContent();
+            ContentInspection inspection = null;
 
-                try
-                {
-                    IOUtil.copy( is, os, getCopyStreamBufferSize() );
+            if ( cl instanceof StreamThroughContentLocator
+                && hiddenTarget.equals( ( (StreamThroughContentLocator) cl ).getFile() ) )
+            {
+                streamThrough = (StreamThroughContentLocator) cl;
+            }
 
-                    os.flush();
+            try
+            {
+                if ( streamThrough != null )
+                {
+                    // content is already being streamed into hidden target, just wait for it
+                    streamThrough.awaitTransfer();
                 }
-                finally
+                else
                 {
-                    IOUtil.close( is );
+                    // inspectors able to consume the content stream will do it during this single write pass
+                    inspection = startContentInspection( repository, item );
+
+                    FileOutputStream os = new FileOutputStream( hiddenTarget );
+
+                    InputStream is = cl.getContent();
+
+                    try
+                    {
+                        if ( inspection != null )
+                        {
+                            copyAndInspect( is, os, inspection );
+                        }
+                        else
+                        {
+                            IOUtil.copy( is, os, getCopyStreamBufferSize() );
+                        }
+
+                        os.flush();
+                    }
+                    finally
+                    {
+                        IOUtil.close( is );
 
-                    IOUtil.close( os );
+                        IOUtil.close( os );
+                    }
                 }
 
                 handleRenameOperation( hiddenTarget, target );
 
                 target.setLastModified( item.getModified() );
+
+                if ( streamThrough != null )
+                {
+                    streamThrough.committed( target );
+                }
+
+                if ( inspection != null )
+                {
+                    completeInspection( item, inspection );
+                }
             }
             catch ( IOException e )
             {
+                if ( streamThrough != null )
+                {
+                    streamThrough.fail( e );
+                }
+
                 if ( target != null )
                 {
                     target.delete();
@@ -133,6 +179,83 @@ public class DefaultFSPeer
         }
     }
 
+    public StreamThroughContentLocator prepareStreamThrough( Repository repository, StorageItem item, File target,
+                                                             ContentLocator cl )
+        throws LocalStorageException
+    {
+        // create parents down to the file itself (this will make those if needed, otherwise return silently)
+        mkParentDirs( repository, target );
+
+        File hiddenTarget = getHiddenTarget( target );
+
+        try
+        {
+            // create (or truncate a stale one) upfront, so followers are able to open it before first byte arrives
+            new FileOutputStream( hiddenTarget ).close();
+        }
+        catch ( IOException e )
+        {
+            throw new LocalStorageException( "Got exception during preparing stream-through on path "
+                + item.getRepositoryItemUid().toString(), e );
+        }
+
+        return new StreamThroughContentLocator( hiddenTarget, cl, getCopyStreamBufferSize() );
+    }
+
+    /**
+     * Starts the inspection of the content being stored, if the item is a file and there are inspectors interested in
+     * it's content stream.
+     * 
+     * @param repository
+     * @param item
+     * @return the inspection or null.
+     */
+    protected ContentInspection startContentInspection( Repository repository, StorageItem item )
+    {
+        if ( item instanceof StorageFileItem && repository.getAttributesHandler() != null )
+        {
+            return repository.getAttributesHandler().startContentInspection( (StorageFileItem) item );
+        }
+
+        return null;
+    }
+
+    /**
+     * Copies the content to the output stream, while feeding the inspection with it.
+     * 
+     * @param is
+     * @param os
+     * @param inspection
+     * @throws IOException
+     */
+    protected void copyAndInspect( InputStream is, OutputStream os, ContentInspection inspection )
+        throws IOException
+    {
+        final byte[] buffer = new byte[getCopyStreamBufferSize()];
+
+        int read;
+
+        while ( ( read = is.read( buffer ) ) != -1 )
+        {
+            os.write( buffer, 0, read );
+
+            inspection.update( buffer, 0, read );
+        }
+    }
+
+    protected void completeInspection( StorageItem item, ContentInspection inspection )
+    {
+        try
+        {
+            inspection.complete( (StorageFileItem) item );
+        }
+        catch ( Exception e )
+        {
+            // attributes handler will do the inspection as fallback
+            getLogger().warn( "Could not complete inspection of " + item.getRepositoryItemUid(), e );
+        }
+    }
+
     public void shredItem( Repository repository, ResourceStoreRequest request, File target )
         throws ItemNotFoundException, UnsupportedStorageOperationException, LocalStorageException
     {
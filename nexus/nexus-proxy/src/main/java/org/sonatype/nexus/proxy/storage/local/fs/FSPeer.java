@@ -48,6 +48,10 @@ public interface FSPeer
     public void storeItem( Repository repository, StorageItem item, File target, ContentLocator cl )
         throws UnsupportedStorageOperationException, LocalStorageException;
 
+    public StreamThroughContentLocator prepareStreamThrough( Repository repository, StorageItem item, File target,
+                                                             ContentLocator cl )
+        throws LocalStorageException;
+
     public void shredItem( Repository repository, ResourceStoreRequest request, File target )
         throws ItemNotFoundException, UnsupportedStorageOperationException, LocalStorageException;
 
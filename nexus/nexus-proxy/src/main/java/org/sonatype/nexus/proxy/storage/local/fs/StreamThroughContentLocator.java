@@ -0,0 +1,428 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.local.fs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.sonatype.nexus.proxy.item.ContentLocator;
+import org.sonatype.nexus.util.DigesterUtils;
+
+/**
+ * A content locator that "tees" a (non reusable) source content into a hidden upload file, while it is being read by
+ * any number of clients. Each {@link #getContent()} call returns a stream that follows the growing file, blocking
+ * until more bytes are written. End of stream is signalled to followers only once the content is accepted (see
+ * {@link #accepted()}) or committed to it's final place (see {@link #committed(File)}), and an error is signalled if
+ * the download failed or the content was rejected. Reusable.
+ *
+ * @author cstamas
+ */
+public class StreamThroughContentLocator
+    implements ContentLocator
+{
+    private final File file;
+
+    private final ContentLocator source;
+
+    private final int bufferSize;
+
+    private final Object lock = new Object();
+
+    // guarded by lock
+    private long written;
+
+    // guarded by lock
+    private boolean transferred;
+
+    // guarded by lock
+    private boolean accepted;
+
+    // guarded by lock
+    private File committedFile;
+
+    // guarded by lock
+    private IOException failure;
+
+    private volatile String sha1Digest;
+
+    private volatile String md5Digest;
+
+    public StreamThroughContentLocator( final File file, final ContentLocator source, final int bufferSize )
+    {
+        this.file = file;
+
+        this.source = source;
+
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Performs the actual transfer of source content into the hidden file, and calculates the SHA1 and MD5 digests of
+     * the content in same pass. Must be invoked once, by the thread doing the download.
+     *
+     * @throws IOException
+     */
+    public void transfer()
+        throws IOException
+    {
+        try
+        {
+            final MessageDigest sha1 = MessageDigest.getInstance( "SHA1" );
+
+            final MessageDigest md5 = MessageDigest.getInstance( "MD5" );
+
+            final InputStream is = source.getContent();
+
+            try
+            {
+                final FileOutputStream os = new FileOutputStream( file );
+
+                try
+                {
+                    final byte[] buffer = new byte[bufferSize];
+
+                    int read;
+
+                    while ( ( read = is.read( buffer ) ) != -1 )
+                    {
+                        os.write( buffer, 0, read );
+
+                        sha1.update( buffer, 0, read );
+
+                        md5.update( buffer, 0, read );
+
+                        synchronized ( lock )
+                        {
+                            written += read;
+
+                            lock.notifyAll();
+                        }
+                    }
+
+                    os.flush();
+                }
+                finally
+                {
+                    IOUtil.close( os );
+                }
+            }
+            finally
+            {
+                IOUtil.close( is );
+            }
+
+            sha1Digest = DigesterUtils.getDigestAsString( sha1.digest() );
+
+            md5Digest = DigesterUtils.getDigestAsString( md5.digest() );
+
+            synchronized ( lock )
+            {
+                transferred = true;
+
+                lock.notifyAll();
+            }
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            IOException ioe = new IOException( "The JVM does not support SHA1 or MD5 MessageDigest!" );
+
+            ioe.initCause( e );
+
+            fail( ioe );
+
+            throw ioe;
+        }
+        catch ( IOException e )
+        {
+            fail( e );
+
+            throw e;
+        }
+    }
+
+    /**
+     * Blocks until the transfer is done.
+     *
+     * @throws IOException if the transfer failed.
+     */
+    public void awaitTransfer()
+        throws IOException
+    {
+        synchronized ( lock )
+        {
+            while ( !transferred && failure == null )
+            {
+                waitOnLock();
+            }
+
+            if ( failure != null )
+            {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Marks this content as accepted (transferred and validated), followers reaching the end of content will get end
+     * of stream.
+     */
+    public void accepted()
+    {
+        synchronized ( lock )
+        {
+            accepted = true;
+
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Marks this content as committed to it's final place. Followers are released and will get end of stream, while
+     * new streams are opened directly against the committed file.
+     *
+     * @param target
+     */
+    public void committed( final File target )
+    {
+        synchronized ( lock )
+        {
+            committedFile = target;
+
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Marks this content as failed (transfer failed, content was rejected or could not be committed). Followers not
+     * yet at the end of unaccepted content will get an IOException.
+     *
+     * @param cause
+     */
+    public void fail( final IOException cause )
+    {
+        synchronized ( lock )
+        {
+            if ( committedFile == null && failure == null )
+            {
+                failure = cause;
+
+                lock.notifyAll();
+            }
+        }
+    }
+
+    public boolean isCommitted()
+    {
+        synchronized ( lock )
+        {
+            return committedFile != null;
+        }
+    }
+
+    public long getBytesWritten()
+    {
+        synchronized ( lock )
+        {
+            return written;
+        }
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public String getSha1Digest()
+    {
+        return sha1Digest;
+    }
+
+    public String getMd5Digest()
+    {
+        return md5Digest;
+    }
+
+    // ContentLocator
+
+    public InputStream getContent()
+        throws IOException
+    {
+        synchronized ( lock )
+        {
+            if ( committedFile != null )
+            {
+                return new FileInputStream( committedFile );
+            }
+
+            if ( failure != null )
+            {
+                throw failure;
+            }
+        }
+
+        try
+        {
+            return new FollowingInputStream( new FileInputStream( file ) );
+        }
+        catch ( FileNotFoundException e )
+        {
+            // we lost the race against commit (rename) or failure (delete)
+            synchronized ( lock )
+            {
+                while ( accepted && committedFile == null && failure == null )
+                {
+                    waitOnLock();
+                }
+
+                if ( committedFile != null )
+                {
+                    return new FileInputStream( committedFile );
+                }
+
+                if ( failure != null )
+                {
+                    throw failure;
+                }
+            }
+
+            throw e;
+        }
+    }
+
+    public String getMimeType()
+    {
+        return source.getMimeType();
+    }
+
+    public boolean isReusable()
+    {
+        return true;
+    }
+
+    // ==
+
+    protected void waitOnLock()
+        throws InterruptedIOException
+    {
+        try
+        {
+            lock.wait();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException( "Interrupted while waiting for content of " + file.getAbsolutePath() );
+        }
+    }
+
+    /**
+     * Waits until there are more bytes available than position, and returns the count of written bytes, or -1 if
+     * position is at the end of committed content.
+     */
+    protected long awaitBytes( final long position )
+        throws IOException
+    {
+        synchronized ( lock )
+        {
+            while ( written <= position && !accepted && committedFile == null && failure == null )
+            {
+                waitOnLock();
+            }
+
+            if ( written > position )
+            {
+                return written;
+            }
+            else if ( accepted || committedFile != null )
+            {
+                return -1;
+            }
+            else
+            {
+                throw failure;
+            }
+        }
+    }
+
+    private class FollowingInputStream
+        extends InputStream
+    {
+        private final InputStream in;
+
+        private long position;
+
+        public FollowingInputStream( final InputStream in )
+        {
+            this.in = in;
+        }
+
+        @Override
+        public int read()
+            throws IOException
+        {
+            final byte[] b = new byte[1];
+
+            final int read = read( b, 0, 1 );
+
+            return read == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len )
+            throws IOException
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+
+            final long available = awaitBytes( position );
+
+            if ( available == -1 )
+            {
+                return -1;
+            }
+
+            final int read = in.read( b, off, (int) Math.min( len, available - position ) );
+
+            if ( read > 0 )
+            {
+                position += read;
+            }
+
+            return read;
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            in.close();
+        }
+    }
+}
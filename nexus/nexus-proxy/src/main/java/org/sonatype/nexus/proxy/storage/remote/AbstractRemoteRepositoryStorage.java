@@ -20,8 +20,12 @@ package org.sonatype.nexus.proxy.storage.remote;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
 
 import org.codehaus.plexus.component.annotations.Requirement;
 import org.codehaus.plexus.logging.Logger;
@@ -147,6 +151,17 @@ public abstract class AbstractRemoteRepositoryStorage
         return containsItem( 0, repository, request );
     }
 
+    /**
+     * Returns true if this storage is able to make retrieval conditional, as asked by
+     * {@link RemoteRepositoryStorage#CTX_REVALIDATE_MODIFIED} in request context.
+     * 
+     * @return
+     */
+    public boolean isConditionalRetrievalSupported()
+    {
+        return false;
+    }
+
     public String getVersion()
     {
         SystemStatus status = applicationStatusSource.getSystemStatus();
@@ -156,6 +171,38 @@ public abstract class AbstractRemoteRepositoryStorage
 
     // helper methods
 
+    /**
+     * Returns the HTTP headers making the retrieval conditional, if asked so by request context. Returned map is empty
+     * if retrieval should be unconditional.
+     * 
+     * @param request
+     * @return
+     */
+    protected Map<String, String> getConditionalRequestHeaders( ResourceStoreRequest request )
+    {
+        Map<String, String> headers = new HashMap<String, String>( 2 );
+
+        Object modified = request.getRequestContext().get( CTX_REVALIDATE_MODIFIED );
+
+        if ( modified instanceof Long )
+        {
+            SimpleDateFormat format = new SimpleDateFormat( "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US );
+
+            format.setTimeZone( TimeZone.getTimeZone( "GMT" ) );
+
+            headers.put( "If-Modified-Since", format.format( new Date( (Long) modified ) ) );
+
+            Object etag = request.getRequestContext().get( CTX_REVALIDATE_ETAG );
+
+            if ( etag instanceof String )
+            {
+                headers.put( "If-None-Match", (String) etag );
+            }
+        }
+
+        return headers;
+    }
+
     @Deprecated
     protected String formatUserAgentString( RemoteStorageContext ctx, ProxyRepository repository )
     {
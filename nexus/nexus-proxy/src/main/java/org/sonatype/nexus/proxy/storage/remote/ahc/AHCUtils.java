@@ -3,9 +3,12 @@ package org.sonatype.nexus.proxy.storage.remote.ahc;
 import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.Future;
 
 import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClient.BoundRequestBuilder;
 import com.ning.http.client.BodyDeferringAsyncHandler;
 import com.ning.http.client.BodyDeferringAsyncHandler.BodyDeferringInputStream;
 import com.ning.http.client.Response;
@@ -16,6 +19,13 @@ public class AHCUtils
 {
     public static BodyDeferringInputStream fetchContent( final AsyncHttpClient client, final String itemUrl )
         throws IOException
+    {
+        return fetchContent( client, itemUrl, Collections.<String, String> emptyMap() );
+    }
+
+    public static BodyDeferringInputStream fetchContent( final AsyncHttpClient client, final String itemUrl,
+                                                         final Map<String, String> headers )
+        throws IOException
     {
         try
         {
@@ -25,7 +35,14 @@ public class AHCUtils
 
             final BodyDeferringAsyncHandler hrah = new BodyDeferringAsyncHandler( po );
 
-            Future<Response> f = client.prepareGet( itemUrl ).execute( hrah );
+            final BoundRequestBuilder get = client.prepareGet( itemUrl );
+
+            for ( Map.Entry<String, String> header : headers.entrySet() )
+            {
+                get.addHeader( header.getKey(), header.getValue() );
+            }
+
+            Future<Response> f = get.execute( hrah );
 
             return new BodyDeferringInputStream( f, hrah, pi );
         }
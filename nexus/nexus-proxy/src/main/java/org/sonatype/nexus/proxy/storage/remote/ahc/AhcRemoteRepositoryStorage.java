@@ -10,6 +10,7 @@ import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.RemoteAccessDeniedException;
 import org.sonatype.nexus.proxy.RemoteAccessException;
 import org.sonatype.nexus.proxy.RemoteAuthenticationNeededException;
+import org.sonatype.nexus.proxy.RemoteItemNotModifiedException;
 import org.sonatype.nexus.proxy.RemoteStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
@@ -119,6 +120,12 @@ public class AhcRemoteRepositoryStorage
         return checkRemoteAvailability( newerThen, repository, request, true );
     }
 
+    @Override
+    public boolean isConditionalRetrievalSupported()
+    {
+        return true;
+    }
+
     @Override
     public AbstractStorageItem retrieveItem( ProxyRepository repository, ResourceStoreRequest request, String baseUrl )
         throws ItemNotFoundException, RemoteAccessException, RemoteStorageException
@@ -132,11 +139,21 @@ public class AhcRemoteRepositoryStorage
         try
         {
 
-            BodyDeferringInputStream ris = AHCUtils.fetchContent( client, itemUrl );
+            BodyDeferringInputStream ris =
+                AHCUtils.fetchContent( client, itemUrl, getConditionalRequestHeaders( request ) );
 
             // this blocks until response headers arrived
             Response response = ris.getAsapResponse();
 
+            // 304 Not Modified, if conditional
+            if ( 304 == response.getStatusCode() && request.getRequestContext().containsKey( CTX_REVALIDATE_MODIFIED ) )
+            {
+                ris.close();
+
+                throw new RemoteItemNotModifiedException( "The remote item is not modified (remoteUrl=\"" + itemUrl
+                    + "\")" );
+            }
+
             // expected: 200 OK
             validateResponse( repository, request, "GET", itemUrl, response, 200 );
 
@@ -159,6 +176,11 @@ public class AhcRemoteRepositoryStorage
 
             result.setRemoteUrl( itemUrl );
 
+            if ( response.getHeader( "etag" ) != null )
+            {
+                result.getAttributes().put( REMOTE_ETAG_KEY, response.getHeader( "etag" ) );
+            }
+
             result.getItemContext().setParentContext( request.getRequestContext() );
 
             return result;
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.httpclient.CustomMultiThreadedHttpConnectionManager;
@@ -47,6 +48,7 @@ import org.sonatype.nexus.proxy.ItemNotFoundException;
 import org.sonatype.nexus.proxy.RemoteAccessDeniedException;
 import org.sonatype.nexus.proxy.RemoteAccessException;
 import org.sonatype.nexus.proxy.RemoteAuthenticationNeededException;
+import org.sonatype.nexus.proxy.RemoteItemNotModifiedException;
 import org.sonatype.nexus.proxy.RemoteStorageException;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
@@ -151,6 +153,12 @@ public class CommonsHttpClientRemoteStorage
         return checkRemoteAvailability( newerThen, repository, request, true );
     }
 
+    @Override
+    public boolean isConditionalRetrievalSupported()
+    {
+        return true;
+    }
+
     public AbstractStorageItem retrieveItem( ProxyRepository repository, ResourceStoreRequest request, String baseUrl )
         throws ItemNotFoundException, RemoteAccessException, RemoteStorageException
     {
@@ -160,9 +168,22 @@ public class CommonsHttpClientRemoteStorage
 
         method = new GetMethod( remoteURL.toString() );
 
+        for ( Map.Entry<String, String> header : getConditionalRequestHeaders( request ).entrySet() )
+        {
+            method.setRequestHeader( header.getKey(), header.getValue() );
+        }
+
         int response = executeMethod( repository, request, method, remoteURL );
 
-        if ( response == HttpStatus.SC_OK )
+        if ( response == HttpStatus.SC_NOT_MODIFIED
+            && request.getRequestContext().containsKey( CTX_REVALIDATE_MODIFIED ) )
+        {
+            method.releaseConnection();
+
+            throw new RemoteItemNotModifiedException( "The remote item is not modified (remoteUrl=\""
+                + remoteURL.toString() + "\")" );
+        }
+        else if ( response == HttpStatus.SC_OK )
         {
 
             if ( method.getPath().endsWith( "/" ) )
@@ -219,6 +240,11 @@ public class CommonsHttpClientRemoteStorage
 
                 httpItem.setCreated( httpItem.getModified() );
 
+                if ( method.getResponseHeader( "etag" ) != null )
+                {
+                    httpItem.getAttributes().put( REMOTE_ETAG_KEY, method.getResponseHeader( "etag" ).getValue() );
+                }
+
                 httpItem.getItemContext().putAll( request.getRequestContext() );
 
                 return httpItem;
@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
@@ -68,7 +69,11 @@ public class DefaultTargetRegistry
     @Requirement
     private ApplicationConfigurationValidator validator;
 
-    private ArrayList<Target> targets;
+    private volatile ArrayList<Target> targets;
+
+    /** The compiled target matchers, keyed by content class ID. Replaced when configuration is committed. */
+    private volatile ConcurrentHashMap<String, TargetMatcher> targetMatchers =
+        new ConcurrentHashMap<String, TargetMatcher>();
 
     // ==
 
@@ -132,6 +137,8 @@ public class DefaultTargetRegistry
         if ( wasDirty )
         {
             targets = null;
+
+            targetMatchers = new ConcurrentHashMap<String, TargetMatcher>();
         }
 
         return wasDirty;
@@ -301,13 +308,7 @@ public class DefaultTargetRegistry
                                    + "'" );
         }
 
-        for ( Target t : getRepositoryTargets() )
-        {
-            if ( t.isPathContained( contentClass, path ) )
-            {
-                result.add( t );
-            }
-        }
+        result.addAll( getTargetMatcher( contentClass ).getTargetsForPath( path ) );
 
         return result;
     }
@@ -321,15 +322,47 @@ public class DefaultTargetRegistry
             getLogger().debug( "Resolving targets for repository='" + repository.getId() + "' for path='" + path + "'" );
         }
 
-        for ( Target t : getRepositoryTargets() )
+        for ( Target t : getTargetMatcher( repository.getRepositoryContentClass() ).getTargetsForPath( path ) )
+        {
+            result.addTargetMatch( new TargetMatch( t, repository ) );
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the compiled matcher of targets applicable to given content class, building it if needed.
+     * 
+     * @param contentClass
+     * @return
+     */
+    protected TargetMatcher getTargetMatcher( ContentClass contentClass )
+    {
+        // grab the map first, if it gets replaced meanwhile, we build into the discarded one
+        final ConcurrentHashMap<String, TargetMatcher> matchers = targetMatchers;
+
+        TargetMatcher matcher = matchers.get( contentClass.getId() );
+
+        if ( matcher == null )
         {
-            if ( t.isPathContained( repository.getRepositoryContentClass(), path ) )
+            matcher = new TargetMatcher( contentClass, getRepositoryTargets() );
+
+            if ( getLogger().isDebugEnabled() )
+            {
+                getLogger().debug(
+                    "Compiled " + matcher.getPatternCount() + " target patterns for contentClass='"
+                        + contentClass.getId() + "'" );
+            }
+
+            final TargetMatcher existing = matchers.putIfAbsent( contentClass.getId(), matcher );
+
+            if ( existing != null )
             {
-                result.addTargetMatch( new TargetMatch( t, repository ) );
+                matcher = existing;
             }
         }
 
-        return result;
+        return matcher;
     }
 
     public boolean hasAnyApplicableTarget( Repository repository )
@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.target;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.codehaus.plexus.util.StringUtils;
+import org.sonatype.nexus.proxy.registry.ContentClass;
+
+/**
+ * An immutable multi-pattern matcher of the targets applicable to one content class. The patterns of all the targets
+ * are indexed by their literal prefix (the part of the pattern before the first regular expression construct) into a
+ * character trie, so matching a path evaluates only those patterns whose literal prefix is a prefix of the path, instead
+ * of evaluating every pattern of every target.
+ * 
+ * @author cstamas
+ */
+public class TargetMatcher
+{
+    private final ContentClass contentClass;
+
+    private final Node root = new Node();
+
+    private final int patternCount;
+
+    public TargetMatcher( final ContentClass contentClass, final Collection<Target> targets )
+    {
+        this.contentClass = contentClass;
+
+        int count = 0;
+
+        for ( Target target : targets )
+        {
+            if ( isApplicable( target, contentClass ) )
+            {
+                for ( String patternText : target.getPatternTexts() )
+                {
+                    add( new Entry( target, Pattern.compile( patternText ) ), getLiteralPrefix( patternText ) );
+
+                    count++;
+                }
+            }
+        }
+
+        this.patternCount = count;
+    }
+
+    public ContentClass getContentClass()
+    {
+        return contentClass;
+    }
+
+    /**
+     * Returns the count of patterns this matcher holds.
+     * 
+     * @return
+     */
+    public int getPatternCount()
+    {
+        return patternCount;
+    }
+
+    /**
+     * Returns the targets having at least one pattern matching the path. Gives same result as calling
+     * {@link Target#isPathContained(ContentClass, String)} on every target.
+     * 
+     * @param path
+     * @return
+     */
+    public Set<Target> getTargetsForPath( final String path )
+    {
+        final Set<Target> result = new LinkedHashSet<Target>();
+
+        Node node = root;
+
+        int i = 0;
+
+        while ( node != null )
+        {
+            for ( Entry entry : node.entries )
+            {
+                if ( !result.contains( entry.target ) && entry.pattern.matcher( path ).matches() )
+                {
+                    result.add( entry.target );
+                }
+            }
+
+            if ( i == path.length() || node.children == null )
+            {
+                break;
+            }
+
+            node = node.children.get( path.charAt( i++ ) );
+        }
+
+        return result;
+    }
+
+    // ==
+
+    protected void add( final Entry entry, final String prefix )
+    {
+        Node node = root;
+
+        for ( int i = 0; i < prefix.length(); i++ )
+        {
+            if ( node.children == null )
+            {
+                node.children = new HashMap<Character, Node>();
+            }
+
+            Node child = node.children.get( prefix.charAt( i ) );
+
+            if ( child == null )
+            {
+                child = new Node();
+
+                node.children.put( prefix.charAt( i ), child );
+            }
+
+            node = child;
+        }
+
+        node.entries.add( entry );
+    }
+
+    /**
+     * Same content class check as in {@link Target#isPathContained(ContentClass, String)}.
+     */
+    protected static boolean isApplicable( final Target target, final ContentClass contentClass )
+    {
+        return StringUtils.equals( target.getContentClass().getId(), contentClass.getId() )
+            || target.getContentClass().isCompatible( contentClass ) || contentClass.isCompatible( target.getContentClass() );
+    }
+
+    /**
+     * Returns the literal prefix of the regular expression: the string any path matched by it must start with. Is
+     * conservative: returns empty string for anything not simple (alternations, flags, groups at start, etc).
+     */
+    protected static String getLiteralPrefix( final String patternText )
+    {
+        if ( patternText.indexOf( '|' ) > -1 )
+        {
+            // top level alternation may be anywhere
+            return "";
+        }
+
+        final StringBuilder prefix = new StringBuilder();
+
+        for ( int i = 0; i < patternText.length(); i++ )
+        {
+            final char c = patternText.charAt( i );
+
+            if ( c == '\\' )
+            {
+                // escaped punctuation is literal, anything else (classes like \d, quoting, etc) is not
+                if ( i + 1 < patternText.length() && !Character.isLetterOrDigit( patternText.charAt( i + 1 ) ) )
+                {
+                    if ( isQuantifier( patternText, i + 2 ) )
+                    {
+                        break;
+                    }
+
+                    prefix.append( patternText.charAt( ++i ) );
+
+                    continue;
+                }
+
+                break;
+            }
+            else if ( "[](){}.*+?^$".indexOf( c ) > -1 )
+            {
+                break;
+            }
+            else
+            {
+                if ( isQuantifier( patternText, i + 1 ) )
+                {
+                    break;
+                }
+
+                prefix.append( c );
+            }
+        }
+
+        return prefix.toString();
+    }
+
+    protected static boolean isQuantifier( final String patternText, final int i )
+    {
+        // ie. "a?", "a*" or "a{0,1}" does not mandate "a"
+        return i < patternText.length() && "*?{+".indexOf( patternText.charAt( i ) ) > -1;
+    }
+
+    // ==
+
+    private static class Node
+    {
+        private final List<Entry> entries = new ArrayList<Entry>( 1 );
+
+        private Map<Character, Node> children;
+    }
+
+    private static class Entry
+    {
+        private final Target target;
+
+        private final Pattern pattern;
+
+        private Entry( final Target target, final Pattern pattern )
+        {
+            this.target = target;
+
+            this.pattern = pattern;
+        }
+    }
+}
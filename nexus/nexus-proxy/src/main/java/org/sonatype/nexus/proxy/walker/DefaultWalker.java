@@ -19,9 +19,18 @@
 package org.sonatype.nexus.proxy.walker;
 
 import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.logging.AbstractLogEnabled;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Disposable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Initializable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.InitializationException;
 import org.sonatype.nexus.proxy.AccessDeniedException;
 import org.sonatype.nexus.proxy.IllegalOperationException;
 import org.sonatype.nexus.proxy.ItemNotFoundException;
@@ -29,21 +38,57 @@ import org.sonatype.nexus.proxy.StorageException;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.threads.NexusThreadFactory;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
 
 /**
- * The Class Walker.
+ * The Class Walker. Walks depth-first in the invoking thread, unless all the processors of the walk are
+ * {@link ThreadSafeWalkerProcessor}s: then sibling collections are walked concurrently, using a shared pool of
+ * "nexus.walker.parallelism" threads. When the pool is saturated, collections are walked by the thread that found them,
+ * so a walk never waits for a pool thread.
  * 
  * @author cstamas
  */
 @Component( role = Walker.class )
 public class DefaultWalker
     extends AbstractLogEnabled
-    implements Walker
+    implements Walker, Initializable, Disposable
 {
     public static final String WALKER_WALKED_COLLECTION_COUNT = Walker.class.getSimpleName() + ".collCount";
 
     public static final String WALKER_WALKED_FROM_PATH = Walker.class.getSimpleName() + ".fromPath";
 
+    /**
+     * Context key: if set to Boolean.FALSE, the walk is done in the invoking thread even if all processors are thread
+     * safe.
+     */
+    public static final String WALKER_PARALLEL = Walker.class.getSimpleName() + ".parallel";
+
+    private static final int PARALLELISM = SystemPropertiesHelper.getInteger( "nexus.walker.parallelism",
+        Runtime.getRuntime().availableProcessors() );
+
+    private ThreadPoolExecutor executor;
+
+    public void initialize()
+        throws InitializationException
+    {
+        if ( PARALLELISM > 1 )
+        {
+            // no queueing: a collection is either picked up by an idle thread or walked by the thread finding it
+            executor =
+                new ThreadPoolExecutor( 0, PARALLELISM, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                    new NexusThreadFactory( "nxwalker", "Walker", Thread.NORM_PRIORITY, true ) );
+        }
+    }
+
+    public void dispose()
+    {
+        if ( executor != null )
+        {
+            executor.shutdown();
+        }
+    }
+
     public void walk( WalkerContext context )
         throws WalkerException
     {
@@ -112,7 +157,14 @@ public class DefaultWalker
                     ? context.getFilter()
                     : new DefaultStoreWalkerFilter();
 
-                collCount = walkRecursive( 0, context, filter, (StorageCollectionItem) item );
+                if ( isParallelWalk( context ) )
+                {
+                    collCount = new ParallelWalk( context, filter ).walk( (StorageCollectionItem) item );
+                }
+                else
+                {
+                    collCount = walkRecursive( 0, context, filter, (StorageCollectionItem) item );
+                }
 
                 context.getContext().put( WALKER_WALKED_COLLECTION_COUNT, collCount );
             }
@@ -265,6 +317,25 @@ public class DefaultWalker
         return collCount;
     }
 
+    protected boolean isParallelWalk( WalkerContext context )
+    {
+        if ( executor == null || executor.isShutdown()
+            || Boolean.FALSE.equals( context.getContext().get( WALKER_PARALLEL ) ) )
+        {
+            return false;
+        }
+
+        for ( WalkerProcessor processor : context.getProcessors() )
+        {
+            if ( !( processor instanceof ThreadSafeWalkerProcessor ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     protected void beforeWalk( WalkerContext context )
     {
         try
@@ -380,4 +451,202 @@ public class DefaultWalker
         }
     }
 
+    // ==
+
+    /**
+     * State of one parallel walk.
+     */
+    private class ParallelWalk
+    {
+        private final WalkerContext context;
+
+        private final WalkerFilter filter;
+
+        private final AtomicInteger collCount = new AtomicInteger( 0 );
+
+        private final CountDownLatch done = new CountDownLatch( 1 );
+
+        public ParallelWalk( WalkerContext context, WalkerFilter filter )
+        {
+            this.context = context;
+            this.filter = filter;
+        }
+
+        public int walk( StorageCollectionItem root )
+        {
+            new CollectionWalk( this, null, root ).run();
+
+            boolean interrupted = false;
+
+            while ( true )
+            {
+                try
+                {
+                    done.await();
+
+                    break;
+                }
+                catch ( InterruptedException e )
+                {
+                    // stop it, and wait for the walking threads to notice it
+                    interrupted = true;
+
+                    context.stop( e );
+                }
+            }
+
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            return collCount.get();
+        }
+
+        protected void fork( CollectionWalk collectionWalk )
+        {
+            try
+            {
+                executor.execute( collectionWalk );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                // all threads busy (or shut down), walk it in this thread
+                collectionWalk.run();
+            }
+        }
+    }
+
+    /**
+     * Walks one collection: processes it's non-collection members and forks it's member collections. It is exited once
+     * itself and all forked member walks are done, by whichever thread finishes last.
+     */
+    private class CollectionWalk
+        implements Runnable
+    {
+        private final ParallelWalk walk;
+
+        private final CollectionWalk parent;
+
+        private final StorageCollectionItem coll;
+
+        // this walk plus the count of unfinished member walks
+        private final AtomicInteger pending = new AtomicInteger( 1 );
+
+        // published to the thread doing the exit by the pending counter
+        private boolean entered;
+
+        public CollectionWalk( ParallelWalk walk, CollectionWalk parent, StorageCollectionItem coll )
+        {
+            this.walk = walk;
+            this.parent = parent;
+            this.coll = coll;
+        }
+
+        public void run()
+        {
+            try
+            {
+                walkCollection( walk.context, walk.filter );
+            }
+            catch ( Exception e )
+            {
+                walk.context.stop( e );
+            }
+            finally
+            {
+                complete();
+            }
+        }
+
+        protected void walkCollection( WalkerContext context, WalkerFilter filter )
+            throws AccessDeniedException,
+                IllegalOperationException,
+                ItemNotFoundException,
+                StorageException
+        {
+            if ( context.isStopped() )
+            {
+                return;
+            }
+
+            boolean shouldProcess = filter.shouldProcess( context, coll );
+
+            boolean shouldProcessRecursively = filter.shouldProcessRecursively( context, coll );
+
+            if ( !shouldProcess && !shouldProcessRecursively )
+            {
+                return;
+            }
+
+            // user may call stop()
+            if ( shouldProcess )
+            {
+                onCollectionEnter( context, coll );
+
+                walk.collCount.incrementAndGet();
+
+                entered = true;
+            }
+
+            if ( context.isStopped() )
+            {
+                return;
+            }
+
+            // user may call stop()
+            if ( shouldProcess )
+            {
+                processItem( context, coll );
+            }
+
+            if ( context.isStopped() || !shouldProcessRecursively )
+            {
+                return;
+            }
+
+            Collection<StorageItem> ls = context.getRepository().list( false, coll );
+
+            for ( StorageItem i : ls )
+            {
+                if ( StorageCollectionItem.class.isAssignableFrom( i.getClass() ) )
+                {
+                    pending.incrementAndGet();
+
+                    walk.fork( new CollectionWalk( walk, this, (StorageCollectionItem) i ) );
+                }
+                else if ( !context.isCollectionsOnly() && filter.shouldProcess( context, i ) )
+                {
+                    // user may call stop()
+                    processItem( context, i );
+                }
+
+                if ( context.isStopped() )
+                {
+                    return;
+                }
+            }
+        }
+
+        protected void complete()
+        {
+            if ( pending.decrementAndGet() == 0 )
+            {
+                // user may call stop()
+                if ( entered && !walk.context.isStopped() )
+                {
+                    onCollectionExit( walk.context, coll );
+                }
+
+                if ( parent != null )
+                {
+                    parent.complete();
+                }
+                else
+                {
+                    walk.done.countDown();
+                }
+            }
+        }
+    }
 }
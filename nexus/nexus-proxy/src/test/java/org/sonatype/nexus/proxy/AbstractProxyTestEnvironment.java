@@ -35,8 +35,10 @@ import org.codehaus.plexus.logging.LoggerManager;
 import org.codehaus.plexus.util.IOUtil;
 import org.sonatype.nexus.configuration.ConfigurationChangeEvent;
 import org.sonatype.nexus.configuration.application.ApplicationConfiguration;
+import org.sonatype.nexus.proxy.attributes.AttributeStorage;
 import org.sonatype.nexus.proxy.attributes.AttributesHandler;
 import org.sonatype.nexus.proxy.attributes.DefaultFSAttributeStorage;
+import org.sonatype.nexus.proxy.attributes.WriteBehindAttributeStorage;
 import org.sonatype.nexus.proxy.events.NexusStartedEvent;
 import org.sonatype.nexus.proxy.events.RepositoryItemEvent;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
@@ -212,9 +214,16 @@ public abstract class AbstractProxyTestEnvironment
 
         attributesHandler = lookup( AttributesHandler.class );
 
-        if ( attributesHandler.getAttributeStorage() instanceof DefaultFSAttributeStorage )
+        AttributeStorage attributeStorage = attributesHandler.getAttributeStorage();
+
+        if ( attributeStorage instanceof WriteBehindAttributeStorage )
+        {
+            attributeStorage = ( (WriteBehindAttributeStorage) attributeStorage ).getDelegate();
+        }
+
+        if ( attributeStorage instanceof DefaultFSAttributeStorage )
         {
-            ( (DefaultFSAttributeStorage) attributesHandler.getAttributeStorage() ).setWorkingDirectory( getApplicationConfiguration().getWorkingDirectory(
+            ( (DefaultFSAttributeStorage) attributeStorage ).setWorkingDirectory( getApplicationConfiguration().getWorkingDirectory(
                 "proxy/attributes" ) );
         }
 
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Serves one item with an entity tag and last modification date, answering with 304 Not Modified when asked so, and
+ * recording the conditional headers of the last request.
+ */
+public class ConditionalGetServlet
+    extends HttpServlet
+{
+    public static final String PATH = "/some/file.txt";
+
+    public static final long LAST_MODIFIED = 1262304000000L;
+
+    public static String CONTENT;
+
+    public static String ETAG;
+
+    public static boolean NOT_MODIFIED;
+
+    public static int REQUESTS;
+
+    public static String IF_NONE_MATCH;
+
+    public static long IF_MODIFIED_SINCE;
+
+    public static void reset( final String content, final String etag )
+    {
+        CONTENT = content;
+        ETAG = etag;
+        NOT_MODIFIED = false;
+        REQUESTS = 0;
+        IF_NONE_MATCH = null;
+        IF_MODIFIED_SINCE = -1;
+    }
+
+    @Override
+    protected void doGet( HttpServletRequest req, HttpServletResponse resp )
+        throws ServletException, IOException
+    {
+        if ( !PATH.equals( req.getPathInfo() ) )
+        {
+            resp.sendError( HttpServletResponse.SC_NOT_FOUND );
+
+            return;
+        }
+
+        REQUESTS++;
+        IF_NONE_MATCH = req.getHeader( "If-None-Match" );
+        IF_MODIFIED_SINCE = req.getDateHeader( "If-Modified-Since" );
+
+        resp.setHeader( "ETag", ETAG );
+        resp.setDateHeader( "Last-Modified", LAST_MODIFIED );
+
+        if ( NOT_MODIFIED )
+        {
+            resp.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+
+            return;
+        }
+
+        resp.setContentType( "text/plain" );
+
+        IOUtil.copy( CONTENT, resp.getOutputStream() );
+    }
+}
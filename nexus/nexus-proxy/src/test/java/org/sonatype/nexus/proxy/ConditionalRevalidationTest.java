@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy;
+
+import java.io.InputStream;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.sonatype.jettytestsuite.ServletServer;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.repository.ProxyRepository;
+import org.sonatype.nexus.proxy.storage.remote.RemoteRepositoryStorage;
+import org.sonatype.nexus.proxy.storage.remote.ahc.AhcRemoteRepositoryStorage;
+import org.sonatype.nexus.proxy.storage.remote.commonshttpclient.CommonsHttpClientRemoteStorage;
+
+/**
+ * Tests the revalidation of old items with one conditional GET, on both HTTP remote storages.
+ */
+public class ConditionalRevalidationTest
+    extends AbstractProxyTestEnvironment
+{
+    @Override
+    protected EnvironmentBuilder getEnvironmentBuilder()
+        throws Exception
+    {
+        ServletServer ss = (ServletServer) lookup( ServletServer.ROLE );
+        return new M2TestsuiteEnvironmentBuilder( ss );
+    }
+
+    protected ProxyRepository getRepository()
+        throws Exception
+    {
+        return getRepositoryRegistry().getRepositoryWithFacet( "conditional", ProxyRepository.class );
+    }
+
+    public void testConditionalRetrievalCommonsHttpClient()
+        throws Exception
+    {
+        checkConditionalRetrieval( CommonsHttpClientRemoteStorage.PROVIDER_STRING );
+    }
+
+    public void testConditionalRetrievalAhc()
+        throws Exception
+    {
+        checkConditionalRetrieval( AhcRemoteRepositoryStorage.PROVIDER_STRING );
+    }
+
+    public void testRevalidationCommonsHttpClient()
+        throws Exception
+    {
+        checkRevalidation( CommonsHttpClientRemoteStorage.PROVIDER_STRING );
+    }
+
+    public void testRevalidationAhc()
+        throws Exception
+    {
+        checkRevalidation( AhcRemoteRepositoryStorage.PROVIDER_STRING );
+    }
+
+    // ==
+
+    protected void checkConditionalRetrieval( final String hint )
+        throws Exception
+    {
+        final RemoteRepositoryStorage remoteStorage = lookup( RemoteRepositoryStorage.class, hint );
+
+        final ProxyRepository repository = getRepository();
+
+        final ResourceStoreRequest request = new ResourceStoreRequest( ConditionalGetServlet.PATH );
+        request.getRequestContext().put( RemoteRepositoryStorage.CTX_REVALIDATE_MODIFIED,
+            Long.valueOf( ConditionalGetServlet.LAST_MODIFIED ) );
+        request.getRequestContext().put( RemoteRepositoryStorage.CTX_REVALIDATE_ETAG, "\"1\"" );
+
+        // 304
+        ConditionalGetServlet.reset( "content", "\"1\"" );
+        ConditionalGetServlet.NOT_MODIFIED = true;
+
+        try
+        {
+            remoteStorage.retrieveItem( repository, request, repository.getRemoteUrl() );
+
+            fail( "Remote item is not modified, RemoteItemNotModifiedException expected" );
+        }
+        catch ( RemoteItemNotModifiedException e )
+        {
+            // good
+        }
+
+        assertEquals( 1, ConditionalGetServlet.REQUESTS );
+        assertEquals( "\"1\"", ConditionalGetServlet.IF_NONE_MATCH );
+        assertEquals( ConditionalGetServlet.LAST_MODIFIED, ConditionalGetServlet.IF_MODIFIED_SINCE );
+
+        // 200
+        ConditionalGetServlet.reset( "newer content", "\"2\"" );
+
+        final StorageFileItem item =
+            (StorageFileItem) remoteStorage.retrieveItem( repository, request, repository.getRemoteUrl() );
+
+        assertEquals( "newer content", read( item ) );
+        assertEquals( "\"2\"", item.getAttributes().get( RemoteRepositoryStorage.REMOTE_ETAG_KEY ) );
+        assertEquals( 1, ConditionalGetServlet.REQUESTS );
+        assertEquals( "\"1\"", ConditionalGetServlet.IF_NONE_MATCH );
+        assertEquals( ConditionalGetServlet.LAST_MODIFIED, ConditionalGetServlet.IF_MODIFIED_SINCE );
+    }
+
+    protected void checkRevalidation( final String hint )
+        throws Exception
+    {
+        final ProxyRepository repository = getRepository();
+
+        repository.setRemoteStorage( lookup( RemoteRepositoryStorage.class, hint ) );
+
+        // not cached yet, unconditional GET
+        ConditionalGetServlet.reset( "content", "\"1\"" );
+
+        assertEquals( "content", retrieve( repository ) );
+        assertEquals( 1, ConditionalGetServlet.REQUESTS );
+        assertNull( ConditionalGetServlet.IF_NONE_MATCH );
+        assertEquals( -1, ConditionalGetServlet.IF_MODIFIED_SINCE );
+
+        // old, not modified remotely: local one is served and renewed
+        repository.expireCaches( new ResourceStoreRequest( "/", true ) );
+        ConditionalGetServlet.reset( "content", "\"1\"" );
+        ConditionalGetServlet.NOT_MODIFIED = true;
+
+        assertEquals( "content", retrieve( repository ) );
+        assertEquals( 1, ConditionalGetServlet.REQUESTS );
+        assertEquals( "\"1\"", ConditionalGetServlet.IF_NONE_MATCH );
+        assertEquals( ConditionalGetServlet.LAST_MODIFIED, ConditionalGetServlet.IF_MODIFIED_SINCE );
+
+        assertEquals( "content", retrieve( repository ) );
+        assertEquals( 1, ConditionalGetServlet.REQUESTS );
+
+        // old, modified remotely: the newer one got by the conditional GET is served and cached
+        repository.expireCaches( new ResourceStoreRequest( "/", true ) );
+        ConditionalGetServlet.reset( "newer content", "\"2\"" );
+
+        assertEquals( "newer content", retrieve( repository ) );
+        assertEquals( 1, ConditionalGetServlet.REQUESTS );
+        assertEquals( "\"1\"", ConditionalGetServlet.IF_NONE_MATCH );
+
+        assertEquals( "newer content", retrieve( repository ) );
+        assertEquals( 1, ConditionalGetServlet.REQUESTS );
+    }
+
+    protected String retrieve( final ProxyRepository repository )
+        throws Exception
+    {
+        return read( (StorageFileItem) repository.retrieveItem( new ResourceStoreRequest( ConditionalGetServlet.PATH,
+            false ) ) );
+    }
+
+    protected String read( final StorageFileItem item )
+        throws Exception
+    {
+        final InputStream is = item.getInputStream();
+
+        try
+        {
+            return IOUtil.toString( is );
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+    }
+}
@@ -19,6 +19,8 @@
 package org.sonatype.nexus.proxy;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.codehaus.plexus.digest.Md5Digester;
@@ -28,6 +30,8 @@ import org.sonatype.nexus.configuration.ConfigurationChangeEvent;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.maven.MavenGroupRepository;
+import org.sonatype.nexus.proxy.repository.AbstractGroupRepository;
+import org.sonatype.nexus.proxy.repository.GroupRepository;
 
 public class GroupingBehaviourTest
     extends AbstractProxyTestEnvironment
@@ -169,6 +173,49 @@ public class GroupingBehaviourTest
 
     }
 
+    public void testParallelRetrieval()
+        throws Exception
+    {
+        AbstractGroupRepository group =
+            (AbstractGroupRepository) getRepositoryRegistry().getRepositoryWithFacet( "test", GroupRepository.class );
+        group.setParallelRetrieval( true );
+        group.setParallelRetrievalLimit( 2 );
+        group.getCurrentCoreConfiguration().commitChanges();
+
+        File md1File = createTempFile( "md1", "tmp" );
+
+        try
+        {
+            // the highest ranked repo in group (repo1) should provide the file, no matter who answers first
+            StorageItem item1 =
+                getRepositoryRegistry().getRepository( "repo1" ).retrieveItem(
+                    new ResourceStoreRequest( "/spoof/simple.txt", false ) );
+            saveItemToFile( (StorageFileItem) item1, md1File );
+
+            StorageItem item =
+                getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test/spoof/simple.txt", false ) );
+            checkForFileAndMatchContents( item, md1File );
+
+            // merge should happen with all members, in member order
+            String mdPath = "/groups/test/spoof/maven-metadata.xml";
+            ResourceStoreRequest mdRequest = new ResourceStoreRequest( mdPath, false );
+            item = getRootRouter().retrieveItem( mdRequest );
+            saveItemToFile( (StorageFileItem) item, md1File );
+            Metadata md = readMetadata( md1File );
+            assertEquals( 3, md.getVersioning().getVersions().size() );
+            assertEquals( "20030303030303", md.getVersioning().getLastUpdated() );
+
+            // members processed by forked requests are merged back, in member order
+            List<String> processedMembers = new ArrayList<String>( mdRequest.getProcessedRepositories() );
+            processedMembers.retainAll( group.getMemberRepositoryIds() );
+            assertEquals( group.getMemberRepositoryIds(), processedMembers );
+        }
+        finally
+        {
+            md1File.delete();
+        }
+    }
+
     public void testMergingVersions()
         throws Exception
     {
@@ -18,29 +18,42 @@
  */
 package org.sonatype.nexus.proxy;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import junit.framework.Assert;
 
+import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.apache.maven.index.artifact.VersionUtils;
 import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
 import org.sonatype.nexus.configuration.model.CRepositoryCoreConfiguration;
 import org.sonatype.nexus.proxy.access.AccessManager;
 import org.sonatype.nexus.proxy.events.RepositoryItemEventCache;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventRetrieve;
+import org.sonatype.nexus.proxy.events.RepositoryItemEventStore;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
 import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.item.StringContentLocator;
+import org.sonatype.nexus.proxy.maven.ArtifactStoreRequest;
+import org.sonatype.nexus.proxy.maven.DefaultMetadataUpdater;
+import org.sonatype.nexus.proxy.maven.MetadataUpdater;
 import org.sonatype.nexus.proxy.maven.RepositoryPolicy;
 import org.sonatype.nexus.proxy.maven.maven2.M2Repository;
+import org.sonatype.nexus.proxy.maven.metadata.operations.MetadataBuilder;
 import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.repository.RepositoryWritePolicy;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
+import org.sonatype.nexus.util.DigesterUtils;
 import org.sonatype.plexus.appevents.Event;
 import org.sonatype.plexus.appevents.EventListener;
 
@@ -175,6 +188,144 @@ public class M2RepositoryTest
         }
     }
 
+    public void testStoreItemWithChecksums()
+        throws Exception
+    {
+        M2Repository repository = (M2Repository) getResourceStore();
+
+        repository.setRepositoryPolicy( RepositoryPolicy.RELEASE );
+        repository.getCurrentCoreConfiguration().commitChanges();
+
+        final List<String> storedPaths = new ArrayList<String>();
+
+        final List<String> retrievedPaths = new ArrayList<String>();
+
+        getApplicationEventMulticaster().addEventListener( new EventListener()
+        {
+            public void onEvent( Event<?> evt )
+            {
+                if ( evt instanceof RepositoryItemEventStore
+                    && ( (RepositoryItemEventStore) evt ).getItem().getPath().startsWith( "/spoof/" ) )
+                {
+                    storedPaths.add( ( (RepositoryItemEventStore) evt ).getItem().getPath() );
+                }
+                else if ( evt instanceof RepositoryItemEventRetrieve
+                    && ( (RepositoryItemEventRetrieve) evt ).getItem().getPath().startsWith( "/spoof/" ) )
+                {
+                    retrievedPaths.add( ( (RepositoryItemEventRetrieve) evt ).getItem().getPath() );
+                }
+            }
+        } );
+
+        String content = "Some content to be checksummed";
+
+        repository.storeItemWithChecksums( new ResourceStoreRequest( SPOOF_RELEASE ),
+            new ByteArrayInputStream( content.getBytes( "UTF-8" ) ), null );
+
+        // all three stored in one go, and the stored item was not read back to get the digests
+        assertEquals( Arrays.asList( SPOOF_RELEASE, SPOOF_RELEASE + ".sha1", SPOOF_RELEASE + ".md5" ), storedPaths );
+        assertTrue( retrievedPaths.isEmpty() );
+
+        assertEquals( DigesterUtils.getSha1Digest( content ),
+            readContent( repository, SPOOF_RELEASE + ".sha1" ) );
+        assertEquals( DigesterUtils.getMd5Digest( content ), readContent( repository, SPOOF_RELEASE + ".md5" ) );
+
+        storedPaths.clear();
+
+        try
+        {
+            repository.storeItemWithChecksums( new ResourceStoreRequest( SPOOF_SNAPSHOT ),
+                new ByteArrayInputStream( content.getBytes( "UTF-8" ) ), null );
+
+            fail( "Should not be able to store snapshot to release repo" );
+        }
+        catch ( UnsupportedStorageOperationException e )
+        {
+            // good
+        }
+
+        assertTrue( storedPaths.isEmpty() );
+    }
+
+    public void testDeployMetadataUpdatesCoalesced()
+        throws Exception
+    {
+        M2Repository repository = (M2Repository) getResourceStore();
+
+        repository.setRepositoryPolicy( RepositoryPolicy.RELEASE );
+        repository.getCurrentCoreConfiguration().commitChanges();
+
+        final List<String> storedPaths = new ArrayList<String>();
+
+        getApplicationEventMulticaster().addEventListener( new EventListener()
+        {
+            public void onEvent( Event<?> evt )
+            {
+                if ( evt instanceof RepositoryItemEventStore
+                    && ( (RepositoryItemEventStore) evt ).getItem().getPath().startsWith( "/spoof/" ) )
+                {
+                    storedPaths.add( ( (RepositoryItemEventStore) evt ).getItem().getPath() );
+                }
+            }
+        } );
+
+        // do not race the flush timer, the pending updates are applied when metadata is read
+        DefaultMetadataUpdater metadataUpdater = (DefaultMetadataUpdater) lookup( MetadataUpdater.class );
+
+        int coalescingWindow = metadataUpdater.getCoalescingWindow();
+
+        metadataUpdater.setCoalescingWindow( 10 * 60 * 1000 );
+
+        String[] versions = new String[] { "1.0", "1.1", "1.2" };
+
+        String sha1;
+
+        try
+        {
+            for ( String version : versions )
+            {
+                repository.getMetadataManager().deployArtifact(
+                    new ArtifactStoreRequest( repository, "/spoof/coalesced/" + version + "/coalesced-" + version
+                        + ".jar", true ) );
+            }
+
+            // reading the hash of metadata applies all the pending updates at once
+            sha1 = readContent( repository, "/spoof/coalesced/maven-metadata.xml.sha1" ).trim();
+        }
+        finally
+        {
+            metadataUpdater.setCoalescingWindow( coalescingWindow );
+        }
+
+        String content = readContent( repository, "/spoof/coalesced/maven-metadata.xml" );
+
+        assertEquals( DigesterUtils.getSha1Digest( content ), sha1 );
+
+        Metadata md = MetadataBuilder.read( new ByteArrayInputStream( content.getBytes( "UTF-8" ) ) );
+
+        assertEquals( Arrays.asList( versions ), md.getVersioning().getVersions() );
+
+        assertEquals( Arrays.asList( "/spoof/coalesced/maven-metadata.xml", "/spoof/coalesced/maven-metadata.xml.sha1",
+            "/spoof/coalesced/maven-metadata.xml.md5" ), storedPaths );
+    }
+
+    protected String readContent( M2Repository repository, String path )
+        throws Exception
+    {
+        StorageFileItem item = (StorageFileItem) repository.retrieveItem( new ResourceStoreRequest( path, true ) );
+
+        InputStream is = item.getInputStream();
+
+        try
+        {
+            return IOUtil.toString( is, "UTF-8" );
+        }
+        finally
+        {
+            IOUtil.close( is );
+        }
+    }
+
     public void testShouldServeByPolicies()
         throws Exception
     {
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.access;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.sonatype.nexus.proxy.maven.maven2.Maven2ContentClass;
+import org.sonatype.nexus.proxy.registry.ContentClass;
+import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.proxy.target.Target;
+import org.sonatype.nexus.proxy.target.TargetMatch;
+
+public class RepositoryAuthorizationTest
+    extends TestCase
+{
+    private static final String RELEASE = "/org/apache/maven/maven-core/2.0/maven-core-2.0.jar";
+
+    private static final String SOURCES = "/org/apache/maven/maven-core/2.0/maven-core-2.0-sources.jar";
+
+    private static final String OTHER = "/org/sonatype/nexus/nexus/1.0/nexus-1.0.pom";
+
+    private Repository repository;
+
+    private Target all;
+
+    private Target maven;
+
+    private Target sources;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        ContentClass maven2 = new Maven2ContentClass();
+
+        repository = createMock( Repository.class );
+        expect( repository.getRepositoryContentClass() ).andReturn( maven2 ).anyTimes();
+        expect( repository.getId() ).andReturn( "dummy" ).anyTimes();
+        replay( repository );
+
+        all = new Target( "all", "All", maven2, Arrays.asList( new String[] { ".*" } ) );
+        maven = new Target( "maven", "Maven", maven2, Arrays.asList( new String[] { "/org/apache/maven/.*" } ) );
+        sources = new Target( "sources", "Sources", maven2, Arrays.asList( new String[] { ".*-sources\\.jar" } ) );
+    }
+
+    public void testPermittedCatchAll()
+    {
+        RepositoryAuthorization authorization = create( matches( all ), matches( maven ) );
+
+        assertTrue( authorization.isAllPermitted() );
+        assertFalse( authorization.isNonePermitted() );
+        assertTrue( authorization.isPermitted( OTHER ) );
+    }
+
+    public void testDeniedCatchAll()
+    {
+        RepositoryAuthorization authorization = create( matches(), matches( all, maven ) );
+
+        assertFalse( authorization.isAllPermitted() );
+        assertTrue( authorization.isNonePermitted() );
+        assertFalse( authorization.isPermitted( RELEASE ) );
+    }
+
+    public void testNoTargets()
+    {
+        RepositoryAuthorization authorization = create( matches(), matches() );
+
+        // nothing matched, "virtual" paths
+        assertTrue( authorization.isAllPermitted() );
+        assertTrue( authorization.isPermitted( RELEASE ) );
+    }
+
+    public void testPartial()
+    {
+        RepositoryAuthorization authorization = create( matches( maven ), matches( all, sources ) );
+
+        assertFalse( authorization.isAllPermitted() );
+        assertFalse( authorization.isNonePermitted() );
+
+        assertTrue( authorization.isPermitted( RELEASE ) );
+        assertTrue( authorization.isPermitted( SOURCES ) );
+        assertFalse( authorization.isPermitted( OTHER ) );
+    }
+
+    public void testPartialWithoutCatchAll()
+    {
+        RepositoryAuthorization authorization = create( matches(), matches( sources ) );
+
+        assertFalse( authorization.isAllPermitted() );
+        assertFalse( authorization.isNonePermitted() );
+
+        // not matched by any target is allowed
+        assertTrue( authorization.isPermitted( RELEASE ) );
+        assertFalse( authorization.isPermitted( SOURCES ) );
+    }
+
+    // ==
+
+    protected RepositoryAuthorization create( List<TargetMatch> permitted, List<TargetMatch> denied )
+    {
+        return new RepositoryAuthorization( permitted, denied );
+    }
+
+    protected List<TargetMatch> matches( Target... targets )
+    {
+        if ( targets.length == 0 )
+        {
+            return Collections.emptyList();
+        }
+
+        TargetMatch[] result = new TargetMatch[targets.length];
+
+        for ( int i = 0; i < targets.length; i++ )
+        {
+            result[i] = new TargetMatch( targets[i], repository );
+        }
+
+        return Arrays.asList( result );
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Segment growth, rolling and release of the attribute segment store.
+ * 
+ * @author cstamas
+ */
+public class AttributeSegmentStoreTest
+    extends TestCase
+{
+    private static final int SEGMENT_SIZE = 256 * 1024;
+
+    protected File directory;
+
+    protected AttributeSegmentStore store;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        directory = new File( "target/attribute-segments" );
+
+        FileUtils.deleteDirectory( directory );
+
+        store = new AttributeSegmentStore( new ConsoleLogger( Logger.LEVEL_INFO, "test" ), directory, SEGMENT_SIZE );
+
+        store.open();
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        store.close();
+
+        super.tearDown();
+    }
+
+    public void testSegmentsGrowOnDemand()
+        throws Exception
+    {
+        File first = new File( directory, "00000001.seg" );
+
+        assertTrue( first.length() < SEGMENT_SIZE );
+
+        byte[] value = new byte[1024];
+
+        for ( int i = 0; i < 600; i++ )
+        {
+            store.put( "/key" + i, value );
+        }
+
+        // the first segment grew to the segment size, then rolled over to the next one
+        assertEquals( SEGMENT_SIZE, first.length() );
+
+        File second = new File( directory, "00000002.seg" );
+
+        assertTrue( second.isFile() );
+        assertTrue( second.length() <= SEGMENT_SIZE );
+
+        for ( int i = 0; i < 600; i++ )
+        {
+            assertEquals( 1024, store.get( "/key" + i ).length );
+        }
+    }
+
+    public void testCompactedSegmentsAreReleasedAndDeleted()
+        throws Exception
+    {
+        byte[] value = new byte[1024];
+
+        for ( int round = 0; round < 2; round++ )
+        {
+            for ( int i = 0; i < 300; i++ )
+            {
+                store.put( "/key" + i, value );
+            }
+        }
+
+        File first = new File( directory, "00000001.seg" );
+
+        assertTrue( first.isFile() );
+
+        assertTrue( store.compact( 0.5d ) > 0 );
+
+        assertFalse( first.exists() );
+
+        for ( int i = 0; i < 300; i++ )
+        {
+            assertEquals( 1024, store.get( "/key" + i ).length );
+        }
+
+        // survives reopen, rebuilding the index from the remaining segments
+        store.close();
+
+        store.open();
+
+        assertEquals( 300, store.size() );
+    }
+}
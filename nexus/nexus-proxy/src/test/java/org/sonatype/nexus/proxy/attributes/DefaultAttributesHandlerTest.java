@@ -30,12 +30,15 @@ import org.sonatype.nexus.configuration.model.DefaultCRepository;
 import org.sonatype.nexus.proxy.AbstractNexusTestEnvironment;
 import org.sonatype.nexus.proxy.ResourceStoreRequest;
 import org.sonatype.nexus.proxy.item.AbstractStorageItem;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
 import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
 import org.sonatype.nexus.proxy.maven.ChecksumPolicy;
 import org.sonatype.nexus.proxy.maven.RepositoryPolicy;
 import org.sonatype.nexus.proxy.maven.maven2.M2RepositoryConfiguration;
 import org.sonatype.nexus.proxy.repository.Repository;
+import org.sonatype.nexus.util.DigesterUtils;
 
 /**
  * AttributeStorage implementation driven by XStream.
@@ -79,9 +82,16 @@ public class DefaultAttributesHandlerTest
         exRepoConf.setRepositoryPolicy( RepositoryPolicy.RELEASE );
         exRepoConf.setChecksumPolicy( ChecksumPolicy.STRICT_IF_EXISTS );
 
-        if ( attributesHandler.getAttributeStorage() instanceof DefaultFSAttributeStorage )
+        AttributeStorage attributeStorage = attributesHandler.getAttributeStorage();
+
+        if ( attributeStorage instanceof WriteBehindAttributeStorage )
+        {
+            attributeStorage = ( (WriteBehindAttributeStorage) attributeStorage ).getDelegate();
+        }
+
+        if ( attributeStorage instanceof DefaultFSAttributeStorage )
         {
-            FileUtils.deleteDirectory( ( (DefaultFSAttributeStorage) attributesHandler.getAttributeStorage() ).getWorkingDirectory() );
+            FileUtils.deleteDirectory( ( (DefaultFSAttributeStorage) attributeStorage ).getWorkingDirectory() );
         }
         else
         {
@@ -136,4 +146,52 @@ public class DefaultAttributesHandlerTest
 
         assertEquals( "2", item.getAttributes().get( "two" ) );
     }
+
+    public void testDigestsCalculatedWhileStored()
+        throws Exception
+    {
+        DefaultStorageFileItem item =
+            new DefaultStorageFileItem( repository, "/org/test/inspected/1.0/inspected-1.0.jar", true, true,
+                new StringContentLocator( "Hello World" ) );
+
+        repository.storeItem( false, item );
+
+        String sha1 = DigesterUtils.getSha1Digest( "Hello World" );
+
+        String md5 = DigesterUtils.getMd5Digest( "Hello World" );
+
+        assertEquals( sha1, item.getAttributes().get( StorageFileItem.DIGEST_SHA1_KEY ) );
+
+        assertEquals( md5, item.getAttributes().get( StorageFileItem.DIGEST_MD5_KEY ) );
+
+        // consumed by the attributes handler
+        assertFalse( item.getItemContext().containsKey( CompositeContentInspection.INSPECTED_BY_KEY ) );
+
+        AbstractStorageItem stored = attributesHandler.getAttributeStorage().getAttributes( item.getRepositoryItemUid() );
+
+        assertEquals( sha1, stored.getAttributes().get( StorageFileItem.DIGEST_SHA1_KEY ) );
+
+        assertEquals( md5, stored.getAttributes().get( StorageFileItem.DIGEST_MD5_KEY ) );
+    }
+
+    public void testKnownDigestsNotCalculatedAgain()
+        throws Exception
+    {
+        DefaultStorageFileItem item =
+            new DefaultStorageFileItem( repository, "/org/test/known/1.0/known-1.0.jar", true, true,
+                new StringContentLocator( "Hello World" ) );
+
+        // as calculated while transferred from remote
+        item.getItemContext().put( StorageFileItem.DIGEST_SHA1_KEY, "known-sha1" );
+
+        item.getItemContext().put( StorageFileItem.DIGEST_MD5_KEY, "known-md5" );
+
+        repository.storeItem( false, item );
+
+        AbstractStorageItem stored = attributesHandler.getAttributeStorage().getAttributes( item.getRepositoryItemUid() );
+
+        assertEquals( "known-sha1", stored.getAttributes().get( StorageFileItem.DIGEST_SHA1_KEY ) );
+
+        assertEquals( "known-md5", stored.getAttributes().get( StorageFileItem.DIGEST_MD5_KEY ) );
+    }
 }
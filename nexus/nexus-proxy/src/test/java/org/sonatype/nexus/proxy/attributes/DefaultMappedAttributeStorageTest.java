@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.File;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.sonatype.nexus.configuration.model.CLocalStorage;
+import org.sonatype.nexus.configuration.model.CRepository;
+import org.sonatype.nexus.configuration.model.DefaultCRepository;
+import org.sonatype.nexus.proxy.AbstractNexusTestEnvironment;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
+import org.sonatype.nexus.proxy.maven.ChecksumPolicy;
+import org.sonatype.nexus.proxy.maven.RepositoryPolicy;
+import org.sonatype.nexus.proxy.maven.maven2.M2RepositoryConfiguration;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * AttributeStorage implementation backed by memory mapped segments.
+ * 
+ * @author cstamas
+ */
+public class DefaultMappedAttributeStorageTest
+    extends AbstractNexusTestEnvironment
+{
+    protected DefaultMappedAttributeStorage attributeStorage;
+
+    protected DefaultFSAttributeStorage fsAttributeStorage;
+
+    protected Repository repository;
+
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        attributeStorage = (DefaultMappedAttributeStorage) lookup( AttributeStorage.class, "mapped" );
+
+        fsAttributeStorage = (DefaultFSAttributeStorage) lookup( AttributeStorage.class );
+
+        repository = lookup( Repository.class, "maven2" );
+
+        CRepository repoConf = new DefaultCRepository();
+
+        repoConf.setProviderRole( Repository.class.getName() );
+        repoConf.setProviderHint( "maven2" );
+        repoConf.setId( "dummy" );
+
+        repoConf.setLocalStorage( new CLocalStorage() );
+        repoConf.getLocalStorage().setProvider( "file" );
+        File localStorageDirectory = new File( getBasedir(), "target/test-reposes/repo1" );
+        repoConf.getLocalStorage().setUrl( localStorageDirectory.toURI().toURL().toString() );
+
+        Xpp3Dom exRepo = new Xpp3Dom( "externalConfiguration" );
+        repoConf.setExternalConfiguration( exRepo );
+        M2RepositoryConfiguration exRepoConf = new M2RepositoryConfiguration( exRepo );
+        exRepoConf.setRepositoryPolicy( RepositoryPolicy.RELEASE );
+        exRepoConf.setChecksumPolicy( ChecksumPolicy.STRICT_IF_EXISTS );
+
+        FileUtils.deleteDirectory( fsAttributeStorage.getWorkingDirectory() );
+
+        FileUtils.deleteDirectory( attributeStorage.getWorkingDirectory() );
+
+        repository.configure( repoConf );
+    }
+
+    public void testSimplePutGet()
+        throws Exception
+    {
+        DefaultStorageFileItem file =
+            new DefaultStorageFileItem( repository, new ResourceStoreRequest( "/a.txt" ), true, true,
+                new StringContentLocator( "CONTENT" ) );
+
+        file.getAttributes().put( "kuku", "kuku" );
+        file.setLength( 7 );
+        file.setRemoteUrl( "http://repo1.maven.org/maven2/a.txt" );
+
+        attributeStorage.putAttribute( file );
+
+        RepositoryItemUid uid = getRepositoryItemUidFactory().createUid( repository, "/a.txt" );
+        DefaultStorageFileItem file1 = (DefaultStorageFileItem) attributeStorage.getAttributes( uid );
+
+        assertEquals( "kuku", file1.getAttributes().get( "kuku" ) );
+        assertEquals( 7, file1.getLength() );
+        assertEquals( "http://repo1.maven.org/maven2/a.txt", file1.getRemoteUrl() );
+        assertEquals( file.getGeneration(), file1.getGeneration() );
+    }
+
+    public void testSimplePutDelete()
+        throws Exception
+    {
+        DefaultStorageFileItem file =
+            new DefaultStorageFileItem( repository, new ResourceStoreRequest( "/b.txt" ), true, true,
+                new StringContentLocator( "CONTENT" ) );
+
+        attributeStorage.putAttribute( file );
+
+        RepositoryItemUid uid = getRepositoryItemUidFactory().createUid( repository, "/b.txt" );
+
+        assertNotNull( attributeStorage.getAttributes( uid ) );
+
+        assertTrue( attributeStorage.deleteAttributes( uid ) );
+
+        assertNull( attributeStorage.getAttributes( uid ) );
+    }
+
+    public void testSurvivesReopenAndCompaction()
+        throws Exception
+    {
+        for ( int i = 0; i < 100; i++ )
+        {
+            DefaultStorageFileItem file =
+                new DefaultStorageFileItem( repository, new ResourceStoreRequest( "/c.txt" ), true, true,
+                    new StringContentLocator( "CONTENT" ) );
+
+            file.getAttributes().put( "round", String.valueOf( i ) );
+
+            attributeStorage.putAttribute( file );
+        }
+
+        DefaultStorageFileItem deleted =
+            new DefaultStorageFileItem( repository, new ResourceStoreRequest( "/d.txt" ), true, true,
+                new StringContentLocator( "CONTENT" ) );
+
+        attributeStorage.putAttribute( deleted );
+
+        RepositoryItemUid deletedUid = getRepositoryItemUidFactory().createUid( repository, "/d.txt" );
+
+        attributeStorage.deleteAttributes( deletedUid );
+
+        attributeStorage.compact();
+
+        // closes the stores, forcing an index rebuild from the segments
+        attributeStorage.setWorkingDirectory( attributeStorage.getWorkingDirectory() );
+
+        RepositoryItemUid uid = getRepositoryItemUidFactory().createUid( repository, "/c.txt" );
+
+        assertEquals( "99", attributeStorage.getAttributes( uid ).getAttributes().get( "round" ) );
+
+        assertNull( attributeStorage.getAttributes( deletedUid ) );
+    }
+
+    public void testMigrationFromFSAttributeStorage()
+        throws Exception
+    {
+        DefaultStorageFileItem file =
+            new DefaultStorageFileItem( repository, new ResourceStoreRequest( "/some/legacy.txt" ), true, true,
+                new StringContentLocator( "CONTENT" ) );
+
+        file.getAttributes().put( "kuku", "legacy" );
+
+        fsAttributeStorage.putAttribute( file );
+
+        RepositoryItemUid uid = getRepositoryItemUidFactory().createUid( repository, "/some/legacy.txt" );
+
+        assertEquals( "legacy", attributeStorage.getAttributes( uid ).getAttributes().get( "kuku" ) );
+    }
+}
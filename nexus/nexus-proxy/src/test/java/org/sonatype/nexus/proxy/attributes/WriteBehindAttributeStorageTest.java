@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.attributes;
+
+import java.io.File;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.sonatype.nexus.configuration.model.CLocalStorage;
+import org.sonatype.nexus.configuration.model.CRepository;
+import org.sonatype.nexus.configuration.model.DefaultCRepository;
+import org.sonatype.nexus.proxy.AbstractNexusTestEnvironment;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.DefaultStorageFileItem;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StringContentLocator;
+import org.sonatype.nexus.proxy.maven.ChecksumPolicy;
+import org.sonatype.nexus.proxy.maven.RepositoryPolicy;
+import org.sonatype.nexus.proxy.maven.maven2.M2RepositoryConfiguration;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Write-behind of timestamp-only attribute updates.
+ * 
+ * @author cstamas
+ */
+public class WriteBehindAttributeStorageTest
+    extends AbstractNexusTestEnvironment
+{
+    protected DefaultFSAttributeStorage delegate;
+
+    protected WriteBehindAttributeStorage attributeStorage;
+
+    protected Repository repository;
+
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        delegate = (DefaultFSAttributeStorage) lookup( AttributeStorage.class );
+
+        attributeStorage =
+            new WriteBehindAttributeStorage( getLoggerManager().getLoggerForComponent(
+                AttributeStorage.class.getName() ), delegate );
+
+        repository = lookup( Repository.class, "maven2" );
+
+        CRepository repoConf = new DefaultCRepository();
+
+        repoConf.setProviderRole( Repository.class.getName() );
+        repoConf.setProviderHint( "maven2" );
+        repoConf.setId( "dummy" );
+
+        repoConf.setLocalStorage( new CLocalStorage() );
+        repoConf.getLocalStorage().setProvider( "file" );
+        File localStorageDirectory = new File( getBasedir(), "target/test-reposes/repo1" );
+        repoConf.getLocalStorage().setUrl( localStorageDirectory.toURI().toURL().toString() );
+
+        Xpp3Dom exRepo = new Xpp3Dom( "externalConfiguration" );
+        repoConf.setExternalConfiguration( exRepo );
+        M2RepositoryConfiguration exRepoConf = new M2RepositoryConfiguration( exRepo );
+        exRepoConf.setRepositoryPolicy( RepositoryPolicy.RELEASE );
+        exRepoConf.setChecksumPolicy( ChecksumPolicy.STRICT_IF_EXISTS );
+
+        FileUtils.deleteDirectory( delegate.getWorkingDirectory() );
+
+        repository.configure( repoConf );
+    }
+
+    public void testTouchesAreMergedAndFlushed()
+        throws Exception
+    {
+        DefaultStorageFileItem file =
+            new DefaultStorageFileItem( repository, new ResourceStoreRequest( "/a.txt" ), true, true,
+                new StringContentLocator( "CONTENT" ) );
+
+        file.setLastRequested( 1000 );
+        file.setRemoteChecked( 1000 );
+
+        attributeStorage.putAttribute( file );
+
+        RepositoryItemUid uid = getRepositoryItemUidFactory().createUid( repository, "/a.txt" );
+
+        attributeStorage.touchLastRequested( uid, 2000 );
+        attributeStorage.touchLastRequested( uid, 3000 );
+        attributeStorage.touchRemoteChecked( uid, 4000 );
+
+        assertEquals( 1, attributeStorage.getPendingCount() );
+
+        // not written yet, but visible thru the write-behind layer
+        assertEquals( 1000, delegate.getAttributes( uid ).getLastRequested() );
+        assertEquals( 3000, attributeStorage.getAttributes( uid ).getLastRequested() );
+        assertEquals( 4000, attributeStorage.getAttributes( uid ).getRemoteChecked() );
+
+        assertEquals( 1, attributeStorage.flush() );
+
+        assertEquals( 0, attributeStorage.getPendingCount() );
+        assertEquals( 3000, delegate.getAttributes( uid ).getLastRequested() );
+        assertEquals( 4000, delegate.getAttributes( uid ).getRemoteChecked() );
+    }
+
+    public void testSynchronousWriteSupersedesTouches()
+        throws Exception
+    {
+        DefaultStorageFileItem file =
+            new DefaultStorageFileItem( repository, new ResourceStoreRequest( "/b.txt" ), true, true,
+                new StringContentLocator( "CONTENT" ) );
+
+        attributeStorage.putAttribute( file );
+
+        RepositoryItemUid uid = getRepositoryItemUidFactory().createUid( repository, "/b.txt" );
+
+        attributeStorage.touchLastRequested( uid, 2000 );
+
+        file.setLastRequested( 5000 );
+
+        attributeStorage.putAttribute( file );
+
+        assertEquals( 0, attributeStorage.getPendingCount() );
+        assertEquals( 5000, attributeStorage.getAttributes( uid ).getLastRequested() );
+    }
+
+    public void testSupersededTouchIsSealed()
+        throws Exception
+    {
+        DefaultStorageFileItem file =
+            new DefaultStorageFileItem( repository, new ResourceStoreRequest( "/c.txt" ), true, true,
+                new StringContentLocator( "CONTENT" ) );
+
+        attributeStorage.putAttribute( file );
+
+        RepositoryItemUid uid = getRepositoryItemUidFactory().createUid( repository, "/c.txt" );
+
+        attributeStorage.touchLastRequested( uid, 2000 );
+
+        // as held by a toucher racing with the synchronous write
+        WriteBehindAttributeStorage.PendingTouch superseded = attributeStorage.getPendingTouch( uid );
+
+        file.setLastRequested( 5000 );
+
+        attributeStorage.putAttribute( file );
+
+        assertFalse( superseded.setLastRequested( 6000 ) );
+
+        // the toucher retries with a new one, that is not lost
+        attributeStorage.touchLastRequested( uid, 6000 );
+
+        assertEquals( 1, attributeStorage.getPendingCount() );
+        assertEquals( 6000, attributeStorage.getAttributes( uid ).getLastRequested() );
+
+        assertEquals( 1, attributeStorage.flush() );
+        assertEquals( 6000, delegate.getAttributes( uid ).getLastRequested() );
+    }
+}
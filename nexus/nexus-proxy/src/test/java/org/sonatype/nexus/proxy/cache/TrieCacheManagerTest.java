@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import junit.framework.TestCase;
+
+public class TrieCacheManagerTest
+    extends TestCase
+{
+    public void testBudgetSharedAmongCaches()
+    {
+        final TrieCacheManager cacheManager = new TrieCacheManager();
+
+        final TriePathCache first = (TriePathCache) cacheManager.getPathCache( "first" );
+
+        assertSame( first, cacheManager.getPathCache( "first" ) );
+        assertEquals( 100000, first.getMaxElements() );
+
+        final TriePathCache second = (TriePathCache) cacheManager.getPathCache( "second" );
+
+        // one bound for all caches, not split among them
+        assertSame( first.getBudget(), second.getBudget() );
+        assertEquals( 100000, second.getMaxElements() );
+
+        cacheManager.getBudget().setMaxElements( 4 );
+
+        first.put( "/a", Boolean.TRUE );
+        second.put( "/b", Boolean.TRUE );
+        second.put( "/c", Boolean.TRUE );
+        second.put( "/d", Boolean.TRUE );
+
+        // the busy cache may use the space unused by the other
+        assertEquals( 3, second.getStatistics().getSize() );
+
+        // the least recently used element of all caches goes first
+        assertTrue( first.contains( "/a" ) );
+
+        second.put( "/e", Boolean.TRUE );
+
+        assertEquals( 4, cacheManager.getBudget().getSize() );
+        assertTrue( first.contains( "/a" ) );
+        assertFalse( second.contains( "/b" ) );
+        assertTrue( second.contains( "/e" ) );
+
+        second.put( "/f", Boolean.TRUE );
+        second.put( "/g", Boolean.TRUE );
+        second.put( "/h", Boolean.TRUE );
+
+        assertFalse( first.contains( "/a" ) );
+        assertEquals( 4, second.getStatistics().getSize() );
+
+        second.purge();
+
+        assertEquals( 0, cacheManager.getBudget().getSize() );
+    }
+}
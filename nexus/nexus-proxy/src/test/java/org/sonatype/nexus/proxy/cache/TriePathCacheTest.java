@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.cache;
+
+import java.util.Collection;
+
+import junit.framework.TestCase;
+
+public class TriePathCacheTest
+    extends TestCase
+{
+    private long now;
+
+    private TriePathCache cache;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        now = 1000000L;
+
+        cache = createCache( 4 );
+    }
+
+    protected TriePathCache createCache( final int maxElements )
+    {
+        return new TriePathCache( "test", maxElements, 120 )
+        {
+            @Override
+            protected long getCurrentTime()
+            {
+                return now;
+            }
+        };
+    }
+
+    public void testRemoveWithChildren()
+    {
+        cache.put( "/com/sonatype/nexus", Boolean.TRUE );
+        cache.put( "/com/sonatype/nexus/api", Boolean.TRUE );
+        cache.put( "/com/sonatypes", Boolean.TRUE );
+        cache.put( "/org", Boolean.TRUE );
+
+        cache.removeWithChildren( "/com/sonatype" );
+
+        assertFalse( cache.contains( "/com/sonatype/nexus" ) );
+        assertFalse( cache.contains( "/com/sonatype/nexus/api" ) );
+        // siblings sharing string prefix only are kept
+        assertTrue( cache.contains( "/com/sonatypes" ) );
+        assertTrue( cache.contains( "/org" ) );
+        assertEquals( 2, cache.getStatistics().getSize() );
+
+        cache.removeWithChildren( "/" );
+
+        assertFalse( cache.contains( "/com/sonatypes" ) );
+        assertFalse( cache.contains( "/org" ) );
+        assertEquals( 0, cache.getStatistics().getSize() );
+    }
+
+    public void testExpiration()
+    {
+        cache.put( "/a", Boolean.TRUE, 10 );
+        cache.put( "/b", Boolean.TRUE );
+
+        now += 11000L;
+
+        assertTrue( cache.isExpired( "/a" ) );
+        assertFalse( cache.contains( "/a" ) );
+        assertFalse( cache.isExpired( "/a" ) );
+        assertTrue( cache.contains( "/b" ) );
+
+        now += 120000L;
+
+        assertFalse( cache.contains( "/b" ) );
+        assertEquals( 0, cache.getStatistics().getSize() );
+    }
+
+    public void testLruEviction()
+    {
+        cache.put( "/1", Boolean.TRUE );
+        cache.put( "/2", Boolean.TRUE );
+        cache.put( "/3", Boolean.TRUE );
+        cache.put( "/4", Boolean.TRUE );
+
+        // make 1 recently used
+        assertTrue( cache.contains( "/1" ) );
+
+        cache.put( "/5", Boolean.TRUE );
+
+        assertEquals( 4, cache.getStatistics().getSize() );
+        assertTrue( cache.contains( "/1" ) );
+        assertFalse( cache.contains( "/2" ) );
+        assertTrue( cache.contains( "/5" ) );
+    }
+
+    public void testStatisticsAndKeys()
+    {
+        cache.put( "/com/", Boolean.TRUE );
+        cache.put( "/com/sonatype", Boolean.TRUE );
+
+        assertTrue( cache.contains( "com" ) );
+        assertFalse( cache.contains( "org" ) );
+
+        CacheStatistics stats = cache.getStatistics();
+        assertEquals( 2, stats.getSize() );
+        assertEquals( 1, stats.getHits() );
+        assertEquals( 1, stats.getMisses() );
+
+        Collection<String> keys = cache.listKeysInCache();
+        assertEquals( 2, keys.size() );
+        assertTrue( keys.contains( "com" ) );
+        assertTrue( keys.contains( "com/sonatype" ) );
+
+        cache.purge();
+
+        assertTrue( cache.listKeysInCache().isEmpty() );
+        assertEquals( 0, cache.getStatistics().getSize() );
+    }
+
+    public void testElementsCounted()
+    {
+        // path nodes leading to elements are not counted
+        cache.put( "/a/b/c", Boolean.TRUE );
+        cache.put( "/d/e", Boolean.TRUE );
+        cache.put( "/d/f/g", Boolean.TRUE );
+        cache.put( "/d/f/h", Boolean.TRUE );
+
+        assertEquals( 4, cache.getStatistics().getSize() );
+        assertEquals( 4, cache.getBudget().getSize() );
+
+        // lowering the bound evicts at once
+        cache.setMaxElements( 2 );
+
+        assertEquals( 2, cache.getStatistics().getSize() );
+        assertFalse( cache.contains( "/a/b/c" ) );
+        assertFalse( cache.contains( "/d/e" ) );
+        assertTrue( cache.contains( "/d/f/g" ) );
+        assertTrue( cache.contains( "/d/f/h" ) );
+
+        cache.removeWithChildren( "/d" );
+
+        assertEquals( 0, cache.getBudget().getSize() );
+    }
+
+    public void testPurgeDetachesOldNodes()
+    {
+        final TriePathCache.Node[] stale = new TriePathCache.Node[1];
+
+        cache = new TriePathCache( "test", 4, 120 )
+        {
+            @Override
+            protected Node find( final String key )
+            {
+                // simulates a lookup that reached the node before the purge
+                return stale[0] != null ? stale[0] : super.find( key );
+            }
+        };
+
+        cache.put( "/a", Boolean.TRUE );
+
+        stale[0] = cache.find( "a" );
+
+        cache.purge();
+
+        assertFalse( cache.contains( "/a" ) );
+        assertFalse( cache.remove( "/a" ) );
+
+        stale[0] = null;
+
+        assertEquals( 0, cache.getStatistics().getSize() );
+        assertTrue( cache.listKeysInCache().isEmpty() );
+
+        cache.put( "/b", Boolean.TRUE );
+
+        assertEquals( 1, cache.getStatistics().getSize() );
+        assertEquals( 1, cache.listKeysInCache().size() );
+        assertTrue( cache.contains( "/b" ) );
+    }
+}
@@ -0,0 +1,462 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.http;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+
+public class NioHttpProxyServiceTest
+    extends TestCase
+{
+    private OriginServer origin;
+
+    private TestNioHttpProxyService service;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        origin = new OriginServer();
+
+        origin.start();
+
+        service = new TestNioHttpProxyService();
+
+        service.start();
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        service.stop();
+
+        origin.close();
+
+        super.tearDown();
+    }
+
+    public void testFindHeaderEnd()
+    {
+        byte[] crlf = "GET http://localhost/a HTTP/1.1\r\nHost: localhost\r\n\r\nGET".getBytes();
+
+        assertEquals( crlf.length - 3, NioHttpProxyService.findHeaderEnd( crlf, crlf.length ) );
+
+        byte[] lf = "GET http://localhost/a HTTP/1.1\nHost: localhost\n\n".getBytes();
+
+        assertEquals( lf.length, NioHttpProxyService.findHeaderEnd( lf, lf.length ) );
+
+        byte[] partial = "GET http://localhost/a HTTP/1.1\r\nHost: localhost\r\n".getBytes();
+
+        assertEquals( -1, NioHttpProxyService.findHeaderEnd( partial, partial.length ) );
+    }
+
+    public void testKeepAliveRequested()
+    {
+        NioHttpProxyService service = new NioHttpProxyService();
+
+        assertTrue( service.isKeepAliveRequested( request( "HTTP/1.1", "" ) ) );
+        assertFalse( service.isKeepAliveRequested( request( "HTTP/1.1", "Connection: close\n" ) ) );
+        assertFalse( service.isKeepAliveRequested( request( "HTTP/1.1", "Proxy-Connection: close\n" ) ) );
+        assertFalse( service.isKeepAliveRequested( request( "HTTP/1.0", "" ) ) );
+        assertTrue( service.isKeepAliveRequested( request( "HTTP/1.0", "Proxy-Connection: Keep-Alive\n" ) ) );
+    }
+
+    public void testKeepAlive()
+        throws Exception
+    {
+        Socket client = connect();
+
+        try
+        {
+            send( client, get( "/a", "" ) );
+
+            assertEquals( "/a", readResponseBody( client ) );
+
+            send( client, get( "/b", "" ) );
+
+            assertEquals( "/b", readResponseBody( client ) );
+
+            assertEquals( 1, service.getConnectionCount() );
+        }
+        finally
+        {
+            client.close();
+        }
+
+        awaitConnectionCount( 0 );
+    }
+
+    public void testPipelining()
+        throws Exception
+    {
+        Socket client = connect();
+
+        try
+        {
+            send( client, get( "/a", "" ) + get( "/b", "" ) + get( "/c", "Connection: close\r\n" ) );
+
+            assertEquals( "/a", readResponseBody( client ) );
+
+            assertEquals( "/b", readResponseBody( client ) );
+
+            assertEquals( "/c", readResponseBody( client ) );
+
+            // the last one asked for close
+            assertEquals( -1, client.getInputStream().read() );
+        }
+        finally
+        {
+            client.close();
+        }
+
+        awaitConnectionCount( 0 );
+    }
+
+    public void testStoppedWorkerLoopsAreSkipped()
+        throws Exception
+    {
+        Socket client = connect();
+
+        send( client, get( "/a", "" ) );
+
+        assertEquals( "/a", readResponseBody( client ) );
+
+        // the loops stop the same way when they fail
+        service.getWorkerLoops()[0].stop();
+
+        awaitConnectionCount( 0 );
+
+        assertEquals( -1, client.getInputStream().read() );
+
+        client.close();
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            client = connect();
+
+            send( client, get( "/b", "Connection: close\r\n" ) );
+
+            assertEquals( "/b", readResponseBody( client ) );
+
+            client.close();
+        }
+
+        awaitConnectionCount( 0 );
+
+        service.getWorkerLoops()[1].stop();
+
+        // nothing serves new connections, so they are not accepted anymore
+        client = connect();
+
+        try
+        {
+            send( client, get( "/c", "" ) );
+
+            assertEquals( -1, client.getInputStream().read() );
+        }
+        catch ( IOException e )
+        {
+            // reset
+        }
+        finally
+        {
+            client.close();
+        }
+
+        awaitConnectionCount( 0 );
+    }
+
+    // ==
+
+    protected HttpRequest request( String version, String headers )
+    {
+        HttpRequest request = new HttpRequest();
+
+        String head = "GET http://localhost/a " + version + "\n" + headers + "\n";
+
+        request.readInput( new ByteArrayInputStream( head.getBytes() ) );
+
+        return request;
+    }
+
+    protected Socket connect()
+        throws IOException
+    {
+        Socket socket = new Socket( "localhost", service.getPort() );
+
+        socket.setSoTimeout( 10000 );
+
+        return socket;
+    }
+
+    protected String get( String path, String headers )
+    {
+        return "GET http://localhost:" + origin.getPort() + path + " HTTP/1.1\r\nHost: localhost\r\n" + headers
+            + "\r\n";
+    }
+
+    protected void send( Socket socket, String request )
+        throws IOException
+    {
+        OutputStream out = socket.getOutputStream();
+
+        out.write( request.getBytes( "ISO-8859-1" ) );
+
+        out.flush();
+    }
+
+    /**
+     * Reads one response, using it's content-length only, as the connection is kept alive.
+     */
+    protected String readResponseBody( Socket socket )
+        throws IOException
+    {
+        InputStream in = socket.getInputStream();
+
+        String line = readLine( in );
+
+        assertTrue( line, line.startsWith( "HTTP/1.1 200" ) );
+
+        int contentLength = -1;
+
+        while ( ( line = readLine( in ) ).length() > 0 )
+        {
+            if ( line.toLowerCase().startsWith( "content-length:" ) )
+            {
+                contentLength = Integer.parseInt( line.substring( line.indexOf( ':' ) + 1 ).trim() );
+            }
+        }
+
+        assertTrue( contentLength >= 0 );
+
+        byte[] body = new byte[contentLength];
+
+        for ( int n = 0; n < contentLength; )
+        {
+            int read = in.read( body, n, contentLength - n );
+
+            assertTrue( read > 0 );
+
+            n += read;
+        }
+
+        return new String( body, "ISO-8859-1" );
+    }
+
+    protected String readLine( InputStream in )
+        throws IOException
+    {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        int c;
+
+        while ( ( c = in.read() ) != '\n' )
+        {
+            assertTrue( "Unexpected end of response", c != -1 );
+
+            if ( c != '\r' )
+            {
+                line.write( c );
+            }
+        }
+
+        return line.toString( "ISO-8859-1" );
+    }
+
+    protected void awaitConnectionCount( int count )
+        throws InterruptedException
+    {
+        for ( int i = 0; i < 100 && service.getConnectionCount() != count; i++ )
+        {
+            Thread.sleep( 50 );
+        }
+
+        assertEquals( count, service.getConnectionCount() );
+    }
+
+    protected static int findFreePort()
+        throws IOException
+    {
+        ServerSocket socket = new ServerSocket( 0 );
+
+        try
+        {
+            return socket.getLocalPort();
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    // ==
+
+    /**
+     * A NIO proxy service passing requests through to any server, and working without a container.
+     */
+    protected static class TestNioHttpProxyService
+        extends NioHttpProxyService
+    {
+        private final Logger logger = new ConsoleLogger( Logger.LEVEL_WARN, "proxy" );
+
+        private final int port;
+
+        public TestNioHttpProxyService()
+            throws IOException
+        {
+            this.port = findFreePort();
+        }
+
+        @Override
+        protected Logger getLogger()
+        {
+            return logger;
+        }
+
+        @Override
+        protected int getPoolSize()
+        {
+            return 4;
+        }
+
+        @Override
+        protected int getWorkerLoopCount()
+        {
+            return 2;
+        }
+
+        @Override
+        public boolean isEnabled()
+        {
+            return true;
+        }
+
+        @Override
+        public int getPort()
+        {
+            return port;
+        }
+
+        @Override
+        public HttpProxyPolicy getHttpProxyPolicy()
+        {
+            return HttpProxyPolicy.PASS_THRU;
+        }
+
+        @Override
+        public NexusURLResolver getNexusURLResolver()
+        {
+            return new NexusURLResolver()
+            {
+                public URL resolve( URL url )
+                {
+                    return null;
+                }
+            };
+        }
+    }
+
+    /**
+     * Answers each request with it's path as body, and closes the connection, as the proxy asks for it.
+     */
+    protected static class OriginServer
+        extends Thread
+    {
+        private final ServerSocket serverSocket;
+
+        public OriginServer()
+            throws IOException
+        {
+            serverSocket = new ServerSocket( 0 );
+
+            setDaemon( true );
+        }
+
+        public int getPort()
+        {
+            return serverSocket.getLocalPort();
+        }
+
+        public void close()
+            throws IOException
+        {
+            serverSocket.close();
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while ( true )
+                {
+                    Socket socket = serverSocket.accept();
+
+                    try
+                    {
+                        BufferedReader in =
+                            new BufferedReader( new InputStreamReader( socket.getInputStream(), "ISO-8859-1" ) );
+
+                        String path = in.readLine().split( " " )[1];
+
+                        while ( in.readLine().length() > 0 )
+                        {
+                            // skip headers
+                        }
+
+                        byte[] body = path.getBytes( "ISO-8859-1" );
+
+                        OutputStream out = socket.getOutputStream();
+
+                        out.write( ( "HTTP/1.1 200 OK\r\nContent-Length: " + body.length
+                            + "\r\nConnection: close\r\n\r\n" ).getBytes( "ISO-8859-1" ) );
+
+                        out.write( body );
+
+                        out.flush();
+                    }
+                    finally
+                    {
+                        socket.close();
+                    }
+                }
+            }
+            catch ( IOException e )
+            {
+                // closed
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.item;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.makeThreadSafe;
+import static org.easymock.EasyMock.replay;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.proxy.AbstractNexusTestEnvironment;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Compares the UID creation throughput of the segmented {@link DefaultRepositoryItemUidFactory} with the single lock
+ * based {@link LegacyDefaultRepositoryItemUidFactory}, using 1 to 64 threads hammering a set of hot paths spread over
+ * a few repositories. Not part of the unit tests, run it with the "perf" profile.
+ */
+public class RepositoryItemUidFactoryBenchmark
+    extends AbstractNexusTestEnvironment
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private static final int[] THREAD_COUNTS = new int[] { 1, 2, 4, 8, 16, 32, 64 };
+
+    private static final int PATH_COUNT = 1000;
+
+    private static final long WARMUP_MILLIS = 100;
+
+    private static final long MEASURE_MILLIS = 300;
+
+    protected Repository[] repositories;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        repositories = new Repository[4];
+
+        for ( int i = 0; i < repositories.length; i++ )
+        {
+            Repository repository = createMock( Repository.class );
+
+            makeThreadSafe( repository, true );
+
+            expect( repository.getId() ).andReturn( "repo" + i ).anyTimes();
+
+            replay( repository );
+
+            repositories[i] = repository;
+        }
+    }
+
+    public void testCompareThroughput()
+        throws Exception
+    {
+        RepositoryItemUidFactory current = lookup( RepositoryItemUidFactory.class );
+
+        RepositoryItemUidFactory legacy = lookup( RepositoryItemUidFactory.class, "legacy" );
+
+        logger.info( String.format( "%8s %16s %16s", "threads", "legacy ops/s", "current ops/s" ) );
+
+        for ( int threads : THREAD_COUNTS )
+        {
+            long legacyOps = measure( legacy, threads );
+
+            long currentOps = measure( current, threads );
+
+            logger.info( String.format( "%8d %16d %16d", threads, legacyOps, currentOps ) );
+
+            assertTrue( "Factory should create UIDs!", legacyOps > 0 && currentOps > 0 );
+        }
+    }
+
+    protected long measure( final RepositoryItemUidFactory factory, final int threadCount )
+        throws Exception
+    {
+        final AtomicBoolean measuring = new AtomicBoolean( false );
+
+        final AtomicBoolean running = new AtomicBoolean( true );
+
+        final AtomicLong operations = new AtomicLong( 0 );
+
+        final CountDownLatch done = new CountDownLatch( threadCount );
+
+        for ( int t = 0; t < threadCount; t++ )
+        {
+            final int seed = t;
+
+            Thread thread = new Thread( new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        long ops = 0;
+
+                        int i = seed;
+
+                        while ( running.get() )
+                        {
+                            Repository repository = repositories[i % repositories.length];
+
+                            RepositoryItemUid uid = factory.createUid( repository, "/some/path/" + ( i % PATH_COUNT ) );
+
+                            if ( uid != null && measuring.get() )
+                            {
+                                ops++;
+                            }
+
+                            i++;
+                        }
+
+                        operations.addAndGet( ops );
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            } );
+
+            thread.start();
+        }
+
+        Thread.sleep( WARMUP_MILLIS );
+
+        measuring.set( true );
+
+        Thread.sleep( MEASURE_MILLIS );
+
+        measuring.set( false );
+
+        running.set( false );
+
+        done.await();
+
+        return operations.get() * 1000 / MEASURE_MILLIS;
+    }
+}
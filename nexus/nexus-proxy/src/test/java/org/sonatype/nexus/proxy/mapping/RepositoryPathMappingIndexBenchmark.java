@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.mapping;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.repository.GroupRepository;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+/**
+ * Compares the throughput of finding the matching routes with {@link RepositoryPathMappingIndex} and with evaluating
+ * every route using {@link RepositoryPathMapping#matches(Repository, ResourceStoreRequest)}, on synthetic sets of 10
+ * to 1000 routes. Not part of the unit tests, run it with the "perf" profile.
+ */
+public class RepositoryPathMappingIndexBenchmark
+    extends TestCase
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private static final int[] ROUTE_COUNTS = new int[] { 10, 100, 300, 1000 };
+
+    private static final int PATH_COUNT = 1000;
+
+    private static final long WARMUP_MILLIS = 100;
+
+    private static final long MEASURE_MILLIS = 300;
+
+    public void testCompareThroughput()
+    {
+        Random random = new Random( 1234 );
+
+        Repository group = RepositoryPathMappingIndexTest.mockRepository( "public", GroupRepository.class );
+
+        ResourceStoreRequest[] requests = new ResourceStoreRequest[PATH_COUNT];
+
+        List<String> paths = RepositoryPathMappingIndexTest.createPaths( random, PATH_COUNT );
+
+        for ( int i = 0; i < PATH_COUNT; i++ )
+        {
+            requests[i] = new ResourceStoreRequest( paths.get( i ) );
+        }
+
+        logger.info( String.format( "%8s %16s %16s", "routes", "linear ops/s", "index ops/s" ) );
+
+        for ( int routes : ROUTE_COUNTS )
+        {
+            List<RepositoryPathMapping> mappings = RepositoryPathMappingIndexTest.createMappings( random, routes );
+
+            RepositoryPathMappingIndex index = new RepositoryPathMappingIndex( mappings );
+
+            long linearOps = measure( new LinearMatcher( mappings ), group, requests );
+
+            long indexOps = measure( new IndexMatcher( index ), group, requests );
+
+            logger.info( String.format( "%8d %16d %16d", routes, linearOps, indexOps ) );
+
+            assertTrue( "Matchers should match!", linearOps > 0 && indexOps > 0 );
+        }
+    }
+
+    protected long measure( Matcher matcher, Repository repository, ResourceStoreRequest[] requests )
+    {
+        long ops = 0;
+
+        int matched = 0;
+
+        long start = System.currentTimeMillis();
+
+        long measureStart = start + WARMUP_MILLIS;
+
+        long end = measureStart + MEASURE_MILLIS;
+
+        for ( int i = 0;; i++ )
+        {
+            long now = System.currentTimeMillis();
+
+            if ( now >= end )
+            {
+                break;
+            }
+
+            matched += matcher.match( repository, requests[i % requests.length] );
+
+            if ( now >= measureStart )
+            {
+                ops++;
+            }
+        }
+
+        // keep the work observable
+        assertTrue( matched >= 0 );
+
+        return ops * 1000 / MEASURE_MILLIS;
+    }
+
+    // ==
+
+    protected interface Matcher
+    {
+        int match( Repository repository, ResourceStoreRequest request );
+    }
+
+    protected static class LinearMatcher
+        implements Matcher
+    {
+        private final List<RepositoryPathMapping> mappings;
+
+        public LinearMatcher( List<RepositoryPathMapping> mappings )
+        {
+            this.mappings = mappings;
+        }
+
+        public int match( Repository repository, ResourceStoreRequest request )
+        {
+            int result = 0;
+
+            for ( RepositoryPathMapping mapping : mappings )
+            {
+                if ( mapping.matches( repository, request ) )
+                {
+                    result++;
+                }
+            }
+
+            return result;
+        }
+    }
+
+    protected static class IndexMatcher
+        implements Matcher
+    {
+        private final RepositoryPathMappingIndex index;
+
+        public IndexMatcher( RepositoryPathMappingIndex index )
+        {
+            this.index = index;
+        }
+
+        public int match( Repository repository, ResourceStoreRequest request )
+        {
+            return index.getMatchingMappings( repository, request ).size();
+        }
+    }
+}
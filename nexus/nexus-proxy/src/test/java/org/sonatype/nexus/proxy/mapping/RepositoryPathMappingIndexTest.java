@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.mapping;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.makeThreadSafe;
+import static org.easymock.EasyMock.replay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.mapping.RepositoryPathMapping.MappingType;
+import org.sonatype.nexus.proxy.repository.DefaultRepositoryKind;
+import org.sonatype.nexus.proxy.repository.GroupRepository;
+import org.sonatype.nexus.proxy.repository.Repository;
+
+public class RepositoryPathMappingIndexTest
+    extends TestCase
+{
+    public void testLiteralPrefix()
+    {
+        assertEquals( "/com/company/", RepositoryPathMappingIndex.getLiteralPrefix( "/com/company/.*" ) );
+        assertEquals( "/com/company/", RepositoryPathMappingIndex.getLiteralPrefix( "^/com/company/.*" ) );
+        assertEquals( "/org/some-thing.x/", RepositoryPathMappingIndex.getLiteralPrefix( "/org/some-thing\\.x/.*" ) );
+        assertEquals( "/com/compan", RepositoryPathMappingIndex.getLiteralPrefix( "/com/company?/.*" ) );
+        assertEquals( "/com/", RepositoryPathMappingIndex.getLiteralPrefix( "/com/[a-z]+/.*" ) );
+        assertEquals( "/com/", RepositoryPathMappingIndex.getLiteralPrefix( "/com/\\d+/.*" ) );
+        assertEquals( "", RepositoryPathMappingIndex.getLiteralPrefix( ".*/com/company/.*" ) );
+        assertEquals( "", RepositoryPathMappingIndex.getLiteralPrefix( "/com/a/.*|/org/b/.*" ) );
+        assertEquals( "", RepositoryPathMappingIndex.getLiteralPrefix( "(?i)/com/.*" ) );
+        assertEquals( "/a|b", RepositoryPathMappingIndex.getLiteralPrefix( "/a\\|b.*" ) );
+    }
+
+    public void testGroupSpecificMappings()
+    {
+        Repository group = mockRepository( "public", GroupRepository.class );
+
+        Repository other = mockRepository( "other", GroupRepository.class );
+
+        RepositoryPathMapping all = mapping( "all", "*", "/com/.*" );
+
+        RepositoryPathMapping onlyPublic = mapping( "public", "public", "/com/company/.*" );
+
+        RepositoryPathMappingIndex index =
+            new RepositoryPathMappingIndex( Arrays.asList( new RepositoryPathMapping[] { onlyPublic, all } ) );
+
+        ResourceStoreRequest request = new ResourceStoreRequest( "/com/company/a/1.0/a-1.0.pom" );
+
+        assertEquals( Arrays.asList( new RepositoryPathMapping[] { onlyPublic, all } ),
+            index.getMatchingMappings( group, request ) );
+
+        assertEquals( Arrays.asList( new RepositoryPathMapping[] { all } ), index.getMatchingMappings( other, request ) );
+
+        assertTrue( index.getMatchingMappings( group, new ResourceStoreRequest( "/org/a/1.0/a-1.0.pom" ) ).isEmpty() );
+    }
+
+    public void testSameMatchesAsMappings()
+    {
+        Random random = new Random( 1234 );
+
+        Repository group = mockRepository( "public", GroupRepository.class );
+
+        Repository other = mockRepository( "other", GroupRepository.class );
+
+        for ( int routes : new int[] { 10, 100, 300, 1000 } )
+        {
+            List<RepositoryPathMapping> mappings = createMappings( random, routes );
+
+            RepositoryPathMappingIndex index = new RepositoryPathMappingIndex( mappings );
+
+            for ( String path : createPaths( random, 2000 ) )
+            {
+                ResourceStoreRequest request = new ResourceStoreRequest( path );
+
+                assertEquals( routes + " routes, " + path, getMatchingMappings( mappings, group, request ),
+                    index.getMatchingMappings( group, request ) );
+
+                assertEquals( routes + " routes, " + path, getMatchingMappings( mappings, other, request ),
+                    index.getMatchingMappings( other, request ) );
+            }
+        }
+    }
+
+    public void testEmptyIndex()
+    {
+        Repository group = mockRepository( "public", GroupRepository.class );
+
+        RepositoryPathMappingIndex index = new RepositoryPathMappingIndex( new ArrayList<RepositoryPathMapping>() );
+
+        ResourceStoreRequest request = new ResourceStoreRequest( "/com/company/a/1.0/a-1.0.pom" );
+
+        assertTrue( index.getMatchingMappings( group, request ).isEmpty() );
+    }
+
+    // ==
+
+    /**
+     * Returns the mappings matching the request in their order, evaluating every mapping one by one.
+     */
+    protected static List<RepositoryPathMapping> getMatchingMappings( List<RepositoryPathMapping> mappings,
+                                                                      Repository repository,
+                                                                      ResourceStoreRequest request )
+    {
+        ArrayList<RepositoryPathMapping> result = new ArrayList<RepositoryPathMapping>();
+
+        for ( RepositoryPathMapping mapping : mappings )
+        {
+            if ( mapping.matches( repository, request ) )
+            {
+                result.add( mapping );
+            }
+        }
+
+        return result;
+    }
+
+    protected static Repository mockRepository( String id, Class<?> facet )
+    {
+        Repository repository = createMock( Repository.class );
+
+        makeThreadSafe( repository, true );
+
+        expect( repository.getId() ).andReturn( id ).anyTimes();
+
+        expect( repository.getRepositoryKind() ).andReturn( new DefaultRepositoryKind( facet, null ) ).anyTimes();
+
+        replay( repository );
+
+        return repository;
+    }
+
+    protected static RepositoryPathMapping mapping( String id, String groupId, String... regexps )
+    {
+        return new RepositoryPathMapping( id, MappingType.INCLUSION, groupId, Arrays.asList( regexps ),
+            Arrays.asList( new String[] { "central" } ) );
+    }
+
+    /**
+     * Creates routes like the ones keeping internal groupIds away from public proxies, some with group and some not
+     * anchored at the start of path.
+     */
+    protected static List<RepositoryPathMapping> createMappings( Random random, int count )
+    {
+        ArrayList<RepositoryPathMapping> result = new ArrayList<RepositoryPathMapping>( count );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            String groupId = random.nextInt( 4 ) == 0 ? "public" : "*";
+
+            String regexp;
+
+            switch ( random.nextInt( 10 ) )
+            {
+                case 0:
+                    regexp = ".*/com/company" + i + "/.*";
+                    break;
+
+                case 1:
+                    regexp = "/org/project" + i + "/(api|impl)/.*";
+                    break;
+
+                default:
+                    regexp = "/com/company" + i + "/.*";
+            }
+
+            result.add( mapping( "route" + i, groupId, regexp ) );
+        }
+
+        return result;
+    }
+
+    protected static List<String> createPaths( Random random, int count )
+    {
+        ArrayList<String> result = new ArrayList<String>( count );
+
+        for ( int i = 0; i < count; i++ )
+        {
+            int n = random.nextInt( 400 );
+
+            switch ( random.nextInt( 3 ) )
+            {
+                case 0:
+                    result.add( "/com/company" + n + "/artifact/1.0/artifact-1.0.jar" );
+                    break;
+
+                case 1:
+                    result.add( "/org/project" + n + "/api/1.0/api-1.0.pom" );
+                    break;
+
+                default:
+                    result.add( "/org/apache/maven/maven-core/" + n + "/maven-core-" + n + ".jar" );
+            }
+        }
+
+        return result;
+    }
+}
@@ -18,6 +18,8 @@
  */
 package org.sonatype.nexus.proxy.maven.metadata;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
@@ -26,6 +28,7 @@ import java.util.Arrays;
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.codehaus.plexus.digest.Md5Digester;
 import org.codehaus.plexus.digest.Sha1Digester;
+import org.codehaus.plexus.util.FileUtils;
 import org.sonatype.jettytestsuite.ServletServer;
 import org.sonatype.nexus.proxy.AbstractProxyTestEnvironment;
 import org.sonatype.nexus.proxy.EnvironmentBuilder;
@@ -36,6 +39,7 @@ import org.sonatype.nexus.proxy.item.StorageFileItem;
 import org.sonatype.nexus.proxy.item.StorageItem;
 import org.sonatype.nexus.proxy.maven.metadata.operations.MetadataBuilder;
 import org.sonatype.nexus.proxy.maven.metadata.operations.ModelVersionUtility;
+import org.sonatype.nexus.util.DigesterUtils;
 
 public class GroupMetadataMergeTest
     extends AbstractProxyTestEnvironment
@@ -232,6 +236,93 @@ public class GroupMetadataMergeTest
         }
     }
 
+    public void testMergedMetadataCacheInvalidatedOnMemberChange()
+        throws Exception
+    {
+        String mdPath = "/md-merge/ga/maven-metadata.xml";
+
+        StorageFileItem item =
+            (StorageFileItem) getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath, false ) );
+
+        Metadata md = parseMetadata( item );
+
+        assertFalse( md.getVersioning().getVersions().contains( "1.5.0" ) );
+
+        // served from cache, along with checksum
+        item =
+            (StorageFileItem) getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath, false ) );
+
+        StorageItem sha1Item =
+            getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath + ".sha1", false ) );
+
+        assertEquals( DigesterUtils.getSha1Digest( item.getInputStream() ), contentAsString( sha1Item ).trim() );
+
+        // deploy new version to a member, the merged metadata should reflect it
+        md.getVersioning().addVersion( "1.5.0" );
+        md.getVersioning().setRelease( "1.5.0" );
+        md.getVersioning().setLastUpdated( "20110101000000" );
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        MetadataBuilder.write( md, bos );
+
+        getRepositoryRegistry().getRepository( "inhouse" ).storeItem( new ResourceStoreRequest( mdPath ),
+            new ByteArrayInputStream( bos.toByteArray() ), null );
+
+        item =
+            (StorageFileItem) getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath, false ) );
+
+        md = parseMetadata( item );
+
+        assertTrue( md.getVersioning().getVersions().contains( "1.5.0" ) );
+        assertEquals( "1.5.0", md.getVersioning().getRelease() );
+
+        sha1Item = getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath + ".sha1", false ) );
+
+        assertEquals( DigesterUtils.getSha1Digest( item.getInputStream() ), contentAsString( sha1Item ).trim() );
+    }
+
+    public void testMergedMetadataChecksumValidatedAgainstMembers()
+        throws Exception
+    {
+        String mdPath = "/md-merge/ga/maven-metadata.xml";
+
+        StorageFileItem item =
+            (StorageFileItem) getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath, false ) );
+
+        Metadata md = parseMetadata( item );
+
+        md.getVersioning().addVersion( "1.5.0" );
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        MetadataBuilder.write( md, bos );
+
+        getRepositoryRegistry().getRepository( "inhouse" ).storeItem( new ResourceStoreRequest( mdPath ),
+            new ByteArrayInputStream( bos.toByteArray() ), null );
+
+        // merged and cached with the member
+        getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath, false ) );
+
+        // change the member behind our back, no event is fired
+        md.getVersioning().addVersion( "1.6.0" );
+
+        bos = new ByteArrayOutputStream();
+        MetadataBuilder.write( md, bos );
+
+        FileUtils.fileWrite( getFile( getRepositoryRegistry().getRepository( "inhouse" ), mdPath ).getAbsolutePath(),
+            "UTF-8", bos.toString( "UTF-8" ) );
+
+        // checksum asked first, it must match the metadata served after it
+        StorageItem sha1Item =
+            getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath + ".sha1", false ) );
+
+        item =
+            (StorageFileItem) getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test" + mdPath, false ) );
+
+        assertTrue( parseMetadata( item ).getVersioning().getVersions().contains( "1.6.0" ) );
+
+        assertEquals( DigesterUtils.getSha1Digest( item.getInputStream() ), contentAsString( sha1Item ).trim() );
+    }
+
     public void testConflictMerge()
         throws Exception
     {
@@ -145,6 +145,13 @@ public class DefaultRepositoryRegistryTest
 
         assertEquals( 3, group.getMemberRepositories().size() );
 
+        // check the membership index
+        assertEquals( 3, group.getTransitiveMemberRepositories().size() );
+        assertEquals( 1, repositoryRegistry.getGroupsOfRepository( "A" ).size() );
+        assertEquals( "ALL", repositoryRegistry.getGroupsOfRepository( "A" ).get( 0 ) );
+        assertEquals( "ALL", repositoryRegistry.getGroupsOfRepository( repoB ).get( 0 ).getId() );
+        assertEquals( 0, repositoryRegistry.getGroupsOfRepository( "ALL" ).size() );
+
         // and remove them all
         List<? extends Repository> repositories = repositoryRegistry.getRepositoriesWithFacet( HostedRepository.class );
 
@@ -173,5 +180,8 @@ public class DefaultRepositoryRegistryTest
         group = repositoryRegistry.getRepositoryWithFacet( "ALL", GroupRepository.class );
 
         assertEquals( 0, group.getMemberRepositories().size() );
+
+        assertEquals( 0, group.getTransitiveMemberRepositories().size() );
+        assertEquals( 0, repositoryRegistry.getGroupsOfRepository( "A" ).size() );
     }
 }
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import org.codehaus.plexus.PlexusTestCase;
+
+public class DefaultRepositoryStatusCheckSchedulerTest
+    extends PlexusTestCase
+{
+    protected RepositoryStatusCheckScheduler scheduler;
+
+    protected ProxyRepository proxy;
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        scheduler = lookup( RepositoryStatusCheckScheduler.class );
+
+        proxy = createNiceMock( ProxyRepository.class );
+
+        expect( proxy.getId() ).andReturn( "proxy" ).anyTimes();
+
+        expect( proxy.getProxyMode() ).andReturn( ProxyMode.ALLOW ).anyTimes();
+
+        expect( proxy.getLocalStatus() ).andReturn( LocalStatus.IN_SERVICE ).anyTimes();
+
+        expect( proxy.getRepositoryStatusCheckMode() ).andReturn( RepositoryStatusCheckMode.NEVER ).anyTimes();
+
+        expect( proxy.getNextRemoteStatusRetainTime() ).andReturn( 5L * 60L * 1000L ).anyTimes();
+
+        replay( proxy );
+    }
+
+    public void testScheduleAndUnschedule()
+    {
+        assertNull( scheduler.getStatistics( "proxy" ) );
+
+        final long now = System.currentTimeMillis();
+
+        scheduler.schedule( proxy );
+
+        RepositoryStatusCheckStatistics statistics = scheduler.getStatistics( "proxy" );
+
+        assertNotNull( statistics );
+        assertEquals( "proxy", statistics.getRepositoryId() );
+        assertTrue( statistics.getNextCheckTime() >= now );
+        assertEquals( 0, statistics.getChecks() );
+
+        scheduler.unschedule( proxy );
+
+        assertNull( scheduler.getStatistics( "proxy" ) );
+    }
+
+    public void testRescheduleFollowsRetainTime()
+    {
+        final long now = System.currentTimeMillis();
+
+        scheduler.schedule( proxy );
+
+        scheduler.reschedule( proxy );
+
+        // retain time of 5 minutes, plus jitter
+        RepositoryStatusCheckStatistics statistics = scheduler.getStatistics( "proxy" );
+
+        assertTrue( statistics.getNextCheckTime() >= now + 5L * 60L * 1000L );
+        assertTrue( statistics.getNextCheckTime() <= now + 6L * 60L * 1000L );
+    }
+
+    public void testStatistics()
+    {
+        scheduler.schedule( proxy );
+
+        scheduler.statusChecked( proxy, 100, true );
+
+        scheduler.statusChecked( proxy, 200, true );
+
+        RepositoryStatusCheckStatistics statistics = scheduler.getStatistics( "proxy" );
+
+        assertEquals( 2, statistics.getChecks() );
+        assertEquals( 2, statistics.getFailures() );
+        assertEquals( 2, statistics.getConsecutiveFailures() );
+        assertEquals( 200, statistics.getLastLatency() );
+
+        scheduler.statusChecked( proxy, 50, false );
+
+        statistics = scheduler.getStatistics( "proxy" );
+
+        assertEquals( 3, statistics.getChecks() );
+        assertEquals( 2, statistics.getFailures() );
+        assertEquals( 0, statistics.getConsecutiveFailures() );
+        assertEquals( 50, statistics.getLastLatency() );
+        assertTrue( statistics.getLastCheckTime() > 0 );
+    }
+}
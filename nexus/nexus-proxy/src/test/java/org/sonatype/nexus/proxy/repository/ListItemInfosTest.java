@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.repository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sonatype.jettytestsuite.ServletServer;
+import org.sonatype.nexus.proxy.AbstractProxyTestEnvironment;
+import org.sonatype.nexus.proxy.EnvironmentBuilder;
+import org.sonatype.nexus.proxy.ItemNotFoundException;
+import org.sonatype.nexus.proxy.M2TestsuiteEnvironmentBuilder;
+import org.sonatype.nexus.proxy.ResourceStoreRequest;
+import org.sonatype.nexus.proxy.item.StorageCollectionItem;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StorageItemInfo;
+
+public class ListItemInfosTest
+    extends AbstractProxyTestEnvironment
+{
+    private M2TestsuiteEnvironmentBuilder jettyTestsuiteEnvironmentBuilder;
+
+    @Override
+    protected EnvironmentBuilder getEnvironmentBuilder()
+        throws Exception
+    {
+        ServletServer ss = (ServletServer) lookup( ServletServer.ROLE );
+        this.jettyTestsuiteEnvironmentBuilder = new M2TestsuiteEnvironmentBuilder( ss );
+        return jettyTestsuiteEnvironmentBuilder;
+    }
+
+    @Override
+    public void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        // fetch some content to have something to list
+        getRootRouter().retrieveItem(
+            new ResourceStoreRequest( "/groups/test/activemq/activemq-core/1.2/activemq-core-1.2.jar", false ) );
+        getRootRouter().retrieveItem(
+            new ResourceStoreRequest( "/groups/test/xstream/xstream/1.2.2/xstream-1.2.2.pom", false ) );
+        getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test/rome/rome/0.9/rome-0.9.pom", false ) );
+        getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test/repo3.txt", false ) );
+    }
+
+    public void testGroupListingSameAsItems()
+        throws Exception
+    {
+        assertSameListing( getRepositoryRegistry().getRepository( "test" ), "/" );
+        assertSameListing( getRepositoryRegistry().getRepository( "test" ), "/activemq/activemq-core/1.2" );
+    }
+
+    public void testRepositoryListingSameAsItems()
+        throws Exception
+    {
+        assertSameListing( getRepositoryRegistry().getRepository( "repo1" ), "/" );
+    }
+
+    public void testFileIsNotListed()
+        throws Exception
+    {
+        try
+        {
+            getRepositoryRegistry().getRepository( "test" ).listItemInfos( false,
+                new ResourceStoreRequest( "/activemq/activemq-core/1.2/activemq-core-1.2.jar", true ) );
+
+            fail( "Files are not listable" );
+        }
+        catch ( ItemNotFoundException e )
+        {
+            // good
+        }
+    }
+
+    protected void assertSameListing( Repository repository, String path )
+        throws Exception
+    {
+        Collection<StorageItem> items = repository.list( false, new ResourceStoreRequest( path, true ) );
+
+        Collection<StorageItemInfo> infos = repository.listItemInfos( false, new ResourceStoreRequest( path, true ) );
+
+        Map<String, StorageItemInfo> infosByName = new HashMap<String, StorageItemInfo>();
+
+        for ( StorageItemInfo info : infos )
+        {
+            assertNull( "Names should be unique: " + info.getName(), infosByName.put( info.getName(), info ) );
+        }
+
+        assertEquals( items.size(), infos.size() );
+
+        for ( StorageItem item : items )
+        {
+            StorageItemInfo info = infosByName.get( item.getName() );
+
+            assertNotNull( "Missing " + item.getPath(), info );
+
+            assertEquals( item instanceof StorageCollectionItem, info.isCollection() );
+
+            if ( item instanceof StorageFileItem )
+            {
+                assertEquals( ( (StorageFileItem) item ).getLength(), info.getLength() );
+            }
+        }
+    }
+}
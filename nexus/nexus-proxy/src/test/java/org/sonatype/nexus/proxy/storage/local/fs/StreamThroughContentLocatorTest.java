@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.storage.local.fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.sonatype.nexus.proxy.item.PreparedContentLocator;
+import org.sonatype.nexus.util.DigesterUtils;
+
+public class StreamThroughContentLocatorTest
+    extends TestCase
+{
+    private File dir;
+
+    private PipedOutputStream remote;
+
+    private StreamThroughContentLocator content;
+
+    private Thread transfer;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        dir = new File( "target/stream-through" );
+
+        FileUtils.deleteDirectory( dir );
+
+        dir.mkdirs();
+
+        remote = new PipedOutputStream();
+
+        content =
+            new StreamThroughContentLocator( new File( dir, "item.jar.nx-upload" ), new PreparedContentLocator(
+                new PipedInputStream( remote ), "application/java-archive" ), 16 );
+
+        transfer = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    content.transfer();
+                }
+                catch ( IOException e )
+                {
+                    // checked by followers
+                }
+            }
+        } );
+
+        transfer.start();
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        IOUtil.close( remote );
+
+        transfer.join();
+
+        FileUtils.deleteDirectory( dir );
+
+        super.tearDown();
+    }
+
+    public void testFollowerGetsContentWhileTransferred()
+        throws Exception
+    {
+        InputStream follower = content.getContent();
+
+        remote.write( "Hello ".getBytes( "UTF-8" ) );
+        remote.flush();
+
+        byte[] buf = new byte[6];
+        assertEquals( 6, readFully( follower, buf ) );
+        assertEquals( "Hello ", new String( buf, "UTF-8" ) );
+
+        // late joiner gets all from the start
+        InputStream lateJoiner = content.getContent();
+
+        remote.write( "World".getBytes( "UTF-8" ) );
+        remote.close();
+
+        content.awaitTransfer();
+        content.accepted();
+
+        assertEquals( "World", IOUtil.toString( follower, "UTF-8" ) );
+        assertEquals( "Hello World", IOUtil.toString( lateJoiner, "UTF-8" ) );
+
+        assertEquals( 11, content.getBytesWritten() );
+        assertEquals( DigesterUtils.getSha1Digest( "Hello World" ), content.getSha1Digest() );
+        assertEquals( DigesterUtils.getMd5Digest( "Hello World" ), content.getMd5Digest() );
+
+        follower.close();
+        lateJoiner.close();
+    }
+
+    public void testFollowerGetsErrorWhenContentRejected()
+        throws Exception
+    {
+        InputStream follower = content.getContent();
+
+        remote.write( "Broken".getBytes( "UTF-8" ) );
+        remote.close();
+
+        content.awaitTransfer();
+        content.fail( new IOException( "Invalid content" ) );
+
+        try
+        {
+            IOUtil.toString( follower, "UTF-8" );
+
+            fail( "Rejected content must not end cleanly" );
+        }
+        catch ( IOException e )
+        {
+            assertEquals( "Invalid content", e.getMessage() );
+        }
+        finally
+        {
+            follower.close();
+        }
+
+        try
+        {
+            content.getContent();
+
+            fail( "Rejected content must not be served" );
+        }
+        catch ( IOException e )
+        {
+            // good
+        }
+    }
+
+    public void testCommittedContentServedFromTarget()
+        throws Exception
+    {
+        remote.write( "Committed".getBytes( "UTF-8" ) );
+        remote.close();
+
+        content.awaitTransfer();
+        content.accepted();
+
+        File target = new File( dir, "item.jar" );
+        assertTrue( content.getFile().renameTo( target ) );
+        content.committed( target );
+
+        InputStream is = content.getContent();
+        try
+        {
+            assertEquals( "Committed", IOUtil.toString( is, "UTF-8" ) );
+        }
+        finally
+        {
+            is.close();
+        }
+
+        assertTrue( content.isCommitted() );
+    }
+
+    // ==
+
+    protected int readFully( InputStream is, byte[] buf )
+        throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        while ( bos.size() < buf.length )
+        {
+            int read = is.read( buf, 0, buf.length - bos.size() );
+
+            if ( read == -1 )
+            {
+                break;
+            }
+
+            bos.write( buf, 0, read );
+        }
+
+        System.arraycopy( bos.toByteArray(), 0, buf, 0, bos.size() );
+
+        return bos.size();
+    }
+}
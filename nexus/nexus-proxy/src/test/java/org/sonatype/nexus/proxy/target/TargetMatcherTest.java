@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.proxy.target;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.sonatype.nexus.proxy.maven.maven1.Maven1ContentClass;
+import org.sonatype.nexus.proxy.maven.maven2.Maven2ContentClass;
+import org.sonatype.nexus.proxy.registry.ContentClass;
+
+public class TargetMatcherTest
+    extends TestCase
+{
+    public void testLiteralPrefix()
+    {
+        assertEquals( "/org/apache/maven/", TargetMatcher.getLiteralPrefix( "/org/apache/maven/((?!sources\\.).)*" ) );
+        assertEquals( "/org.apache.maven", TargetMatcher.getLiteralPrefix( "/org\\.apache\\.maven.*" ) );
+        assertEquals( "/org/sonatyp", TargetMatcher.getLiteralPrefix( "/org/sonatype?/.*" ) );
+        assertEquals( "", TargetMatcher.getLiteralPrefix( ".*" ) );
+        assertEquals( "", TargetMatcher.getLiteralPrefix( "/org/.*|/com/.*" ) );
+        assertEquals( "", TargetMatcher.getLiteralPrefix( "(?i)/org/.*" ) );
+        assertEquals( "/org/", TargetMatcher.getLiteralPrefix( "/org/\\d+/.*" ) );
+    }
+
+    public void testSameResultAsTargets()
+    {
+        ContentClass maven1 = new Maven1ContentClass();
+
+        ContentClass maven2 = new Maven2ContentClass();
+
+        List<Target> targets = new ArrayList<Target>();
+
+        targets.add( new Target( "all", "All", maven2, Arrays.asList( new String[] { ".*" } ) ) );
+        targets.add( new Target( "maven2-public", "Maven2 (public)", maven2,
+            Arrays.asList( new String[] { "/org/apache/maven/((?!sources\\.).)*" } ) ) );
+        targets.add( new Target( "maven2-with-sources", "Maven2 sources", maven2,
+            Arrays.asList( new String[] { "/org/apache/maven/.*" } ) ) );
+        targets.add( new Target( "sonatype", "Sonatype", maven2, Arrays.asList( new String[] { "/org/sonatype/.*",
+            "/com/sonatype/.*" } ) ) );
+        targets.add( new Target( "alternation", "Alternation", maven2,
+            Arrays.asList( new String[] { "/org/codehaus/.*|/org/apache/.*" } ) ) );
+        targets.add( new Target( "maven1", "Maven1", maven1, Arrays.asList( new String[] { "/org\\.apache\\.maven.*" } ) ) );
+
+        TargetMatcher matcher = new TargetMatcher( maven2, targets );
+
+        String[] paths =
+            new String[] { "/", "/org/apache/maven/maven-core/2.0/maven-core-2.0.jar",
+                "/org/apache/maven/maven-core/2.0/maven-core-2.0-sources.jar", "/org/sonatype/nexus/nexus.pom",
+                "/com/sonatype/nexus/nexus.pom", "/org/codehaus/plexus/plexus.pom", "/org.apache.maven/jars/core.jar",
+                "/org" };
+
+        for ( String path : paths )
+        {
+            Set<Target> expected = new HashSet<Target>();
+
+            for ( Target target : targets )
+            {
+                if ( target.isPathContained( maven2, path ) )
+                {
+                    expected.add( target );
+                }
+            }
+
+            assertEquals( path, expected, new HashSet<Target>( matcher.getTargetsForPath( path ) ) );
+        }
+    }
+}
@@ -18,6 +18,11 @@
  */
 package org.sonatype.nexus.proxy.walker;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.sonatype.jettytestsuite.ServletServer;
 import org.sonatype.nexus.proxy.AbstractProxyTestEnvironment;
 import org.sonatype.nexus.proxy.EnvironmentBuilder;
@@ -95,6 +100,77 @@ public class WalkerTest
         assertEquals( 0, wp.links );
     }
 
+    public void testParallelWalker()
+        throws Exception
+    {
+        // fetch some content to have on walk on something
+        getRootRouter().retrieveItem(
+            new ResourceStoreRequest( "/groups/test/activemq/activemq-core/1.2/activemq-core-1.2.jar", false ) );
+        getRootRouter().retrieveItem(
+            new ResourceStoreRequest( "/groups/test/xstream/xstream/1.2.2/xstream-1.2.2.pom", false ) );
+        getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test/rome/rome/0.9/rome-0.9.pom", false ) );
+        getRootRouter().retrieveItem( new ResourceStoreRequest( "/groups/test/repo3.txt", false ) );
+
+        ThreadSafeTestWalkerProcessor wp = new ThreadSafeTestWalkerProcessor();
+
+        // this is a group
+        WalkerContext wc =
+            new DefaultWalkerContext( getRepositoryRegistry().getRepository( "test" ), new ResourceStoreRequest(
+                RepositoryItemUid.PATH_ROOT, true ) );
+
+        wc.getProcessors().add( wp );
+
+        walker.walk( wc );
+
+        assertFalse( "Should not be stopped!", wc.isStopped() );
+
+        assertNull( "Should be no exception!", wc.getStopCause() );
+
+        // same results as sequential walk
+        assertEquals( 10, wp.collEnters.get() );
+        assertEquals( 10, wp.collExits.get() );
+        assertEquals( 10, wp.colls.get() );
+        assertEquals( 4, wp.files.get() );
+        assertEquals( 10, wc.getContext().get( DefaultWalker.WALKER_WALKED_COLLECTION_COUNT ) );
+        assertTrue( "Collections should be exited after their members: " + wp.misorderedExits,
+            wp.misorderedExits.isEmpty() );
+    }
+
+    public void testParallelWalkerStop()
+        throws Exception
+    {
+        getRootRouter().retrieveItem(
+            new ResourceStoreRequest( "/groups/test/activemq/activemq-core/1.2/activemq-core-1.2.jar", false ) );
+        getRootRouter().retrieveItem(
+            new ResourceStoreRequest( "/groups/test/xstream/xstream/1.2.2/xstream-1.2.2.pom", false ) );
+
+        ThreadSafeTestWalkerProcessor wp = new ThreadSafeTestWalkerProcessor()
+        {
+            @Override
+            public void processItem( WalkerContext context, StorageItem item )
+            {
+                super.processItem( context, item );
+
+                if ( StorageFileItem.class.isAssignableFrom( item.getClass() ) )
+                {
+                    context.stop( null );
+                }
+            }
+        };
+
+        WalkerContext wc =
+            new DefaultWalkerContext( getRepositoryRegistry().getRepository( "test" ), new ResourceStoreRequest(
+                RepositoryItemUid.PATH_ROOT, true ) );
+
+        wc.getProcessors().add( wp );
+
+        // stopped programatically, no exception
+        walker.walk( wc );
+
+        assertTrue( "Should be stopped!", wc.isStopped() );
+        assertNull( wc.getStopCause() );
+    }
+
     private class TestWalkerProcessor
         extends AbstractWalkerProcessor
     {
@@ -145,4 +221,51 @@ public class WalkerTest
         }
     }
 
+    private class ThreadSafeTestWalkerProcessor
+        extends AbstractWalkerProcessor
+        implements ThreadSafeWalkerProcessor
+    {
+        public final AtomicInteger collEnters = new AtomicInteger();
+
+        public final AtomicInteger collExits = new AtomicInteger();
+
+        public final AtomicInteger colls = new AtomicInteger();
+
+        public final AtomicInteger files = new AtomicInteger();
+
+        public final Set<String> exited = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+        public final Set<String> misorderedExits =
+            Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+        public void onCollectionEnter( WalkerContext context, StorageCollectionItem coll )
+        {
+            collEnters.incrementAndGet();
+        }
+
+        @Override
+        public void processItem( WalkerContext context, StorageItem item )
+        {
+            if ( StorageCollectionItem.class.isAssignableFrom( item.getClass() ) )
+            {
+                colls.incrementAndGet();
+            }
+            else if ( StorageFileItem.class.isAssignableFrom( item.getClass() ) )
+            {
+                files.incrementAndGet();
+            }
+
+            if ( exited.contains( item.getParentPath() ) )
+            {
+                misorderedExits.add( item.getParentPath() );
+            }
+        }
+
+        public void onCollectionExit( WalkerContext context, StorageCollectionItem coll )
+        {
+            collExits.incrementAndGet();
+
+            exited.add( coll.getPath() );
+        }
+    }
 }
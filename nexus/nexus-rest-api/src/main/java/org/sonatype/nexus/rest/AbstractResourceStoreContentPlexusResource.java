@@ -25,6 +25,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -37,6 +38,7 @@ import org.codehaus.plexus.util.StringUtils;
 import org.restlet.Context;
 import org.restlet.data.ChallengeRequest;
 import org.restlet.data.ChallengeScheme;
+import org.restlet.data.Form;
 import org.restlet.data.MediaType;
 import org.restlet.data.Parameter;
 import org.restlet.data.Reference;
@@ -62,10 +64,13 @@ import org.sonatype.nexus.proxy.attributes.inspectors.DigestCalculatingInspector
 import org.sonatype.nexus.proxy.item.StorageCollectionItem;
 import org.sonatype.nexus.proxy.item.StorageCompositeItem;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
 import org.sonatype.nexus.proxy.item.StorageItem;
+import org.sonatype.nexus.proxy.item.StorageItemInfo;
 import org.sonatype.nexus.proxy.item.StorageLinkItem;
 import org.sonatype.nexus.proxy.item.uid.IsHiddenAttribute;
 import org.sonatype.nexus.proxy.item.uid.IsRemotelyAccessibleAttribute;
+import org.sonatype.nexus.proxy.repository.Repository;
 import org.sonatype.nexus.proxy.storage.UnsupportedStorageOperationException;
 import org.sonatype.nexus.rest.model.ContentListDescribeRequestResource;
 import org.sonatype.nexus.rest.model.ContentListDescribeResource;
@@ -369,7 +374,7 @@ public abstract class AbstractResourceStoreContentPlexusResource
                 // this is a conditional GET
                 if ( file.getModified() > req.getConditions().getModifiedSince().getTime() )
                 {
-                    result = new StorageFileItemRepresentation( file );
+                    result = renderFileItem( req, res, file );
                 }
                 else
                 {
@@ -386,7 +391,7 @@ public abstract class AbstractResourceStoreContentPlexusResource
                 // this is a conditional get using ETag
                 if ( !file.getAttributes().get( DigestCalculatingInspector.DIGEST_SHA1_KEY ).equals( tag.getName() ) )
                 {
-                    result = new StorageFileItemRepresentation( file );
+                    result = renderFileItem( req, res, file );
                 }
                 else
                 {
@@ -395,7 +400,7 @@ public abstract class AbstractResourceStoreContentPlexusResource
             }
             else
             {
-                result = new StorageFileItemRepresentation( file );
+                result = renderFileItem( req, res, file );
             }
         }
         else if ( item instanceof StorageLinkItem )
@@ -428,60 +433,225 @@ public abstract class AbstractResourceStoreContentPlexusResource
             // we have a collection
             StorageCollectionItem coll = (StorageCollectionItem) item;
 
-            Collection<StorageItem> children = coll.list();
+            ContentListResourceResponse response;
 
-            ContentListResourceResponse response = new ContentListResourceResponse();
-
-            ContentListResource resource;
+            if ( coll.isVirtual() )
+            {
+                // router levels, members are virtual collections
+                response = renderCollectionItems( req, coll );
+            }
+            else
+            {
+                response = renderCollectionItemInfos( req, coll );
+            }
 
-            List<String> uniqueNames = new ArrayList<String>( children.size() );
+            if ( MediaType.TEXT_HTML.equals( variant.getMediaType() ) )
+            {
+                result = serialize( context, req, variant, response );
 
-            for ( StorageItem child : children )
+                result.setModificationDate( new Date( coll.getModified() ) );
+            }
+            else
             {
-                if ( child.isVirtual()
-                    || !child.getRepositoryItemUid().getBooleanAttributeValue( IsHiddenAttribute.class ) )
-                {
-                    if ( !uniqueNames.contains( child.getName() ) )
-                    {
-                        resource = new ContentListResource();
+                return response;
+            }
+        }
 
-                        resource.setText( child.getName() );
+        return result;
+    }
 
-                        resource.setLeaf( !StorageCollectionItem.class.isAssignableFrom( child.getClass() ) );
+    /**
+     * Creates the representation of file item, honoring the "Range" header of request: if it asks for satisfiable byte
+     * ranges of content, only those are sent with "206 Partial Content", if none of the asked ranges is satisfiable,
+     * "416 Requested Range Not Satisfiable" is responded. Ranges are served (and advertised with "Accept-Ranges"
+     * header) only for static content with known length.
+     */
+    protected Representation renderFileItem( Request req, Response res, StorageFileItem file )
+    {
+        String rangeHeader = getRequestHeader( req, "Range" );
 
-                        String uri = getResourceUri( req, resource, child );
-                        resource.setResourceURI( uri );
+        if ( file.getLength() < 0 || file.isContentGenerated() || !file.isReusableStream() )
+        {
+            return new StorageFileItemRepresentation( file );
+        }
 
-                        resource.setRelativePath( child.getPath() + ( resource.isLeaf() ? "" : "/" ) );
+        addResponseHeader( res, "Accept-Ranges", "bytes" );
 
-                        resource.setLastModified( new Date( child.getModified() ) );
+        if ( rangeHeader == null )
+        {
+            return new StorageFileItemRepresentation( file );
+        }
 
-                        resource.setSizeOnDisk( StorageFileItem.class.isAssignableFrom( child.getClass() ) ? ( (StorageFileItem) child ).getLength()
-                            : -1 );
+        // If-Range: serve ranges only if the client has the same entity (we compare only ETags)
+        String ifRange = getRequestHeader( req, "If-Range" );
 
-                        response.addData( resource );
+        if ( ifRange != null )
+        {
+            String sha1 = file.getAttributes().get( DigestCalculatingInspector.DIGEST_SHA1_KEY );
 
-                        uniqueNames.add( child.getName() );
-                    }
-                }
+            if ( sha1 == null || !ifRange.trim().equals( "\"" + sha1 + "\"" ) )
+            {
+                return new StorageFileItemRepresentation( file );
             }
+        }
 
-            if ( MediaType.TEXT_HTML.equals( variant.getMediaType() ) )
+        List<ByteRange> ranges = ByteRange.parse( rangeHeader, file.getLength() );
+
+        if ( ranges == null )
+        {
+            // not a valid byte range request, just ignore it
+            return new StorageFileItemRepresentation( file );
+        }
+
+        if ( ranges.isEmpty() )
+        {
+            addResponseHeader( res, "Content-Range", "bytes */" + file.getLength() );
+
+            res.setStatus( Status.CLIENT_ERROR_REQUESTED_RANGE_NOT_SATISFIABLE,
+                "The requested range is not satisfiable!" );
+
+            return null;
+        }
+
+        if ( ranges.size() == 1 )
+        {
+            addResponseHeader( res, "Content-Range", ranges.get( 0 ).getContentRange( file.getLength() ) );
+        }
+
+        res.setStatus( Status.SUCCESS_PARTIAL_CONTENT );
+
+        return new StorageFileItemRangeRepresentation( file, ranges );
+    }
+
+    protected String getRequestHeader( Request req, String name )
+    {
+        Form headers = (Form) req.getAttributes().get( "org.restlet.http.headers" );
+
+        if ( headers == null )
+        {
+            return null;
+        }
+
+        return headers.getFirstValue( name, true );
+    }
+
+    protected void addResponseHeader( Response res, String name, String value )
+    {
+        // restlet refuses to add the standard headers from attributes, so we go directly to the call if we can
+        if ( res.getRequest() instanceof HttpRequest )
+        {
+            ( (HttpRequest) res.getRequest() ).getHttpCall().getResponseHeaders().add( name, value );
+        }
+        else
+        {
+            Form headers = (Form) res.getAttributes().get( "org.restlet.http.headers" );
+
+            if ( headers == null )
             {
-                result = serialize( context, req, variant, response );
+                headers = new Form();
 
-                result.setModificationDate( new Date( coll.getModified() ) );
+                res.getAttributes().put( "org.restlet.http.headers", headers );
             }
-            else
+
+            headers.add( name, value );
+        }
+    }
+
+    /**
+     * Renders the listing of a collection by retrieving it's members.
+     */
+    protected ContentListResourceResponse renderCollectionItems( Request req, StorageCollectionItem coll )
+        throws AccessDeniedException, NoSuchResourceStoreException, IllegalOperationException, ItemNotFoundException,
+        StorageException
+    {
+        Collection<StorageItem> children = coll.list();
+
+        ContentListResourceResponse response = new ContentListResourceResponse();
+
+        HashSet<String> uniqueNames = new HashSet<String>( children.size() );
+
+        for ( StorageItem child : children )
+        {
+            if ( child.isVirtual()
+                || !child.getRepositoryItemUid().getBooleanAttributeValue( IsHiddenAttribute.class ) )
             {
-                return response;
+                if ( uniqueNames.add( child.getName() ) )
+                {
+                    response.addData( createContentListResource( req, coll, child.getName(),
+                        !StorageCollectionItem.class.isAssignableFrom( child.getClass() ), child.getModified(),
+                        StorageFileItem.class.isAssignableFrom( child.getClass() )
+                            ? ( (StorageFileItem) child ).getLength() : -1 ) );
+                }
             }
         }
 
-        return result;
+        return response;
+    }
+
+    /**
+     * Renders the listing of a repository collection from the lightweight member descriptions of local storage, no
+     * member items are retrieved.
+     */
+    protected ContentListResourceResponse renderCollectionItemInfos( Request req, StorageCollectionItem coll )
+        throws IllegalOperationException, ItemNotFoundException, StorageException
+    {
+        Repository repository = coll.getRepositoryItemUid().getRepository();
+
+        Collection<StorageItemInfo> children = repository.listItemInfos( false, new ResourceStoreRequest( coll ) );
+
+        ContentListResourceResponse response = new ContentListResourceResponse();
+
+        HashSet<String> uniqueNames = new HashSet<String>( children.size() );
+
+        String repositoryPath = coll.getRepositoryItemUid().getPath();
+
+        if ( !repositoryPath.endsWith( RepositoryItemUid.PATH_SEPARATOR ) )
+        {
+            repositoryPath = repositoryPath + RepositoryItemUid.PATH_SEPARATOR;
+        }
+
+        for ( StorageItemInfo child : children )
+        {
+            if ( !repository.createUid( repositoryPath + child.getName() ).getBooleanAttributeValue(
+                IsHiddenAttribute.class ) )
+            {
+                if ( uniqueNames.add( child.getName() ) )
+                {
+                    response.addData( createContentListResource( req, coll, child.getName(), !child.isCollection(),
+                        child.getModified(), child.getLength() ) );
+                }
+            }
+        }
+
+        return response;
+    }
+
+    private ContentListResource createContentListResource( Request req, StorageCollectionItem coll, String name,
+                                                           boolean leaf, long modified, long sizeOnDisk )
+    {
+        ContentListResource resource = new ContentListResource();
+
+        resource.setText( name );
+
+        resource.setLeaf( leaf );
+
+        resource.setResourceURI( getResourceUri( req, resource, name ) );
+
+        // child paths are on the "level" of the collection (as corrected by collection)
+        String path =
+            coll.getPath().endsWith( RepositoryItemUid.PATH_SEPARATOR ) ? coll.getPath() + name : coll.getPath()
+                + RepositoryItemUid.PATH_SEPARATOR + name;
+
+        resource.setRelativePath( path + ( leaf ? "" : "/" ) );
+
+        resource.setLastModified( new Date( modified ) );
+
+        resource.setSizeOnDisk( sizeOnDisk );
+
+        return resource;
     }
 
-    private String getResourceUri( Request req, ContentListResource resource, StorageItem child )
+    private String getResourceUri( Request req, ContentListResource resource, String name )
     {
         Reference root = getContextRoot( req );
         Reference requestRoot = req.getRootRef();
@@ -498,7 +668,7 @@ public abstract class AbstractResourceStoreContentPlexusResource
         {
             uri += "/";
         }
-        uri += child.getName();
+        uri += name;
         if ( !resource.isLeaf() )
         {
             uri += "/";
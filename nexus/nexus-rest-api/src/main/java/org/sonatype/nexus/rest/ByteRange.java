@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A satisfiable byte range of a content with known length, as requested by the HTTP "Range" header.
+ * 
+ * @author cstamas
+ */
+public class ByteRange
+{
+    /** The maximum count of ranges we serve, requests asking for more get full content. */
+    public static final int MAX_RANGES = 32;
+
+    private final long first;
+
+    private final long last;
+
+    public ByteRange( final long first, final long last )
+    {
+        this.first = first;
+
+        this.last = last;
+    }
+
+    /**
+     * The offset of first byte of the range.
+     */
+    public long getFirst()
+    {
+        return first;
+    }
+
+    /**
+     * The offset of last byte of the range (inclusive).
+     */
+    public long getLast()
+    {
+        return last;
+    }
+
+    public long getLength()
+    {
+        return last - first + 1;
+    }
+
+    /**
+     * Returns the value of "Content-Range" header describing this range.
+     */
+    public String getContentRange( final long contentLength )
+    {
+        return "bytes " + first + "-" + last + "/" + contentLength;
+    }
+
+    @Override
+    public String toString()
+    {
+        return first + "-" + last;
+    }
+
+    // ==
+
+    /**
+     * Parses the value of HTTP "Range" header, for content having the given length. Returns null if the header is not
+     * a (valid) byte range request, in which case it should be ignored, and full content served. Returns an empty list
+     * if none of the requested ranges is satisfiable. Otherwise returns the satisfiable ranges in the requested order.
+     * 
+     * @param header the "Range" header value
+     * @param contentLength the length of the content
+     * @return
+     */
+    public static List<ByteRange> parse( final String header, final long contentLength )
+    {
+        if ( header == null || contentLength < 0 )
+        {
+            return null;
+        }
+
+        final String value = header.trim();
+
+        if ( !value.regionMatches( true, 0, "bytes=", 0, 6 ) )
+        {
+            return null;
+        }
+
+        final String[] specs = value.substring( 6 ).split( "," );
+
+        if ( specs.length > MAX_RANGES )
+        {
+            return null;
+        }
+
+        final ArrayList<ByteRange> result = new ArrayList<ByteRange>( specs.length );
+
+        int specCount = 0;
+
+        try
+        {
+            for ( String spec : specs )
+            {
+                spec = spec.trim();
+
+                if ( spec.length() == 0 )
+                {
+                    continue;
+                }
+
+                specCount++;
+
+                final int dash = spec.indexOf( '-' );
+
+                if ( dash < 0 )
+                {
+                    return null;
+                }
+                else if ( dash == 0 )
+                {
+                    // suffix range: the last N bytes
+                    final long suffixLength = Long.parseLong( spec.substring( 1 ).trim() );
+
+                    if ( suffixLength > 0 && contentLength > 0 )
+                    {
+                        result.add( new ByteRange( Math.max( 0, contentLength - suffixLength ), contentLength - 1 ) );
+                    }
+                }
+                else
+                {
+                    final long first = Long.parseLong( spec.substring( 0, dash ).trim() );
+
+                    final String lastText = spec.substring( dash + 1 ).trim();
+
+                    final long last = lastText.length() == 0 ? contentLength - 1 : Long.parseLong( lastText );
+
+                    if ( first < 0 || last < first )
+                    {
+                        // syntactically invalid
+                        return null;
+                    }
+
+                    if ( first < contentLength )
+                    {
+                        result.add( new ByteRange( first, Math.min( last, contentLength - 1 ) ) );
+                    }
+                }
+            }
+        }
+        catch ( NumberFormatException e )
+        {
+            return null;
+        }
+
+        if ( specCount == 0 )
+        {
+            return null;
+        }
+
+        return result;
+    }
+}
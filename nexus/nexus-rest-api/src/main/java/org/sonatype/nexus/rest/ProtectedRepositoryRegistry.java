@@ -58,6 +58,11 @@ public class ProtectedRepositoryRegistry
         return this.defaultRepositoryRegistry.getGroupsOfRepository( repository );
     }
 
+    public List<Repository> getTransitiveMemberRepositories( GroupRepository group )
+    {
+        return this.defaultRepositoryRegistry.getTransitiveMemberRepositories( group );
+    }
+
     public List<Repository> getRepositories()
     {
         return this.filterRepositoriesList( this.defaultRepositoryRegistry.getRepositories() );
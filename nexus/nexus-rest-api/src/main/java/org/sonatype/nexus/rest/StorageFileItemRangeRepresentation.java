@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+
+/**
+ * Representation of some byte ranges of a file item, to be sent with "206 Partial Content" status. A single range is
+ * sent as is (the "Content-Range" header has to be added by caller), while multiple ranges are sent as
+ * "multipart/byteranges" body.
+ * 
+ * @author cstamas
+ */
+public class StorageFileItemRangeRepresentation
+    extends StorageFileItemRepresentation
+{
+    private static final String BOUNDARY = "NEXUS_BYTERANGES_BOUNDARY";
+
+    private final List<ContentSegment> segments;
+
+    public StorageFileItemRangeRepresentation( StorageFileItem file, List<ByteRange> ranges )
+    {
+        super( file );
+
+        this.segments = new ArrayList<ContentSegment>( ranges.size() + 1 );
+
+        if ( ranges.size() == 1 )
+        {
+            ByteRange range = ranges.get( 0 );
+
+            segments.add( new ContentSegment( null, range.getFirst(), range.getLength() ) );
+
+            setSize( range.getLength() );
+        }
+        else
+        {
+            long size = 0;
+
+            for ( ByteRange range : ranges )
+            {
+                byte[] preamble =
+                    getBytes( "\r\n--" + BOUNDARY + "\r\nContent-Type: " + file.getMimeType() + "\r\nContent-Range: "
+                        + range.getContentRange( file.getLength() ) + "\r\n\r\n" );
+
+                segments.add( new ContentSegment( preamble, range.getFirst(), range.getLength() ) );
+
+                size += preamble.length + range.getLength();
+            }
+
+            byte[] epilogue = getBytes( "\r\n--" + BOUNDARY + "--\r\n" );
+
+            segments.add( new ContentSegment( epilogue, 0, 0 ) );
+
+            size += epilogue.length;
+
+            Form parameters = new Form();
+
+            parameters.add( "boundary", BOUNDARY );
+
+            setMediaType( new MediaType( "multipart/byteranges", parameters ) );
+
+            setSize( size );
+        }
+    }
+
+    @Override
+    public void write( OutputStream outputStream )
+        throws IOException
+    {
+        writeSegments( outputStream, segments );
+    }
+
+    protected static byte[] getBytes( String text )
+    {
+        try
+        {
+            return text.getBytes( "ISO-8859-1" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            // ISO-8859-1 is always supported
+            throw new IllegalStateException( e );
+        }
+    }
+}
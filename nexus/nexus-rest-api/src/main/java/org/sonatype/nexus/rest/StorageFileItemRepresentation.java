@@ -18,11 +18,18 @@
  */
 package org.sonatype.nexus.rest;
 
+import java.io.EOFException;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import org.codehaus.plexus.util.IOUtil;
 import org.mortbay.jetty.EofException;
@@ -31,6 +38,7 @@ import org.restlet.data.Tag;
 import org.restlet.resource.OutputRepresentation;
 import org.sonatype.nexus.proxy.attributes.inspectors.DigestCalculatingInspector;
 import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.util.WrappingInputStream;
 
 public class StorageFileItemRepresentation
     extends OutputRepresentation
@@ -80,13 +88,53 @@ public class StorageFileItemRepresentation
     public void write( OutputStream outputStream )
         throws IOException
     {
-        InputStream is = null;
+        writeSegments( outputStream, Collections.singletonList( new ContentSegment( null, 0, -1 ) ) );
+    }
 
+    /**
+     * Writes the passed in segments of item content to the output stream. The content is always read from the content
+     * stream of item, hence the item is read locked while being written (if the content locator of item is read
+     * locking). If the stream reads a file, the segments are transferred from it's channel using
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, sparing the copy loop and the skipping over
+     * content not asked for. This is not zero-copy: the output stream given by the container is not a channel, so it is
+     * wrapped by {@link Channels#newChannel(OutputStream)}, that still copies the content through a buffer.
+     * 
+     * @param outputStream
+     * @param segments
+     * @throws IOException
+     */
+    protected void writeSegments( OutputStream outputStream, List<ContentSegment> segments )
+        throws IOException
+    {
         try
         {
-            is = getStorageFileItem().getInputStream();
+            if ( getStorageFileItem().isReusableStream() )
+            {
+                // only reusable content might be a file, others are opened when needed, as they can be read only once
+                InputStream is = getStorageFileItem().getInputStream();
 
-            IOUtil.copy( is, outputStream );
+                try
+                {
+                    FileInputStream fis = getFileInputStream( is );
+
+                    if ( fis != null )
+                    {
+                        transferSegments( outputStream, segments, fis.getChannel() );
+                    }
+                    else
+                    {
+                        copySegments( outputStream, segments, is );
+                    }
+                }
+                finally
+                {
+                    IOUtil.close( is );
+                }
+            }
+            else
+            {
+                copySegments( outputStream, segments, null );
+            }
         }
         catch ( EofException e )
         {
@@ -96,10 +144,199 @@ public class StorageFileItemRepresentation
         {
             // https://issues.sonatype.org/browse/NEXUS-217
         }
+    }
+
+    /**
+     * Returns the file stream the passed in stream reads (possibly by wrapping it), or null if it does not read a file.
+     * 
+     * @param is
+     * @return
+     */
+    protected FileInputStream getFileInputStream( InputStream is )
+    {
+        InputStream unwrapped = is;
+
+        while ( unwrapped instanceof WrappingInputStream )
+        {
+            unwrapped = ( (WrappingInputStream) unwrapped ).getWrappedInputStream();
+        }
+
+        return unwrapped instanceof FileInputStream ? (FileInputStream) unwrapped : null;
+    }
+
+    protected void transferSegments( OutputStream outputStream, List<ContentSegment> segments, FileChannel channel )
+        throws IOException
+    {
+        WritableByteChannel target =
+            outputStream instanceof WritableByteChannel ? (WritableByteChannel) outputStream
+                : Channels.newChannel( outputStream );
+
+        for ( ContentSegment segment : segments )
+        {
+            if ( segment.getPreamble() != null )
+            {
+                outputStream.write( segment.getPreamble() );
+            }
+
+            long position = segment.getOffset();
+
+            long remaining = segment.getLength() < 0 ? channel.size() - position : segment.getLength();
+
+            while ( remaining > 0 )
+            {
+                long transferred = channel.transferTo( position, remaining, target );
+
+                if ( transferred <= 0 && position >= channel.size() )
+                {
+                    throw new EOFException( "Content of " + getStorageFileItem().getRepositoryItemUid()
+                        + " ended prematurely!" );
+                }
+
+                position += transferred;
+
+                remaining -= transferred;
+            }
+        }
+
+        outputStream.flush();
+    }
+
+    /**
+     * Copies the passed in segments of item content to the output stream, using the passed in content stream (if not
+     * null, and not read yet), and opening new content streams as needed.
+     * 
+     * @param outputStream
+     * @param segments
+     * @param content
+     * @throws IOException
+     */
+    protected void copySegments( OutputStream outputStream, List<ContentSegment> segments, InputStream content )
+        throws IOException
+    {
+        InputStream is = content;
+
+        long position = 0;
+
+        try
+        {
+            byte[] buffer = new byte[8192];
+
+            for ( ContentSegment segment : segments )
+            {
+                if ( segment.getPreamble() != null )
+                {
+                    outputStream.write( segment.getPreamble() );
+                }
+
+                if ( segment.getLength() == 0 )
+                {
+                    continue;
+                }
+
+                if ( is == null || segment.getOffset() < position )
+                {
+                    // ranges are not ordered, start over
+                    IOUtil.close( is );
+
+                    is = getStorageFileItem().getInputStream();
+
+                    position = 0;
+                }
+
+                while ( position < segment.getOffset() )
+                {
+                    long skipped = is.skip( segment.getOffset() - position );
+
+                    if ( skipped <= 0 )
+                    {
+                        if ( is.read() == -1 )
+                        {
+                            throw new EOFException( "Content of " + getStorageFileItem().getRepositoryItemUid()
+                                + " ended prematurely!" );
+                        }
+
+                        skipped = 1;
+                    }
+
+                    position += skipped;
+                }
+
+                if ( segment.getLength() < 0 )
+                {
+                    IOUtil.copy( is, outputStream );
+
+                    // the stream is consumed
+                    IOUtil.close( is );
+
+                    is = null;
+                }
+                else
+                {
+                    long remaining = segment.getLength();
+
+                    while ( remaining > 0 )
+                    {
+                        int read = is.read( buffer, 0, (int) Math.min( buffer.length, remaining ) );
+
+                        if ( read == -1 )
+                        {
+                            throw new EOFException( "Content of " + getStorageFileItem().getRepositoryItemUid()
+                                + " ended prematurely!" );
+                        }
+
+                        outputStream.write( buffer, 0, read );
+
+                        position += read;
+
+                        remaining -= read;
+                    }
+                }
+            }
+
+            outputStream.flush();
+        }
         finally
         {
             IOUtil.close( is );
         }
     }
 
+    // ==
+
+    /**
+     * A segment of content to be written: optional preamble bytes, followed by length (or all if -1) bytes of content
+     * starting at offset.
+     */
+    protected static class ContentSegment
+    {
+        private final byte[] preamble;
+
+        private final long offset;
+
+        private final long length;
+
+        public ContentSegment( final byte[] preamble, final long offset, final long length )
+        {
+            this.preamble = preamble;
+
+            this.offset = offset;
+
+            this.length = length;
+        }
+
+        public byte[] getPreamble()
+        {
+            return preamble;
+        }
+
+        public long getOffset()
+        {
+            return offset;
+        }
+
+        public long getLength()
+        {
+            return length;
+        }
+    }
 }
@@ -34,8 +34,11 @@ import org.apache.shiro.authc.ExpiredCredentialsException;
 import org.apache.shiro.authc.UsernamePasswordToken;
 import org.apache.shiro.codec.Base64;
 import org.apache.shiro.session.UnknownSessionException;
+import org.apache.shiro.subject.PrincipalCollection;
 import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
 import org.apache.shiro.web.filter.authc.BasicHttpAuthenticationFilter;
+import org.apache.shiro.web.subject.WebSubject;
 import org.apache.shiro.web.util.WebUtils;
 import org.codehaus.plexus.PlexusConstants;
 import org.codehaus.plexus.PlexusContainer;
@@ -69,6 +72,8 @@ public class NexusHttpAuthenticationFilter
 
     private AuthcAuthzEvent currentAuthcEvt;
 
+    private volatile VerifiedCredentialsCache verifiedCredentialsCache;
+
     protected Log getLogger()
     {
         return logger;
@@ -114,6 +119,23 @@ public class NexusHttpAuthenticationFilter
         return (PlexusContainer) getAttribute( PlexusConstants.PLEXUS_KEY );
     }
 
+    protected VerifiedCredentialsCache getVerifiedCredentialsCache()
+    {
+        if ( verifiedCredentialsCache == null )
+        {
+            try
+            {
+                verifiedCredentialsCache = getPlexusContainer().lookup( VerifiedCredentialsCache.class );
+            }
+            catch ( ComponentLookupException e )
+            {
+                getLogger().error( "Unable to lookup component", e );
+            }
+        }
+
+        return verifiedCredentialsCache;
+    }
+
     @Override
     protected boolean onAccessDenied( ServletRequest request, ServletResponse response )
         throws Exception
@@ -134,7 +156,7 @@ public class NexusHttpAuthenticationFilter
         {
             try
             {
-                loggedIn = executeLogin( request, response );
+                loggedIn = executeCachedLogin( request, response ) || executeLogin( request, response );
             }
             // if no username or password is supplied, an IllegalStateException (runtime)
             // is thrown, so if anything fails in executeLogin just assume failed login
@@ -201,6 +223,52 @@ public class NexusHttpAuthenticationFilter
         }
     }
 
+    /**
+     * Logs in a stateless client without authenticating it against the realms, if it sent credentials verified
+     * recently. Returns false if the credentials needs to be verified.
+     * 
+     * @param request
+     * @param response
+     * @return
+     */
+    protected boolean executeCachedLogin( ServletRequest request, ServletResponse response )
+    {
+        if ( !isStatelessClient( request ) )
+        {
+            return false;
+        }
+
+        VerifiedCredentialsCache cache = getVerifiedCredentialsCache();
+
+        if ( cache == null )
+        {
+            return false;
+        }
+
+        PrincipalCollection principals = cache.getPrincipals( getAuthzHeader( request ) );
+
+        if ( principals == null )
+        {
+            return false;
+        }
+
+        Subject subject =
+            new WebSubject.Builder( request, response ).principals( principals ).authenticated( true ).buildWebSubject();
+
+        // the shiro filter restores the thread state once the request is processed
+        ThreadContext.bind( subject );
+
+        if ( getLogger().isDebugEnabled() )
+        {
+            getLogger().debug(
+                "Logged in user [" + principals.getPrimaryPrincipal() + "] with recently verified credentials" );
+        }
+
+        announceLoginSuccess( request, principals.getPrimaryPrincipal().toString() );
+
+        return true;
+    }
+
     protected boolean executeAnonymousLogin( ServletRequest request, ServletResponse response )
     {
         if ( getLogger().isDebugEnabled() )
@@ -225,7 +293,10 @@ public class NexusHttpAuthenticationFilter
                 getLogger().debug( "Successfully logged in as anonymous" );
             }
 
-            postAuthcEvent( request, getNexusConfiguration().getAnonymousUsername(), getUserAgent( request ), true );
+            if ( isLoginAnnounceDue( request, getNexusConfiguration().getAnonymousUsername() ) )
+            {
+                postAuthcEvent( request, getNexusConfiguration().getAnonymousUsername(), getUserAgent( request ), true );
+            }
 
             return true;
         }
@@ -250,15 +321,45 @@ public class NexusHttpAuthenticationFilter
     protected boolean onLoginSuccess( AuthenticationToken token, Subject subject, ServletRequest request,
                                       ServletResponse response )
     {
+        if ( isStatelessClient( request ) )
+        {
+            VerifiedCredentialsCache cache = getVerifiedCredentialsCache();
+
+            if ( cache != null )
+            {
+                cache.putPrincipals( getAuthzHeader( request ), subject.getPrincipals() );
+            }
+        }
+
+        announceLoginSuccess( request, token.getPrincipal().toString() );
+
+        return true;
+    }
+
+    private void announceLoginSuccess( ServletRequest request, String username )
+    {
+        // stateless clients login with every request, to make feeds and events be more concise, announce only once in
+        // a while
+        if ( !isLoginAnnounceDue( request, username ) )
+        {
+            return;
+        }
+
         String msg =
-            "Successfully authenticated user [" + token.getPrincipal() + "] from IP Address "
+            "Successfully authenticated user [" + username + "] from IP Address "
                 + RemoteIPFinder.findIP( (HttpServletRequest) request );
 
         recordAuthcEvent( request, msg );
 
-        postAuthcEvent( request, token.getPrincipal().toString(), getUserAgent( request ), true );
+        postAuthcEvent( request, username, getUserAgent( request ), true );
+    }
 
-        return true;
+    private boolean isLoginAnnounceDue( ServletRequest request, String username )
+    {
+        VerifiedCredentialsCache cache = getVerifiedCredentialsCache();
+
+        return cache == null
+            || cache.isLoginAnnounceDue( username, RemoteIPFinder.findIP( (HttpServletRequest) request ) );
     }
 
     private void postAuthcEvent( ServletRequest request, String username, String userAgent, boolean success )
@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.security.filter.authc;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.shiro.subject.PrincipalCollection;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.logging.AbstractLogEnabled;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Initializable;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.InitializationException;
+import org.sonatype.nexus.configuration.ConfigurationChangeEvent;
+import org.sonatype.nexus.util.DigesterUtils;
+import org.sonatype.nexus.util.SystemPropertiesHelper;
+import org.sonatype.plexus.appevents.ApplicationEventMulticaster;
+import org.sonatype.plexus.appevents.Event;
+import org.sonatype.plexus.appevents.EventListener;
+import org.sonatype.security.events.AuthorizationConfigurationChangedEvent;
+import org.sonatype.security.events.SecurityConfigurationChangedEvent;
+
+/**
+ * Remembers the principals of recently verified credentials of stateless clients (like Maven or Ivy, sending BASIC
+ * credentials with every request), to spare a realm authentication (password hashing or LDAP bind) per request. The
+ * credentials are keyed by a salted digest of the authorization header, so no secret is kept in memory. The cache is
+ * flushed on any change of nexus configuration, security realms, users or roles, while the time to live limits the
+ * staleness caused by changes not announced to nexus (ie. in LDAP). Also throttles the announcement of successful
+ * logins of same user from same address.
+ * 
+ * @author cstamas
+ */
+@Component( role = VerifiedCredentialsCache.class )
+public class VerifiedCredentialsCache
+    extends AbstractLogEnabled
+    implements EventListener, Initializable
+{
+    /** The maximum count of cached credentials. */
+    private static final int CACHE_SIZE = SystemPropertiesHelper.getInteger(
+        "nexus.authc.verifiedCredentialsCache.size", 1000 );
+
+    /** The time to live of cached credentials, set to 0 to disable the cache. */
+    private static final int CACHE_TTL = SystemPropertiesHelper.getInteger(
+        "nexus.authc.verifiedCredentialsCache.ttlMillis", 60000 );
+
+    /** The period in which successful logins of same user from same address are announced only once. */
+    private static final int ANNOUNCE_PERIOD = SystemPropertiesHelper.getInteger(
+        "nexus.authc.loginAnnouncePeriodMillis", 60000 );
+
+    @Requirement
+    private ApplicationEventMulticaster applicationEventMulticaster;
+
+    private final byte[] salt;
+
+    /** The verified credentials, keyed by salted digest of authorization header, LRU */
+    private final Map<String, VerifiedCredentials> credentials = Collections.synchronizedMap( new LinkedHashMap<String, VerifiedCredentials>(
+        16, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, VerifiedCredentials> eldest )
+        {
+            return size() > CACHE_SIZE;
+        }
+    } );
+
+    /** The time of last announced login, keyed by user and address, LRU */
+    private final Map<String, Long> announcements = Collections.synchronizedMap( new LinkedHashMap<String, Long>( 16,
+        0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, Long> eldest )
+        {
+            return size() > CACHE_SIZE;
+        }
+    } );
+
+    public VerifiedCredentialsCache()
+    {
+        this.salt = new byte[16];
+
+        new SecureRandom().nextBytes( salt );
+    }
+
+    public void initialize()
+        throws InitializationException
+    {
+        applicationEventMulticaster.addEventListener( this );
+    }
+
+    public void onEvent( Event<?> evt )
+    {
+        // security system announces realm changes with SecurityConfigurationChangedEvent, and user, role and
+        // privilege changes with AuthorizationConfigurationChangedEvent
+        if ( evt instanceof ConfigurationChangeEvent || evt instanceof SecurityConfigurationChangedEvent
+            || evt instanceof AuthorizationConfigurationChangedEvent )
+        {
+            clear();
+        }
+    }
+
+    public void clear()
+    {
+        credentials.clear();
+    }
+
+    /**
+     * Returns the principals of recently verified authorization header, or null if it is not known (or expired).
+     * 
+     * @param authzHeader
+     * @return
+     */
+    public PrincipalCollection getPrincipals( String authzHeader )
+    {
+        if ( CACHE_TTL <= 0 || authzHeader == null )
+        {
+            return null;
+        }
+
+        String key = getKey( authzHeader );
+
+        VerifiedCredentials verified = credentials.get( key );
+
+        if ( verified == null )
+        {
+            return null;
+        }
+
+        if ( !verified.isValid() )
+        {
+            credentials.remove( key );
+
+            return null;
+        }
+
+        return verified.getPrincipals();
+    }
+
+    /**
+     * Remembers the principals of a successfully verified authorization header.
+     * 
+     * @param authzHeader
+     * @param principals
+     */
+    public void putPrincipals( String authzHeader, PrincipalCollection principals )
+    {
+        if ( CACHE_TTL <= 0 || authzHeader == null || principals == null || principals.isEmpty() )
+        {
+            return;
+        }
+
+        credentials.put( getKey( authzHeader ), new VerifiedCredentials( principals ) );
+    }
+
+    /**
+     * Returns true if a successful login of user from address should be announced, that is, it was not announced in
+     * the announce period.
+     * 
+     * @param username
+     * @param address
+     * @return
+     */
+    public boolean isLoginAnnounceDue( String username, String address )
+    {
+        String key = username + "@" + address;
+
+        long now = System.currentTimeMillis();
+
+        synchronized ( announcements )
+        {
+            Long last = announcements.get( key );
+
+            if ( last != null && now - last.longValue() < ANNOUNCE_PERIOD )
+            {
+                return false;
+            }
+
+            announcements.put( key, Long.valueOf( now ) );
+
+            return true;
+        }
+    }
+
+    // ==
+
+    protected String getKey( String authzHeader )
+    {
+        try
+        {
+            MessageDigest sha1 = MessageDigest.getInstance( "SHA1" );
+
+            sha1.update( salt );
+
+            sha1.update( authzHeader.getBytes( "UTF-8" ) );
+
+            return DigesterUtils.getDigestAsString( sha1.digest() );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "The JVM does not support SHA1 MessageDigest!", e );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "The JVM does not support UTF-8 encoding!", e );
+        }
+    }
+
+    private static class VerifiedCredentials
+    {
+        private final PrincipalCollection principals;
+
+        private final long created;
+
+        public VerifiedCredentials( PrincipalCollection principals )
+        {
+            this.principals = principals;
+
+            this.created = System.currentTimeMillis();
+        }
+
+        public PrincipalCollection getPrincipals()
+        {
+            return principals;
+        }
+
+        public boolean isValid()
+        {
+            return System.currentTimeMillis() - created < CACHE_TTL;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.rest;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ByteRangeTest
+    extends TestCase
+{
+    public void testSingleRanges()
+    {
+        assertRanges( "0-499", ByteRange.parse( "bytes=0-499", 10000 ) );
+        assertRanges( "500-999", ByteRange.parse( "bytes=500-999", 10000 ) );
+        assertRanges( "9500-9999", ByteRange.parse( "bytes=-500", 10000 ) );
+        assertRanges( "9500-9999", ByteRange.parse( "bytes=9500-", 10000 ) );
+        assertRanges( "0-9999", ByteRange.parse( "bytes=-20000", 10000 ) );
+        assertRanges( "9000-9999", ByteRange.parse( "bytes=9000-20000", 10000 ) );
+        assertRanges( "0-0", ByteRange.parse( "Bytes=0-0", 10000 ) );
+    }
+
+    public void testMultipleRanges()
+    {
+        assertRanges( "0-0,9999-9999", ByteRange.parse( "bytes=0-0,-1", 10000 ) );
+        assertRanges( "500-600,601-999", ByteRange.parse( "bytes=500-600, 601-999", 10000 ) );
+        // unsatisfiable ones are dropped
+        assertRanges( "500-600", ByteRange.parse( "bytes=500-600,20000-30000", 10000 ) );
+    }
+
+    public void testUnsatisfiable()
+    {
+        assertTrue( ByteRange.parse( "bytes=10000-", 10000 ).isEmpty() );
+        assertTrue( ByteRange.parse( "bytes=20000-30000", 10000 ).isEmpty() );
+        assertTrue( ByteRange.parse( "bytes=-0", 10000 ).isEmpty() );
+        assertTrue( ByteRange.parse( "bytes=0-", 0 ).isEmpty() );
+    }
+
+    public void testInvalid()
+    {
+        assertNull( ByteRange.parse( null, 10000 ) );
+        assertNull( ByteRange.parse( "items=0-10", 10000 ) );
+        assertNull( ByteRange.parse( "bytes=", 10000 ) );
+        assertNull( ByteRange.parse( "bytes=10", 10000 ) );
+        assertNull( ByteRange.parse( "bytes=20-10", 10000 ) );
+        assertNull( ByteRange.parse( "bytes=a-b", 10000 ) );
+        assertNull( ByteRange.parse( "bytes=-", 10000 ) );
+    }
+
+    public void testContentRange()
+    {
+        assertEquals( "bytes 0-499/10000", ByteRange.parse( "bytes=0-499", 10000 ).get( 0 ).getContentRange( 10000 ) );
+    }
+
+    // ==
+
+    protected void assertRanges( String expected, List<ByteRange> ranges )
+    {
+        assertNotNull( ranges );
+
+        StringBuilder sb = new StringBuilder();
+
+        for ( ByteRange range : ranges )
+        {
+            if ( sb.length() > 0 )
+            {
+                sb.append( ',' );
+            }
+
+            sb.append( range.toString() );
+        }
+
+        assertEquals( expected, sb.toString() );
+    }
+}
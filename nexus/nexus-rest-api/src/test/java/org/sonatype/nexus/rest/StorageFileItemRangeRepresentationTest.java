@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.restlet.data.Form;
+import org.restlet.data.Method;
+import org.restlet.data.Request;
+import org.restlet.data.Response;
+import org.restlet.data.Status;
+import org.restlet.resource.Representation;
+import org.sonatype.nexus.proxy.RequestContext;
+import org.sonatype.nexus.proxy.access.Action;
+import org.sonatype.nexus.proxy.item.ContentLocator;
+import org.sonatype.nexus.proxy.item.ReadLockingContentLocator;
+import org.sonatype.nexus.proxy.item.RepositoryItemUid;
+import org.sonatype.nexus.proxy.item.StorageFileItem;
+import org.sonatype.nexus.proxy.storage.local.fs.FileContentLocator;
+
+public class StorageFileItemRangeRepresentationTest
+    extends TestCase
+{
+    private static final String CONTENT = "0123456789abcdef";
+
+    private File file;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        file = File.createTempFile( "content", ".txt" );
+
+        FileUtils.fileWrite( file.getAbsolutePath(), CONTENT );
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        file.delete();
+
+        super.tearDown();
+    }
+
+    public void testFileContentTransferredUnderReadLock()
+        throws Exception
+    {
+        RepositoryItemUid uid = EasyMock.createMock( RepositoryItemUid.class );
+        uid.lock( Action.read );
+        uid.unlock();
+        EasyMock.replay( uid );
+
+        StorageFileItem item =
+            createItem( new ReadLockingContentLocator( uid, new FileContentLocator( file, "text/plain" ) ), true );
+
+        final boolean[] transferred = new boolean[1];
+
+        StorageFileItemRangeRepresentation representation =
+            new StorageFileItemRangeRepresentation( item, ByteRange.parse( "bytes=2-4,10-", CONTENT.length() ) )
+            {
+                @Override
+                protected void transferSegments( OutputStream outputStream, List<ContentSegment> segments,
+                                                 FileChannel channel )
+                    throws IOException
+                {
+                    transferred[0] = true;
+
+                    super.transferSegments( outputStream, segments, channel );
+                }
+            };
+
+        String body = write( representation );
+
+        assertTrue( transferred[0] );
+        assertEquals( "multipart/byteranges", representation.getMediaType().getName() );
+        assertEquals( representation.getSize(), body.length() );
+        assertTrue( body.contains( "Content-Range: bytes 2-4/16\r\n\r\n234\r\n" ) );
+        assertTrue( body.contains( "Content-Range: bytes 10-15/16\r\n\r\nabcdef\r\n" ) );
+        assertTrue( body.endsWith( "--\r\n" ) );
+
+        EasyMock.verify( uid );
+    }
+
+    public void testStreamContentCopied()
+        throws Exception
+    {
+        StorageFileItem item = createItem( null, true );
+
+        StorageFileItemRangeRepresentation single =
+            new StorageFileItemRangeRepresentation( item, ByteRange.parse( "bytes=-3", CONTENT.length() ) );
+
+        assertEquals( 3, single.getSize() );
+        assertEquals( "def", write( single ) );
+
+        // out of order ranges, the content stream is opened again
+        StorageFileItemRangeRepresentation multiple =
+            new StorageFileItemRangeRepresentation( item, ByteRange.parse( "bytes=10-11,2-4", CONTENT.length() ) );
+
+        String body = write( multiple );
+
+        assertEquals( multiple.getSize(), body.length() );
+        assertTrue( body.indexOf( "\r\n\r\nab\r\n" ) < body.indexOf( "\r\n\r\n234\r\n" ) );
+    }
+
+    public void testNonReusableContentCopied()
+        throws Exception
+    {
+        StorageFileItem item = createItem( null, false );
+
+        assertEquals( CONTENT, write( new StorageFileItemRepresentation( item ) ) );
+
+        EasyMock.verify( item );
+    }
+
+    public void testRenderFileItem()
+        throws Exception
+    {
+        StorageFileItem item = createItem( new FileContentLocator( file, "text/plain" ), true );
+
+        // no range asked, ranges are advertised
+        Response res = createResponse( null );
+
+        Representation representation = new ContentPlexusResource().renderFileItem( res.getRequest(), res, item );
+
+        assertEquals( StorageFileItemRepresentation.class, representation.getClass() );
+        assertEquals( Status.SUCCESS_OK, res.getStatus() );
+        assertEquals( "bytes", getResponseHeaders( res ).getFirstValue( "Accept-Ranges" ) );
+
+        // satisfiable range
+        res = createResponse( "bytes=2-4" );
+
+        representation = new ContentPlexusResource().renderFileItem( res.getRequest(), res, item );
+
+        assertEquals( StorageFileItemRangeRepresentation.class, representation.getClass() );
+        assertEquals( Status.SUCCESS_PARTIAL_CONTENT, res.getStatus() );
+        assertEquals( "bytes 2-4/16", getResponseHeaders( res ).getFirstValue( "Content-Range" ) );
+        assertEquals( "234", write( (StorageFileItemRepresentation) representation ) );
+
+        // not satisfiable range
+        res = createResponse( "bytes=20-" );
+
+        representation = new ContentPlexusResource().renderFileItem( res.getRequest(), res, item );
+
+        assertNull( representation );
+        assertEquals( Status.CLIENT_ERROR_REQUESTED_RANGE_NOT_SATISFIABLE, res.getStatus() );
+        assertEquals( "bytes */16", getResponseHeaders( res ).getFirstValue( "Content-Range" ) );
+
+        // not the same entity
+        res = createResponse( "bytes=2-4" );
+        getRequestHeaders( res ).add( "If-Range", "\"other\"" );
+
+        representation = new ContentPlexusResource().renderFileItem( res.getRequest(), res, item );
+
+        assertEquals( StorageFileItemRepresentation.class, representation.getClass() );
+        assertEquals( Status.SUCCESS_OK, res.getStatus() );
+    }
+
+    // ==
+
+    protected StorageFileItem createItem( final ContentLocator locator, final boolean reusable )
+        throws IOException
+    {
+        StorageFileItem item = EasyMock.createNiceMock( StorageFileItem.class );
+
+        EasyMock.expect( item.getMimeType() ).andReturn( "text/plain" ).anyTimes();
+        EasyMock.expect( item.getLength() ).andReturn( Long.valueOf( CONTENT.length() ) ).anyTimes();
+        EasyMock.expect( item.getAttributes() ).andReturn( new HashMap<String, String>() ).anyTimes();
+        EasyMock.expect( item.getItemContext() ).andReturn( new RequestContext() ).anyTimes();
+        EasyMock.expect( item.isReusableStream() ).andReturn( reusable ).anyTimes();
+
+        IAnswer<InputStream> content = new IAnswer<InputStream>()
+        {
+            public InputStream answer()
+                throws Throwable
+            {
+                return locator != null ? locator.getContent() : new ByteArrayInputStream( CONTENT.getBytes() );
+            }
+        };
+
+        if ( reusable )
+        {
+            EasyMock.expect( item.getInputStream() ).andAnswer( content ).anyTimes();
+        }
+        else
+        {
+            // might be read only once
+            EasyMock.expect( item.getInputStream() ).andAnswer( content ).once();
+        }
+
+        EasyMock.replay( item );
+
+        return item;
+    }
+
+    protected Response createResponse( final String range )
+    {
+        Request req = new Request( Method.GET, "http://localhost/content/file.txt" );
+
+        Form headers = new Form();
+
+        if ( range != null )
+        {
+            headers.add( "Range", range );
+        }
+
+        req.getAttributes().put( "org.restlet.http.headers", headers );
+
+        return new Response( req );
+    }
+
+    protected Form getRequestHeaders( final Response res )
+    {
+        return (Form) res.getRequest().getAttributes().get( "org.restlet.http.headers" );
+    }
+
+    protected Form getResponseHeaders( final Response res )
+    {
+        return (Form) res.getAttributes().get( "org.restlet.http.headers" );
+    }
+
+    protected String write( final StorageFileItemRepresentation representation )
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        representation.write( out );
+
+        return new String( out.toByteArray(), "ISO-8859-1" );
+    }
+}
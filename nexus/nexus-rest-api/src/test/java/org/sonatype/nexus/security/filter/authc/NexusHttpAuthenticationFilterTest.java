@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.security.filter.authc;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import junit.framework.TestCase;
+
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.mgt.SecurityManager;
+import org.apache.shiro.realm.SimpleAccountRealm;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.apache.shiro.web.mgt.DefaultWebSecurityManager;
+import org.apache.shiro.web.subject.WebSubject;
+import org.codehaus.plexus.PlexusContainer;
+import org.easymock.EasyMock;
+import org.sonatype.nexus.Nexus;
+import org.sonatype.nexus.auth.NexusAuthenticationEvent;
+import org.sonatype.plexus.appevents.ApplicationEventMulticaster;
+
+public class NexusHttpAuthenticationFilterTest
+    extends TestCase
+{
+    // deployment:deployment123
+    private static final String AUTHZ_HEADER = "Basic ZGVwbG95bWVudDpkZXBsb3ltZW50MTIz";
+
+    // deployment:wrong
+    private static final String WRONG_AUTHZ_HEADER = "Basic ZGVwbG95bWVudDp3cm9uZw==";
+
+    private CountingRealm realm;
+
+    private SecurityManager securityManager;
+
+    private VerifiedCredentialsCache cache;
+
+    private ApplicationEventMulticaster multicaster;
+
+    private PlexusContainer container;
+
+    private NexusHttpAuthenticationFilter filter;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        realm = new CountingRealm();
+
+        realm.addAccount( "deployment", "deployment123" );
+
+        securityManager = new DefaultWebSecurityManager( realm );
+
+        ThreadContext.bind( securityManager );
+
+        cache = new VerifiedCredentialsCache();
+
+        multicaster = EasyMock.createMock( ApplicationEventMulticaster.class );
+
+        container = EasyMock.createMock( PlexusContainer.class );
+
+        EasyMock.expect( container.lookup( ApplicationEventMulticaster.class ) ).andReturn( multicaster ).anyTimes();
+
+        EasyMock.replay( container );
+
+        filter = new NexusHttpAuthenticationFilter()
+        {
+            @Override
+            protected VerifiedCredentialsCache getVerifiedCredentialsCache()
+            {
+                return cache;
+            }
+
+            @Override
+            protected PlexusContainer getPlexusContainer()
+            {
+                return container;
+            }
+
+            @Override
+            protected Nexus getNexus()
+            {
+                return null;
+            }
+        };
+    }
+
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        ThreadContext.remove();
+
+        super.tearDown();
+    }
+
+    public void testCacheHitBindsSubject()
+        throws Exception
+    {
+        multicaster.notifyEventListeners( EasyMock.isA( NexusAuthenticationEvent.class ) );
+        EasyMock.expectLastCall().anyTimes();
+        EasyMock.replay( multicaster );
+
+        assertTrue( login( AUTHZ_HEADER ) );
+
+        assertEquals( 1, realm.getAuthentications() );
+
+        assertTrue( login( AUTHZ_HEADER ) );
+
+        // realm not asked again, but subject is bound as authenticated
+        assertEquals( 1, realm.getAuthentications() );
+
+        Subject subject = ThreadContext.getSubject();
+
+        assertTrue( subject.isAuthenticated() );
+
+        assertEquals( "deployment", subject.getPrincipal() );
+    }
+
+    public void testCacheMissFallsBackToRealm()
+        throws Exception
+    {
+        multicaster.notifyEventListeners( EasyMock.isA( NexusAuthenticationEvent.class ) );
+        EasyMock.expectLastCall().anyTimes();
+        EasyMock.replay( multicaster );
+
+        // failed logins are not remembered
+        assertFalse( login( WRONG_AUTHZ_HEADER ) );
+
+        assertFalse( login( WRONG_AUTHZ_HEADER ) );
+
+        assertEquals( 2, realm.getAuthentications() );
+
+        assertTrue( login( AUTHZ_HEADER ) );
+
+        assertEquals( 3, realm.getAuthentications() );
+
+        // flushed cache falls back to realm too
+        cache.clear();
+
+        assertTrue( login( AUTHZ_HEADER ) );
+
+        assertEquals( 4, realm.getAuthentications() );
+    }
+
+    public void testLoginAnnouncementsThrottled()
+        throws Exception
+    {
+        // one for the realm login, the cached logins are not announced again
+        multicaster.notifyEventListeners( EasyMock.isA( NexusAuthenticationEvent.class ) );
+        EasyMock.expectLastCall().once();
+        EasyMock.replay( multicaster );
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            assertTrue( login( AUTHZ_HEADER ) );
+        }
+
+        EasyMock.verify( multicaster );
+    }
+
+    // ==
+
+    /**
+     * Performs the authentication of a stateless client sending given authorization header, as it happens in a new
+     * request: with a fresh, unauthenticated subject bound to the thread.
+     */
+    protected boolean login( String authzHeader )
+        throws Exception
+    {
+        HttpSession session = EasyMock.createNiceMock( HttpSession.class );
+
+        HttpServletRequest request = EasyMock.createNiceMock( HttpServletRequest.class );
+        EasyMock.expect( request.getHeader( "Authorization" ) ).andReturn( authzHeader ).anyTimes();
+        EasyMock.expect( request.getHeader( "User-Agent" ) ).andReturn( "Apache-Maven/3.0" ).anyTimes();
+        EasyMock.expect( request.getRemoteAddr() ).andReturn( "127.0.0.1" ).anyTimes();
+        EasyMock.expect( request.getSession() ).andReturn( session ).anyTimes();
+        EasyMock.expect( request.getSession( EasyMock.anyBoolean() ) ).andReturn( session ).anyTimes();
+
+        HttpServletResponse response = EasyMock.createNiceMock( HttpServletResponse.class );
+
+        EasyMock.replay( session, request, response );
+
+        ThreadContext.bind( new WebSubject.Builder( securityManager, request, response ).buildWebSubject() );
+
+        return filter.onAccessDenied( request, response );
+    }
+
+    private static class CountingRealm
+        extends SimpleAccountRealm
+    {
+        private int authentications;
+
+        public int getAuthentications()
+        {
+            return authentications;
+        }
+
+        @Override
+        protected AuthenticationInfo doGetAuthenticationInfo( AuthenticationToken token )
+            throws AuthenticationException
+        {
+            authentications++;
+
+            return super.doGetAuthenticationInfo( token );
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2008-2011 Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://www.sonatype.com/products/nexus/attributions.
+ *
+ * This program is free software: you can redistribute it and/or modify it only under the terms of the GNU Affero General
+ * Public License Version 3 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Affero General Public License Version 3
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License Version 3 along with this program.  If not, see
+ * http://www.gnu.org/licenses.
+ *
+ * Sonatype Nexus (TM) Open Source Version is available from Sonatype, Inc. Sonatype and Sonatype Nexus are trademarks of
+ * Sonatype, Inc. Apache Maven is a trademark of the Apache Foundation. M2Eclipse is a trademark of the Eclipse Foundation.
+ * All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.nexus.security.filter.authc;
+
+import junit.framework.TestCase;
+
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.sonatype.plexus.appevents.AbstractEvent;
+import org.sonatype.security.events.AuthorizationConfigurationChangedEvent;
+import org.sonatype.security.events.SecurityConfigurationChangedEvent;
+
+public class VerifiedCredentialsCacheTest
+    extends TestCase
+{
+    private static final String AUTHZ_HEADER = "Basic ZGVwbG95bWVudDpkZXBsb3ltZW50MTIz";
+
+    private VerifiedCredentialsCache cache;
+
+    private PrincipalCollection principals;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        cache = new VerifiedCredentialsCache();
+
+        principals = new SimplePrincipalCollection( "deployment", "XmlAuthenticatingRealm" );
+    }
+
+    public void testVerifiedCredentialsRemembered()
+    {
+        assertNull( cache.getPrincipals( AUTHZ_HEADER ) );
+
+        cache.putPrincipals( AUTHZ_HEADER, principals );
+
+        assertSame( principals, cache.getPrincipals( AUTHZ_HEADER ) );
+
+        // other password, same user
+        assertNull( cache.getPrincipals( "Basic ZGVwbG95bWVudDpkZXBsb3ltZW50" ) );
+    }
+
+    public void testCredentialsNotKeptInClear()
+    {
+        String key = cache.getKey( AUTHZ_HEADER );
+
+        assertFalse( key.contains( "ZGVwbG95bWVudDpkZXBsb3ltZW50MTIz" ) );
+
+        // salted, differs between instances
+        assertFalse( key.equals( new VerifiedCredentialsCache().getKey( AUTHZ_HEADER ) ) );
+    }
+
+    public void testFlushedOnSecurityEvents()
+    {
+        cache.putPrincipals( AUTHZ_HEADER, principals );
+
+        cache.onEvent( new AbstractEvent<Object>( this )
+        {
+        } );
+
+        assertSame( principals, cache.getPrincipals( AUTHZ_HEADER ) );
+
+        cache.onEvent( new SecurityConfigurationChangedEvent( null ) );
+
+        assertNull( cache.getPrincipals( AUTHZ_HEADER ) );
+
+        cache.putPrincipals( AUTHZ_HEADER, principals );
+
+        cache.onEvent( new AuthorizationConfigurationChangedEvent( null ) );
+
+        assertNull( cache.getPrincipals( AUTHZ_HEADER ) );
+    }
+
+    public void testLoginAnnouncedOncePerPeriod()
+    {
+        assertTrue( cache.isLoginAnnounceDue( "deployment", "127.0.0.1" ) );
+
+        assertFalse( cache.isLoginAnnounceDue( "deployment", "127.0.0.1" ) );
+
+        assertTrue( cache.isLoginAnnounceDue( "deployment", "10.0.0.1" ) );
+
+        assertTrue( cache.isLoginAnnounceDue( "admin", "127.0.0.1" ) );
+    }
+}
@@ -38,8 +38,13 @@ public abstract class WrappingInputStream
 
         this.wrappedStream = wrappedStream;
     }
-    
-    protected InputStream getWrappedInputStream()
+
+    /**
+     * Returns the wrapped stream. Should not be read directly by others than this stream.
+     * 
+     * @return
+     */
+    public InputStream getWrappedInputStream()
     {
         return wrappedStream;
     }